@@ -0,0 +1,84 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// run with ./gradlew jmh, the gc profiler reports gc.alloc.rate.norm, i.e. the bytes allocated per operation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovieEncodingBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String MOVIE_ID = "tt0133093";
+
+    private MoviesDynamoDbRepository moviesDynamoDbRepository;
+    private MovieItemJsonWriter movieItemJsonWriter;
+
+    @Setup
+    public void setup() {
+
+        final var item = Map.of(
+                "movieId", AttributeValue.builder().s(MOVIE_ID).build(),
+                "name", AttributeValue.builder().s("The Matrix").build(),
+                "countryOfOrigin", AttributeValue.builder().s("US").build(),
+                "releaseDate", AttributeValue.builder().s("1999-03-31").build(),
+                "rottenTomatoesRating", AttributeValue.builder().n("88").build(),
+                "imdbRating", AttributeValue.builder().n("87").build(),
+                "version", AttributeValue.builder().n("12").build(),
+                "lastModified", AttributeValue.builder().n("1589535000000").build());
+
+        // the client is stubbed out so that only the conversion and encoding are measured
+        final var getItemResponse = GetItemResponse.builder().item(item).build();
+        final var dynamoDbClient = new DynamoDbClient() {
+
+            @Override
+            public GetItemResponse getItem(final GetItemRequest getItemRequest) {
+                return getItemResponse;
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() { }
+        };
+
+        moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDbClient, "movies");
+        movieItemJsonWriter = new MovieItemJsonWriter();
+    }
+
+    @Benchmark
+    public String movieThroughObjectMapper() throws IOException {
+        return OBJECT_MAPPER.writeValueAsString(moviesDynamoDbRepository.getMovieById(MOVIE_ID, ReadConsistency.STRONG));
+    }
+
+    @Benchmark
+    public int itemThroughMovieItemJsonWriter() throws IOException {
+        movieItemJsonWriter.write(moviesDynamoDbRepository.getMovieItemById(MOVIE_ID, ReadConsistency.STRONG, Set.of()));
+        return movieItemJsonWriter.size();
+    }
+}
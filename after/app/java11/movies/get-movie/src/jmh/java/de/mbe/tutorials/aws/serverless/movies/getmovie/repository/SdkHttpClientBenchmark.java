@@ -0,0 +1,127 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughput;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ResourceInUseException;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// compares the SDK HTTP clients against DynamoDB Local, run it through make benchmark-http-clients,
+// which builds the benchmark once per client, -PsdkHttpClient decides which one ends up on the classpath
+public class SdkHttpClientBenchmark {
+
+    private static final URI DYNAMODB_ENDPOINT = URI.create(Optional.ofNullable(System.getenv("DYNAMODB_ENDPOINT"))
+            .orElse("http://localhost:8000"));
+
+    private static final String MOVIES_TABLE = "movies_benchmark";
+    private static final String MOVIE_ID = "tt0133093";
+
+    @State(Scope.Benchmark)
+    public static class MoviesTable {
+
+        private DynamoDbClient dynamoDbClient;
+        private MoviesDynamoDbRepository moviesDynamoDbRepository;
+
+        @Setup
+        public void setup() {
+
+            dynamoDbClient = newDynamoDbClient();
+
+            try {
+                dynamoDbClient.createTable(CreateTableRequest.builder()
+                        .attributeDefinitions(AttributeDefinition.builder()
+                                .attributeName("movieId")
+                                .attributeType(ScalarAttributeType.S)
+                                .build())
+                        .keySchema(KeySchemaElement.builder()
+                                .attributeName("movieId")
+                                .keyType(KeyType.HASH)
+                                .build())
+                        .provisionedThroughput(ProvisionedThroughput.builder()
+                                .readCapacityUnits(1L)
+                                .writeCapacityUnits(1L)
+                                .build())
+                        .tableName(MOVIES_TABLE)
+                        .build());
+            } catch (ResourceInUseException error) {
+                // left over from a previous run against the same DynamoDB Local
+            }
+
+            dynamoDbClient.putItem(PutItemRequest.builder()
+                    .tableName(MOVIES_TABLE)
+                    .item(Map.of(
+                            "movieId", AttributeValue.builder().s(MOVIE_ID).build(),
+                            "name", AttributeValue.builder().s("The Matrix").build(),
+                            "countryOfOrigin", AttributeValue.builder().s("US").build(),
+                            "releaseDate", AttributeValue.builder().s("1999-03-31").build(),
+                            "rottenTomatoesRating", AttributeValue.builder().n("88").build(),
+                            "imdbRating", AttributeValue.builder().n("87").build()))
+                    .build());
+
+            moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDbClient, MOVIES_TABLE);
+        }
+
+        @TearDown
+        public void tearDown() {
+            dynamoDbClient.close();
+        }
+    }
+
+    // p50 and p99 come from the sample time histogram
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 10, time = 1)
+    @Fork(1)
+    public Map<String, AttributeValue> callLatency(final MoviesTable moviesTable) {
+        return moviesTable.moviesDynamoDbRepository.getMovieItemById(MOVIE_ID, ReadConsistency.STRONG, Set.of());
+    }
+
+    // every fork is a fresh JVM, so one shot is what an init phase plus the first request costs with this client;
+    // benchmarks run in alphabetical order, the table has been created by callLatency by the time this one runs
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Map<String, AttributeValue> initAndFirstCall() {
+        try (final var dynamoDbClient = newDynamoDbClient()) {
+            return new MoviesDynamoDbRepository(dynamoDbClient, MOVIES_TABLE).getMovieItemById(MOVIE_ID, ReadConsistency.STRONG, Set.of());
+        }
+    }
+
+    private static DynamoDbClient newDynamoDbClient() {
+        return DynamoDbClient.builder()
+                .endpointOverride(DYNAMODB_ENDPOINT)
+                .region(Region.EU_CENTRAL_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")))
+                .build();
+    }
+}
@@ -0,0 +1,186 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+public interface APIGatewayProxyRequestUtils {
+
+    default APIGatewayRequest readRequest(final InputStream input) throws IOException {
+
+        // only the few members the handlers look at are bound, everything else in the event is skipped token by token
+        final var request = new APIGatewayRequest();
+
+        // the handlers implement both interfaces, so there is one factory, declared next to the generators
+        try (final var parser = APIGatewayProxyResponseUtils.JSON_FACTORY.createParser(input)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Invalid JSON: Expected an object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                final var fieldName = parser.getCurrentName();
+                parser.nextToken();
+
+                switch (fieldName) {
+                    case "resource":
+                        request.setResource(parser.getValueAsString());
+                        break;
+                    case "pathParameters":
+                        request.setPathParameters(readStringMap(parser));
+                        break;
+                    case "queryStringParameters":
+                        request.setQueryStringParameters(readStringMap(parser));
+                        break;
+                    case "headers":
+                        request.setHeaders(readStringMap(parser));
+                        break;
+                    case "body":
+                        request.setBody(parser.getValueAsString());
+                        break;
+                    case "isBase64Encoded":
+                        request.setBase64Encoded(parser.getValueAsBoolean());
+                        break;
+                    case Priming.WARMUP_FIELD:
+                        request.setWarmup(parser.getValueAsBoolean());
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+
+        } catch (JsonProcessingException error) {
+            throw new IllegalArgumentException("Invalid JSON: " + error.getOriginalMessage(), error);
+        }
+
+        // API Gateway hands every payload over base64 encoded once binary media types are configured
+        if (request.isBase64Encoded() && request.getBody() != null) {
+            try {
+                request.setBody(new String(Base64.getDecoder().decode(request.getBody()), StandardCharsets.UTF_8));
+                request.setBase64Encoded(false);
+            } catch (IllegalArgumentException error) {
+                throw new IllegalArgumentException("Invalid JSON: body is not valid base64", error);
+            }
+        }
+
+        return request;
+    }
+
+    private static Map<String, String> readStringMap(final JsonParser parser) throws IOException {
+
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        final var values = new HashMap<String, String>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final var name = parser.getCurrentName();
+            parser.nextToken();
+            values.put(name, parser.getValueAsString());
+            parser.skipChildren();
+        }
+        return values;
+    }
+
+    final class APIGatewayRequest {
+
+        private String resource;
+        private Map<String, String> pathParameters;
+        private Map<String, String> queryStringParameters;
+        private Map<String, String> headers;
+        private String body;
+        private boolean isBase64Encoded;
+        private boolean warmup;
+
+        public APIGatewayRequest() { }
+
+        public String getResource() {
+            return resource;
+        }
+
+        public Map<String, String> getPathParameters() {
+            return pathParameters;
+        }
+
+        public Map<String, String> getQueryStringParameters() {
+            return queryStringParameters;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public boolean isBase64Encoded() {
+            return isBase64Encoded;
+        }
+
+        public boolean isWarmup() {
+            return warmup;
+        }
+
+        public String getPathParameter(final String name) {
+            return pathParameters == null ? null : pathParameters.get(name);
+        }
+
+        public String getQueryStringParameter(final String name) {
+            return queryStringParameters == null ? null : queryStringParameters.get(name);
+        }
+
+        public String getHeader(final String name) {
+
+            if (headers == null) {
+                return null;
+            }
+
+            // header names are case-insensitive and API Gateway passes them on as the client sent them
+            for (final var header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey())) {
+                    return header.getValue();
+                }
+            }
+
+            return null;
+        }
+
+        public void setResource(final String resource) {
+            this.resource = resource;
+        }
+
+        public void setPathParameters(final Map<String, String> pathParameters) {
+            this.pathParameters = pathParameters;
+        }
+
+        public void setQueryStringParameters(final Map<String, String> queryStringParameters) {
+            this.queryStringParameters = queryStringParameters;
+        }
+
+        public void setHeaders(final Map<String, String> headers) {
+            this.headers = headers;
+        }
+
+        public void setBody(final String body) {
+            this.body = body;
+        }
+
+        public void setBase64Encoded(final boolean isBase64Encoded) {
+            this.isBase64Encoded = isBase64Encoded;
+        }
+
+        public void setWarmup(final boolean warmup) {
+            this.warmup = warmup;
+        }
+    }
+}
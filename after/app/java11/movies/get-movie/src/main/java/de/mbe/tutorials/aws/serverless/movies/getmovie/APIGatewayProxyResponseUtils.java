@@ -0,0 +1,112 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+public interface APIGatewayProxyResponseUtils {
+
+    JsonFactory JSON_FACTORY = new JsonFactory();
+
+    default void writeResponse(final OutputStream output, final int statusCode, final String body, final Map<String, String> headers) throws IOException {
+
+        try (final var generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            writeStatusCodeAndHeaders(generator, statusCode, headers);
+            generator.writeStringField("body", body);
+            generator.writeEndObject();
+        }
+    }
+
+    default void writeResponse(final OutputStream output, final int statusCode, final char[] body, final int length, final Map<String, String> headers) throws IOException {
+
+        // the body is escaped straight from the caller's buffer, no String is materialised for it
+        try (final var generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            writeStatusCodeAndHeaders(generator, statusCode, headers);
+            generator.writeFieldName("body");
+            generator.writeString(body, 0, length);
+            generator.writeEndObject();
+        }
+    }
+
+    default void writeResponse(final OutputStream output, final int statusCode, final byte[] body, final int length, final boolean isBase64Encoded, final Map<String, String> headers) throws IOException {
+
+        try (final var generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            writeStatusCodeAndHeaders(generator, statusCode, headers, isBase64Encoded);
+            generator.writeFieldName("body");
+            if (isBase64Encoded) {
+                // the base64 alphabet needs no escaping
+                generator.writeRawUTF8String(body, 0, length);
+            } else {
+                generator.writeUTF8String(body, 0, length);
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeStatusCodeAndHeaders(final JsonGenerator generator, final int statusCode, final Map<String, String> headers) throws IOException {
+        writeStatusCodeAndHeaders(generator, statusCode, headers, false);
+    }
+
+    private static void writeStatusCodeAndHeaders(final JsonGenerator generator, final int statusCode, final Map<String, String> headers, final boolean isBase64Encoded) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeNumberField("statusCode", statusCode);
+
+        generator.writeObjectFieldStart("headers");
+        for (final var header : headers.entrySet()) {
+            generator.writeStringField(header.getKey(), header.getValue());
+        }
+        generator.writeEndObject();
+
+        generator.writeBooleanField("isBase64Encoded", isBase64Encoded);
+    }
+
+    final class APIGatewayResponse {
+
+        private int statusCode;
+        private Map<String, String> headers;
+        private boolean isBase64Encoded;
+        private String body;
+
+        public APIGatewayResponse() { }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        @JsonProperty("isBase64Encoded")
+        public boolean isBase64Encoded() {
+            return isBase64Encoded;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public void setStatusCode(final int statusCode) {
+            this.statusCode = statusCode;
+        }
+
+        public void setHeaders(final Map<String, String> headers) {
+            this.headers = headers;
+        }
+
+        @JsonProperty("isBase64Encoded")
+        public void setBase64Encoded(final boolean isBase64Encoded) {
+            this.isBase64Encoded = isBase64Encoded;
+        }
+
+        public void setBody(final String body) {
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie;
+
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.MovieField;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public final class ConditionalRequests {
+
+    private ConditionalRequests() { }
+
+    public static String getEntityTag(final String movieId, final Long version) {
+        return getEntityTag(movieId, version, Set.of());
+    }
+
+    public static String getEntityTag(final String movieId, final Long version, final Set<MovieField> fields) {
+
+        // items written before versioning was introduced carry no version, they cannot be revalidated
+        if (version == null) {
+            return null;
+        }
+
+        if (fields.isEmpty()) {
+            return "\"" + movieId + "-" + version + "\"";
+        }
+
+        // a projection is a different representation of the same version, the field set keeps its tag apart from the full movie's
+        final var fieldNames = EnumSet.copyOf(fields).stream()
+                .map(MovieField::getAttributeName)
+                .collect(Collectors.joining("+"));
+        return "\"" + movieId + "-" + version + "-" + fieldNames + "\"";
+    }
+
+    public static String getLastModified(final Long lastModified) {
+
+        if (lastModified == null) {
+            return null;
+        }
+
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(lastModified).atZone(ZoneOffset.UTC));
+    }
+
+    public static boolean isNotModified(final String entityTag, final Long lastModified, final String ifNoneMatch, final String ifModifiedSince) {
+
+        // If-None-Match takes precedence, If-Modified-Since is only looked at when it is absent (RFC 7232, section 6)
+        if (ifNoneMatch != null) {
+            return matchesAny(entityTag, ifNoneMatch);
+        }
+
+        if (ifModifiedSince != null && lastModified != null) {
+            final var since = parseHttpDate(ifModifiedSince);
+            return since != null && lastModified / 1_000 <= since.getEpochSecond();
+        }
+
+        return false;
+    }
+
+    private static boolean matchesAny(final String entityTag, final String ifNoneMatch) {
+
+        if (entityTag == null) {
+            return false;
+        }
+
+        // weak comparison, a W/ prefix on either side does not prevent a match (RFC 7232, section 2.3.2)
+        final var opaqueTag = opaqueTag(entityTag);
+        for (final var candidate : ifNoneMatch.split(",")) {
+            final var trimmed = candidate.trim();
+            if (trimmed.equals("*") || opaqueTag(trimmed).equals(opaqueTag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String opaqueTag(final String entityTag) {
+        return entityTag.startsWith("W/") ? entityTag.substring(2) : entityTag;
+    }
+
+    private static Instant parseHttpDate(final String value) {
+
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException error) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class ContinuationTokens {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec secretKey;
+
+    public ContinuationTokens(final byte[] secret) {
+        this.secretKey = new SecretKeySpec(secret, HMAC_ALGORITHM);
+    }
+
+    public static ContinuationTokens withRandomSecret() {
+
+        // tokens signed with a random secret only stay valid for as long as this instance lives
+        final var secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return new ContinuationTokens(secret);
+    }
+
+    public String encode(final Map<String, AttributeValue> lastEvaluatedKey) {
+
+        // the key attributes of the table and of its indexes are all strings
+        final var key = new TreeMap<String, String>();
+        lastEvaluatedKey.forEach((name, value) -> {
+            if (value.s() == null) {
+                throw new IllegalStateException("Unsupported key attribute " + name);
+            }
+            key.put(name, value.s());
+        });
+
+        try {
+            final var payload = OBJECT_MAPPER.writeValueAsBytes(key);
+            return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(sign(payload));
+        } catch (IOException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    public Map<String, AttributeValue> decode(final String token) {
+
+        // the token is opaque to clients, anything that was not signed here is rejected before it reaches DynamoDB
+        final var separator = token.indexOf('.');
+        if (separator < 0) {
+            throw invalidToken();
+        }
+
+        final Map<String, String> key;
+        try {
+            final var payload = DECODER.decode(token.substring(0, separator));
+            final var signature = DECODER.decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(sign(payload), signature)) {
+                throw invalidToken();
+            }
+            key = OBJECT_MAPPER.readValue(payload, new TypeReference<Map<String, String>>() { });
+        } catch (IllegalArgumentException | IOException error) {
+            throw invalidToken();
+        }
+
+        final var lastEvaluatedKey = new HashMap<String, AttributeValue>();
+        key.forEach((name, value) -> lastEvaluatedKey.put(name, AttributeValue.builder().s(value).build()));
+        return lastEvaluatedKey;
+    }
+
+    private byte[] sign(final byte[] payload) {
+
+        try {
+            final var mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secretKey);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    private static IllegalArgumentException invalidToken() {
+        return new IllegalArgumentException("Invalid request: Malformed or tampered continuation token");
+    }
+}
@@ -1,79 +1,907 @@
 package de.mbe.tutorials.aws.serverless.movies.getmovie;
 
-import com.amazonaws.services.lambda.runtime.events.APIGatewayV2ProxyRequestEvent;
-import com.amazonaws.services.lambda.runtime.events.APIGatewayV2ProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 import com.amazonaws.xray.interceptors.TracingInterceptor;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.admission.AdmissionController;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.admission.AdmissionRejectedException;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.admission.Priority;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.bloom.MovieIdsFilter;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.cache.MoviesCache;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.compression.ContentEncoding;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.compression.ResponseCompressor;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.deadline.DeadlinePolicy;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.HedgingPolicy;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.Leaderboard;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.MovieItemJsonWriter;
 import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.MoviesDynamoDbRepository;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.ReadConsistency;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.Movie;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.MovieField;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.MovieListing;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.MovieLookup;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.suggest.MovieNamesSuggester;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.s3.S3Client;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
 
-public final class FnGetMovie {
+public final class FnGetMovie implements RequestStreamHandler, APIGatewayProxyRequestUtils, APIGatewayProxyResponseUtils {
 
     private static final Logger LOGGER = LogManager.getLogger(FnGetMovie.class);
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
+    private static final long DEFAULT_MOVIES_CACHE_MAXIMUM_SIZE = 10_000;
+    private static final long DEFAULT_MOVIES_CACHE_EXPIRE_AFTER_WRITE_SECONDS = 60;
+    private static final long DEFAULT_MOVIES_CACHE_CONTROL_MAX_AGE_SECONDS = 0;
+    private static final int DEFAULT_COMPRESSION_MINIMUM_SIZE = 1_024;
+    private static final int DEFAULT_COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+    private static final int DEFAULT_COMPRESSION_DEFLATER_POOL_SIZE = 4;
+    private static final int DEFAULT_MOVIES_PAGE_SIZE = 25;
+    private static final String DEFAULT_MOVIE_IDS_BLOOM_FILTER_PREFIX = "bloom-filters/movie-ids/";
+    private static final long DEFAULT_MOVIE_IDS_BLOOM_FILTER_REFRESH_SECONDS = 300;
+    private static final String DEFAULT_MOVIE_NAMES_INDEX_PREFIX = "indexes/movie-names/";
+    private static final long DEFAULT_MOVIE_NAMES_INDEX_REFRESH_SECONDS = 300;
+    private static final int DEFAULT_SUGGESTIONS_LIMIT = 10;
+    private static final int DEFAULT_TOP_MOVIES_LIMIT = 10;
+    private static final double DEFAULT_MOVIES_HEDGING_PERCENTILE = 95;
+    private static final double DEFAULT_MOVIES_HEDGING_BUDGET = 0.05;
+    private static final long DEFAULT_MOVIES_HEDGING_MIN_DELAY_MILLIS = 5;
+    private static final long DEFAULT_MOVIES_HEDGING_MAX_DELAY_MILLIS = 100;
+    private static final int DEFAULT_MOVIES_HEDGING_MAX_THREADS = 16;
+    private static final long DEFAULT_ADMISSION_BURST_SECONDS = 10;
+    private static final long DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS = 250;
+    private static final long DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS = 2_000;
+
+    private static final String READ_CONSISTENCY_QUERY_PARAMETER = "consistency";
+    private static final String READ_CONSISTENCY_HEADER = "X-Read-Consistency";
+    private static final String MOVIE_IDS_QUERY_PARAMETER = "ids";
+    private static final String FIELDS_QUERY_PARAMETER = "fields";
+    private static final int MAX_MOVIE_IDS_PER_REQUEST = 500;
+    private static final String COUNTRY_QUERY_PARAMETER = "country";
+    private static final String PAGE_SIZE_QUERY_PARAMETER = "limit";
+    private static final String NEXT_TOKEN_QUERY_PARAMETER = "nextToken";
+    private static final int MAX_MOVIES_PAGE_SIZE = 100;
+    private static final String SUGGEST_RESOURCE = "/movies/suggest";
+    private static final String SUGGEST_QUERY_PARAMETER = "q";
+    private static final String TOP_RESOURCE = "/movies/top";
+    private static final String LEADERBOARD_QUERY_PARAMETER = "by";
+    // API Gateway gives up on the integration after 29 seconds, whatever the Lambda timeout is
+    private static final long MAX_REQUEST_DURATION_MILLIS = 29_000;
+
+    private static final byte[] PRIMING_REQUEST = ("{\"pathParameters\":{\"movieId\":\"" + Priming.PRIMING_MOVIE_ID + "\"},"
+            + "\"queryStringParameters\":{\"" + FIELDS_QUERY_PARAMETER + "\":\"name,imdbRating\"},"
+            + "\"headers\":{\"Accept-Encoding\":\"gzip\"},\"body\":null,\"isBase64Encoded\":false}").getBytes(StandardCharsets.UTF_8);
+
     private final MoviesDynamoDbRepository moviesDynamoDbRepository;
+    private final MoviesCache moviesCache;
+    private final ReadConsistency defaultReadConsistency;
+    private final long cacheControlMaxAgeSeconds;
+    private final boolean directJsonEncoding;
+    private final ResponseCompressor responseCompressor;
+    private final ContinuationTokens continuationTokens;
+    private final int defaultPageSize;
+    private final MovieIdsFilter movieIdsFilter;
+    private final HedgingPolicy hedgingPolicy;
+    private final DeadlinePolicy deadlinePolicy;
+    private final MovieNamesSuggester movieNamesSuggester;
+    private final AdmissionController admissionController;
+    private final ThreadLocal<MovieItemJsonWriter> movieItemJsonWriters = ThreadLocal.withInitial(MovieItemJsonWriter::new);
+    private final Map<ReadConsistency, LongAdder> readsByConsistency = new EnumMap<>(ReadConsistency.class);
+    private final LongAdder notModifiedResponses = new LongAdder();
+    private final LongAdder snapshotGaps = new LongAdder();
 
     public FnGetMovie() {
-
-        final var dynamoDBClient = DynamoDbClient.builder()
+        this(DynamoDbClient.builder()
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .build())
+                .build(), () -> S3Client.builder()
                 .overrideConfiguration(ClientOverrideConfiguration.builder()
                         .addExecutionInterceptor(new TracingInterceptor())
                         .build())
-                .build();
+                .build());
+    }
+
+    // the embedded server hands every handler the same client, outside of Lambda there is no trace segment to record S3 calls in
+    public FnGetMovie(final DynamoDbClient dynamoDBClient) {
+        this(dynamoDBClient, S3Client::create);
+    }
+
+    private FnGetMovie(final DynamoDbClient dynamoDBClient, final Supplier<S3Client> s3Clients) {
 
         final var moviesTable = System.getenv("MOVIES_TABLE");
 
-        moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDBClient, moviesTable);
+        final var moviesCacheMaximumSize = Optional.ofNullable(System.getenv("MOVIES_CACHE_MAXIMUM_SIZE"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_MOVIES_CACHE_MAXIMUM_SIZE);
+
+        final var moviesCacheExpireAfterWriteSeconds = Optional.ofNullable(System.getenv("MOVIES_CACHE_EXPIRE_AFTER_WRITE_SECONDS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_MOVIES_CACHE_EXPIRE_AFTER_WRITE_SECONDS);
+
+        final var hedgingEnabled = Optional.ofNullable(System.getenv("MOVIES_HEDGING_ENABLED"))
+                .map(Boolean::parseBoolean)
+                .orElse(false);
+
+        if (hedgingEnabled) {
+
+            final var hedgingPercentile = Optional.ofNullable(System.getenv("MOVIES_HEDGING_PERCENTILE"))
+                    .map(Double::parseDouble)
+                    .orElse(DEFAULT_MOVIES_HEDGING_PERCENTILE);
+
+            final var hedgingBudget = Optional.ofNullable(System.getenv("MOVIES_HEDGING_BUDGET"))
+                    .map(Double::parseDouble)
+                    .orElse(DEFAULT_MOVIES_HEDGING_BUDGET);
+
+            final var hedgingMinDelayMillis = Optional.ofNullable(System.getenv("MOVIES_HEDGING_MIN_DELAY_MILLIS"))
+                    .map(Long::parseLong)
+                    .orElse(DEFAULT_MOVIES_HEDGING_MIN_DELAY_MILLIS);
+
+            final var hedgingMaxDelayMillis = Optional.ofNullable(System.getenv("MOVIES_HEDGING_MAX_DELAY_MILLIS"))
+                    .map(Long::parseLong)
+                    .orElse(DEFAULT_MOVIES_HEDGING_MAX_DELAY_MILLIS);
+
+            final var hedgingMaxThreads = Optional.ofNullable(System.getenv("MOVIES_HEDGING_MAX_THREADS"))
+                    .map(Integer::parseInt)
+                    .orElse(DEFAULT_MOVIES_HEDGING_MAX_THREADS);
+
+            hedgingPolicy = new HedgingPolicy(hedgingPercentile, hedgingBudget,
+                    Duration.ofMillis(hedgingMinDelayMillis), Duration.ofMillis(hedgingMaxDelayMillis), hedgingMaxThreads);
+        } else {
+            hedgingPolicy = HedgingPolicy.disabled();
+        }
+
+        moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDBClient, moviesTable, hedgingPolicy);
+        moviesCache = new MoviesCache(moviesCacheMaximumSize, Duration.ofSeconds(moviesCacheExpireAfterWriteSeconds));
+
+        defaultReadConsistency = Optional.ofNullable(System.getenv("MOVIES_READ_CONSISTENCY"))
+                .map(ReadConsistency::parse)
+                .orElse(ReadConsistency.STRONG);
+
+        cacheControlMaxAgeSeconds = Optional.ofNullable(System.getenv("MOVIES_CACHE_CONTROL_MAX_AGE_SECONDS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_MOVIES_CACHE_CONTROL_MAX_AGE_SECONDS);
+
+        directJsonEncoding = Optional.ofNullable(System.getenv("MOVIES_DIRECT_JSON_ENCODING"))
+                .map(Boolean::parseBoolean)
+                .orElse(true);
+
+        final var compressionMinimumSize = Optional.ofNullable(System.getenv("COMPRESSION_MINIMUM_SIZE"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_COMPRESSION_MINIMUM_SIZE);
+
+        final var compressionLevel = Optional.ofNullable(System.getenv("COMPRESSION_LEVEL"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_COMPRESSION_LEVEL);
+
+        responseCompressor = new ResponseCompressor(compressionMinimumSize, compressionLevel, DEFAULT_COMPRESSION_DEFLATER_POOL_SIZE);
+
+        continuationTokens = Optional.ofNullable(System.getenv("CONTINUATION_TOKEN_SECRET"))
+                .map(secret -> new ContinuationTokens(secret.getBytes(StandardCharsets.UTF_8)))
+                .orElseGet(() -> {
+                    LOGGER.warn("CONTINUATION_TOKEN_SECRET is not set, continuation tokens will not survive this instance");
+                    return ContinuationTokens.withRandomSecret();
+                });
+
+        defaultPageSize = Optional.ofNullable(System.getenv("MOVIES_PAGE_SIZE"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_MOVIES_PAGE_SIZE);
+
+        final var movieIdsBloomFilterBucket = System.getenv("MOVIE_IDS_BLOOM_FILTER_BUCKET");
+        final var movieNamesIndexBucket = System.getenv("MOVIE_NAMES_INDEX_BUCKET");
+
+        // both snapshots are read through the same client, it is only built when one of them is configured
+        final var s3Client = movieIdsBloomFilterBucket == null && movieNamesIndexBucket == null ? null : s3Clients.get();
+
+        movieIdsFilter = Optional.ofNullable(movieIdsBloomFilterBucket)
+                .map(bucket -> {
+
+                    final var prefix = Optional.ofNullable(System.getenv("MOVIE_IDS_BLOOM_FILTER_PREFIX"))
+                            .orElse(DEFAULT_MOVIE_IDS_BLOOM_FILTER_PREFIX);
+
+                    final var refreshSeconds = Optional.ofNullable(System.getenv("MOVIE_IDS_BLOOM_FILTER_REFRESH_SECONDS"))
+                            .map(Long::parseLong)
+                            .orElse(DEFAULT_MOVIE_IDS_BLOOM_FILTER_REFRESH_SECONDS);
+
+                    final var filter = new MovieIdsFilter(s3Client, bucket, prefix, Duration.ofSeconds(refreshSeconds));
+                    // loaded during the init phase, later refreshes happen in the background
+                    filter.refresh();
+                    return filter;
+                })
+                .orElseGet(MovieIdsFilter::disabled);
+
+        movieNamesSuggester = Optional.ofNullable(movieNamesIndexBucket)
+                .map(bucket -> {
+
+                    final var prefix = Optional.ofNullable(System.getenv("MOVIE_NAMES_INDEX_PREFIX"))
+                            .orElse(DEFAULT_MOVIE_NAMES_INDEX_PREFIX);
+
+                    final var refreshSeconds = Optional.ofNullable(System.getenv("MOVIE_NAMES_INDEX_REFRESH_SECONDS"))
+                            .map(Long::parseLong)
+                            .orElse(DEFAULT_MOVIE_NAMES_INDEX_REFRESH_SECONDS);
+
+                    final var suggester = new MovieNamesSuggester(s3Client, bucket, prefix, Duration.ofSeconds(refreshSeconds),
+                            Path.of(System.getProperty("java.io.tmpdir")));
+                    // mapped during the init phase, later refreshes happen in the background
+                    suggester.refresh();
+                    return suggester;
+                })
+                .orElseGet(MovieNamesSuggester::disabled);
+
+        final var deadlineSafetyMarginMillis = Optional.ofNullable(System.getenv("DEADLINE_SAFETY_MARGIN_MILLIS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS);
+
+        final var apiCallAttemptTimeoutMillis = Optional.ofNullable(System.getenv("SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS);
+
+        deadlinePolicy = new DeadlinePolicy(MAX_REQUEST_DURATION_MILLIS, deadlineSafetyMarginMillis, apiCallAttemptTimeoutMillis);
+
+        // the read capacity units per second this instance may spend on the movies table, without them every read is sent
+        final var admissionReadCapacityUnits = Optional.ofNullable(System.getenv("ADMISSION_READ_CAPACITY_UNITS"))
+                .filter(units -> !units.isBlank())
+                .map(Double::parseDouble)
+                .orElse(0d);
+
+        final var admissionBurstSeconds = Optional.ofNullable(System.getenv("ADMISSION_BURST_SECONDS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_ADMISSION_BURST_SECONDS);
+
+        admissionController = admissionReadCapacityUnits > 0
+                ? new AdmissionController(admissionReadCapacityUnits, Duration.ofSeconds(admissionBurstSeconds))
+                : AdmissionController.disabled();
+
+        initReadsByConsistency();
+
+        if (Priming.isEnabled()) {
+            prime();
+        }
     }
 
     public FnGetMovie(final MoviesDynamoDbRepository moviesDynamoDbRepository) {
-        this.moviesDynamoDbRepository = moviesDynamoDbRepository;
+        this(builder(moviesDynamoDbRepository));
+    }
+
+    private FnGetMovie(final Builder builder) {
+        this.moviesDynamoDbRepository = builder.moviesDynamoDbRepository;
+        this.moviesCache = builder.moviesCache;
+        this.defaultReadConsistency = builder.defaultReadConsistency;
+        this.cacheControlMaxAgeSeconds = builder.cacheControlMaxAgeSeconds;
+        this.directJsonEncoding = builder.directJsonEncoding;
+        this.responseCompressor = builder.responseCompressor;
+        this.continuationTokens = builder.continuationTokens;
+        this.defaultPageSize = builder.defaultPageSize;
+        this.movieIdsFilter = builder.movieIdsFilter;
+        this.hedgingPolicy = builder.hedgingPolicy;
+        this.deadlinePolicy = builder.deadlinePolicy;
+        this.movieNamesSuggester = builder.movieNamesSuggester;
+        this.admissionController = builder.admissionController;
+        initReadsByConsistency();
+    }
+
+    // whatever is not set on the builder is disabled or left at its default
+    public static Builder builder(final MoviesDynamoDbRepository moviesDynamoDbRepository) {
+        return new Builder(moviesDynamoDbRepository);
+    }
+
+    private void initReadsByConsistency() {
+        for (final var readConsistency : ReadConsistency.values()) {
+            readsByConsistency.put(readConsistency, new LongAdder());
+        }
+    }
+
+    private void prime() {
+
+        // everything the first request would otherwise pay for, class loading, Jackson introspection,
+        // request marshalling and the TLS handshake with DynamoDB, is done once during the init phase
+        final var item = Map.of(
+                "movieId", AttributeValue.builder().s(Priming.PRIMING_MOVIE_ID).build(),
+                "name", AttributeValue.builder().s("Priming").build(),
+                "countryOfOrigin", AttributeValue.builder().s("DE").build(),
+                "releaseDate", AttributeValue.builder().s("2020-01-01").build(),
+                "rottenTomatoesRating", AttributeValue.builder().n("50").build(),
+                "imdbRating", AttributeValue.builder().n("50").build());
+
+        new Priming()
+                .step("jackson", () -> {
+                    final var movie = OBJECT_MAPPER.readValue(OBJECT_MAPPER.writeValueAsBytes(MoviesDynamoDbRepository.convert(item)), Movie.class);
+                    OBJECT_MAPPER.writeValueAsBytes(List.of(new MovieLookup(movie.getMovieId(), movie)));
+                    movieItemJsonWriters.get().write(item);
+                })
+                .step("request", () -> {
+                    final var request = readRequest(new ByteArrayInputStream(PRIMING_REQUEST));
+                    getMovieHeaders(getMovieId(request), getReadConsistency(request, defaultReadConsistency), Set.of(), 1L, System.currentTimeMillis());
+                    getFields(request);
+                    writeResponse(OutputStream.nullOutputStream(), 200, "", Map.of("Content-Type", "application/json"));
+                })
+                .step("dynamodb", () -> moviesDynamoDbRepository.getMovieItemById(Priming.PRIMING_MOVIE_ID, ReadConsistency.EVENTUAL, Set.of()))
+                .done();
     }
 
-    public APIGatewayV2ProxyResponseEvent handleRequest(final APIGatewayV2ProxyRequestEvent input) {
+    @Override
+    public void handleRequest(final InputStream input, final OutputStream output, final Context context) throws IOException {
 
+        final var deadline = deadlinePolicy.start(context);
         try {
 
-            final var movieId = getMovieId(input);
-            LOGGER.info("Retrieving movie {}", movieId);
+            final var request = readRequest(input);
+
+            if (request.isWarmup()) {
+                reply(output, 200, "Warmed up");
+                return;
+            }
+
+            if (SUGGEST_RESOURCE.equals(request.getResource())) {
+                handleSuggestRequest(output, request);
+                return;
+            }
+
+            if (TOP_RESOURCE.equals(request.getResource())) {
+                handleTopRequest(output, request);
+                return;
+            }
+
+            final var movieIds = getMovieIds(request);
+            if (movieIds != null) {
+                handleBatchRequest(output, request, movieIds, getReadConsistency(request, defaultReadConsistency), getFields(request));
+                return;
+            }
+
+            final var countryOfOrigin = request.getQueryStringParameter(COUNTRY_QUERY_PARAMETER);
+            if (countryOfOrigin != null) {
+                handleCountryRequest(output, request, countryOfOrigin);
+                return;
+            }
+
+            final var movieId = getMovieId(request);
+            final var readConsistency = getReadConsistency(request, defaultReadConsistency);
+            final var fields = getFields(request);
+            LOGGER.info("Retrieving movie {} with {} read consistency", movieId, readConsistency);
+
+            final var priority = isRuledOut(movieId) ? Priority.LOW : Priority.HIGH;
+
+            // reads that go to DynamoDB anyway are encoded straight from the item, cache hits fall back to the Movie
+            if (directJsonEncoding && (readConsistency == ReadConsistency.STRONG || !moviesCache.isEnabled())) {
+                replyWithMovieItem(output, request, movieId, readConsistency, fields, priority);
+                return;
+            }
+
+            final var movie = getMovie(movieId, readConsistency, fields, priority);
+            logMoviesCacheStats();
+            logReadsByConsistency();
+
+            if (movie != null && priority == Priority.LOW) {
+                logSnapshotGap(movieId);
+            }
 
-            final var movie = moviesDynamoDbRepository.getMovieById(movieId);
             if (movie == null) {
-                return reply(404, "Movie " + movieId + " not found");
-            } else {
-                return reply(200, movie);
+                replyNotFound(output, movieId, readConsistency);
+                return;
+            }
+
+            final var headers = getMovieHeaders(movieId, readConsistency, fields, movie.getVersion(), movie.getLastModified());
+            if (replyIfNotModified(output, request, movieId, movie.getLastModified(), headers)) {
+                return;
             }
 
+            replyOk(output, request, movie, headers);
+
+        } catch (AdmissionRejectedException error) {
+            logAdmissionStats();
+            reply(output, 429, error.getMessage(), Map.of("Content-Type", "application/json",
+                    "Retry-After", Long.toString(error.getRetryAfterSeconds())));
         } catch (IllegalArgumentException error) {
-            return reply(400, error);
+            reply(output, 400, error.getMessage());
         } catch (DynamoDbException error) {
-            return reply(error.statusCode(), error);
+            reply(output, error.statusCode(), error.getMessage());
+        } catch (ApiCallTimeoutException | ApiCallAttemptTimeoutException error) {
+            // the deadline ran out while DynamoDB was slow or throttling, the client can retry later
+            reply(output, 503, error.getMessage());
         } catch (Exception error) {
-            return reply(500, error);
+            reply(output, 500, error.getMessage());
+        } finally {
+            deadline.close();
         }
     }
 
-    private static String getMovieId(final APIGatewayV2ProxyRequestEvent input) {
+    private void replyWithMovieItem(final OutputStream output, final APIGatewayRequest request, final String movieId, final ReadConsistency readConsistency, final Set<MovieField> fields, final Priority priority) throws IOException {
+
+        admit(priority, readConsistency, 1);
+        readsByConsistency.get(readConsistency).increment();
+
+        final var item = moviesDynamoDbRepository.getMovieItemById(movieId, readConsistency, fields);
+
+        // a full strongly consistent read still refreshes the cache, that is the only time a Movie gets built here
+        if (item != null && readConsistency == ReadConsistency.STRONG && fields.isEmpty() && moviesCache.isEnabled()) {
+            moviesCache.put(movieId, MoviesDynamoDbRepository.convert(item));
+        }
+
+        logMoviesCacheStats();
+        logReadsByConsistency();
+
+        if (item == null) {
+            replyNotFound(output, movieId, readConsistency);
+            return;
+        }
+
+        if (priority == Priority.LOW) {
+            logSnapshotGap(movieId);
+        }
+
+        final var lastModified = MoviesDynamoDbRepository.getLastModified(item);
+        final var headers = getMovieHeaders(movieId, readConsistency, fields, MoviesDynamoDbRepository.getVersion(item), lastModified);
+        if (replyIfNotModified(output, request, movieId, lastModified, headers)) {
+            return;
+        }
+
+        final var movieItemJsonWriter = movieItemJsonWriters.get();
+        movieItemJsonWriter.write(item);
+
+        LOGGER.info("SUCCESS! statusCode: {}, movie: {}", 200, movieId);
+
+        if (responseCompressor.isCompressible(movieItemJsonWriter.size())) {
+            final var body = StandardCharsets.UTF_8.encode(CharBuffer.wrap(movieItemJsonWriter.getBuffer(), 0, movieItemJsonWriter.size()));
+            writeOk(output, request, body.array(), body.limit(), headers);
+        } else {
+            writeResponse(output, 200, movieItemJsonWriter.getBuffer(), movieItemJsonWriter.size(), headers);
+        }
+    }
+
+    private void replyNotFound(final OutputStream output, final String movieId, final ReadConsistency readConsistency) throws IOException {
+        reply(output, 404, "Movie " + movieId + " not found", Map.of(
+                "Content-Type", "application/json",
+                READ_CONSISTENCY_HEADER, readConsistency.toHeaderValue()));
+    }
+
+    private Map<String, String> getMovieHeaders(final String movieId, final ReadConsistency readConsistency, final Set<MovieField> fields, final Long version, final Long lastModified) {
+
+        final var headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/json");
+        headers.put(READ_CONSISTENCY_HEADER, readConsistency.toHeaderValue());
+        headers.put("Cache-Control", getCacheControl(readConsistency));
+
+        final var entityTag = ConditionalRequests.getEntityTag(movieId, version, fields);
+        if (entityTag != null) {
+            headers.put("ETag", entityTag);
+        }
+
+        final var lastModifiedHeader = ConditionalRequests.getLastModified(lastModified);
+        if (lastModifiedHeader != null) {
+            headers.put("Last-Modified", lastModifiedHeader);
+        }
+
+        return headers;
+    }
+
+    private boolean replyIfNotModified(final OutputStream output, final APIGatewayRequest request, final String movieId, final Long lastModified, final Map<String, String> headers) throws IOException {
+
+        if (!ConditionalRequests.isNotModified(headers.get("ETag"), lastModified, request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"))) {
+            return false;
+        }
+
+        notModifiedResponses.increment();
+        LOGGER.info("Movie {} not modified, notModifiedResponses: {}", movieId, notModifiedResponses.sum());
+
+        headers.remove("Content-Type");
+        reply(output, 304, null, headers);
+        return true;
+    }
+
+    private void handleBatchRequest(final OutputStream output, final APIGatewayRequest request, final List<String> movieIds, final ReadConsistency readConsistency, final Set<MovieField> fields) throws IOException {
+
+        LOGGER.info("Retrieving {} movies with {} read consistency", movieIds.size(), readConsistency);
+
+        // ids the Bloom filter rules out are still read, but in a batch of their own that is shed first
+        final var knownMovieIds = new ArrayList<String>(movieIds.size());
+        final var ruledOutMovieIds = new ArrayList<String>();
+        for (final var movieId : movieIds) {
+            (isRuledOut(movieId) ? ruledOutMovieIds : knownMovieIds).add(movieId);
+        }
+
+        final var movies = new HashMap<String, Movie>(movieIds.size() * 2);
+        if (!knownMovieIds.isEmpty()) {
+            movies.putAll(getMovies(knownMovieIds, readConsistency, fields, Priority.NORMAL));
+        }
+
+        if (!ruledOutMovieIds.isEmpty()) {
+            final var ruledOutMovies = getMovies(ruledOutMovieIds, readConsistency, fields, Priority.LOW);
+            ruledOutMovies.keySet().forEach(this::logSnapshotGap);
+            movies.putAll(ruledOutMovies);
+        }
+
+        logMoviesCacheStats();
+        logReadsByConsistency();
+
+        final var movieLookups = new ArrayList<MovieLookup>(movieIds.size());
+        for (final var movieId : movieIds) {
+            movieLookups.add(new MovieLookup(movieId, movies.get(movieId)));
+        }
+
+        replyOk(output, request, movieLookups, Map.of(
+                "Content-Type", "application/json",
+                READ_CONSISTENCY_HEADER, readConsistency.toHeaderValue()));
+    }
+
+    private void handleSuggestRequest(final OutputStream output, final APIGatewayRequest request) throws IOException {
+
+        final var query = request.getQueryStringParameter(SUGGEST_QUERY_PARAMETER);
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Invalid request: Empty queryStringParameters.q");
+        }
+
+        if (!movieNamesSuggester.isEnabled()) {
+            reply(output, 404, "Movie suggestions are not enabled");
+            return;
+        }
+
+        // answered from the memory-mapped snapshot alone, DynamoDB is never involved
+        final var suggestions = movieNamesSuggester.suggest(query, getPageSize(request, DEFAULT_SUGGESTIONS_LIMIT));
+        if (suggestions == null) {
+            reply(output, 503, "The movie names index has not been loaded yet");
+            return;
+        }
+
+        LOGGER.info("Suggesting {} movies for {}, index version: {}", suggestions.size(), query, movieNamesSuggester.getVersion());
+
+        replyOk(output, request, suggestions, Map.of(
+                "Content-Type", "application/json",
+                "Cache-Control", getCacheControl(ReadConsistency.EVENTUAL)));
+    }
+
+    private void handleTopRequest(final OutputStream output, final APIGatewayRequest request) throws IOException {
+
+        final var leaderboard = Optional.ofNullable(request.getQueryStringParameter(LEADERBOARD_QUERY_PARAMETER))
+                .map(Leaderboard::parse)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid request: Empty queryStringParameters.by"));
+
+        final var limit = getPageSize(request, DEFAULT_TOP_MOVIES_LIMIT);
+
+        // a single Query against the leaderboard index, global secondary indexes only support eventually consistent reads
+        LOGGER.info("Listing the top {} movies by {}", limit, leaderboard.getRatingAttribute());
+        admit(Priority.NORMAL, ReadConsistency.EVENTUAL, queryReadItems(limit));
+        readsByConsistency.get(ReadConsistency.EVENTUAL).increment();
+
+        final var movies = moviesDynamoDbRepository.getTopMovies(leaderboard, limit);
+        logReadsByConsistency();
+
+        replyOk(output, request, movies, Map.of(
+                "Content-Type", "application/json",
+                READ_CONSISTENCY_HEADER, ReadConsistency.EVENTUAL.toHeaderValue(),
+                "Cache-Control", getCacheControl(ReadConsistency.EVENTUAL)));
+    }
+
+    private void handleCountryRequest(final OutputStream output, final APIGatewayRequest request, final String countryOfOrigin) throws IOException {
+
+        if (countryOfOrigin.isBlank()) {
+            throw new IllegalArgumentException("Invalid request: Empty queryStringParameters.country");
+        }
+
+        final var pageSize = getPageSize(request, defaultPageSize);
 
-        final var movieId = input.getPathParameters().getOrDefault("movieId", null);
-        if (movieId == null) {
+        Map<String, AttributeValue> exclusiveStartKey = null;
+        final var nextToken = request.getQueryStringParameter(NEXT_TOKEN_QUERY_PARAMETER);
+        if (nextToken != null) {
+            exclusiveStartKey = continuationTokens.decode(nextToken);
+            // a token only continues the listing it was issued for
+            final var tokenCountryOfOrigin = exclusiveStartKey.get(MoviesDynamoDbRepository.COUNTRY_OF_ORIGIN_ATTRIBUTE);
+            if (tokenCountryOfOrigin == null || !countryOfOrigin.equals(tokenCountryOfOrigin.s())) {
+                throw new IllegalArgumentException("Invalid request: Continuation token was issued for another country");
+            }
+        }
+
+        // global secondary indexes only support eventually consistent reads
+        LOGGER.info("Listing up to {} movies from {}", pageSize, countryOfOrigin);
+        admit(Priority.NORMAL, ReadConsistency.EVENTUAL, queryReadItems(pageSize));
+        readsByConsistency.get(ReadConsistency.EVENTUAL).increment();
+
+        final var moviesPage = moviesDynamoDbRepository.getMoviesByCountry(countryOfOrigin, pageSize, exclusiveStartKey);
+        logReadsByConsistency();
+
+        final var movieListing = new MovieListing(moviesPage.getMovies(),
+                moviesPage.hasMore() ? continuationTokens.encode(moviesPage.getLastEvaluatedKey()) : null);
+
+        replyOk(output, request, movieListing, Map.of(
+                "Content-Type", "application/json",
+                READ_CONSISTENCY_HEADER, ReadConsistency.EVENTUAL.toHeaderValue(),
+                "Cache-Control", getCacheControl(ReadConsistency.EVENTUAL)));
+    }
+
+    // the snapshot trails the table by up to one refresh interval, so an id it rules out is never answered with 404
+    // on its word alone, it is looked up like any other but admitted last and shed first when the budget runs out
+    private boolean isRuledOut(final String movieId) {
+
+        if (movieIdsFilter.mightContain(movieId)) {
+            return false;
+        }
+
+        LOGGER.info("Movie {} ruled out by the Bloom filter, ruledOut: {}", movieId, movieIdsFilter.getRuledOut());
+        return true;
+    }
+
+    private void logSnapshotGap(final String movieId) {
+        snapshotGaps.increment();
+        LOGGER.warn("Movie {} exists but is missing from the Bloom filter snapshot {}, snapshotGaps: {}", movieId, movieIdsFilter.getVersion(), snapshotGaps.sum());
+    }
+
+    private Map<String, Movie> getMovies(final List<String> movieIds, final ReadConsistency readConsistency, final Set<MovieField> fields, final Priority priority) {
+
+        readsByConsistency.get(readConsistency).add(movieIds.size());
+
+        // cache hits are free, only what goes to DynamoDB is admitted
+        if (readConsistency == ReadConsistency.STRONG) {
+            admit(priority, ReadConsistency.STRONG, movieIds.size());
+            if (!fields.isEmpty()) {
+                return moviesDynamoDbRepository.getMoviesByIds(movieIds, ReadConsistency.STRONG, fields);
+            }
+            final var movies = moviesDynamoDbRepository.getMoviesByIds(movieIds, ReadConsistency.STRONG);
+            movies.forEach(moviesCache::put);
+            return movies;
+        }
+
+        if (!fields.isEmpty() && !moviesCache.isEnabled()) {
+            admit(priority, ReadConsistency.EVENTUAL, movieIds.size());
+            return moviesDynamoDbRepository.getMoviesByIds(movieIds, ReadConsistency.EVENTUAL, fields);
+        }
+
+        final var movies = moviesCache.getMoviesByIds(movieIds, missingMovieIds -> {
+            admit(priority, ReadConsistency.EVENTUAL, missingMovieIds.size());
+            return moviesDynamoDbRepository.getMoviesByIds(missingMovieIds, ReadConsistency.EVENTUAL);
+        });
+        if (fields.isEmpty()) {
+            return movies;
+        }
+
+        final var projections = new HashMap<String, Movie>(movies.size() * 2);
+        movies.forEach((movieId, movie) -> projections.put(movieId, MovieField.project(movie, fields)));
+        return projections;
+    }
+
+    private Movie getMovie(final String movieId, final ReadConsistency readConsistency, final Set<MovieField> fields, final Priority priority) {
+
+        readsByConsistency.get(readConsistency).increment();
+
+        // strongly consistent reads must never be answered from the cache, but their full result refreshes it
+        if (readConsistency == ReadConsistency.STRONG) {
+            admit(priority, ReadConsistency.STRONG, 1);
+            if (!fields.isEmpty()) {
+                return moviesDynamoDbRepository.getMovieById(movieId, ReadConsistency.STRONG, fields);
+            }
+            final var movie = moviesDynamoDbRepository.getMovieById(movieId, ReadConsistency.STRONG);
+            moviesCache.put(movieId, movie);
+            return movie;
+        }
+
+        if (!fields.isEmpty() && !moviesCache.isEnabled()) {
+            admit(priority, ReadConsistency.EVENTUAL, 1);
+            return moviesDynamoDbRepository.getMovieById(movieId, ReadConsistency.EVENTUAL, fields);
+        }
+
+        // the cache only holds full items, projections of cached movies are made in memory
+        final var movie = moviesCache.getMovieById(movieId, id -> {
+            admit(priority, ReadConsistency.EVENTUAL, 1);
+            return moviesDynamoDbRepository.getMovieById(id, ReadConsistency.EVENTUAL);
+        });
+        return fields.isEmpty() ? movie : MovieField.project(movie, fields);
+    }
+
+    // a strongly consistent read of an item up to 4 KB costs one unit, an eventually consistent one half of it
+    private void admit(final Priority priority, final ReadConsistency readConsistency, final int items) {
+        admissionController.admit(priority, readConsistency.isConsistentRead() ? items : items / 2d);
+    }
+
+    // a Query is charged for the sizes of the items it reads added up, a movie item is well below 1 KB
+    private static int queryReadItems(final int limit) {
+        return Math.max(1, (limit + 3) / 4);
+    }
+
+    private String getCacheControl(final ReadConsistency readConsistency) {
+
+        // a client asking for a strongly consistent read wants the latest version, shared caches must revalidate it
+        if (readConsistency == ReadConsistency.STRONG || cacheControlMaxAgeSeconds <= 0) {
+            return "no-cache";
+        }
+
+        return "public, max-age=" + cacheControlMaxAgeSeconds;
+    }
+
+    private void logReadsByConsistency() {
+        LOGGER.info("Reads by consistency, strong: {}, eventual: {}, collapsed: {}",
+                readsByConsistency.get(ReadConsistency.STRONG).sum(),
+                readsByConsistency.get(ReadConsistency.EVENTUAL).sum(),
+                moviesDynamoDbRepository.getCollapsedReads());
+
+        logAdmissionStats();
+
+        if (hedgingPolicy.isEnabled()) {
+            LOGGER.info("Hedged reads: {}, hedges: {}, hedgeWins: {}, hedgeRate: {}, hedgeDelayMicros: {}, saturatedCalls: {}",
+                    hedgingPolicy.getCalls(), hedgingPolicy.getHedges(), hedgingPolicy.getHedgeWins(),
+                    hedgingPolicy.getHedgeRate(), hedgingPolicy.getDelayMicros(), hedgingPolicy.getSaturatedCalls());
+        }
+    }
+
+    private void logAdmissionStats() {
+
+        if (!admissionController.isEnabled()) {
+            return;
+        }
+
+        LOGGER.info("Admission admitted: {}, shed: {}", admissionController.getAdmitted(), admissionController.getShed());
+    }
+
+    private void logMoviesCacheStats() {
+
+        if (!moviesCache.isEnabled()) {
+            return;
+        }
+
+        final var stats = moviesCache.stats();
+        LOGGER.info("Movies cache hits: {}, misses: {}, evictions: {}, hitRate: {}",
+                stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate());
+    }
+
+    private static List<String> getMovieIds(final APIGatewayRequest request) {
+
+        final var queryStringParameters = request.getQueryStringParameters();
+        if (queryStringParameters == null || !queryStringParameters.containsKey(MOVIE_IDS_QUERY_PARAMETER)) {
+            return null;
+        }
+
+        final var movieIds = new ArrayList<String>();
+        for (final var movieId : queryStringParameters.get(MOVIE_IDS_QUERY_PARAMETER).split(",")) {
+            if (!movieId.isBlank()) {
+                movieIds.add(movieId.trim());
+            }
+        }
+
+        if (movieIds.isEmpty()) {
+            throw new IllegalArgumentException("Invalid request: Empty queryStringParameters.ids");
+        }
+
+        if (movieIds.size() > MAX_MOVIE_IDS_PER_REQUEST) {
+            throw new IllegalArgumentException("Invalid request: More than " + MAX_MOVIE_IDS_PER_REQUEST + " ids in queryStringParameters.ids");
+        }
+
+        return movieIds;
+    }
+
+    private static int getPageSize(final APIGatewayRequest request, final int defaultPageSize) {
+
+        final var pageSize = request.getQueryStringParameter(PAGE_SIZE_QUERY_PARAMETER);
+        if (pageSize == null) {
+            return defaultPageSize;
+        }
+
+        try {
+            final var value = Integer.parseInt(pageSize.trim());
+            if (value >= 1 && value <= MAX_MOVIES_PAGE_SIZE) {
+                return value;
+            }
+        } catch (NumberFormatException error) {
+            // reported below, together with out of range values
+        }
+
+        throw new IllegalArgumentException("Invalid request: queryStringParameters.limit must be between 1 and " + MAX_MOVIES_PAGE_SIZE);
+    }
+
+    private static Set<MovieField> getFields(final APIGatewayRequest request) {
+
+        final var queryStringParameters = request.getQueryStringParameters();
+        if (queryStringParameters == null || !queryStringParameters.containsKey(FIELDS_QUERY_PARAMETER)) {
+            return Set.of();
+        }
+
+        final var fields = EnumSet.noneOf(MovieField.class);
+        for (final var field : queryStringParameters.get(FIELDS_QUERY_PARAMETER).split(",")) {
+            if (!field.isBlank()) {
+                fields.add(MovieField.parse(field));
+            }
+        }
+
+        // asking for every field is the same as not asking for a projection at all
+        return fields.size() == MovieField.values().length ? Set.of() : fields;
+    }
+
+    private static String getMovieId(final APIGatewayRequest request) {
+
+        final var movieId = request.getPathParameter("movieId");
+        if (movieId == null || movieId.isBlank()) {
             throw new IllegalArgumentException("Invalid JSON: Missing or null pathParameters.movieId");
         }
         return movieId;
     }
 
-    private static <T> APIGatewayV2ProxyResponseEvent reply(final int statusCode, final T body) {
+    private static ReadConsistency getReadConsistency(final APIGatewayRequest request, final ReadConsistency defaultReadConsistency) {
+
+        final var queryStringParameters = request.getQueryStringParameters();
+        if (queryStringParameters != null && queryStringParameters.containsKey(READ_CONSISTENCY_QUERY_PARAMETER)) {
+            return ReadConsistency.parse(queryStringParameters.get(READ_CONSISTENCY_QUERY_PARAMETER));
+        }
+
+        final var readConsistency = request.getHeader(READ_CONSISTENCY_HEADER);
+        if (readConsistency != null) {
+            return ReadConsistency.parse(readConsistency);
+        }
+
+        return defaultReadConsistency;
+    }
+
+    private void reply(final OutputStream output, final int statusCode, final String message) throws IOException {
+        reply(output, statusCode, message, Map.of("Content-Type", "application/json"));
+    }
+
+    private <T> void replyOk(final OutputStream output, final APIGatewayRequest request, final T body, final Map<String, String> headers) throws IOException {
+
+        LOGGER.info("SUCCESS! statusCode: {}, message: {}", 200, body);
+
+        final var bodyAsBytes = OBJECT_MAPPER.writeValueAsBytes(body);
+        writeOk(output, request, bodyAsBytes, bodyAsBytes.length, headers);
+    }
+
+    private void writeOk(final OutputStream output, final APIGatewayRequest request, final byte[] body, final int length, final Map<String, String> headers) throws IOException {
+
+        if (!responseCompressor.isCompressible(length)) {
+            writeResponse(output, 200, body, length, false, headers);
+            return;
+        }
+
+        // bodies this large are compressed for every client that accepts it, so shared caches must key on Accept-Encoding
+        final var responseHeaders = new HashMap<>(headers);
+        responseHeaders.put("Vary", "Accept-Encoding");
+
+        final var contentEncoding = ContentEncoding.negotiate(request.getHeader("Accept-Encoding"));
+        if (contentEncoding == null) {
+            writeResponse(output, 200, body, length, false, responseHeaders);
+            return;
+        }
+
+        final var compressed = responseCompressor.compress(contentEncoding, body, length);
+        responseHeaders.put("Content-Encoding", contentEncoding.toHeaderValue());
+        // the compressed bytes differ from the identity ones, so the tag only claims semantic equivalence
+        responseHeaders.computeIfPresent("ETag", (name, entityTag) -> "W/" + entityTag);
+
+        LOGGER.info("Compressed response with {} from {} to {} bytes, compressedResponses: {}, compressionRatio: {}, compressionCpuTimeNanos: {}",
+                contentEncoding.toHeaderValue(), length, compressed.length, responseCompressor.getCompressedResponses(),
+                responseCompressor.getCompressionRatio(), responseCompressor.getCompressionCpuTimeNanos());
+
+        final var base64 = Base64.getEncoder().encode(compressed);
+        writeResponse(output, 200, base64, base64.length, true, responseHeaders);
+    }
+
+    private <T> void reply(final OutputStream output, final int statusCode, final T body, final Map<String, String> headers) throws IOException {
 
         switch (statusCode / 100) {
             case 2:
+            case 3:
                 LOGGER.info("SUCCESS! statusCode: {}, message: {}", statusCode, body);
                 break;
             case 4:
@@ -83,18 +911,103 @@ public final class FnGetMovie {
                 LOGGER.error("SERVER ERROR! statusCode: {}, message: {}", statusCode, body);
         }
 
+        // plain messages are passed through as they are, everything else is serialized to JSON
         String bodyAsString;
-        try {
-            bodyAsString = OBJECT_MAPPER.writeValueAsString(body);
-        } catch (JsonProcessingException e) {
-            bodyAsString = e.getMessage();
+        if (body == null || body instanceof String) {
+            bodyAsString = (String) body;
+        } else {
+            try {
+                bodyAsString = OBJECT_MAPPER.writeValueAsString(body);
+            } catch (JsonProcessingException e) {
+                bodyAsString = e.getMessage();
+            }
+        }
+
+        writeResponse(output, statusCode, bodyAsString, headers);
+    }
+
+    public static final class Builder {
+
+        private final MoviesDynamoDbRepository moviesDynamoDbRepository;
+        private MoviesCache moviesCache = MoviesCache.disabled();
+        private ReadConsistency defaultReadConsistency = ReadConsistency.STRONG;
+        private long cacheControlMaxAgeSeconds = DEFAULT_MOVIES_CACHE_CONTROL_MAX_AGE_SECONDS;
+        private boolean directJsonEncoding;
+        private ResponseCompressor responseCompressor = ResponseCompressor.disabled();
+        private ContinuationTokens continuationTokens = ContinuationTokens.withRandomSecret();
+        private int defaultPageSize = DEFAULT_MOVIES_PAGE_SIZE;
+        private MovieIdsFilter movieIdsFilter = MovieIdsFilter.disabled();
+        private HedgingPolicy hedgingPolicy = HedgingPolicy.disabled();
+        private DeadlinePolicy deadlinePolicy = new DeadlinePolicy(MAX_REQUEST_DURATION_MILLIS, DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS, DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS);
+        private MovieNamesSuggester movieNamesSuggester = MovieNamesSuggester.disabled();
+        private AdmissionController admissionController = AdmissionController.disabled();
+
+        private Builder(final MoviesDynamoDbRepository moviesDynamoDbRepository) {
+            this.moviesDynamoDbRepository = moviesDynamoDbRepository;
+        }
+
+        public Builder moviesCache(final MoviesCache moviesCache) {
+            this.moviesCache = moviesCache;
+            return this;
+        }
+
+        public Builder defaultReadConsistency(final ReadConsistency defaultReadConsistency) {
+            this.defaultReadConsistency = defaultReadConsistency;
+            return this;
+        }
+
+        public Builder cacheControlMaxAgeSeconds(final long cacheControlMaxAgeSeconds) {
+            this.cacheControlMaxAgeSeconds = cacheControlMaxAgeSeconds;
+            return this;
+        }
+
+        public Builder directJsonEncoding(final boolean directJsonEncoding) {
+            this.directJsonEncoding = directJsonEncoding;
+            return this;
+        }
+
+        public Builder responseCompressor(final ResponseCompressor responseCompressor) {
+            this.responseCompressor = responseCompressor;
+            return this;
+        }
+
+        public Builder continuationTokens(final ContinuationTokens continuationTokens) {
+            this.continuationTokens = continuationTokens;
+            return this;
+        }
+
+        public Builder defaultPageSize(final int defaultPageSize) {
+            this.defaultPageSize = defaultPageSize;
+            return this;
+        }
+
+        public Builder movieIdsFilter(final MovieIdsFilter movieIdsFilter) {
+            this.movieIdsFilter = movieIdsFilter;
+            return this;
         }
 
-        final var response = new APIGatewayV2ProxyResponseEvent();
-        response.setHeaders(Map.of("Content-Type", "application/json"));
-        response.setIsBase64Encoded(false);
-        response.setBody(bodyAsString);
-        response.setStatusCode(200);
-        return response;
+        public Builder hedgingPolicy(final HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        public Builder deadlinePolicy(final DeadlinePolicy deadlinePolicy) {
+            this.deadlinePolicy = deadlinePolicy;
+            return this;
+        }
+
+        public Builder movieNamesSuggester(final MovieNamesSuggester movieNamesSuggester) {
+            this.movieNamesSuggester = movieNamesSuggester;
+            return this;
+        }
+
+        public Builder admissionController(final AdmissionController admissionController) {
+            this.admissionController = admissionController;
+            return this;
+        }
+
+        public FnGetMovie build() {
+            return new FnGetMovie(this);
+        }
     }
 }
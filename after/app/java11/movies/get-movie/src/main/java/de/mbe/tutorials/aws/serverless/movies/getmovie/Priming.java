@@ -0,0 +1,48 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Optional;
+
+public final class Priming {
+
+    public static final String WARMUP_FIELD = "warmup";
+    public static final String PRIMING_MOVIE_ID = "__priming__";
+
+    private static final Logger LOGGER = LogManager.getLogger(Priming.class);
+
+    private final long startNanos = System.nanoTime();
+
+    @FunctionalInterface
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    public static boolean isEnabled() {
+        return Optional.ofNullable(System.getenv("PRIMING_ENABLED"))
+                .map(Boolean::parseBoolean)
+                .orElse(true);
+    }
+
+    public Priming step(final String name, final Step step) {
+
+        // priming is best effort, a failing step must never fail the init phase
+        final var stepStartNanos = System.nanoTime();
+        try {
+            step.run();
+            LOGGER.info("Priming step {} took {} ms", name, getElapsedMillis(stepStartNanos));
+        } catch (Exception error) {
+            LOGGER.warn("Priming step {} failed after {} ms: {}", name, getElapsedMillis(stepStartNanos), error.getMessage());
+        }
+        return this;
+    }
+
+    public void done() {
+        LOGGER.info("Priming took {} ms", getElapsedMillis(startNanos));
+    }
+
+    private static long getElapsedMillis(final long fromNanos) {
+        return (System.nanoTime() - fromNanos) / 1_000_000;
+    }
+}
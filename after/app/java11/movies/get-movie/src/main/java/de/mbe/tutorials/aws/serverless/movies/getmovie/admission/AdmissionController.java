@@ -0,0 +1,121 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.admission;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// a token bucket refilled with the capacity units per second this instance may spend on the table,
+// a request is shed instead of sent when it would take the bucket below the reserve of its priority
+public final class AdmissionController {
+
+    private final boolean enabled;
+    private final double unitsPerSecond;
+    private final double capacity;
+    private final LongSupplier nanoTime;
+
+    private double tokens;
+    private long refilledAtNanos;
+
+    private final Map<Priority, LongAdder> admitted = new EnumMap<>(Priority.class);
+    private final Map<Priority, LongAdder> shed = new EnumMap<>(Priority.class);
+
+    public AdmissionController(final double unitsPerSecond, final Duration burst) {
+        this(true, unitsPerSecond, burst, System::nanoTime);
+    }
+
+    AdmissionController(final boolean enabled, final double unitsPerSecond, final Duration burst, final LongSupplier nanoTime) {
+
+        if (enabled && unitsPerSecond <= 0) {
+            throw new IllegalArgumentException("The admitted capacity units per second must be positive");
+        }
+
+        this.enabled = enabled;
+        this.unitsPerSecond = unitsPerSecond;
+        // the bucket holds at least one unit, or a single item could never be admitted
+        this.capacity = Math.max(1, unitsPerSecond * burst.toMillis() / 1_000d);
+        this.nanoTime = nanoTime;
+        this.tokens = capacity;
+        this.refilledAtNanos = nanoTime.getAsLong();
+
+        for (final var priority : Priority.values()) {
+            admitted.put(priority, new LongAdder());
+            shed.put(priority, new LongAdder());
+        }
+    }
+
+    public static AdmissionController disabled() {
+        return new AdmissionController(false, 0, Duration.ZERO, System::nanoTime);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void admit(final Priority priority, final double units) {
+
+        if (!enabled) {
+            return;
+        }
+
+        final var retryAfterSeconds = tryAcquire(priority, units);
+        if (retryAfterSeconds > 0) {
+            shed.get(priority).increment();
+            throw new AdmissionRejectedException(priority, retryAfterSeconds);
+        }
+
+        admitted.get(priority).increment();
+    }
+
+    public long getAdmitted(final Priority priority) {
+        return admitted.get(priority).sum();
+    }
+
+    public long getShed(final Priority priority) {
+        return shed.get(priority).sum();
+    }
+
+    public Map<Priority, Long> getAdmitted() {
+        return sums(admitted);
+    }
+
+    public Map<Priority, Long> getShed() {
+        return sums(shed);
+    }
+
+    // 0 when admitted, the seconds until it would have been otherwise
+    private synchronized long tryAcquire(final Priority priority, final double units) {
+
+        refill();
+
+        // a request costing more than its class may hold at once goes through against a full allowance and leaves the bucket in debt,
+        // the requests after it wait for the debt to be paid back
+        final var floor = capacity * priority.getReserve();
+        final var required = floor + Math.min(units, capacity - floor);
+
+        if (tokens >= required) {
+            tokens -= units;
+            return 0;
+        }
+
+        return Math.max(1, (long) Math.ceil((required - tokens) / unitsPerSecond));
+    }
+
+    private void refill() {
+
+        final var now = nanoTime.getAsLong();
+        final var elapsedSeconds = (double) (now - refilledAtNanos) / TimeUnit.SECONDS.toNanos(1);
+
+        tokens = Math.min(capacity, tokens + elapsedSeconds * unitsPerSecond);
+        refilledAtNanos = now;
+    }
+
+    private static Map<Priority, Long> sums(final Map<Priority, LongAdder> counters) {
+
+        final var sums = new EnumMap<Priority, Long>(Priority.class);
+        counters.forEach((priority, counter) -> sums.put(priority, counter.sum()));
+        return sums;
+    }
+}
@@ -0,0 +1,18 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.admission;
+
+// the capacity budget of the priority class is used up for now
+public final class AdmissionRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(final Priority priority, final long retryAfterSeconds) {
+        super("The capacity budget for " + priority + " priority requests is exhausted, retry after " + retryAfterSeconds + " seconds");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
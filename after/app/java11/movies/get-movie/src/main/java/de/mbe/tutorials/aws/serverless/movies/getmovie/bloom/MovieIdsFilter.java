@@ -0,0 +1,144 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.bloom;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class MovieIdsFilter {
+
+    public static final String LATEST_VERSION_KEY = "LATEST";
+    public static final String SNAPSHOT_SUFFIX = ".bloom";
+
+    private static final Logger LOGGER = LogManager.getLogger(MovieIdsFilter.class);
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String prefix;
+    private final long refreshIntervalMillis;
+    private final ExecutorService executorService;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final LongAdder ruledOut = new LongAdder();
+
+    private volatile BloomFilter bloomFilter;
+    private volatile String version;
+    private volatile long lastRefreshMillis;
+
+    public MovieIdsFilter(final S3Client s3Client, final String bucket, final String prefix, final Duration refreshInterval) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.refreshIntervalMillis = refreshInterval.toMillis();
+        this.executorService = Executors.newSingleThreadExecutor(runnable -> {
+            final var thread = new Thread(runnable, "movie-ids-filter-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private MovieIdsFilter(final BloomFilter bloomFilter) {
+        this.s3Client = null;
+        this.bucket = null;
+        this.prefix = null;
+        this.refreshIntervalMillis = Long.MAX_VALUE;
+        this.executorService = null;
+        this.bloomFilter = bloomFilter;
+    }
+
+    public static MovieIdsFilter of(final BloomFilter bloomFilter) {
+        return new MovieIdsFilter(bloomFilter);
+    }
+
+    public static MovieIdsFilter disabled() {
+        return new MovieIdsFilter((BloomFilter) null);
+    }
+
+    public boolean isEnabled() {
+        return bloomFilter != null || s3Client != null;
+    }
+
+    public boolean mightContain(final String movieId) {
+
+        refreshIfStale();
+
+        // without a snapshot nothing can be ruled out, every lookup goes to DynamoDB as before
+        final var current = bloomFilter;
+        if (current == null || current.mightContain(movieId)) {
+            return true;
+        }
+
+        ruledOut.increment();
+        return false;
+    }
+
+    public long getRuledOut() {
+        return ruledOut.sum();
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void refresh() {
+
+        if (s3Client == null) {
+            return;
+        }
+
+        lastRefreshMillis = System.currentTimeMillis();
+
+        try {
+
+            // the pointer is a few bytes, the snapshot itself is only downloaded when it has changed
+            final var latestVersion = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(prefix + LATEST_VERSION_KEY)
+                    .build()).asString(StandardCharsets.UTF_8).trim();
+
+            if (latestVersion.equals(version)) {
+                return;
+            }
+
+            final var snapshot = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(prefix + latestVersion + SNAPSHOT_SUFFIX)
+                    .build());
+
+            bloomFilter = BloomFilter.readFrom(snapshot.asInputStream());
+            version = latestVersion;
+
+            LOGGER.info("Loaded movie ids Bloom filter {}, bits: {}, hash functions: {}",
+                    latestVersion, bloomFilter.bitSize(), bloomFilter.numHashFunctions());
+
+        } catch (IOException | RuntimeException error) {
+            // a stale filter is kept, a missing one simply lets every lookup through
+            LOGGER.warn("Could not refresh the movie ids Bloom filter: {}", error.getMessage());
+        }
+    }
+
+    private void refreshIfStale() {
+
+        if (s3Client == null || System.currentTimeMillis() - lastRefreshMillis < refreshIntervalMillis) {
+            return;
+        }
+
+        // requests keep being answered from the current snapshot while a single background refresh runs
+        if (refreshing.compareAndSet(false, true)) {
+            executorService.execute(() -> {
+                try {
+                    refresh();
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+    }
+}
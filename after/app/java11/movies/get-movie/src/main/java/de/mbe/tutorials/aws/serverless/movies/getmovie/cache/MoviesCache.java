@@ -0,0 +1,83 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.Movie;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+public final class MoviesCache {
+
+    private final Cache<String, Movie> cache;
+
+    public MoviesCache(final long maximumSize, final Duration expireAfterWrite) {
+
+        if (maximumSize <= 0 || expireAfterWrite.isZero() || expireAfterWrite.isNegative()) {
+            this.cache = null;
+            return;
+        }
+
+        // Caffeine's W-TinyLFU policy only admits a new entry when it is estimated to be
+        // requested more often than the one it would evict, so one-off lookups do not flush the hot titles
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    public static MoviesCache disabled() {
+        return new MoviesCache(0, Duration.ZERO);
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    public Movie getMovieById(final String movieId, final Function<String, Movie> loader) {
+
+        if (cache == null) {
+            return loader.apply(movieId);
+        }
+
+        return cache.get(movieId, loader);
+    }
+
+    public Map<String, Movie> getMoviesByIds(final Collection<String> movieIds, final Function<Set<String>, Map<String, Movie>> loader) {
+
+        if (cache == null) {
+            return loader.apply(Set.copyOf(movieIds));
+        }
+
+        // only the ids missing from the cache are handed to the loader, in a single call
+        return cache.getAll(movieIds, missingMovieIds -> {
+            final var missing = new HashSet<String>();
+            missingMovieIds.forEach(missing::add);
+            return loader.apply(missing);
+        });
+    }
+
+    public void put(final String movieId, final Movie movie) {
+
+        if (cache != null && movie != null) {
+            cache.put(movieId, movie);
+        }
+    }
+
+    public void invalidate(final String movieId) {
+
+        if (cache != null) {
+            cache.invalidate(movieId);
+        }
+    }
+
+    public CacheStats stats() {
+        return cache == null ? CacheStats.empty() : cache.stats();
+    }
+}
@@ -0,0 +1,79 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.compression;
+
+public enum ContentEncoding {
+
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    private final String token;
+
+    ContentEncoding(final String token) {
+        this.token = token;
+    }
+
+    public String toHeaderValue() {
+        return token;
+    }
+
+    public static ContentEncoding negotiate(final String acceptEncoding) {
+
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return null;
+        }
+
+        // the highest quality wins, on a tie gzip is preferred since every client that speaks deflate also speaks gzip
+        ContentEncoding preferred = null;
+        var preferredQuality = 0.0;
+        var wildcardQuality = -1.0;
+
+        for (final var coding : acceptEncoding.split(",")) {
+
+            final var parts = coding.split(";");
+            final var name = parts[0].trim();
+            final var quality = getQuality(parts);
+
+            if (name.equals("*")) {
+                wildcardQuality = quality;
+                continue;
+            }
+
+            for (final var contentEncoding : values()) {
+                if (contentEncoding.token.equalsIgnoreCase(name) && isBetter(contentEncoding, quality, preferred, preferredQuality)) {
+                    preferred = contentEncoding;
+                    preferredQuality = quality;
+                }
+            }
+        }
+
+        if (preferred == null && wildcardQuality > 0) {
+            return GZIP;
+        }
+
+        return preferred;
+    }
+
+    private static boolean isBetter(final ContentEncoding contentEncoding, final double quality, final ContentEncoding preferred, final double preferredQuality) {
+
+        if (quality <= 0) {
+            return false;
+        }
+
+        return preferred == null || quality > preferredQuality || (quality == preferredQuality && contentEncoding.ordinal() < preferred.ordinal());
+    }
+
+    private static double getQuality(final String[] parts) {
+
+        for (var i = 1; i < parts.length; i++) {
+            final var parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException error) {
+                    return 0.0;
+                }
+            }
+        }
+
+        return 1.0;
+    }
+}
@@ -0,0 +1,139 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.compression;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public final class ResponseCompressor {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private final int minimumSize;
+    private final int level;
+    private final BlockingQueue<Deflater> gzipDeflaters;
+    private final BlockingQueue<Deflater> deflateDeflaters;
+
+    private final LongAdder compressedResponses = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressionCpuTimeNanos = new LongAdder();
+
+    public ResponseCompressor(final int minimumSize, final int level, final int poolSize) {
+        this.minimumSize = minimumSize;
+        this.level = level;
+        this.gzipDeflaters = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.deflateDeflaters = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    }
+
+    public static ResponseCompressor disabled() {
+        return new ResponseCompressor(-1, Deflater.DEFAULT_COMPRESSION, 1);
+    }
+
+    public boolean isEnabled() {
+        return minimumSize >= 0;
+    }
+
+    public boolean isCompressible(final int length) {
+        return isEnabled() && length >= minimumSize;
+    }
+
+    public byte[] compress(final ContentEncoding contentEncoding, final byte[] body, final int length) {
+
+        final var startCpuTimeNanos = getCurrentThreadCpuTimeNanos();
+
+        final var deflaters = contentEncoding == ContentEncoding.GZIP ? gzipDeflaters : deflateDeflaters;
+
+        // Deflater holds native zlib memory that is only released by end() or finalization,
+        // so instances are reset and reused instead of creating one per response like GZIPOutputStream does
+        var deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, contentEncoding == ContentEncoding.GZIP);
+        }
+
+        try {
+
+            final var compressed = contentEncoding == ContentEncoding.GZIP
+                    ? gzip(deflater, body, length)
+                    : deflate(deflater, body, length, 0, 0);
+
+            compressedResponses.increment();
+            uncompressedBytes.add(length);
+            compressedBytes.add(compressed.length);
+            compressionCpuTimeNanos.add(getCurrentThreadCpuTimeNanos() - startCpuTimeNanos);
+
+            return compressed;
+
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    public long getCompressedResponses() {
+        return compressedResponses.sum();
+    }
+
+    public double getCompressionRatio() {
+        final var compressed = compressedBytes.sum();
+        return compressed == 0 ? 0.0 : (double) uncompressedBytes.sum() / compressed;
+    }
+
+    public long getCompressionCpuTimeNanos() {
+        return compressionCpuTimeNanos.sum();
+    }
+
+    private static byte[] gzip(final Deflater deflater, final byte[] body, final int length) {
+
+        // a raw deflate stream framed by hand, see RFC 1952
+        final var compressed = deflate(deflater, body, length, GZIP_HEADER.length, GZIP_TRAILER_LENGTH);
+        System.arraycopy(GZIP_HEADER, 0, compressed, 0, GZIP_HEADER.length);
+
+        final var crc32 = new CRC32();
+        crc32.update(body, 0, length);
+
+        final var trailerOffset = compressed.length - GZIP_TRAILER_LENGTH;
+        writeIntLittleEndian(compressed, trailerOffset, (int) crc32.getValue());
+        writeIntLittleEndian(compressed, trailerOffset + 4, length);
+
+        return compressed;
+    }
+
+    private static byte[] deflate(final Deflater deflater, final byte[] body, final int length, final int headerLength, final int trailerLength) {
+
+        deflater.setInput(body, 0, length);
+        deflater.finish();
+
+        // zlib's worst case is a few bytes per 16K block over the input size, most of the time a single pass fills the buffer
+        var buffer = new byte[headerLength + length + (length >> 10) + 64 + trailerLength];
+        var position = headerLength;
+
+        while (!deflater.finished()) {
+            if (position == buffer.length - trailerLength) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            position += deflater.deflate(buffer, position, buffer.length - trailerLength - position);
+        }
+
+        return Arrays.copyOf(buffer, position + trailerLength);
+    }
+
+    private static void writeIntLittleEndian(final byte[] buffer, final int offset, final int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static long getCurrentThreadCpuTimeNanos() {
+
+        final var threadMXBean = ManagementFactory.getThreadMXBean();
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+}
@@ -0,0 +1,89 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.deadline;
+
+import software.amazon.awssdk.awscore.AwsRequest;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+// the point in time by which the current request has to be answered, every SDK call made on its behalf
+// gets what is left of it as its total timeout, so the SDK stops retrying instead of running into the Lambda timeout
+public final class Deadline implements AutoCloseable {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+    private static final Deadline NONE = new Deadline(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long expiresAtMillis;
+    private final long apiCallAttemptTimeoutMillis;
+
+    Deadline(final long expiresAtMillis, final long apiCallAttemptTimeoutMillis) {
+        this.expiresAtMillis = expiresAtMillis;
+        this.apiCallAttemptTimeoutMillis = apiCallAttemptTimeoutMillis;
+    }
+
+    public static Deadline current() {
+        final var deadline = CURRENT.get();
+        return deadline == null ? NONE : deadline;
+    }
+
+    Deadline makeCurrent() {
+        CURRENT.set(this);
+        return this;
+    }
+
+    public boolean isBounded() {
+        return expiresAtMillis != Long.MAX_VALUE;
+    }
+
+    public long remainingMillis() {
+        return isBounded() ? Math.max(0, expiresAtMillis - System.currentTimeMillis()) : Long.MAX_VALUE;
+    }
+
+    public <B extends AwsRequest.Builder> B apply(final B builder) {
+
+        // without a deadline, during priming or in tests, the client's own configuration applies
+        if (!isBounded()) {
+            return builder;
+        }
+
+        final var remainingMillis = remainingMillis();
+        if (remainingMillis == 0) {
+            throw ApiCallTimeoutException.builder()
+                    .message("The request deadline passed before the call could be made")
+                    .build();
+        }
+
+        builder.overrideConfiguration(AwsRequestOverrideConfiguration.builder()
+                .apiCallTimeout(Duration.ofMillis(remainingMillis))
+                .apiCallAttemptTimeout(Duration.ofMillis(Math.min(apiCallAttemptTimeoutMillis, remainingMillis)))
+                .build());
+
+        return builder;
+    }
+
+    public <T> Callable<T> propagate(final Callable<T> callable) {
+
+        // work handed to another thread keeps counting down the same deadline
+        return () -> {
+            final var previous = CURRENT.get();
+            CURRENT.set(this);
+            try {
+                return callable.call();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+}
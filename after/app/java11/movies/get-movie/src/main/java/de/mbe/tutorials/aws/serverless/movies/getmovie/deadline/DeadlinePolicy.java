@@ -0,0 +1,28 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.deadline;
+
+import com.amazonaws.services.lambda.runtime.Context;
+
+public final class DeadlinePolicy {
+
+    private final long maxDurationMillis;
+    private final long safetyMarginMillis;
+    private final long apiCallAttemptTimeoutMillis;
+
+    public DeadlinePolicy(final long maxDurationMillis, final long safetyMarginMillis, final long apiCallAttemptTimeoutMillis) {
+        this.maxDurationMillis = maxDurationMillis;
+        this.safetyMarginMillis = safetyMarginMillis;
+        this.apiCallAttemptTimeoutMillis = apiCallAttemptTimeoutMillis;
+    }
+
+    public Deadline start(final Context context) {
+
+        // tests invoke the handlers without a context, their calls are not bounded
+        if (context == null) {
+            return Deadline.current();
+        }
+
+        // the safety margin is kept back for writing the response once the last call has given up
+        final var budgetMillis = Math.min(maxDurationMillis, context.getRemainingTimeInMillis() - safetyMarginMillis);
+        return new Deadline(System.currentTimeMillis() + Math.max(0, budgetMillis), apiCallAttemptTimeoutMillis).makeCurrent();
+    }
+}
@@ -0,0 +1,252 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// fires a second, identical call when the first one is slower than the given percentile of recent calls
+public final class HedgingPolicy {
+
+    private static final int LATENCY_SAMPLES = 1_024;
+    private static final int RECOMPUTE_EVERY = 128;
+    // a hedge costs one token, every call earns budget tokens, a burst of slow calls can use up to this many at once
+    private static final double MAX_TOKENS = 10;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final double budget;
+    private final long minDelayMicros;
+    private final long maxDelayMicros;
+    private final ExecutorService executorService;
+
+    private final long[] latencySamples = new long[LATENCY_SAMPLES];
+    private final AtomicLong recordedSamples = new AtomicLong();
+    private volatile long delayMicros;
+    private double tokens;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder saturatedCalls = new LongAdder();
+
+    public HedgingPolicy(final double percentile, final double budget, final Duration minDelay, final Duration maxDelay, final int maxThreads) {
+        this(true, percentile, budget, minDelay, maxDelay, newExecutorService(maxThreads));
+    }
+
+    HedgingPolicy(final boolean enabled, final double percentile, final double budget, final Duration minDelay, final Duration maxDelay, final ExecutorService executorService) {
+
+        if (enabled && (percentile <= 0 || percentile >= 100)) {
+            throw new IllegalArgumentException("The hedging percentile must be between 0 and 100, exclusive");
+        }
+
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.budget = budget;
+        this.minDelayMicros = TimeUnit.NANOSECONDS.toMicros(minDelay.toNanos());
+        this.maxDelayMicros = TimeUnit.NANOSECONDS.toMicros(maxDelay.toNanos());
+        this.executorService = executorService;
+        // until enough calls have been seen the slowest delay allowed is used, hedging early is what costs money
+        this.delayMicros = maxDelayMicros;
+    }
+
+    // no queue in front of the threads, a call that finds them all busy is not worth waiting for one
+    private static ExecutorService newExecutorService(final int maxThreads) {
+
+        final var executorService = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            final var thread = new Thread(runnable, "movies-hedged-get");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executorService.allowCoreThreadTimeOut(true);
+        return executorService;
+    }
+
+    public static HedgingPolicy disabled() {
+        return new HedgingPolicy(false, 0, 0, Duration.ZERO, Duration.ZERO, null);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public <V> V execute(final Supplier<V> call) {
+
+        if (!enabled) {
+            return call.get();
+        }
+
+        calls.increment();
+        earnToken();
+
+        final CompletableFuture<V> primary;
+        try {
+            primary = CompletableFuture.supplyAsync(() -> timed(call), executorService);
+        } catch (RejectedExecutionException saturated) {
+            // every thread is busy with other calls, this one is made on the caller's thread and not hedged
+            saturatedCalls.increment();
+            return timed(call);
+        }
+
+        try {
+            return primary.get(delayMicros, TimeUnit.MICROSECONDS);
+        } catch (TimeoutException slow) {
+            // handled below
+        } catch (ExecutionException error) {
+            throw rethrow(error.getCause());
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for DynamoDB", error);
+        }
+
+        if (!tryAcquireToken()) {
+            return await(primary);
+        }
+
+        final CompletableFuture<V> hedge;
+        try {
+            hedge = CompletableFuture.supplyAsync(() -> timed(call), executorService);
+        } catch (RejectedExecutionException saturated) {
+            saturatedCalls.increment();
+            return await(primary);
+        }
+        hedges.increment();
+
+        // the first successful answer wins, a failure only counts once both calls have failed;
+        // the loser is left to finish, a synchronous SDK call cannot be taken back once it is on the wire
+        final var first = new CompletableFuture<V>();
+        final var winner = new AtomicReference<CompletableFuture<V>>();
+        final var failures = new AtomicInteger();
+
+        primary.whenComplete((value, error) -> complete(first, winner, failures, primary, value, error));
+        hedge.whenComplete((value, error) -> complete(first, winner, failures, hedge, value, error));
+
+        final var value = await(first);
+
+        // counted by the caller, the winning callback may still be running when the caller wakes up
+        if (winner.get() == hedge) {
+            hedgeWins.increment();
+        }
+
+        return value;
+    }
+
+    private static <V> void complete(final CompletableFuture<V> first, final AtomicReference<CompletableFuture<V>> winner, final AtomicInteger failures,
+                                     final CompletableFuture<V> call, final V value, final Throwable error) {
+
+        if (error == null) {
+            if (winner.compareAndSet(null, call)) {
+                first.complete(value);
+            }
+        } else if (failures.incrementAndGet() == 2) {
+            first.completeExceptionally(error);
+        }
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    public long getSaturatedCalls() {
+        return saturatedCalls.sum();
+    }
+
+    public double getHedgeRate() {
+        final var total = calls.sum();
+        return total == 0 ? 0 : (double) hedges.sum() / total;
+    }
+
+    public long getDelayMicros() {
+        return delayMicros;
+    }
+
+    private <V> V timed(final Supplier<V> call) {
+
+        final var start = System.nanoTime();
+        final var value = call.get();
+        record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        return value;
+    }
+
+    private void record(final long latencyMicros) {
+
+        final var sample = recordedSamples.getAndIncrement();
+        synchronized (latencySamples) {
+            latencySamples[(int) (sample % LATENCY_SAMPLES)] = latencyMicros;
+        }
+
+        if ((sample + 1) % RECOMPUTE_EVERY == 0) {
+            recomputeDelay(Math.min(sample + 1, LATENCY_SAMPLES));
+        }
+    }
+
+    private void recomputeDelay(final long sampleCount) {
+
+        final long[] sorted;
+        synchronized (latencySamples) {
+            sorted = Arrays.copyOf(latencySamples, (int) sampleCount);
+        }
+        Arrays.sort(sorted);
+
+        final var index = (int) Math.min(sorted.length - 1, Math.ceil(percentile / 100 * sorted.length) - 1);
+        delayMicros = Math.max(minDelayMicros, Math.min(maxDelayMicros, sorted[Math.max(0, index)]));
+    }
+
+    private synchronized void earnToken() {
+        tokens = Math.min(MAX_TOKENS, tokens + budget);
+    }
+
+    private synchronized boolean tryAcquireToken() {
+
+        if (tokens < 1) {
+            return false;
+        }
+
+        tokens -= 1;
+        return true;
+    }
+
+    private static <V> V await(final CompletableFuture<V> future) {
+
+        try {
+            return future.join();
+        } catch (CompletionException error) {
+            throw rethrow(error.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(final Throwable cause) {
+
+        // callers see the exception the SDK threw, a DynamoDbException keeps its status code
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            return rethrow(cause.getCause());
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+}
@@ -0,0 +1,47 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
+
+import java.util.Locale;
+
+// every rating has its own sparse index, update-movie-rating sets the partition attribute together with the rating,
+// so movies without that rating never show up, and the sort key orders the whole leaderboard by the rating itself
+public enum Leaderboard {
+
+    IMDB("imdb", "imdbRating"),
+    ROTTEN_TOMATOES("rottenTomatoes", "rottenTomatoesRating");
+
+    private final String partitionValue;
+    private final String ratingAttribute;
+
+    Leaderboard(final String partitionValue, final String ratingAttribute) {
+        this.partitionValue = partitionValue;
+        this.ratingAttribute = ratingAttribute;
+    }
+
+    public String getIndexName() {
+        return ratingAttribute + "-leaderboard-index";
+    }
+
+    public String getPartitionAttribute() {
+        return ratingAttribute + "Leaderboard";
+    }
+
+    public String getPartitionValue() {
+        return partitionValue;
+    }
+
+    public String getRatingAttribute() {
+        return ratingAttribute;
+    }
+
+    public static Leaderboard parse(final String value) {
+
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "imdb":
+                return IMDB;
+            case "rottentomatoes":
+                return ROTTEN_TOMATOES;
+            default:
+                throw new IllegalArgumentException("Invalid leaderboard: " + value + ", expected 'imdb' or 'rottenTomatoes'");
+        }
+    }
+}
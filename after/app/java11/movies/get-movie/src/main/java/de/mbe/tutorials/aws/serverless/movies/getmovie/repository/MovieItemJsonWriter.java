@@ -0,0 +1,77 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.Map;
+
+public final class MovieItemJsonWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final Buffer buffer = new Buffer();
+
+    public void write(final Map<String, AttributeValue> item) throws IOException {
+
+        // the buffer keeps its backing array between writes, so once it has grown to the size of a movie
+        // encoding one is down to the generator itself, with no Movie, no reflection and no intermediate String
+        buffer.reset();
+
+        try (final var generator = JSON_FACTORY.createGenerator(buffer)) {
+            generator.writeStartObject();
+            writeString(generator, item, "movieId");
+            writeString(generator, item, "name");
+            writeString(generator, item, "countryOfOrigin");
+            writeString(generator, item, "releaseDate");
+            writeNumber(generator, item, "rottenTomatoesRating");
+            writeNumber(generator, item, "imdbRating");
+            generator.writeEndObject();
+        }
+    }
+
+    public char[] getBuffer() {
+        return buffer.getBuffer();
+    }
+
+    public int size() {
+        return buffer.size();
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+    private static void writeString(final JsonGenerator generator, final Map<String, AttributeValue> item, final String attributeName) throws IOException {
+
+        final var attributeValue = item.get(attributeName);
+        if (attributeValue != null && attributeValue.s() != null) {
+            generator.writeStringField(attributeName, attributeValue.s());
+        }
+    }
+
+    private static void writeNumber(final JsonGenerator generator, final Map<String, AttributeValue> item, final String attributeName) throws IOException {
+
+        // DynamoDB hands numbers over as their decimal text, they are copied as they are instead of being parsed and printed again
+        final var attributeValue = item.get(attributeName);
+        if (attributeValue != null && attributeValue.n() != null) {
+            generator.writeFieldName(attributeName);
+            generator.writeNumber(attributeValue.n());
+        }
+    }
+
+    private static final class Buffer extends CharArrayWriter {
+
+        private Buffer() {
+            super(256);
+        }
+
+        private char[] getBuffer() {
+            return buf;
+        }
+    }
+}
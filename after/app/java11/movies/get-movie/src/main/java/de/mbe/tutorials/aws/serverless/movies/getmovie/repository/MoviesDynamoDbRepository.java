@@ -1,54 +1,354 @@
 package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
 
+import de.mbe.tutorials.aws.serverless.movies.getmovie.deadline.Deadline;
 import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.Movie;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.MovieField;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.MoviesPage;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class MoviesDynamoDbRepository {
 
+    private static final int BATCH_GET_ITEM_MAX_KEYS = 100;
+    private static final int BATCH_GET_ITEM_MAX_RETRIES = 8;
+    private static final long BATCH_GET_ITEM_BASE_BACKOFF_MILLIS = 25;
+    private static final long BATCH_GET_ITEM_MAX_BACKOFF_MILLIS = 1_000;
+
+    public static final String COUNTRY_OF_ORIGIN_INDEX = "countryOfOrigin-index";
+    public static final String COUNTRY_OF_ORIGIN_ATTRIBUTE = "countryOfOrigin";
+
+    private static final String VERSION_ATTRIBUTE = "version";
+    private static final String LAST_MODIFIED_ATTRIBUTE = "lastModified";
+
     private final DynamoDbClient dynamoDbClient;
     private final String moviesTable;
+    private final ExecutorService executorService;
+    private final HedgingPolicy hedgingPolicy;
+    private final SingleFlight<List<Object>, Map<String, AttributeValue>> eventualGetItems = new SingleFlight<>();
 
     public MoviesDynamoDbRepository(final DynamoDbClient dynamoDbClient, final String moviesTable) {
+        this(dynamoDbClient, moviesTable, HedgingPolicy.disabled());
+    }
+
+    public MoviesDynamoDbRepository(final DynamoDbClient dynamoDbClient, final String moviesTable, final HedgingPolicy hedgingPolicy) {
+        this(dynamoDbClient, moviesTable, Executors.newFixedThreadPool(4, runnable -> {
+            final var thread = new Thread(runnable, "movies-batch-get");
+            thread.setDaemon(true);
+            return thread;
+        }), hedgingPolicy);
+    }
+
+    public MoviesDynamoDbRepository(final DynamoDbClient dynamoDbClient, final String moviesTable, final ExecutorService executorService) {
+        this(dynamoDbClient, moviesTable, executorService, HedgingPolicy.disabled());
+    }
+
+    public MoviesDynamoDbRepository(final DynamoDbClient dynamoDbClient, final String moviesTable, final ExecutorService executorService, final HedgingPolicy hedgingPolicy) {
         this.dynamoDbClient = dynamoDbClient;
         this.moviesTable = moviesTable;
+        this.executorService = executorService;
+        this.hedgingPolicy = hedgingPolicy;
     }
 
     public Movie getMovieById(final String movieId) {
+        return getMovieById(movieId, ReadConsistency.STRONG);
+    }
 
-        final var getItemRequest = GetItemRequest.builder()
+    public Movie getMovieById(final String movieId, final ReadConsistency readConsistency) {
+        return getMovieById(movieId, readConsistency, Set.of());
+    }
+
+    public Movie getMovieById(final String movieId, final ReadConsistency readConsistency, final Set<MovieField> fields) {
+
+        final var item = getMovieItemById(movieId, readConsistency, fields);
+        return item == null ? null : convert(item);
+    }
+
+    public Map<String, AttributeValue> getMovieItemById(final String movieId, final ReadConsistency readConsistency, final Set<MovieField> fields) {
+
+        // a strongly consistent read has to start after the request arrived to see every write acknowledged before it,
+        // joining a call already in flight cannot promise that, so only eventually consistent reads are coalesced
+        if (readConsistency == ReadConsistency.STRONG) {
+            return getItem(movieId, readConsistency, fields);
+        }
+
+        return eventualGetItems.execute(List.of(movieId, fields), () -> getItem(movieId, readConsistency, fields));
+    }
+
+    public long getCollapsedReads() {
+        return eventualGetItems.getCollapsedCalls();
+    }
+
+    private Map<String, AttributeValue> getItem(final String movieId, final ReadConsistency readConsistency, final Set<MovieField> fields) {
+
+        final var getItemRequestBuilder = GetItemRequest.builder()
                 .key(Map.of("movieId", AttributeValue.builder().s(movieId).build()))
                 .tableName(moviesTable)
-                .consistentRead(true)
-                .build();
+                .consistentRead(readConsistency.isConsistentRead());
+
+        if (!fields.isEmpty()) {
+            getItemRequestBuilder
+                    .projectionExpression(getProjectionExpression(fields))
+                    .expressionAttributeNames(getExpressionAttributeNames(fields));
+        }
+
+        final var getItemRequest = Deadline.current().apply(getItemRequestBuilder).build();
 
-        final var getItemResponse = dynamoDbClient.getItem(getItemRequest);
+        final var getItemResponse = hedgingPolicy.execute(() -> dynamoDbClient.getItem(getItemRequest));
         if (!getItemResponse.hasItem()) {
             return null;
         }
 
-        final var attributes = getItemResponse.item();
+        return getItemResponse.item();
+    }
+
+    public Map<String, Movie> getMoviesByIds(final Collection<String> movieIds, final ReadConsistency readConsistency) {
+        return getMoviesByIds(movieIds, readConsistency, Set.of());
+    }
+
+    public Map<String, Movie> getMoviesByIds(final Collection<String> movieIds, final ReadConsistency readConsistency, final Set<MovieField> fields) {
+
+        final var distinctMovieIds = new ArrayList<>(new LinkedHashSet<>(movieIds));
+        if (distinctMovieIds.isEmpty()) {
+            return Map.of();
+        }
+
+        final var chunks = new ArrayList<List<String>>();
+        for (var from = 0; from < distinctMovieIds.size(); from += BATCH_GET_ITEM_MAX_KEYS) {
+            chunks.add(distinctMovieIds.subList(from, Math.min(from + BATCH_GET_ITEM_MAX_KEYS, distinctMovieIds.size())));
+        }
+
+        // every chunk but the last one goes to the pool, the calling thread takes care of the last one itself
+        final var deadline = Deadline.current();
+        final var futures = new ArrayList<Future<Map<String, Movie>>>();
+        for (final var chunk : chunks.subList(0, chunks.size() - 1)) {
+            futures.add(executorService.submit(deadline.propagate(() -> batchGetMovies(chunk, readConsistency, fields))));
+        }
+
+        final var movies = new HashMap<>(batchGetMovies(chunks.get(chunks.size() - 1), readConsistency, fields));
+        for (final var future : futures) {
+            movies.putAll(await(future));
+        }
+
+        return movies;
+    }
+
+    public MoviesPage getMoviesByCountry(final String countryOfOrigin, final int pageSize, final Map<String, AttributeValue> exclusiveStartKey) {
+
+        // one Query per page against the index, never a Scan, so a page costs the same whatever the size of the table
+        final var queryRequestBuilder = QueryRequest.builder()
+                .tableName(moviesTable)
+                .indexName(COUNTRY_OF_ORIGIN_INDEX)
+                .keyConditionExpression("#c = :countryOfOrigin")
+                .expressionAttributeNames(Map.of("#c", COUNTRY_OF_ORIGIN_ATTRIBUTE))
+                .expressionAttributeValues(Map.of(":countryOfOrigin", AttributeValue.builder().s(countryOfOrigin).build()))
+                .limit(pageSize);
+
+        if (exclusiveStartKey != null) {
+            queryRequestBuilder.exclusiveStartKey(exclusiveStartKey);
+        }
+
+        final var queryResponse = dynamoDbClient.query(Deadline.current().apply(queryRequestBuilder).build());
+
+        final var movies = new ArrayList<Movie>(queryResponse.count());
+        for (final var item : queryResponse.items()) {
+            movies.add(convert(item));
+        }
+
+        return new MoviesPage(movies, queryResponse.hasLastEvaluatedKey() ? queryResponse.lastEvaluatedKey() : null);
+    }
+
+    public List<Movie> getTopMovies(final Leaderboard leaderboard, final int limit) {
+
+        // the whole leaderboard shares one partition key, reading it backwards by the rating returns the top movies first
+        final var queryRequest = Deadline.current().apply(QueryRequest.builder())
+                .tableName(moviesTable)
+                .indexName(leaderboard.getIndexName())
+                .keyConditionExpression("#l = :leaderboard")
+                .expressionAttributeNames(Map.of("#l", leaderboard.getPartitionAttribute()))
+                .expressionAttributeValues(Map.of(":leaderboard", AttributeValue.builder().s(leaderboard.getPartitionValue()).build()))
+                .scanIndexForward(false)
+                .limit(limit)
+                .build();
+
+        final var queryResponse = dynamoDbClient.query(queryRequest);
+
+        final var movies = new ArrayList<Movie>(queryResponse.count());
+        for (final var item : queryResponse.items()) {
+            movies.add(convert(item));
+        }
+
+        return movies;
+    }
+
+    private Map<String, Movie> batchGetMovies(final List<String> movieIds, final ReadConsistency readConsistency, final Set<MovieField> fields) {
+
+        final var keys = new ArrayList<Map<String, AttributeValue>>(movieIds.size());
+        for (final var movieId : movieIds) {
+            keys.add(Map.of("movieId", AttributeValue.builder().s(movieId).build()));
+        }
+
+        final var keysAndAttributesBuilder = KeysAndAttributes.builder()
+                .keys(keys)
+                .consistentRead(readConsistency.isConsistentRead());
+
+        if (!fields.isEmpty()) {
+            keysAndAttributesBuilder
+                    .projectionExpression(getProjectionExpression(fields))
+                    .expressionAttributeNames(getExpressionAttributeNames(fields));
+        }
+
+        var requestItems = Map.of(moviesTable, keysAndAttributesBuilder.build());
+
+        final var movies = new HashMap<String, Movie>(movieIds.size() * 2);
+
+        for (var attempt = 0; ; attempt++) {
+
+            final var batchGetItemResponse = dynamoDbClient.batchGetItem(Deadline.current().apply(BatchGetItemRequest.builder()
+                    .requestItems(requestItems))
+                    .build());
+
+            for (final var item : batchGetItemResponse.responses().getOrDefault(moviesTable, List.of())) {
+                final var movie = convert(item);
+                movies.put(movie.getMovieId(), movie);
+            }
+
+            if (!batchGetItemResponse.hasUnprocessedKeys() || batchGetItemResponse.unprocessedKeys().isEmpty()) {
+                return movies;
+            }
+
+            if (attempt == BATCH_GET_ITEM_MAX_RETRIES) {
+                throw (DynamoDbException) DynamoDbException.builder()
+                        .message("Unprocessed keys left after " + BATCH_GET_ITEM_MAX_RETRIES + " retries")
+                        .statusCode(503)
+                        .build();
+            }
+
+            requestItems = batchGetItemResponse.unprocessedKeys();
+            backOff(attempt);
+        }
+    }
+
+    private static void backOff(final int attempt) {
+
+        // exponential backoff with full jitter
+        final var maxBackoffMillis = Math.min(BATCH_GET_ITEM_MAX_BACKOFF_MILLIS, BATCH_GET_ITEM_BASE_BACKOFF_MILLIS << attempt);
+
+        // never sleeps past the deadline, the next attempt then fails fast instead
+        try {
+            Thread.sleep(Math.min(Deadline.current().remainingMillis(), ThreadLocalRandom.current().nextLong(maxBackoffMillis + 1)));
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying unprocessed keys", error);
+        }
+    }
+
+    private static <T> T await(final Future<T> future) {
+
+        try {
+            return future.get();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a batch of movies", error);
+        } catch (ExecutionException error) {
+            if (error.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) error.getCause();
+            }
+            throw new IllegalStateException(error.getCause());
+        }
+    }
+
+    private static String getProjectionExpression(final Set<MovieField> fields) {
+
+        // the key is always projected, batch results are matched back to the requested ids through it,
+        // and so are the version attributes the ETag and Last-Modified headers are derived from
+        final var projectionExpression = new StringBuilder(MovieField.MOVIE_ID.getPlaceholder())
+                .append(", #").append(VERSION_ATTRIBUTE)
+                .append(", #").append(LAST_MODIFIED_ATTRIBUTE);
+        for (final var field : fields) {
+            if (field != MovieField.MOVIE_ID) {
+                projectionExpression.append(", ").append(field.getPlaceholder());
+            }
+        }
+        return projectionExpression.toString();
+    }
+
+    private static Map<String, String> getExpressionAttributeNames(final Set<MovieField> fields) {
+
+        final var expressionAttributeNames = new HashMap<String, String>();
+        expressionAttributeNames.put(MovieField.MOVIE_ID.getPlaceholder(), MovieField.MOVIE_ID.getAttributeName());
+        expressionAttributeNames.put("#" + VERSION_ATTRIBUTE, VERSION_ATTRIBUTE);
+        expressionAttributeNames.put("#" + LAST_MODIFIED_ATTRIBUTE, LAST_MODIFIED_ATTRIBUTE);
+        for (final var field : fields) {
+            expressionAttributeNames.put(field.getPlaceholder(), field.getAttributeName());
+        }
+        return expressionAttributeNames;
+    }
+
+    public static Long getVersion(final Map<String, AttributeValue> item) {
+        final var version = item.get(VERSION_ATTRIBUTE);
+        return version == null ? null : Long.valueOf(version.n());
+    }
+
+    public static Long getLastModified(final Map<String, AttributeValue> item) {
+        final var lastModified = item.get(LAST_MODIFIED_ATTRIBUTE);
+        return lastModified == null ? null : Long.valueOf(lastModified.n());
+    }
+
+    public static Movie convert(final Map<String, AttributeValue> attributes) {
+
+        // projected items only carry some of the attributes, absent ones are simply skipped
         final var movie = new Movie();
-        movie.setMovieId(movieId);
 
-        Optional.ofNullable(attributes.getOrDefault("name", null))
-                .ifPresent(attribute -> movie.setName(attribute.s()));
+        final var movieId = attributes.get("movieId");
+        if (movieId != null) {
+            movie.setMovieId(movieId.s());
+        }
 
-        Optional.ofNullable(attributes.getOrDefault("countryOfOrigin", null))
-                .ifPresent(attribute -> movie.setCountryOfOrigin(attribute.s()));
+        final var name = attributes.get("name");
+        if (name != null) {
+            movie.setName(name.s());
+        }
 
-        Optional.ofNullable(attributes.getOrDefault("releaseDate", null))
-                .ifPresent(attribute -> movie.setReleaseDate(attribute.s()));
+        final var countryOfOrigin = attributes.get("countryOfOrigin");
+        if (countryOfOrigin != null) {
+            movie.setCountryOfOrigin(countryOfOrigin.s());
+        }
+
+        final var releaseDate = attributes.get("releaseDate");
+        if (releaseDate != null) {
+            movie.setReleaseDate(releaseDate.s());
+        }
 
-        Optional.ofNullable(attributes.getOrDefault("rottenTomatoesRating", null))
-                .ifPresent(attribute -> movie.setRottenTomatoesRating(Integer.parseInt(attribute.n())));
+        final var rottenTomatoesRating = attributes.get("rottenTomatoesRating");
+        if (rottenTomatoesRating != null) {
+            movie.setRottenTomatoesRating(Integer.parseInt(rottenTomatoesRating.n()));
+        }
+
+        final var imdbRating = attributes.get("imdbRating");
+        if (imdbRating != null) {
+            movie.setImdbRating(Integer.parseInt(imdbRating.n()));
+        }
 
-        Optional.ofNullable(attributes.getOrDefault("imdbRating", null))
-                .ifPresent(attribute -> movie.setImdbRating(Integer.parseInt(attribute.n())));
+        movie.setVersion(getVersion(attributes));
+        movie.setLastModified(getLastModified(attributes));
 
         return movie;
     }
@@ -0,0 +1,29 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
+
+import java.util.Locale;
+
+public enum ReadConsistency {
+
+    EVENTUAL,
+    STRONG;
+
+    public boolean isConsistentRead() {
+        return this == STRONG;
+    }
+
+    public String toHeaderValue() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static ReadConsistency parse(final String value) {
+
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "eventual":
+                return EVENTUAL;
+            case "strong":
+                return STRONG;
+            default:
+                throw new IllegalArgumentException("Invalid read consistency: " + value + ", expected 'eventual' or 'strong'");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// concurrent calls for the same key share the one already in flight, its result or its failure
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder collapsedCalls = new LongAdder();
+
+    public V execute(final K key, final Supplier<V> call) {
+
+        final var own = new CompletableFuture<V>();
+        final var leader = inFlight.putIfAbsent(key, own);
+
+        if (leader != null) {
+            collapsedCalls.increment();
+            return await(leader);
+        }
+
+        try {
+            final var value = call.get();
+            own.complete(value);
+            return value;
+        } catch (RuntimeException | Error error) {
+            own.completeExceptionally(error);
+            throw error;
+        } finally {
+            // the next caller starts a fresh call, nothing is remembered once the result is out
+            inFlight.remove(key, own);
+        }
+    }
+
+    public long getCollapsedCalls() {
+        return collapsedCalls.sum();
+    }
+
+    private static <V> V await(final CompletableFuture<V> future) {
+
+        try {
+            return future.join();
+        } catch (CompletionException error) {
+            // followers see the same exception as the leader, a DynamoDbException keeps its status code
+            final var cause = error.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw error;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public final class Movie {
 
     private String movieId;
@@ -8,6 +12,8 @@ public final class Movie {
     private String releaseDate;
     private Integer rottenTomatoesRating;
     private Integer imdbRating;
+    private Long version;
+    private Long lastModified;
 
     public Movie() { }
 
@@ -35,6 +41,16 @@ public final class Movie {
         return imdbRating;
     }
 
+    @JsonIgnore
+    public Long getVersion() {
+        return version;
+    }
+
+    @JsonIgnore
+    public Long getLastModified() {
+        return lastModified;
+    }
+
     public void setMovieId(final String movieId) {
         this.movieId = movieId;
     }
@@ -59,6 +75,16 @@ public final class Movie {
         this.imdbRating = imdbRating;
     }
 
+    @JsonIgnore
+    public void setVersion(final Long version) {
+        this.version = version;
+    }
+
+    @JsonIgnore
+    public void setLastModified(final Long lastModified) {
+        this.lastModified = lastModified;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -74,7 +100,10 @@ public final class Movie {
             return false;
         if (getRottenTomatoesRating() != null ? !getRottenTomatoesRating().equals(movie.getRottenTomatoesRating()) : movie.getRottenTomatoesRating() != null)
             return false;
-        return getImdbRating() != null ? getImdbRating().equals(movie.getImdbRating()) : movie.getImdbRating() == null;
+        if (getImdbRating() != null ? !getImdbRating().equals(movie.getImdbRating()) : movie.getImdbRating() != null)
+            return false;
+        if (getVersion() != null ? !getVersion().equals(movie.getVersion()) : movie.getVersion() != null) return false;
+        return getLastModified() != null ? getLastModified().equals(movie.getLastModified()) : movie.getLastModified() == null;
     }
 
     @Override
@@ -85,6 +114,8 @@ public final class Movie {
         result = 31 * result + (getReleaseDate() != null ? getReleaseDate().hashCode() : 0);
         result = 31 * result + (getRottenTomatoesRating() != null ? getRottenTomatoesRating().hashCode() : 0);
         result = 31 * result + (getImdbRating() != null ? getImdbRating().hashCode() : 0);
+        result = 31 * result + (getVersion() != null ? getVersion().hashCode() : 0);
+        result = 31 * result + (getLastModified() != null ? getLastModified().hashCode() : 0);
         return result;
     }
 }
\ No newline at end of file
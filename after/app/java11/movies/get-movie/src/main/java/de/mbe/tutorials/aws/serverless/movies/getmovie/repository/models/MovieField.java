@@ -0,0 +1,73 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models;
+
+import java.util.Set;
+
+public enum MovieField {
+
+    MOVIE_ID("movieId"),
+    NAME("name"),
+    COUNTRY_OF_ORIGIN("countryOfOrigin"),
+    RELEASE_DATE("releaseDate"),
+    ROTTEN_TOMATOES_RATING("rottenTomatoesRating"),
+    IMDB_RATING("imdbRating");
+
+    private final String attributeName;
+
+    MovieField(final String attributeName) {
+        this.attributeName = attributeName;
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    public String getPlaceholder() {
+        return "#" + attributeName;
+    }
+
+    public static MovieField parse(final String value) {
+
+        final var trimmed = value.trim();
+        for (final var movieField : values()) {
+            if (movieField.attributeName.equalsIgnoreCase(trimmed)) {
+                return movieField;
+            }
+        }
+
+        throw new IllegalArgumentException("Invalid request: Unknown field " + trimmed + " in queryStringParameters.fields");
+    }
+
+    public static Movie project(final Movie movie, final Set<MovieField> fields) {
+
+        if (movie == null) {
+            return null;
+        }
+
+        final var projection = new Movie();
+        projection.setMovieId(movie.getMovieId());
+        projection.setVersion(movie.getVersion());
+        projection.setLastModified(movie.getLastModified());
+
+        if (fields.contains(NAME)) {
+            projection.setName(movie.getName());
+        }
+
+        if (fields.contains(COUNTRY_OF_ORIGIN)) {
+            projection.setCountryOfOrigin(movie.getCountryOfOrigin());
+        }
+
+        if (fields.contains(RELEASE_DATE)) {
+            projection.setReleaseDate(movie.getReleaseDate());
+        }
+
+        if (fields.contains(ROTTEN_TOMATOES_RATING)) {
+            projection.setRottenTomatoesRating(movie.getRottenTomatoesRating());
+        }
+
+        if (fields.contains(IMDB_RATING)) {
+            projection.setImdbRating(movie.getImdbRating());
+        }
+
+        return projection;
+    }
+}
@@ -0,0 +1,50 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models;
+
+import java.util.List;
+
+public final class MovieListing {
+
+    private List<Movie> movies;
+    private String nextToken;
+
+    public MovieListing() { }
+
+    public MovieListing(final List<Movie> movies, final String nextToken) {
+        this.movies = movies;
+        this.nextToken = nextToken;
+    }
+
+    public List<Movie> getMovies() {
+        return movies;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public void setMovies(final List<Movie> movies) {
+        this.movies = movies;
+    }
+
+    public void setNextToken(final String nextToken) {
+        this.nextToken = nextToken;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MovieListing that = (MovieListing) o;
+
+        if (getMovies() != null ? !getMovies().equals(that.getMovies()) : that.getMovies() != null) return false;
+        return getNextToken() != null ? getNextToken().equals(that.getNextToken()) : that.getNextToken() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getMovies() != null ? getMovies().hashCode() : 0;
+        result = 31 * result + (getNextToken() != null ? getNextToken().hashCode() : 0);
+        return result;
+    }
+}
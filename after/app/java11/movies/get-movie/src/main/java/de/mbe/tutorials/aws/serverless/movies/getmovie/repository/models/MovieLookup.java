@@ -0,0 +1,60 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models;
+
+public final class MovieLookup {
+
+    private String movieId;
+    private boolean found;
+    private Movie movie;
+
+    public MovieLookup() { }
+
+    public MovieLookup(final String movieId, final Movie movie) {
+        this.movieId = movieId;
+        this.found = movie != null;
+        this.movie = movie;
+    }
+
+    public String getMovieId() {
+        return movieId;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public Movie getMovie() {
+        return movie;
+    }
+
+    public void setMovieId(final String movieId) {
+        this.movieId = movieId;
+    }
+
+    public void setFound(final boolean found) {
+        this.found = found;
+    }
+
+    public void setMovie(final Movie movie) {
+        this.movie = movie;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MovieLookup that = (MovieLookup) o;
+
+        if (isFound() != that.isFound()) return false;
+        if (getMovieId() != null ? !getMovieId().equals(that.getMovieId()) : that.getMovieId() != null) return false;
+        return getMovie() != null ? getMovie().equals(that.getMovie()) : that.getMovie() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getMovieId() != null ? getMovieId().hashCode() : 0;
+        result = 31 * result + (isFound() ? 1 : 0);
+        result = 31 * result + (getMovie() != null ? getMovie().hashCode() : 0);
+        return result;
+    }
+}
@@ -0,0 +1,29 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.List;
+import java.util.Map;
+
+public final class MoviesPage {
+
+    private final List<Movie> movies;
+    private final Map<String, AttributeValue> lastEvaluatedKey;
+
+    public MoviesPage(final List<Movie> movies, final Map<String, AttributeValue> lastEvaluatedKey) {
+        this.movies = movies;
+        this.lastEvaluatedKey = lastEvaluatedKey;
+    }
+
+    public List<Movie> getMovies() {
+        return movies;
+    }
+
+    public Map<String, AttributeValue> getLastEvaluatedKey() {
+        return lastEvaluatedKey;
+    }
+
+    public boolean hasMore() {
+        return lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty();
+    }
+}
@@ -0,0 +1,225 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.suggest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// the snapshot format is shared with upload-movie-infos, which builds and publishes the index, keep both copies in sync;
+// version, entries, keys length, values length, key offsets, value offsets, keys, values, all big-endian;
+// keys are the normalized names sorted by their UTF-8 bytes, so every prefix is a contiguous range found by a binary search,
+// values are the movieId length as a short followed by the movieId and the name as they were uploaded
+public final class MovieNamesIndex {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int keyOffsetsStart;
+    private final int valueOffsetsStart;
+    private final int keysStart;
+    private final int valuesStart;
+
+    private MovieNamesIndex(final ByteBuffer buffer) {
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported movie names index format");
+        }
+
+        this.buffer = buffer;
+        this.size = buffer.getInt(Integer.BYTES);
+        this.keyOffsetsStart = HEADER_SIZE;
+        this.valueOffsetsStart = keyOffsetsStart + (size + 1) * Integer.BYTES;
+        this.keysStart = valueOffsetsStart + (size + 1) * Integer.BYTES;
+        this.valuesStart = keysStart + buffer.getInt(2 * Integer.BYTES);
+
+        if (size < 0 || valuesStart + buffer.getInt(3 * Integer.BYTES) != buffer.capacity()) {
+            throw new IllegalArgumentException("Corrupt movie names index");
+        }
+    }
+
+    // namesByMovieId maps every movieId to its name, movies without a name are left out
+    public static MovieNamesIndex build(final Map<String, String> namesByMovieId) {
+
+        final var entries = new ArrayList<byte[][]>(namesByMovieId.size());
+        for (final var nameByMovieId : namesByMovieId.entrySet()) {
+
+            final var key = normalize(nameByMovieId.getValue());
+            if (key.isEmpty()) {
+                continue;
+            }
+
+            final var movieId = nameByMovieId.getKey().getBytes(StandardCharsets.UTF_8);
+            final var name = nameByMovieId.getValue().getBytes(StandardCharsets.UTF_8);
+            final var value = ByteBuffer.allocate(Short.BYTES + movieId.length + name.length)
+                    .putShort((short) movieId.length)
+                    .put(movieId)
+                    .put(name)
+                    .array();
+
+            entries.add(new byte[][]{key.getBytes(StandardCharsets.UTF_8), value});
+        }
+
+        // ties between equal names are broken by the movieId, so the same table always gives the same snapshot
+        entries.sort(Comparator.<byte[][], byte[]>comparing(entry -> entry[0], Arrays::compareUnsigned)
+                .thenComparing(entry -> entry[1], Arrays::compareUnsigned));
+
+        final var keysLength = entries.stream().mapToInt(entry -> entry[0].length).sum();
+        final var valuesLength = entries.stream().mapToInt(entry -> entry[1].length).sum();
+
+        final var buffer = ByteBuffer.allocate(HEADER_SIZE + 2 * (entries.size() + 1) * Integer.BYTES + keysLength + valuesLength)
+                .putInt(FORMAT_VERSION)
+                .putInt(entries.size())
+                .putInt(keysLength)
+                .putInt(valuesLength);
+
+        var offset = 0;
+        for (final var entry : entries) {
+            buffer.putInt(offset);
+            offset += entry[0].length;
+        }
+        buffer.putInt(offset);
+
+        offset = 0;
+        for (final var entry : entries) {
+            buffer.putInt(offset);
+            offset += entry[1].length;
+        }
+        buffer.putInt(offset);
+
+        entries.forEach(entry -> buffer.put(entry[0]));
+        entries.forEach(entry -> buffer.put(entry[1]));
+
+        return new MovieNamesIndex(buffer.flip());
+    }
+
+    public static MovieNamesIndex wrap(final ByteBuffer buffer) {
+        return new MovieNamesIndex(buffer.slice());
+    }
+
+    public static MovieNamesIndex map(final Path path) throws IOException {
+
+        // the mapping outlives the channel, the pages are read from the file on demand and shared with the page cache
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MovieNamesIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int byteSize() {
+        return buffer.capacity();
+    }
+
+    public void writeTo(final OutputStream output) throws IOException {
+        Channels.newChannel(output).write(buffer.duplicate().clear());
+    }
+
+    // movieId and name of up to limit movies whose normalized name starts with the normalized prefix, ordered by name
+    public List<Map.Entry<String, String>> suggest(final String prefix, final int limit) {
+
+        final var key = normalize(prefix).getBytes(StandardCharsets.UTF_8);
+        final var suggestions = new ArrayList<Map.Entry<String, String>>(Math.min(limit, 16));
+
+        for (var index = lowerBound(key); index < size && suggestions.size() < limit && startsWith(index, key); index++) {
+            suggestions.add(value(index));
+        }
+
+        return suggestions;
+    }
+
+    public static String normalize(final String name) {
+
+        if (name == null) {
+            return "";
+        }
+
+        // accents, case and punctuation are ignored, "Amélie" is found by "ame" and "Spider-Man" by "spider man"
+        final var decomposed = COMBINING_MARKS.matcher(Normalizer.normalize(name, Normalizer.Form.NFKD)).replaceAll("");
+        return SEPARATORS.matcher(decomposed.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private int lowerBound(final byte[] key) {
+
+        var low = 0;
+        var high = size;
+
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (compare(middle, key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private int compare(final int index, final byte[] key) {
+
+        final var start = keysStart + buffer.getInt(keyOffsetsStart + index * Integer.BYTES);
+        final var length = keysStart + buffer.getInt(keyOffsetsStart + (index + 1) * Integer.BYTES) - start;
+
+        for (var i = 0; i < Math.min(length, key.length); i++) {
+            final var difference = Byte.toUnsignedInt(buffer.get(start + i)) - Byte.toUnsignedInt(key[i]);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return length - key.length;
+    }
+
+    private boolean startsWith(final int index, final byte[] key) {
+
+        final var start = keysStart + buffer.getInt(keyOffsetsStart + index * Integer.BYTES);
+        final var length = keysStart + buffer.getInt(keyOffsetsStart + (index + 1) * Integer.BYTES) - start;
+
+        if (length < key.length) {
+            return false;
+        }
+
+        for (var i = 0; i < key.length; i++) {
+            if (buffer.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private Map.Entry<String, String> value(final int index) {
+
+        final var start = valuesStart + buffer.getInt(valueOffsetsStart + index * Integer.BYTES);
+        final var length = valuesStart + buffer.getInt(valueOffsetsStart + (index + 1) * Integer.BYTES) - start;
+
+        // absolute reads only, a duplicate keeps concurrent lookups from sharing a position
+        final var bytes = new byte[length];
+        buffer.duplicate().position(start).get(bytes);
+
+        final var movieIdLength = ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+        return new AbstractMap.SimpleImmutableEntry<>(
+                new String(bytes, Short.BYTES, movieIdLength, StandardCharsets.UTF_8),
+                new String(bytes, Short.BYTES + movieIdLength, length - Short.BYTES - movieIdLength, StandardCharsets.UTF_8));
+    }
+}
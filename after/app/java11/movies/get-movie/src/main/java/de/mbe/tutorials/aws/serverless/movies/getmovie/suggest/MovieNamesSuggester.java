@@ -0,0 +1,161 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.suggest;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class MovieNamesSuggester {
+
+    public static final String LATEST_VERSION_KEY = "LATEST";
+    public static final String SNAPSHOT_SUFFIX = ".idx";
+
+    private static final Logger LOGGER = LogManager.getLogger(MovieNamesSuggester.class);
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String prefix;
+    private final long refreshIntervalMillis;
+    private final Path directory;
+    private final ExecutorService executorService;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile MovieNamesIndex movieNamesIndex;
+    private volatile String version;
+    private volatile Path snapshotFile;
+    private volatile long lastRefreshMillis;
+
+    public MovieNamesSuggester(final S3Client s3Client, final String bucket, final String prefix, final Duration refreshInterval, final Path directory) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.refreshIntervalMillis = refreshInterval.toMillis();
+        this.directory = directory;
+        this.executorService = Executors.newSingleThreadExecutor(runnable -> {
+            final var thread = new Thread(runnable, "movie-names-index-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private MovieNamesSuggester(final MovieNamesIndex movieNamesIndex) {
+        this.s3Client = null;
+        this.bucket = null;
+        this.prefix = null;
+        this.refreshIntervalMillis = Long.MAX_VALUE;
+        this.directory = null;
+        this.executorService = null;
+        this.movieNamesIndex = movieNamesIndex;
+    }
+
+    public static MovieNamesSuggester of(final MovieNamesIndex movieNamesIndex) {
+        return new MovieNamesSuggester(movieNamesIndex);
+    }
+
+    public static MovieNamesSuggester disabled() {
+        return new MovieNamesSuggester((MovieNamesIndex) null);
+    }
+
+    public boolean isEnabled() {
+        return movieNamesIndex != null || s3Client != null;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    // null until a snapshot has been loaded, an empty list means nothing matched
+    public List<MovieSuggestion> suggest(final String query, final int limit) {
+
+        refreshIfStale();
+
+        final var current = movieNamesIndex;
+        if (current == null) {
+            return null;
+        }
+
+        final var suggestions = new ArrayList<MovieSuggestion>();
+        for (final var entry : current.suggest(query, limit)) {
+            suggestions.add(new MovieSuggestion(entry.getKey(), entry.getValue()));
+        }
+
+        return suggestions;
+    }
+
+    public void refresh() {
+
+        if (s3Client == null) {
+            return;
+        }
+
+        lastRefreshMillis = System.currentTimeMillis();
+
+        try {
+
+            // the pointer is a few bytes, the snapshot itself is only downloaded when it has changed
+            final var latestVersion = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(prefix + LATEST_VERSION_KEY)
+                    .build()).asString(StandardCharsets.UTF_8).trim();
+
+            if (latestVersion.equals(version)) {
+                return;
+            }
+
+            // the snapshot goes to local storage and is mapped from there, it never takes up heap
+            final var file = directory.resolve("movie-names-" + latestVersion + SNAPSHOT_SUFFIX);
+            Files.deleteIfExists(file);
+            s3Client.getObject(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(prefix + latestVersion + SNAPSHOT_SUFFIX)
+                    .build(), ResponseTransformer.toFile(file));
+
+            movieNamesIndex = MovieNamesIndex.map(file);
+            version = latestVersion;
+
+            // the previous mapping stays readable for lookups still using it, the file is gone once it is unmapped
+            final var previousFile = snapshotFile;
+            snapshotFile = file;
+            if (previousFile != null) {
+                Files.deleteIfExists(previousFile);
+            }
+
+            LOGGER.info("Loaded movie names index {}, entries: {}, bytes: {}",
+                    latestVersion, movieNamesIndex.size(), movieNamesIndex.byteSize());
+
+        } catch (IOException | RuntimeException error) {
+            // a stale index keeps serving, without one suggestions are unavailable
+            LOGGER.warn("Could not refresh the movie names index: {}", error.getMessage());
+        }
+    }
+
+    private void refreshIfStale() {
+
+        if (s3Client == null || System.currentTimeMillis() - lastRefreshMillis < refreshIntervalMillis) {
+            return;
+        }
+
+        // requests keep being answered from the current snapshot while a single background refresh runs
+        if (refreshing.compareAndSet(false, true)) {
+            executorService.execute(() -> {
+                try {
+                    refresh();
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+    }
+}
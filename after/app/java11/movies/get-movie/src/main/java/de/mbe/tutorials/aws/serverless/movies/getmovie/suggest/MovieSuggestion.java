@@ -0,0 +1,48 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.suggest;
+
+public final class MovieSuggestion {
+
+    private String movieId;
+    private String name;
+
+    public MovieSuggestion() { }
+
+    public MovieSuggestion(final String movieId, final String name) {
+        this.movieId = movieId;
+        this.name = name;
+    }
+
+    public String getMovieId() {
+        return movieId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setMovieId(final String movieId) {
+        this.movieId = movieId;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MovieSuggestion that = (MovieSuggestion) o;
+
+        if (getMovieId() != null ? !getMovieId().equals(that.getMovieId()) : that.getMovieId() != null) return false;
+        return getName() != null ? getName().equals(that.getName()) : that.getName() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getMovieId() != null ? getMovieId().hashCode() : 0;
+        result = 31 * result + (getName() != null ? getName().hashCode() : 0);
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie;
+
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.MovieField;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ConditionalRequestsTests {
+
+    private static final long LAST_MODIFIED = 1_589_535_000_000L;
+
+    @Test
+    void versionedMovieHasEntityTagAndLastModified() {
+
+        final var movieId = UUID.randomUUID().toString();
+
+        assertEquals("\"" + movieId + "-3\"", ConditionalRequests.getEntityTag(movieId, 3L));
+        assertEquals("Fri, 15 May 2020 09:30:00 GMT", ConditionalRequests.getLastModified(LAST_MODIFIED));
+    }
+
+    @Test
+    void unversionedMovieHasNoEntityTag() {
+
+        final var movieId = UUID.randomUUID().toString();
+
+        assertNull(ConditionalRequests.getEntityTag(movieId, null));
+        assertNull(ConditionalRequests.getLastModified(null));
+        assertFalse(ConditionalRequests.isNotModified(null, null, "*", null));
+    }
+
+    @Test
+    void matchingEntityTagIsNotModified() {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var entityTag = ConditionalRequests.getEntityTag(movieId, 3L);
+
+        assertTrue(ConditionalRequests.isNotModified(entityTag, null, entityTag, null));
+        assertTrue(ConditionalRequests.isNotModified(entityTag, null, "\"other\", W/" + entityTag, null));
+        assertTrue(ConditionalRequests.isNotModified(entityTag, null, "*", null));
+        assertFalse(ConditionalRequests.isNotModified(entityTag, null, ConditionalRequests.getEntityTag(movieId, 2L), null));
+    }
+
+    @Test
+    void projectionsHaveTheirOwnEntityTag() {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var entityTag = ConditionalRequests.getEntityTag(movieId, 3L);
+        final var projectionTag = ConditionalRequests.getEntityTag(movieId, 3L, Set.of(MovieField.IMDB_RATING, MovieField.NAME));
+
+        assertEquals("\"" + movieId + "-3-name+imdbRating\"", projectionTag);
+        assertEquals(projectionTag, ConditionalRequests.getEntityTag(movieId, 3L, Set.of(MovieField.NAME, MovieField.IMDB_RATING)));
+        assertEquals(entityTag, ConditionalRequests.getEntityTag(movieId, 3L, Set.of()));
+        assertFalse(ConditionalRequests.isNotModified(projectionTag, null, entityTag, null));
+        assertFalse(ConditionalRequests.isNotModified(entityTag, null, projectionTag, null));
+    }
+
+    @Test
+    void weakEntityTagsMatchTheirStrongCounterparts() {
+
+        final var entityTag = ConditionalRequests.getEntityTag(UUID.randomUUID().toString(), 3L);
+
+        assertTrue(ConditionalRequests.isNotModified("W/" + entityTag, null, entityTag, null));
+        assertTrue(ConditionalRequests.isNotModified("W/" + entityTag, null, "W/" + entityTag, null));
+    }
+
+    @Test
+    void ifNoneMatchTakesPrecedenceOverIfModifiedSince() {
+
+        final var entityTag = ConditionalRequests.getEntityTag(UUID.randomUUID().toString(), 3L);
+
+        assertFalse(ConditionalRequests.isNotModified(entityTag, LAST_MODIFIED, "\"stale\"", "Fri, 15 May 2020 09:30:00 GMT"));
+    }
+
+    @Test
+    void ifModifiedSinceComparesWithSecondPrecision() {
+
+        final var entityTag = ConditionalRequests.getEntityTag(UUID.randomUUID().toString(), 3L);
+        final var lastModified = LAST_MODIFIED + 999;
+
+        assertTrue(ConditionalRequests.isNotModified(entityTag, lastModified, null, "Fri, 15 May 2020 09:30:00 GMT"));
+        assertFalse(ConditionalRequests.isNotModified(entityTag, lastModified, null, "Fri, 15 May 2020 09:29:59 GMT"));
+        assertFalse(ConditionalRequests.isNotModified(entityTag, lastModified, null, "yesterday"));
+    }
+}
@@ -0,0 +1,50 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ContinuationTokensTests {
+
+    private static final Map<String, AttributeValue> LAST_EVALUATED_KEY = Map.of(
+            "movieId", AttributeValue.builder().s(UUID.randomUUID().toString()).build(),
+            "countryOfOrigin", AttributeValue.builder().s("DE").build());
+
+    @Test
+    void tokensRoundTrip() {
+
+        final var continuationTokens = new ContinuationTokens("secret".getBytes(StandardCharsets.UTF_8));
+
+        final var token = continuationTokens.encode(LAST_EVALUATED_KEY);
+
+        assertFalse(token.contains(LAST_EVALUATED_KEY.get("movieId").s()));
+        assertEquals(LAST_EVALUATED_KEY, continuationTokens.decode(token));
+    }
+
+    @Test
+    void tamperedTokensAreRejected() {
+
+        final var continuationTokens = new ContinuationTokens("secret".getBytes(StandardCharsets.UTF_8));
+        final var token = continuationTokens.encode(LAST_EVALUATED_KEY);
+        final var tampered = (token.charAt(0) == 'e' ? 'f' : 'e') + token.substring(1);
+
+        assertThrows(IllegalArgumentException.class, () -> continuationTokens.decode(tampered));
+        assertThrows(IllegalArgumentException.class, () -> continuationTokens.decode("not a token"));
+        assertThrows(IllegalArgumentException.class, () -> continuationTokens.decode(token.substring(0, token.indexOf('.'))));
+    }
+
+    @Test
+    void tokensSignedWithAnotherSecretAreRejected() {
+
+        final var token = new ContinuationTokens("secret".getBytes(StandardCharsets.UTF_8)).encode(LAST_EVALUATED_KEY);
+
+        final var error = assertThrows(IllegalArgumentException.class,
+                () -> new ContinuationTokens("other".getBytes(StandardCharsets.UTF_8)).decode(token));
+        assertEquals("Invalid request: Malformed or tampered continuation token", error.getMessage());
+    }
+}
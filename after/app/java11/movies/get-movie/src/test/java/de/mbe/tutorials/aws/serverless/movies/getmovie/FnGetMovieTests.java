@@ -1,22 +1,42 @@
 package de.mbe.tutorials.aws.serverless.movies.getmovie;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.admission.AdmissionController;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.bloom.BloomFilter;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.bloom.MovieIdsFilter;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.compression.ResponseCompressor;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.Leaderboard;
 import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.MoviesDynamoDbRepository;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.ReadConsistency;
 import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.Movie;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.MovieListing;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.MoviesPage;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.suggest.MovieNamesIndex;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.suggest.MovieNamesSuggester;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.suggest.MovieSuggestion;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.zip.Deflater;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,7 +60,7 @@ public final class FnGetMovieTests implements TestUtils {
         final var movieId = UUID.randomUUID().toString();
         final var expectMovie = getRandomMovie(movieId);
 
-        when(moviesDynamoDbRepository.getMovieById(expectMovie.getMovieId())).thenReturn(expectMovie);
+        when(moviesDynamoDbRepository.getMovieById(expectMovie.getMovieId(), ReadConsistency.STRONG)).thenReturn(expectMovie);
 
         final var input = getCorrectInput(expectMovie.getMovieId());
         final var output = new ByteArrayOutputStream();
@@ -55,13 +75,67 @@ public final class FnGetMovieTests implements TestUtils {
         assertNotNull(actualResponse);
         assertEquals(200, actualResponse.getStatusCode());
         assertNotNull(actualResponse.getHeaders());
-        assertEquals(1, actualResponse.getHeaders().size());
+        assertEquals(3, actualResponse.getHeaders().size());
         assertTrue(actualResponse.getHeaders().containsKey("Content-Type"));
         assertEquals("application/json", actualResponse.getHeaders().get("Content-Type"));
+        assertEquals("strong", actualResponse.getHeaders().get("X-Read-Consistency"));
+        assertEquals("no-cache", actualResponse.getHeaders().get("Cache-Control"));
         assertNotNull(actualResponse.getBody());
         assertEquals(expectMovie, OBJECT_MAPPER.readValue(actualResponse.getBody(), Movie.class));
     }
 
+    @Test
+    void correctInputWithExistingIdAndDirectJsonEncodingReturnsOk() throws IOException {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var expectMovie = getRandomMovie(movieId);
+
+        final var item = Map.of(
+                "movieId", AttributeValue.builder().s(movieId).build(),
+                "name", AttributeValue.builder().s(expectMovie.getName()).build(),
+                "countryOfOrigin", AttributeValue.builder().s(expectMovie.getCountryOfOrigin()).build(),
+                "releaseDate", AttributeValue.builder().s(expectMovie.getReleaseDate()).build(),
+                "rottenTomatoesRating", AttributeValue.builder().n(expectMovie.getRottenTomatoesRating().toString()).build(),
+                "imdbRating", AttributeValue.builder().n(expectMovie.getImdbRating().toString()).build(),
+                "version", AttributeValue.builder().n("2").build());
+
+        when(moviesDynamoDbRepository.getMovieItemById(movieId, ReadConsistency.STRONG, Set.of())).thenReturn(item);
+
+        final var output = new ByteArrayOutputStream();
+
+        FnGetMovie.builder(moviesDynamoDbRepository).directJsonEncoding(true).build()
+                .handleRequest(getCorrectInput(movieId), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertNotNull(actualResponse);
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals("\"" + movieId + "-2\"", actualResponse.getHeaders().get("ETag"));
+        assertEquals(expectMovie, OBJECT_MAPPER.readValue(actualResponse.getBody(), Movie.class));
+    }
+
+    @Test
+    void compressedResponseHasWeakEntityTag() throws IOException {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var expectMovie = getRandomMovie(movieId);
+        expectMovie.setVersion(2L);
+
+        when(moviesDynamoDbRepository.getMovieById(movieId, ReadConsistency.STRONG)).thenReturn(expectMovie);
+
+        final var output = new ByteArrayOutputStream();
+
+        FnGetMovie.builder(moviesDynamoDbRepository).responseCompressor(new ResponseCompressor(1, Deflater.DEFAULT_COMPRESSION, 1)).build()
+                .handleRequest(getCorrectInput(movieId), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertNotNull(actualResponse);
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals("gzip", actualResponse.getHeaders().get("Content-Encoding"));
+        assertEquals("W/\"" + movieId + "-2\"", actualResponse.getHeaders().get("ETag"));
+    }
+
     @Test
     void correctInputWithUnknownIdReturnsNotFound() throws IOException {
 
@@ -69,7 +143,7 @@ public final class FnGetMovieTests implements TestUtils {
         final var expectMovie = new Movie();
         expectMovie.setMovieId(movieId);
 
-        when(moviesDynamoDbRepository.getMovieById(expectMovie.getMovieId())).thenReturn(null);
+        when(moviesDynamoDbRepository.getMovieById(expectMovie.getMovieId(), ReadConsistency.STRONG)).thenReturn(null);
 
         final var input = getCorrectInput(expectMovie.getMovieId());
         final var output = new ByteArrayOutputStream();
@@ -84,13 +158,65 @@ public final class FnGetMovieTests implements TestUtils {
         assertNotNull(actualResponse);
         assertEquals(404, actualResponse.getStatusCode());
         assertNotNull(actualResponse.getHeaders());
-        assertEquals(1, actualResponse.getHeaders().size());
+        assertEquals(2, actualResponse.getHeaders().size());
         assertTrue(actualResponse.getHeaders().containsKey("Content-Type"));
         assertEquals("application/json", actualResponse.getHeaders().get("Content-Type"));
+        assertEquals("strong", actualResponse.getHeaders().get("X-Read-Consistency"));
         assertNotNull(actualResponse.getBody());
         assertEquals("Movie " + movieId +" not found", actualResponse.getBody());
     }
 
+    @Test
+    void unknownIdRuledOutByBloomFilterIsStillReadBeforeNotFound() throws IOException {
+
+        final var bloomFilter = BloomFilter.create(100, 0.001);
+        bloomFilter.put(UUID.randomUUID().toString());
+
+        final var movieIdsFilter = MovieIdsFilter.of(bloomFilter);
+        final var fnGetMovieWithFilter = FnGetMovie.builder(moviesDynamoDbRepository)
+                .defaultReadConsistency(ReadConsistency.EVENTUAL)
+                .movieIdsFilter(movieIdsFilter)
+                .build();
+
+        final var movieId = "unknown-" + UUID.randomUUID();
+        final var output = new ByteArrayOutputStream();
+
+        fnGetMovieWithFilter.handleRequest(getCorrectInput(movieId), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertNotNull(actualResponse);
+        assertEquals(404, actualResponse.getStatusCode());
+        assertEquals("eventual", actualResponse.getHeaders().get("X-Read-Consistency"));
+        assertEquals("Movie " + movieId + " not found", actualResponse.getBody());
+        assertEquals(1, movieIdsFilter.getRuledOut());
+        verify(moviesDynamoDbRepository).getMovieById(movieId, ReadConsistency.EVENTUAL);
+    }
+
+    @Test
+    void movieMissingFromTheSnapshotIsFound() throws IOException {
+
+        final var bloomFilter = BloomFilter.create(100, 0.001);
+        bloomFilter.put(UUID.randomUUID().toString());
+
+        final var fnGetMovieWithFilter = FnGetMovie.builder(moviesDynamoDbRepository)
+                .movieIdsFilter(MovieIdsFilter.of(bloomFilter))
+                .build();
+
+        // created by a rating PATCH, or uploaded after the snapshot was loaded
+        final var movieId = UUID.randomUUID().toString();
+        final var expectedMovie = getRandomMovie(movieId);
+        when(moviesDynamoDbRepository.getMovieById(movieId, ReadConsistency.STRONG)).thenReturn(expectedMovie);
+
+        final var output = new ByteArrayOutputStream();
+        fnGetMovieWithFilter.handleRequest(getCorrectInput(movieId), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals(expectedMovie, OBJECT_MAPPER.readValue(actualResponse.getBody(), Movie.class));
+    }
+
     @Test
     void correctInputWithFaultyDbReturnsInternalServerError() throws IOException {
 
@@ -98,7 +224,7 @@ public final class FnGetMovieTests implements TestUtils {
         final var expectMovie = new Movie();
         expectMovie.setMovieId(movieId);
 
-        when(moviesDynamoDbRepository.getMovieById(expectMovie.getMovieId())).thenThrow(DynamoDbException.class);
+        when(moviesDynamoDbRepository.getMovieById(expectMovie.getMovieId(), ReadConsistency.STRONG)).thenThrow(DynamoDbException.class);
 
         final var input = getCorrectInput(expectMovie.getMovieId());
         final var output = new ByteArrayOutputStream();
@@ -186,6 +312,205 @@ public final class FnGetMovieTests implements TestUtils {
         assertEquals("Invalid JSON: Missing or null pathParameters.movieId", actualResponse.getBody());
     }
 
+    @Test
+    void warmupEventShortCircuits() throws IOException {
+
+        final var output = new ByteArrayOutputStream();
+
+        fnGetMovie.handleRequest(new ByteArrayInputStream("{ \"warmup\": true }".getBytes()), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertNotNull(actualResponse);
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals("Warmed up", actualResponse.getBody());
+        verifyNoInteractions(moviesDynamoDbRepository);
+    }
+
+    @Test
+    void countryListingPagesThroughSignedTokens() throws IOException {
+
+        final var firstMovie = getRandomMovie(UUID.randomUUID().toString());
+        final var secondMovie = getRandomMovie(UUID.randomUUID().toString());
+        final var lastEvaluatedKey = Map.of(
+                "movieId", AttributeValue.builder().s(firstMovie.getMovieId()).build(),
+                "countryOfOrigin", AttributeValue.builder().s("DE").build());
+
+        when(moviesDynamoDbRepository.getMoviesByCountry("DE", 1, null)).thenReturn(new MoviesPage(List.of(firstMovie), lastEvaluatedKey));
+        when(moviesDynamoDbRepository.getMoviesByCountry("DE", 1, lastEvaluatedKey)).thenReturn(new MoviesPage(List.of(secondMovie), null));
+
+        final var firstOutput = new ByteArrayOutputStream();
+        fnGetMovie.handleRequest(getCountryInput("DE", "1", null), firstOutput, null);
+
+        final var firstResponse = OBJECT_MAPPER.readValue(firstOutput.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(200, firstResponse.getStatusCode());
+        assertEquals("eventual", firstResponse.getHeaders().get("X-Read-Consistency"));
+
+        final var firstPage = OBJECT_MAPPER.readValue(firstResponse.getBody(), MovieListing.class);
+        assertEquals(List.of(firstMovie), firstPage.getMovies());
+        assertNotNull(firstPage.getNextToken());
+
+        final var secondOutput = new ByteArrayOutputStream();
+        fnGetMovie.handleRequest(getCountryInput("DE", "1", firstPage.getNextToken()), secondOutput, null);
+
+        final var secondResponse = OBJECT_MAPPER.readValue(secondOutput.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(200, secondResponse.getStatusCode());
+        assertEquals(new MovieListing(List.of(secondMovie), null), OBJECT_MAPPER.readValue(secondResponse.getBody(), MovieListing.class));
+
+        final var otherCountryOutput = new ByteArrayOutputStream();
+        fnGetMovie.handleRequest(getCountryInput("FR", "1", firstPage.getNextToken()), otherCountryOutput, null);
+
+        final var otherCountryResponse = OBJECT_MAPPER.readValue(otherCountryOutput.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(400, otherCountryResponse.getStatusCode());
+        assertEquals("Invalid request: Continuation token was issued for another country", otherCountryResponse.getBody());
+    }
+
+    @Test
+    void countryListingRejectsOutOfRangePageSizes() throws IOException {
+
+        final var output = new ByteArrayOutputStream();
+
+        fnGetMovie.handleRequest(getCountryInput("DE", "1000", null), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertEquals(400, actualResponse.getStatusCode());
+        assertEquals("Invalid request: queryStringParameters.limit must be between 1 and 100", actualResponse.getBody());
+        verifyNoInteractions(moviesDynamoDbRepository);
+    }
+
+    @Test
+    void suggestionsAreServedFromTheIndexWithoutReads() throws IOException {
+
+        final var movieNamesIndex = MovieNamesIndex.build(Map.of(
+                "tt0133093", "The Matrix",
+                "tt0234215", "The Matrix Reloaded",
+                "tt0110912", "Pulp Fiction"));
+
+        final var fnGetMovieWithSuggestions = FnGetMovie.builder(moviesDynamoDbRepository)
+                .defaultReadConsistency(ReadConsistency.EVENTUAL)
+                .movieNamesSuggester(MovieNamesSuggester.of(movieNamesIndex))
+                .build();
+
+        final var output = new ByteArrayOutputStream();
+        fnGetMovieWithSuggestions.handleRequest(getSuggestInput("the MAT"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals(List.of(new MovieSuggestion("tt0133093", "The Matrix"), new MovieSuggestion("tt0234215", "The Matrix Reloaded")),
+                List.of(OBJECT_MAPPER.readValue(actualResponse.getBody(), MovieSuggestion[].class)));
+        verifyNoInteractions(moviesDynamoDbRepository);
+    }
+
+    @Test
+    void suggestionsWithoutIndexReturnNotFound() throws IOException {
+
+        final var output = new ByteArrayOutputStream();
+        fnGetMovie.handleRequest(getSuggestInput("matrix"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertEquals(404, actualResponse.getStatusCode());
+        verifyNoInteractions(moviesDynamoDbRepository);
+    }
+
+    @Test
+    void readsOverTheReadBudgetAreShedWithRetryAfter() throws IOException {
+
+        final var fnGetMovieWithAdmission = FnGetMovie.builder(moviesDynamoDbRepository)
+                .admissionController(new AdmissionController(1, Duration.ofSeconds(1)))
+                .build();
+
+        final var expectedMovie = getRandomMovie(UUID.randomUUID().toString());
+        when(moviesDynamoDbRepository.getMovieById(expectedMovie.getMovieId(), ReadConsistency.STRONG)).thenReturn(expectedMovie);
+
+        final var admitted = new ByteArrayOutputStream();
+        fnGetMovieWithAdmission.handleRequest(getCorrectInput(expectedMovie.getMovieId()), admitted, null);
+        assertEquals(200, OBJECT_MAPPER.readValue(admitted.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class).getStatusCode());
+
+        final var shed = new ByteArrayOutputStream();
+        fnGetMovieWithAdmission.handleRequest(getCorrectInput(expectedMovie.getMovieId()), shed, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(shed.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(429, actualResponse.getStatusCode());
+        assertEquals("1", actualResponse.getHeaders().get("Retry-After"));
+        verify(moviesDynamoDbRepository, times(1)).getMovieById(expectedMovie.getMovieId(), ReadConsistency.STRONG);
+    }
+
+    @Test
+    void topMoviesAreReadFromTheLeaderboard() throws IOException {
+
+        final var expectedMovies = List.of(getRandomMovie(UUID.randomUUID().toString()), getRandomMovie(UUID.randomUUID().toString()));
+        when(moviesDynamoDbRepository.getTopMovies(Leaderboard.ROTTEN_TOMATOES, 2)).thenReturn(expectedMovies);
+
+        final var output = new ByteArrayOutputStream();
+        fnGetMovie.handleRequest(getTopInput("rottenTomatoes", "2"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals("eventual", actualResponse.getHeaders().get("X-Read-Consistency"));
+        assertEquals(expectedMovies, List.of(OBJECT_MAPPER.readValue(actualResponse.getBody(), Movie[].class)));
+    }
+
+    @Test
+    void topMoviesRejectUnknownLeaderboards() throws IOException {
+
+        final var output = new ByteArrayOutputStream();
+        fnGetMovie.handleRequest(getTopInput("metacritic", "10"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertEquals(400, actualResponse.getStatusCode());
+        verifyNoInteractions(moviesDynamoDbRepository);
+    }
+
+    private static InputStream getTopInput(final String by, final String limit) {
+        final var event = "{\n" +
+                "  \"resource\": \"/movies/top\",\n" +
+                "  \"path\": \"/movies/top\",\n" +
+                "  \"httpMethod\": \"GET\",\n" +
+                "  \"queryStringParameters\": {\n" +
+                "    \"by\": \"" + by + "\",\n" +
+                "    \"limit\": \"" + limit + "\"\n" +
+                "  },\n" +
+                "  \"pathParameters\": null\n" +
+                "}";
+
+        return new ByteArrayInputStream(event.getBytes());
+    }
+
+    private static InputStream getSuggestInput(final String query) {
+        final var event = "{\n" +
+                "  \"resource\": \"/movies/suggest\",\n" +
+                "  \"path\": \"/movies/suggest\",\n" +
+                "  \"httpMethod\": \"GET\",\n" +
+                "  \"queryStringParameters\": {\n" +
+                "    \"q\": \"" + query + "\"\n" +
+                "  },\n" +
+                "  \"pathParameters\": null\n" +
+                "}";
+
+        return new ByteArrayInputStream(event.getBytes());
+    }
+
+    private static InputStream getCountryInput(final String country, final String limit, final String nextToken) {
+        final var event = "{\n" +
+                "  \"resource\": \"/movies\",\n" +
+                "  \"path\": \"/movies\",\n" +
+                "  \"httpMethod\": \"GET\",\n" +
+                "  \"queryStringParameters\": {\n" +
+                "    \"country\": \"" + country + "\",\n" +
+                (nextToken == null ? "" : "    \"nextToken\": \"" + nextToken + "\",\n") +
+                "    \"limit\": \"" + limit + "\"\n" +
+                "  },\n" +
+                "  \"pathParameters\": null\n" +
+                "}";
+
+        return new ByteArrayInputStream(event.getBytes());
+    }
+
     private static InputStream getCorrectInput(final String movieId) {
         final var event = "{\n" +
                 "  \"body\": \"eyJ0ZXN0IjoiYm9keSJ9\",\n" +
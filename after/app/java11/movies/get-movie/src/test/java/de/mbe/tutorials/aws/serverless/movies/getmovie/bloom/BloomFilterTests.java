@@ -0,0 +1,73 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.bloom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class BloomFilterTests {
+
+    @Test
+    void insertedValuesAreAlwaysFound() {
+
+        final var bloomFilter = BloomFilter.create(10_000, 0.01);
+        final var movieIds = new ArrayList<String>();
+
+        for (var i = 0; i < 10_000; i++) {
+            final var movieId = UUID.randomUUID().toString();
+            movieIds.add(movieId);
+            bloomFilter.put(movieId);
+        }
+
+        movieIds.forEach(movieId -> assertTrue(bloomFilter.mightContain(movieId)));
+    }
+
+    @Test
+    void falsePositiveRateStaysCloseToTheConfiguredOne() {
+
+        final var bloomFilter = BloomFilter.create(10_000, 0.01);
+        for (var i = 0; i < 10_000; i++) {
+            bloomFilter.put("tt" + i);
+        }
+
+        var falsePositives = 0;
+        for (var i = 0; i < 100_000; i++) {
+            if (bloomFilter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 2_000, "falsePositives: " + falsePositives);
+    }
+
+    @Test
+    void snapshotsRoundTrip() throws IOException {
+
+        final var bloomFilter = BloomFilter.create(1_000, 0.01);
+        for (var i = 0; i < 1_000; i++) {
+            bloomFilter.put("tt" + i);
+        }
+
+        final var output = new ByteArrayOutputStream();
+        bloomFilter.writeTo(output);
+
+        final var copy = BloomFilter.readFrom(new ByteArrayInputStream(output.toByteArray()));
+
+        assertEquals(bloomFilter.bitSize(), copy.bitSize());
+        assertEquals(bloomFilter.numHashFunctions(), copy.numHashFunctions());
+        for (var i = 0; i < 1_000; i++) {
+            assertTrue(copy.mightContain("tt" + i));
+        }
+    }
+
+    @Test
+    void disabledFilterLetsEverythingThrough() {
+        assertTrue(MovieIdsFilter.disabled().mightContain(UUID.randomUUID().toString()));
+        assertEquals(0, MovieIdsFilter.disabled().getRuledOut());
+    }
+}
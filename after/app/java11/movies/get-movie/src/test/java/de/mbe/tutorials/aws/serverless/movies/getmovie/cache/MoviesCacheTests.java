@@ -0,0 +1,100 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.cache;
+
+import de.mbe.tutorials.aws.serverless.movies.getmovie.TestUtils;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.Movie;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class MoviesCacheTests implements TestUtils {
+
+    @Test
+    void repeatedLookupsAreServedFromCache() {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var expectedMovie = getRandomMovie(movieId);
+        final var loads = new AtomicInteger();
+
+        final var moviesCache = new MoviesCache(10, Duration.ofMinutes(1));
+
+        for (var i = 0; i < 3; i++) {
+            final var actualMovie = moviesCache.getMovieById(movieId, id -> {
+                loads.incrementAndGet();
+                return expectedMovie;
+            });
+            assertEquals(expectedMovie, actualMovie);
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(2, moviesCache.stats().hitCount());
+        assertEquals(1, moviesCache.stats().missCount());
+    }
+
+    @Test
+    void batchLookupsOnlyLoadTheMissingMovies() {
+
+        final var cachedMovie = getRandomMovie(UUID.randomUUID().toString());
+        final var missingMovie = getRandomMovie(UUID.randomUUID().toString());
+        final var unknownMovieId = UUID.randomUUID().toString();
+
+        final var moviesCache = new MoviesCache(10, Duration.ofMinutes(1));
+        moviesCache.put(cachedMovie.getMovieId(), cachedMovie);
+
+        final var requestedMovieIds = List.of(cachedMovie.getMovieId(), missingMovie.getMovieId(), unknownMovieId);
+        final var actualMovies = moviesCache.getMoviesByIds(requestedMovieIds, movieIds -> {
+            assertEquals(Set.of(missingMovie.getMovieId(), unknownMovieId), movieIds);
+            final var movies = new HashMap<String, Movie>();
+            movies.put(missingMovie.getMovieId(), missingMovie);
+            return movies;
+        });
+
+        assertEquals(Map.of(cachedMovie.getMovieId(), cachedMovie, missingMovie.getMovieId(), missingMovie), actualMovies);
+    }
+
+    @Test
+    void unknownMoviesAreNotCached() {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var loads = new AtomicInteger();
+
+        final var moviesCache = new MoviesCache(10, Duration.ofMinutes(1));
+
+        for (var i = 0; i < 2; i++) {
+            assertNull(moviesCache.getMovieById(movieId, id -> {
+                loads.incrementAndGet();
+                return null;
+            }));
+        }
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void disabledCacheAlwaysCallsTheLoader() {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var expectedMovie = getRandomMovie(movieId);
+        final var loads = new AtomicInteger();
+
+        final var moviesCache = MoviesCache.disabled();
+
+        for (var i = 0; i < 2; i++) {
+            assertEquals(expectedMovie, moviesCache.getMovieById(movieId, id -> {
+                loads.incrementAndGet();
+                return expectedMovie;
+            }));
+        }
+
+        assertFalse(moviesCache.isEnabled());
+        assertEquals(2, loads.get());
+        assertEquals(0, moviesCache.stats().requestCount());
+    }
+}
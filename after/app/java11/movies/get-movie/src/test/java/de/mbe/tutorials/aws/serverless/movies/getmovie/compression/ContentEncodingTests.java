@@ -0,0 +1,33 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.compression;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ContentEncodingTests {
+
+    @Test
+    void gzipIsPreferredOnEqualQuality() {
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("gzip, deflate, sdch"));
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("deflate, GZIP"));
+    }
+
+    @Test
+    void higherQualityWins() {
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0.5, deflate;q=0.8"));
+        assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0, deflate"));
+    }
+
+    @Test
+    void wildcardFallsBackToGzip() {
+        assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("br, *"));
+        assertNull(ContentEncoding.negotiate("br, *;q=0"));
+    }
+
+    @Test
+    void missingOrUnsupportedEncodingsAreNotCompressed() {
+        assertNull(ContentEncoding.negotiate(null));
+        assertNull(ContentEncoding.negotiate(""));
+        assertNull(ContentEncoding.negotiate("identity, br"));
+    }
+}
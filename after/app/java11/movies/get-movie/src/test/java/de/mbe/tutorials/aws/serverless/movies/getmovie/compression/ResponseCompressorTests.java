@@ -0,0 +1,60 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ResponseCompressorTests {
+
+    private static final byte[] BODY = "{\"movieId\":\"tt0133093\",\"name\":\"The Matrix\"},".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void gzipRoundTrip() throws IOException {
+
+        final var responseCompressor = new ResponseCompressor(1_024, Deflater.DEFAULT_COMPRESSION, 2);
+
+        // the second round runs on a pooled, reset deflater
+        for (var i = 0; i < 2; i++) {
+            final var compressed = responseCompressor.compress(ContentEncoding.GZIP, BODY, BODY.length);
+            assertTrue(compressed.length < BODY.length);
+            assertArrayEquals(BODY, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        }
+
+        assertEquals(2, responseCompressor.getCompressedResponses());
+        assertTrue(responseCompressor.getCompressionRatio() > 1.0);
+    }
+
+    @Test
+    void deflateRoundTrip() throws IOException {
+
+        final var responseCompressor = new ResponseCompressor(1_024, Deflater.BEST_SPEED, 2);
+
+        final var compressed = responseCompressor.compress(ContentEncoding.DEFLATE, BODY, BODY.length);
+
+        assertArrayEquals(BODY, readAll(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    void onlyBodiesAboveTheMinimumSizeAreCompressible() {
+
+        final var responseCompressor = new ResponseCompressor(1_024, Deflater.DEFAULT_COMPRESSION, 2);
+
+        assertFalse(responseCompressor.isCompressible(1_023));
+        assertTrue(responseCompressor.isCompressible(1_024));
+        assertFalse(ResponseCompressor.disabled().isCompressible(Integer.MAX_VALUE));
+    }
+
+    private static byte[] readAll(final InputStream input) throws IOException {
+        try (input) {
+            return input.readAllBytes();
+        }
+    }
+}
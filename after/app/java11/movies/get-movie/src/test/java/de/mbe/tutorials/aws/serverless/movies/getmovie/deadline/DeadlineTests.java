@@ -0,0 +1,86 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.deadline;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class DeadlineTests {
+
+    @Test
+    void withoutDeadlineRequestsAreLeftAlone() {
+
+        assertFalse(Deadline.current().isBounded());
+
+        final var request = Deadline.current().apply(GetItemRequest.builder()).build();
+
+        assertTrue(request.overrideConfiguration().isEmpty());
+    }
+
+    @Test
+    void remainingTimeBoundsTheApiCallTimeouts() {
+
+        final var context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(3_000);
+
+        try (final var deadline = new DeadlinePolicy(29_000, 250, 2_000).start(context)) {
+
+            assertSame(deadline, Deadline.current());
+
+            final var overrideConfiguration = Deadline.current().apply(GetItemRequest.builder()).build().overrideConfiguration().orElseThrow();
+            final var apiCallTimeout = overrideConfiguration.apiCallTimeout().orElseThrow();
+
+            assertTrue(apiCallTimeout.compareTo(Duration.ofMillis(2_750)) <= 0);
+            assertTrue(apiCallTimeout.compareTo(Duration.ofMillis(2_000)) > 0);
+            assertEquals(Duration.ofMillis(2_000), overrideConfiguration.apiCallAttemptTimeout().orElseThrow());
+        }
+
+        assertFalse(Deadline.current().isBounded());
+    }
+
+    @Test
+    void maxDurationCapsLongRemainingTimes() {
+
+        final var context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(900_000);
+
+        try (final var deadline = new DeadlinePolicy(29_000, 250, 2_000).start(context)) {
+            assertTrue(deadline.remainingMillis() <= 29_000);
+        }
+    }
+
+    @Test
+    void passedDeadlineFailsTheCallUpFront() {
+
+        final var context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(100);
+
+        try (final var deadline = new DeadlinePolicy(29_000, 250, 2_000).start(context)) {
+            assertEquals(0, deadline.remainingMillis());
+            assertThrows(ApiCallTimeoutException.class, () -> deadline.apply(GetItemRequest.builder()));
+        }
+    }
+
+    @Test
+    void propagatedDeadlineIsCurrentOnTheOtherThread() throws Exception {
+
+        final var executorService = Executors.newSingleThreadExecutor();
+        final var deadline = new Deadline(System.currentTimeMillis() + 10_000, 2_000);
+
+        try {
+
+            assertSame(deadline, executorService.submit(deadline.propagate(Deadline::current)).get());
+            assertFalse(executorService.submit(Deadline::current).get().isBounded());
+
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class HedgingPolicyTests {
+
+    private static final Duration DELAY = Duration.ofMillis(20);
+
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void beforeEach() {
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void afterEach() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void slowCallsAreHedgedAndTheFasterAnswerWins() {
+
+        // a budget of one token per call allows a hedge for every call
+        final var hedgingPolicy = new HedgingPolicy(true, 95, 1, DELAY, DELAY, executorService);
+        final var attempts = new AtomicInteger();
+
+        final var result = hedgingPolicy.execute(() -> attempts.incrementAndGet() == 1 ? sleepAndReturn(2_000, "primary") : "hedge");
+
+        assertEquals("hedge", result);
+        assertEquals(2, attempts.get());
+        assertEquals(1, hedgingPolicy.getCalls());
+        assertEquals(1, hedgingPolicy.getHedges());
+        assertEquals(1, hedgingPolicy.getHedgeWins());
+        assertEquals(1.0, hedgingPolicy.getHedgeRate());
+    }
+
+    @Test
+    void fastCallsAreNotHedged() {
+
+        final var hedgingPolicy = new HedgingPolicy(true, 95, 1, DELAY, DELAY, executorService);
+        final var attempts = new AtomicInteger();
+
+        assertEquals("primary", hedgingPolicy.execute(() -> {
+            attempts.incrementAndGet();
+            return "primary";
+        }));
+
+        assertEquals(1, attempts.get());
+        assertEquals(0, hedgingPolicy.getHedges());
+    }
+
+    @Test
+    void hedgesStayWithinTheBudget() {
+
+        // 5% of one call is not enough for a whole hedge
+        final var hedgingPolicy = new HedgingPolicy(true, 95, 0.05, DELAY, DELAY, executorService);
+        final var attempts = new AtomicInteger();
+
+        assertEquals("primary", hedgingPolicy.execute(() -> {
+            attempts.incrementAndGet();
+            return sleepAndReturn(100, "primary");
+        }));
+
+        assertEquals(1, attempts.get());
+        assertEquals(0, hedgingPolicy.getHedges());
+    }
+
+    @Test
+    void failuresPropagateOnceBothCallsHaveFailed() {
+
+        final var hedgingPolicy = new HedgingPolicy(true, 95, 1, DELAY, DELAY, executorService);
+        final var error = DynamoDbException.builder().statusCode(500).message("Boom").build();
+
+        final var fastFailure = assertThrows(DynamoDbException.class, () -> hedgingPolicy.execute(() -> {
+            throw error;
+        }));
+        assertSame(error, fastFailure);
+
+        final var slowFailure = assertThrows(DynamoDbException.class, () -> hedgingPolicy.execute(() -> {
+            sleepAndReturn(100, null);
+            throw error;
+        }));
+        assertSame(error, slowFailure);
+        assertEquals(1, hedgingPolicy.getHedges());
+        assertEquals(0, hedgingPolicy.getHedgeWins());
+    }
+
+    @Test
+    void callsRunOnTheCallerThreadOnceEveryThreadIsBusy() {
+
+        final var singleThread = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+        final var release = new CountDownLatch(1);
+
+        try {
+            singleThread.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException error) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            final var hedgingPolicy = new HedgingPolicy(true, 95, 1, DELAY, DELAY, singleThread);
+            final var caller = Thread.currentThread();
+
+            assertEquals(caller.getName(), hedgingPolicy.execute(() -> Thread.currentThread().getName()));
+            assertEquals(1, hedgingPolicy.getSaturatedCalls());
+            assertEquals(0, hedgingPolicy.getHedges());
+        } finally {
+            release.countDown();
+            singleThread.shutdown();
+        }
+    }
+
+    @Test
+    void disabledPolicyCallsDirectly() {
+
+        final var hedgingPolicy = HedgingPolicy.disabled();
+
+        assertEquals("direct", hedgingPolicy.execute(() -> "direct"));
+        assertEquals(0, hedgingPolicy.getCalls());
+    }
+
+    private static <V> V sleepAndReturn(final long millis, final V value) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,55 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class MovieItemJsonWriterTests {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Test
+    void writesTheSameJsonAsTheMoviePath() throws IOException {
+
+        final var item = Map.of(
+                "movieId", AttributeValue.builder().s(UUID.randomUUID().toString()).build(),
+                "name", AttributeValue.builder().s("The \"Quoted\" Movie").build(),
+                "countryOfOrigin", AttributeValue.builder().s("DE").build(),
+                "releaseDate", AttributeValue.builder().s("2020-05-15").build(),
+                "rottenTomatoesRating", AttributeValue.builder().n("87").build(),
+                "imdbRating", AttributeValue.builder().n("79").build(),
+                "version", AttributeValue.builder().n("3").build(),
+                "lastModified", AttributeValue.builder().n("1589535000000").build());
+
+        final var movieItemJsonWriter = new MovieItemJsonWriter();
+        movieItemJsonWriter.write(item);
+
+        assertEquals(OBJECT_MAPPER.writeValueAsString(MoviesDynamoDbRepository.convert(item)), movieItemJsonWriter.toString());
+    }
+
+    @Test
+    void skipsAbsentAttributesAndReusesTheBuffer() throws IOException {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movieItemJsonWriter = new MovieItemJsonWriter();
+
+        movieItemJsonWriter.write(Map.of(
+                "movieId", AttributeValue.builder().s(UUID.randomUUID().toString()).build(),
+                "name", AttributeValue.builder().s(UUID.randomUUID().toString()).build()));
+        final var buffer = movieItemJsonWriter.getBuffer();
+
+        movieItemJsonWriter.write(Map.of(
+                "movieId", AttributeValue.builder().s(movieId).build(),
+                "imdbRating", AttributeValue.builder().n("79").build()));
+
+        assertSame(buffer, movieItemJsonWriter.getBuffer());
+        assertEquals("{\"movieId\":\"" + movieId + "\",\"imdbRating\":79}", movieItemJsonWriter.toString());
+        assertEquals(movieItemJsonWriter.toString().length(), movieItemJsonWriter.size());
+    }
+}
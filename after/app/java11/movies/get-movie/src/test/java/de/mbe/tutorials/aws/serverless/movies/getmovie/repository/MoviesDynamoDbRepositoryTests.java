@@ -2,6 +2,7 @@ package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
 
 import de.mbe.tutorials.aws.serverless.movies.getmovie.TestUtils;
 import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.Movie;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.repository.models.MovieField;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,11 +14,17 @@ import software.amazon.awssdk.services.dynamodb.model.*;
 
 import java.net.URI;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @Testcontainers
 public class MoviesDynamoDbRepositoryTests implements TestUtils {
@@ -47,11 +54,40 @@ public class MoviesDynamoDbRepositoryTests implements TestUtils {
                 .attributeDefinitions(AttributeDefinition.builder()
                         .attributeName("movieId")
                         .attributeType(ScalarAttributeType.S)
+                        .build(), AttributeDefinition.builder()
+                        .attributeName("countryOfOrigin")
+                        .attributeType(ScalarAttributeType.S)
+                        .build(), AttributeDefinition.builder()
+                        .attributeName(Leaderboard.IMDB.getPartitionAttribute())
+                        .attributeType(ScalarAttributeType.S)
+                        .build(), AttributeDefinition.builder()
+                        .attributeName(Leaderboard.IMDB.getRatingAttribute())
+                        .attributeType(ScalarAttributeType.N)
+                        .build(), AttributeDefinition.builder()
+                        .attributeName(Leaderboard.ROTTEN_TOMATOES.getPartitionAttribute())
+                        .attributeType(ScalarAttributeType.S)
+                        .build(), AttributeDefinition.builder()
+                        .attributeName(Leaderboard.ROTTEN_TOMATOES.getRatingAttribute())
+                        .attributeType(ScalarAttributeType.N)
                         .build())
                 .keySchema(KeySchemaElement.builder()
                         .attributeName("movieId")
                         .keyType(KeyType.HASH)
                         .build())
+                .globalSecondaryIndexes(GlobalSecondaryIndex.builder()
+                        .indexName(MoviesDynamoDbRepository.COUNTRY_OF_ORIGIN_INDEX)
+                        .keySchema(KeySchemaElement.builder()
+                                .attributeName("countryOfOrigin")
+                                .keyType(KeyType.HASH)
+                                .build())
+                        .projection(Projection.builder()
+                                .projectionType(ProjectionType.ALL)
+                                .build())
+                        .provisionedThroughput(ProvisionedThroughput.builder()
+                                .readCapacityUnits(1L)
+                                .writeCapacityUnits(1L)
+                                .build())
+                        .build(), getLeaderboardIndex(Leaderboard.IMDB), getLeaderboardIndex(Leaderboard.ROTTEN_TOMATOES))
                 .provisionedThroughput(ProvisionedThroughput.builder()
                         .readCapacityUnits(1L)
                         .writeCapacityUnits(1L)
@@ -82,6 +118,152 @@ public class MoviesDynamoDbRepositoryTests implements TestUtils {
         assertEquals(expectedMovie, actualMovie);
     }
 
+    @Test
+    void testGetMovieByIdWithEventualReadConsistency() {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var expectedMovie = getRandomMovie(movieId);
+
+        dynamoDbClient.putItem(PutItemRequest.builder()
+                .tableName(MOVIES_TABLE)
+                .item(convertToDynamoDBItem(expectedMovie))
+                .build());
+
+        final var actualMovie = moviesDynamoDbRepository.getMovieById(movieId, ReadConsistency.EVENTUAL);
+
+        assertNotNull(actualMovie);
+        assertEquals(expectedMovie, actualMovie);
+    }
+
+    @Test
+    void testGetMovieByIdWithFields() {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movie = getRandomMovie(movieId);
+
+        dynamoDbClient.putItem(PutItemRequest.builder()
+                .tableName(MOVIES_TABLE)
+                .item(convertToDynamoDBItem(movie))
+                .build());
+
+        final var fields = EnumSet.of(MovieField.NAME, MovieField.IMDB_RATING, MovieField.ROTTEN_TOMATOES_RATING);
+        final var actualMovie = moviesDynamoDbRepository.getMovieById(movieId, ReadConsistency.EVENTUAL, fields);
+
+        final var expectedMovie = new Movie();
+        expectedMovie.setMovieId(movieId);
+        expectedMovie.setName(movie.getName());
+        expectedMovie.setImdbRating(movie.getImdbRating());
+        expectedMovie.setRottenTomatoesRating(movie.getRottenTomatoesRating());
+
+        assertNotNull(actualMovie);
+        assertEquals(expectedMovie, actualMovie);
+    }
+
+    @Test
+    void testGetMoviesByIds() {
+
+        final var movieIds = new ArrayList<String>();
+        final var expectedMovies = new ArrayList<Movie>();
+
+        for (var i = 0; i < 250; i++) {
+            final var movieId = UUID.randomUUID().toString();
+            final var expectedMovie = getRandomMovie(movieId);
+
+            dynamoDbClient.putItem(PutItemRequest.builder()
+                    .tableName(MOVIES_TABLE)
+                    .item(convertToDynamoDBItem(expectedMovie))
+                    .build());
+
+            movieIds.add(movieId);
+            expectedMovies.add(expectedMovie);
+        }
+
+        final var unknownMovieId = UUID.randomUUID().toString();
+        movieIds.add(unknownMovieId);
+        movieIds.add(movieIds.get(0));
+
+        final var actualMovies = moviesDynamoDbRepository.getMoviesByIds(movieIds, ReadConsistency.EVENTUAL);
+
+        assertEquals(expectedMovies.size(), actualMovies.size());
+        for (final var expectedMovie : expectedMovies) {
+            assertEquals(expectedMovie, actualMovies.get(expectedMovie.getMovieId()));
+        }
+        assertNull(actualMovies.get(unknownMovieId));
+    }
+
+    @Test
+    void testGetMoviesByCountry() {
+
+        final var countryOfOrigin = UUID.randomUUID().toString();
+        final var expectedMovies = new HashSet<Movie>();
+
+        for (var i = 0; i < 5; i++) {
+            final var expectedMovie = getRandomMovie(UUID.randomUUID().toString());
+            expectedMovie.setCountryOfOrigin(countryOfOrigin);
+            expectedMovies.add(expectedMovie);
+
+            dynamoDbClient.putItem(PutItemRequest.builder()
+                    .tableName(MOVIES_TABLE)
+                    .item(convertToDynamoDBItem(expectedMovie))
+                    .build());
+        }
+
+        final var actualMovies = new HashSet<Movie>();
+        var moviesPage = moviesDynamoDbRepository.getMoviesByCountry(countryOfOrigin, 2, null);
+        actualMovies.addAll(moviesPage.getMovies());
+
+        while (moviesPage.hasMore()) {
+            assertEquals(2, moviesPage.getMovies().size());
+            moviesPage = moviesDynamoDbRepository.getMoviesByCountry(countryOfOrigin, 2, moviesPage.getLastEvaluatedKey());
+            actualMovies.addAll(moviesPage.getMovies());
+        }
+
+        assertEquals(expectedMovies, actualMovies);
+    }
+
+    @Test
+    void testGetTopMovies() {
+
+        final var expectedMovies = new ArrayList<Movie>();
+
+        for (var imdbRating = 10; imdbRating <= 50; imdbRating += 10) {
+            final var movie = getRandomMovie(UUID.randomUUID().toString());
+            movie.setImdbRating(imdbRating);
+            expectedMovies.add(0, movie);
+
+            final var item = new HashMap<>(convertToDynamoDBItem(movie));
+            item.put(Leaderboard.IMDB.getPartitionAttribute(), AttributeValue.builder().s(Leaderboard.IMDB.getPartitionValue()).build());
+
+            dynamoDbClient.putItem(PutItemRequest.builder()
+                    .tableName(MOVIES_TABLE)
+                    .item(item)
+                    .build());
+        }
+
+        assertEquals(expectedMovies.subList(0, 3), moviesDynamoDbRepository.getTopMovies(Leaderboard.IMDB, 3));
+        assertEquals(List.of(), moviesDynamoDbRepository.getTopMovies(Leaderboard.ROTTEN_TOMATOES, 3));
+    }
+
+    private static GlobalSecondaryIndex getLeaderboardIndex(final Leaderboard leaderboard) {
+        return GlobalSecondaryIndex.builder()
+                .indexName(leaderboard.getIndexName())
+                .keySchema(KeySchemaElement.builder()
+                        .attributeName(leaderboard.getPartitionAttribute())
+                        .keyType(KeyType.HASH)
+                        .build(), KeySchemaElement.builder()
+                        .attributeName(leaderboard.getRatingAttribute())
+                        .keyType(KeyType.RANGE)
+                        .build())
+                .projection(Projection.builder()
+                        .projectionType(ProjectionType.ALL)
+                        .build())
+                .provisionedThroughput(ProvisionedThroughput.builder()
+                        .readCapacityUnits(1L)
+                        .writeCapacityUnits(1L)
+                        .build())
+                .build();
+    }
+
     private static Map<String, AttributeValue> convertToDynamoDBItem(final Movie movie) {
         return Map.ofEntries(
                 new AbstractMap.SimpleEntry<>("movieId", AttributeValue.builder().s(movie.getMovieId()).build()),
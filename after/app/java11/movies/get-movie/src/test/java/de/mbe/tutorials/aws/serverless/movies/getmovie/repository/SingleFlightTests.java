@@ -0,0 +1,117 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.repository;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class SingleFlightTests {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    void concurrentCallersShareOneCall() throws Exception {
+
+        final var singleFlight = new SingleFlight<String, String>();
+        final var calls = new AtomicInteger();
+        final var release = new CountDownLatch(1);
+        final var executorService = Executors.newFixedThreadPool(CALLERS);
+
+        try {
+
+            final var futures = new ArrayList<Future<String>>();
+            for (var i = 0; i < CALLERS; i++) {
+                futures.add(executorService.submit(() -> singleFlight.execute("tt0133093", () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return "The Matrix";
+                })));
+            }
+
+            waitForCollapsedCalls(singleFlight, CALLERS - 1);
+            release.countDown();
+
+            for (final var future : futures) {
+                assertEquals("The Matrix", future.get(10, TimeUnit.SECONDS));
+            }
+
+            assertEquals(1, calls.get());
+            assertEquals(CALLERS - 1, singleFlight.getCollapsedCalls());
+
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void failuresReachEveryCaller() throws Exception {
+
+        final var singleFlight = new SingleFlight<String, String>();
+        final var release = new CountDownLatch(1);
+        final var executorService = Executors.newFixedThreadPool(CALLERS);
+        final var error = DynamoDbException.builder().statusCode(500).message("Boom").build();
+
+        try {
+
+            final var futures = new ArrayList<Future<String>>();
+            for (var i = 0; i < CALLERS; i++) {
+                futures.add(executorService.submit(() -> singleFlight.execute("tt0133093", () -> {
+                    await(release);
+                    throw error;
+                })));
+            }
+
+            waitForCollapsedCalls(singleFlight, CALLERS - 1);
+            release.countDown();
+
+            for (final var future : futures) {
+                final var thrown = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+                assertSame(error, thrown.getCause());
+            }
+
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void completedCallsAreNotRemembered() {
+
+        final var singleFlight = new SingleFlight<String, String>();
+        final var calls = new AtomicInteger();
+
+        assertNull(singleFlight.execute("tt0133093", () -> {
+            calls.incrementAndGet();
+            return null;
+        }));
+        assertEquals("The Matrix", singleFlight.execute("tt0133093", () -> {
+            calls.incrementAndGet();
+            return "The Matrix";
+        }));
+
+        assertEquals(2, calls.get());
+        assertEquals(0, singleFlight.getCollapsedCalls());
+    }
+
+    private static void waitForCollapsedCalls(final SingleFlight<?, ?> singleFlight, final long expected) throws InterruptedException {
+        for (var attempt = 0; attempt < 200 && singleFlight.getCollapsedCalls() < expected; attempt++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package de.mbe.tutorials.aws.serverless.movies.getmovie.suggest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class MovieNamesIndexTests {
+
+    private static final Map<String, String> NAMES_BY_MOVIE_ID = Map.of(
+            "tt0133093", "The Matrix",
+            "tt0234215", "The Matrix Reloaded",
+            "tt0242653", "The Matrix Revolutions",
+            "tt0211915", "Amélie",
+            "tt0316654", "Spider-Man 2",
+            "tt0110912", "Pulp Fiction");
+
+    @Test
+    void prefixesMatchIgnoringCaseAccentsAndPunctuation() {
+
+        final var movieNamesIndex = MovieNamesIndex.build(NAMES_BY_MOVIE_ID);
+
+        assertEquals(6, movieNamesIndex.size());
+        assertEquals(List.of(entry("tt0211915", "Amélie")), movieNamesIndex.suggest("AME", 10));
+        assertEquals(List.of(entry("tt0316654", "Spider-Man 2")), movieNamesIndex.suggest("spider m", 10));
+        assertEquals(List.of(), movieNamesIndex.suggest("matrix", 10));
+    }
+
+    @Test
+    void matchesAreOrderedByNameAndLimited() {
+
+        final var movieNamesIndex = MovieNamesIndex.build(NAMES_BY_MOVIE_ID);
+
+        assertEquals(List.of(entry("tt0133093", "The Matrix"), entry("tt0234215", "The Matrix Reloaded"), entry("tt0242653", "The Matrix Revolutions")),
+                movieNamesIndex.suggest("the matrix", 10));
+        assertEquals(List.of(entry("tt0133093", "The Matrix"), entry("tt0234215", "The Matrix Reloaded")),
+                movieNamesIndex.suggest("the matrix", 2));
+    }
+
+    @Test
+    void moviesWithoutNameAreLeftOut() {
+
+        final var namesByMovieId = new HashMap<>(NAMES_BY_MOVIE_ID);
+        namesByMovieId.put("tt0000001", null);
+        namesByMovieId.put("tt0000002", " - ");
+
+        assertEquals(6, MovieNamesIndex.build(namesByMovieId).size());
+    }
+
+    @Test
+    void snapshotCanBeMappedFromAFile(@TempDir final Path directory) throws IOException {
+
+        final var snapshot = new ByteArrayOutputStream();
+        MovieNamesIndex.build(NAMES_BY_MOVIE_ID).writeTo(snapshot);
+
+        final var file = directory.resolve("movie-names.idx");
+        Files.write(file, snapshot.toByteArray());
+
+        final var movieNamesIndex = MovieNamesIndex.map(file);
+
+        assertEquals(snapshot.size(), movieNamesIndex.byteSize());
+        assertEquals(List.of(entry("tt0110912", "Pulp Fiction")), movieNamesIndex.suggest("pulp", 10));
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() {
+
+        final var snapshot = new ByteArrayOutputStream();
+        assertDoesNotThrow(() -> MovieNamesIndex.build(NAMES_BY_MOVIE_ID).writeTo(snapshot));
+
+        final var truncated = ByteBuffer.wrap(snapshot.toByteArray(), 0, snapshot.size() - 1);
+
+        assertThrows(IllegalArgumentException.class, () -> MovieNamesIndex.wrap(truncated));
+    }
+
+    private static Map.Entry<String, String> entry(final String movieId, final String name) {
+        return new AbstractMap.SimpleImmutableEntry<>(movieId, name);
+    }
+}
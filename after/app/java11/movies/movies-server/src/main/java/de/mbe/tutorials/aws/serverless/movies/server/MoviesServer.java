@@ -0,0 +1,292 @@
+package de.mbe.tutorials.aws.serverless.movies.server;
+
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.mbe.tutorials.aws.serverless.movies.getmovie.FnGetMovie;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.FnUpdateMovieRating;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind.InMemoryRatingUpdatesQueue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class MoviesServer {
+
+    private static final Logger LOGGER = LogManager.getLogger(MoviesServer.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    // the SDK's Apache client pools 50 connections, more workers than that would only queue up inside the client
+    private static final int DEFAULT_SERVER_WORKER_THREADS = 32;
+    private static final int DEFAULT_SERVER_QUEUE_CAPACITY = 128;
+    // API Gateway gives up on an integration after 29 seconds, the handlers get the same budget here
+    private static final long DEFAULT_SERVER_REQUEST_TIMEOUT_MILLIS = 29_000;
+    private static final int DEFAULT_SERVER_SHUTDOWN_GRACE_SECONDS = 10;
+    private static final int DEFAULT_RATING_UPDATES_QUEUE_CAPACITY = 10_000;
+    private static final int DEFAULT_RATING_UPDATES_BATCH_SIZE = 100;
+    private static final long DEFAULT_RATING_UPDATES_BATCH_WINDOW_MILLIS = 500;
+
+    private static final String MOVIES_PATH = "/movies";
+    private static final String MOVIE_RESOURCE = MOVIES_PATH + "/{movieId}";
+    private static final String RATING_PATH_SEGMENT = "rating";
+    private static final String RATINGS_PATH_SEGMENT = "ratings";
+    private static final String SUGGEST_PATH_SEGMENT = "suggest";
+    private static final String TOP_PATH_SEGMENT = "top";
+    private static final String VOTES_PATH_SEGMENT = "votes";
+
+    private final HttpServer httpServer;
+    private final ThreadPoolExecutor workers;
+    private final long requestTimeoutMillis;
+    private final RequestStreamHandler fnGetMovie;
+    private final RequestStreamHandler fnUpdateMovieRating;
+    private final LongAdder servedRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    public MoviesServer(final int port, final int workerThreads, final int queueCapacity, final long requestTimeoutMillis,
+                        final RequestStreamHandler fnGetMovie, final RequestStreamHandler fnUpdateMovieRating) throws IOException {
+
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.fnGetMovie = fnGetMovie;
+        this.fnUpdateMovieRating = fnUpdateMovieRating;
+
+        final var threadNumber = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            final var thread = new Thread(runnable, "movies-server-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers.prestartAllCoreThreads();
+
+        // the dispatcher thread only routes, handlers run on the bounded worker pool
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.createContext(MOVIES_PATH, this::dispatch);
+    }
+
+    public static void main(final String[] args) throws IOException {
+
+        final var port = Optional.ofNullable(System.getenv("SERVER_PORT"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_SERVER_PORT);
+
+        final var workerThreads = Optional.ofNullable(System.getenv("SERVER_WORKER_THREADS"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_SERVER_WORKER_THREADS);
+
+        final var queueCapacity = Optional.ofNullable(System.getenv("SERVER_QUEUE_CAPACITY"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_SERVER_QUEUE_CAPACITY);
+
+        final var requestTimeoutMillis = Optional.ofNullable(System.getenv("SERVER_REQUEST_TIMEOUT_MILLIS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_SERVER_REQUEST_TIMEOUT_MILLIS);
+
+        final var shutdownGraceSeconds = Optional.ofNullable(System.getenv("SERVER_SHUTDOWN_GRACE_SECONDS"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_SERVER_SHUTDOWN_GRACE_SECONDS);
+
+        // one client, and so one connection pool, for both handlers; there is no X-Ray segment to attach
+        // subsegments to outside of Lambda, so the tracing interceptor is left out
+        final var dynamoDbClient = DynamoDbClient.create();
+        final var dynamoDbAsyncClient = DynamoDbAsyncClient.create();
+
+        // write-behind runs against an in-memory queue in place of SQS, drained by the same handler that fills it
+        final var ratingUpdatesQueue = Optional.ofNullable(System.getenv("RATING_UPDATES_WRITE_BEHIND"))
+                .map(Boolean::parseBoolean)
+                .orElse(false) ? ratingUpdatesQueue() : null;
+
+        final var fnUpdateMovieRating = new FnUpdateMovieRating(dynamoDbClient, dynamoDbAsyncClient, ratingUpdatesQueue);
+
+        final var moviesServer = new MoviesServer(port, workerThreads, queueCapacity, requestTimeoutMillis,
+                new FnGetMovie(dynamoDbClient), fnUpdateMovieRating);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            moviesServer.stop(shutdownGraceSeconds);
+            if (ratingUpdatesQueue != null) {
+                closeRatingUpdatesQueue(ratingUpdatesQueue);
+            }
+            fnUpdateMovieRating.close();
+            dynamoDbClient.close();
+            dynamoDbAsyncClient.close();
+        }, "movies-server-shutdown"));
+
+        if (ratingUpdatesQueue != null) {
+            ratingUpdatesQueue.start(fnUpdateMovieRating);
+        }
+
+        moviesServer.start();
+    }
+
+    private static InMemoryRatingUpdatesQueue ratingUpdatesQueue() {
+
+        final var capacity = Optional.ofNullable(System.getenv("RATING_UPDATES_QUEUE_CAPACITY"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_RATING_UPDATES_QUEUE_CAPACITY);
+
+        final var batchSize = Optional.ofNullable(System.getenv("RATING_UPDATES_BATCH_SIZE"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_RATING_UPDATES_BATCH_SIZE);
+
+        final var batchWindowMillis = Optional.ofNullable(System.getenv("RATING_UPDATES_BATCH_WINDOW_MILLIS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_RATING_UPDATES_BATCH_WINDOW_MILLIS);
+
+        return new InMemoryRatingUpdatesQueue(capacity, batchSize, Duration.ofMillis(batchWindowMillis));
+    }
+
+    private static void closeRatingUpdatesQueue(final InMemoryRatingUpdatesQueue ratingUpdatesQueue) {
+
+        // the server no longer accepts PATCHes, what they queued is written before the clients are closed
+        LOGGER.info("Writing the {} queued rating updates", ratingUpdatesQueue.getDepth());
+        ratingUpdatesQueue.close();
+    }
+
+    public void start() {
+        httpServer.start();
+        LOGGER.info("Movies server listening on port {} with {} workers", getPort(), workers.getCorePoolSize());
+    }
+
+    public void stop(final int graceSeconds) {
+
+        LOGGER.info("Stopping the movies server, waiting up to {} seconds for {} requests in flight",
+                graceSeconds, workers.getActiveCount() + workers.getQueue().size());
+
+        // no new connections are accepted, the exchanges already handed to the workers are allowed to finish
+        httpServer.stop(graceSeconds);
+        workers.shutdown();
+
+        try {
+            if (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException error) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        LOGGER.info("Movies server stopped, servedRequests: {}, rejectedRequests: {}", servedRequests.sum(), rejectedRequests.sum());
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public int getQueuedRequests() {
+        return workers.getQueue().size();
+    }
+
+    private void dispatch(final HttpExchange exchange) throws IOException {
+
+        // the context matches on the prefix alone, /moviesfoo ends up here as well
+        final var path = exchange.getRequestURI().getPath().substring(MOVIES_PATH.length());
+        if (!path.isEmpty() && !path.startsWith("/")) {
+            reply(exchange, 404, "Not Found");
+            return;
+        }
+
+        final var segments = path.isEmpty() ? new String[0] : path.substring(1).split("/");
+        final var method = exchange.getRequestMethod();
+
+        switch (segments.length) {
+            case 0:
+                route(exchange, List.of("GET"), method, fnGetMovie, "get-movie", MOVIES_PATH, Map.of());
+                break;
+            case 1:
+                // like in API Gateway the literal resources take precedence over {movieId}
+                if (SUGGEST_PATH_SEGMENT.equals(segments[0]) || TOP_PATH_SEGMENT.equals(segments[0])) {
+                    route(exchange, List.of("GET"), method, fnGetMovie, "get-movie", MOVIES_PATH + "/" + segments[0], Map.of());
+                } else if (RATINGS_PATH_SEGMENT.equals(segments[0])) {
+                    route(exchange, List.of("PATCH"), method, fnUpdateMovieRating, "update-movie-rating", MOVIES_PATH + "/" + RATINGS_PATH_SEGMENT, Map.of());
+                } else if ("PATCH".equals(method)) {
+                    // API Gateway sends PATCH /movies/{movieId} to the rating handler as well
+                    route(exchange, List.of("PATCH"), method, fnUpdateMovieRating, "update-movie-rating", MOVIE_RESOURCE, Map.of("movieId", segments[0]));
+                } else {
+                    route(exchange, List.of("GET", "PATCH"), method, fnGetMovie, "get-movie", MOVIE_RESOURCE, Map.of("movieId", segments[0]));
+                }
+                break;
+            case 2:
+                if (RATING_PATH_SEGMENT.equals(segments[1])) {
+                    route(exchange, List.of("PATCH"), method, fnUpdateMovieRating, "update-movie-rating",
+                            MOVIE_RESOURCE + "/" + RATING_PATH_SEGMENT, Map.of("movieId", segments[0]));
+                } else if (VOTES_PATH_SEGMENT.equals(segments[1])) {
+                    route(exchange, List.of("POST"), method, fnUpdateMovieRating, "update-movie-rating",
+                            MOVIE_RESOURCE + "/" + VOTES_PATH_SEGMENT, Map.of("movieId", segments[0]));
+                } else {
+                    reply(exchange, 404, "Not Found");
+                }
+                break;
+            default:
+                reply(exchange, 404, "Not Found");
+        }
+    }
+
+    private void route(final HttpExchange exchange, final List<String> allowedMethods, final String method, final RequestStreamHandler handler,
+                       final String functionName, final String resource, final Map<String, String> pathParameters) throws IOException {
+
+        if (!allowedMethods.contains(method)) {
+            exchange.getResponseHeaders().set("Allow", String.join(", ", allowedMethods));
+            reply(exchange, 405, "Method Not Allowed");
+            return;
+        }
+
+        try {
+            workers.execute(() -> invoke(exchange, handler, functionName, resource, pathParameters));
+        } catch (RejectedExecutionException error) {
+            // every worker is busy and the queue is full, shedding is cheaper than letting the backlog grow
+            rejectedRequests.increment();
+            LOGGER.warn("Rejected {} {}, rejectedRequests: {}", method, exchange.getRequestURI(), rejectedRequests.sum());
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            reply(exchange, 503, "Service Unavailable");
+        }
+    }
+
+    private void invoke(final HttpExchange exchange, final RequestStreamHandler handler, final String functionName, final String resource,
+                        final Map<String, String> pathParameters) {
+
+        final var requestId = UUID.randomUUID().toString();
+        final var context = new ServerContext(requestId, functionName, System.currentTimeMillis() + requestTimeoutMillis);
+
+        try {
+
+            final var event = ProxyIntegration.toEvent(OBJECT_MAPPER, exchange, requestId, resource, pathParameters);
+            final var output = new ByteArrayOutputStream();
+
+            handler.handleRequest(new ByteArrayInputStream(event), output, context);
+            ProxyIntegration.sendResponse(OBJECT_MAPPER, exchange, output.toByteArray());
+
+            servedRequests.increment();
+
+        } catch (Exception error) {
+            LOGGER.error("Could not serve {} {}: {}", exchange.getRequestMethod(), exchange.getRequestURI(), error.getMessage());
+            try {
+                reply(exchange, 500, "Internal Server Error");
+            } catch (IOException | RuntimeException ignored) {
+                // the response has already been started, closing the exchange is all that is left
+                exchange.close();
+            }
+        }
+    }
+
+    private static void reply(final HttpExchange exchange, final int statusCode, final String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        ProxyIntegration.send(exchange, statusCode, message.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,118 @@
+package de.mbe.tutorials.aws.serverless.movies.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// translates between an HTTP exchange and the API Gateway proxy integration the handlers were written for
+final class ProxyIntegration {
+
+    private ProxyIntegration() { }
+
+    static byte[] toEvent(final ObjectMapper objectMapper, final HttpExchange exchange, final String requestId, final String resource,
+                          final Map<String, String> pathParameters) throws IOException {
+
+        // like API Gateway the resource is the route that matched, /movies/{movieId}/votes rather than the path that was called
+        final var event = objectMapper.createObjectNode();
+        event.put("resource", resource);
+        event.put("path", exchange.getRequestURI().getPath());
+        event.put("httpMethod", exchange.getRequestMethod());
+
+        final var headers = event.putObject("headers");
+        for (final var header : exchange.getRequestHeaders().entrySet()) {
+            headers.put(header.getKey(), String.join(",", header.getValue()));
+        }
+
+        final var queryStringParameters = getQueryStringParameters(exchange.getRequestURI().getRawQuery());
+        if (queryStringParameters.isEmpty()) {
+            event.putNull("queryStringParameters");
+        } else {
+            final var node = event.putObject("queryStringParameters");
+            queryStringParameters.forEach(node::put);
+        }
+
+        if (pathParameters.isEmpty()) {
+            event.putNull("pathParameters");
+        } else {
+            final var node = event.putObject("pathParameters");
+            pathParameters.forEach(node::put);
+        }
+
+        event.putObject("requestContext").put("requestId", requestId);
+
+        final byte[] body;
+        try (final var input = exchange.getRequestBody()) {
+            body = input.readAllBytes();
+        }
+
+        if (body.length == 0) {
+            event.putNull("body");
+        } else {
+            event.put("body", new String(body, StandardCharsets.UTF_8));
+        }
+        event.put("isBase64Encoded", false);
+
+        return objectMapper.writeValueAsBytes(event);
+    }
+
+    static void sendResponse(final ObjectMapper objectMapper, final HttpExchange exchange, final byte[] handlerOutput) throws IOException {
+
+        final JsonNode response = objectMapper.readTree(handlerOutput);
+
+        final var responseHeaders = exchange.getResponseHeaders();
+        response.path("headers").fields().forEachRemaining(header -> responseHeaders.set(header.getKey(), header.getValue().asText()));
+
+        final var bodyNode = response.path("body");
+        byte[] body = null;
+        if (bodyNode.isTextual()) {
+            body = response.path("isBase64Encoded").asBoolean(false)
+                    ? Base64.getDecoder().decode(bodyNode.textValue())
+                    : bodyNode.textValue().getBytes(StandardCharsets.UTF_8);
+        }
+
+        send(exchange, response.path("statusCode").asInt(500), body);
+    }
+
+    static void send(final HttpExchange exchange, final int statusCode, final byte[] body) throws IOException {
+
+        // 204 and 304 never carry a body, -1 tells the server to send no Content-Length either
+        if (body == null || body.length == 0 || statusCode == 204 || statusCode == 304) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (final var output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private static Map<String, String> getQueryStringParameters(final String rawQuery) {
+
+        final var queryStringParameters = new HashMap<String, String>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return queryStringParameters;
+        }
+
+        // like API Gateway, the last value wins when a parameter is repeated
+        for (final var pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final var separator = pair.indexOf('=');
+            final var name = separator < 0 ? pair : pair.substring(0, separator);
+            final var value = separator < 0 ? "" : pair.substring(separator + 1);
+            queryStringParameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+
+        return queryStringParameters;
+    }
+}
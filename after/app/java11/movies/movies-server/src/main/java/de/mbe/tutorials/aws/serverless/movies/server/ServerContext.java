@@ -0,0 +1,95 @@
+package de.mbe.tutorials.aws.serverless.movies.server;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+
+// stands in for the Lambda context, the deadline is the one the server gives every request
+final class ServerContext implements Context {
+
+    private static final Logger LOGGER = LogManager.getLogger(ServerContext.class);
+
+    // whatever the handlers write to the context logger ends up next to the rest of the server logs
+    private static final LambdaLogger LAMBDA_LOGGER = new LambdaLogger() {
+
+        @Override
+        public void log(final String message) {
+            LOGGER.info(message);
+        }
+
+        @Override
+        public void log(final byte[] message) {
+            LOGGER.info(new String(message, StandardCharsets.UTF_8));
+        }
+    };
+
+    private final String requestId;
+    private final String functionName;
+    private final long deadlineMillis;
+
+    ServerContext(final String requestId, final String functionName, final long deadlineMillis) {
+        this.requestId = requestId;
+        this.functionName = functionName;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    @Override
+    public String getAwsRequestId() {
+        return requestId;
+    }
+
+    @Override
+    public String getLogGroupName() {
+        return null;
+    }
+
+    @Override
+    public String getLogStreamName() {
+        return null;
+    }
+
+    @Override
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    @Override
+    public String getFunctionVersion() {
+        return "$LATEST";
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+        return null;
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+        return (int) Math.max(0, deadlineMillis - System.currentTimeMillis());
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+        return (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+        return LAMBDA_LOGGER;
+    }
+}
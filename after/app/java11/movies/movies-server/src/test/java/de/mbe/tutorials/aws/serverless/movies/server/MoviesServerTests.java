@@ -0,0 +1,213 @@
+package de.mbe.tutorials.aws.serverless.movies.server;
+
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class MoviesServerTests {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
+
+    private MoviesServer moviesServer;
+
+    @AfterEach
+    void afterEach() {
+        if (moviesServer != null) {
+            moviesServer.stop(0);
+        }
+    }
+
+    @Test
+    void getMovieIsRoutedToTheGetMovieHandler() throws Exception {
+
+        start(1, 1, echo("get-movie"), echo("update-movie-rating"));
+
+        final var response = send(HttpRequest.newBuilder(uri("/movies/tt0133093?fields=name,imdbRating"))
+                .header("X-Read-Consistency", "eventual")
+                .GET());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("get-movie", response.headers().firstValue("X-Handler").orElse(null));
+
+        final var event = OBJECT_MAPPER.readTree(response.body());
+        assertEquals("tt0133093", event.path("pathParameters").path("movieId").asText());
+        assertEquals("name,imdbRating", event.path("queryStringParameters").path("fields").asText());
+        assertEquals("eventual", event.path("headers").path("X-read-consistency").asText());
+        assertTrue(event.path("body").isNull());
+    }
+
+    @Test
+    void patchRatingIsRoutedToTheUpdateMovieRatingHandler() throws Exception {
+
+        start(1, 1, echo("get-movie"), echo("update-movie-rating"));
+
+        final var response = send(HttpRequest.newBuilder(uri("/movies/tt0133093/rating"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"imdbRating\":87}")));
+
+        assertEquals(200, response.statusCode());
+        assertEquals("update-movie-rating", response.headers().firstValue("X-Handler").orElse(null));
+
+        final var event = OBJECT_MAPPER.readTree(response.body());
+        assertEquals("tt0133093", event.path("pathParameters").path("movieId").asText());
+        assertEquals("{\"imdbRating\":87}", event.path("body").asText());
+    }
+
+    @Test
+    void suggestIsRoutedToTheGetMovieHandlerWithoutMovieId() throws Exception {
+
+        start(1, 1, echo("get-movie"), echo("update-movie-rating"));
+
+        final var response = send(HttpRequest.newBuilder(uri("/movies/suggest?q=the%20mat")).GET());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("get-movie", response.headers().firstValue("X-Handler").orElse(null));
+
+        final var event = OBJECT_MAPPER.readTree(response.body());
+        assertEquals("/movies/suggest", event.path("resource").asText());
+        assertEquals("the mat", event.path("queryStringParameters").path("q").asText());
+        assertTrue(event.path("pathParameters").isNull());
+
+        assertEquals(405, send(HttpRequest.newBuilder(uri("/movies/suggest")).method("PATCH", HttpRequest.BodyPublishers.noBody())).statusCode());
+    }
+
+    @Test
+    void topIsRoutedToTheGetMovieHandlerWithoutMovieId() throws Exception {
+
+        start(1, 1, echo("get-movie"), echo("update-movie-rating"));
+
+        final var response = send(HttpRequest.newBuilder(uri("/movies/top?by=imdb&limit=100")).GET());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("get-movie", response.headers().firstValue("X-Handler").orElse(null));
+
+        final var event = OBJECT_MAPPER.readTree(response.body());
+        assertEquals("/movies/top", event.path("resource").asText());
+        assertEquals("imdb", event.path("queryStringParameters").path("by").asText());
+        assertTrue(event.path("pathParameters").isNull());
+    }
+
+    @Test
+    void bulkRatingsAreRoutedToTheUpdateMovieRatingHandler() throws Exception {
+
+        start(1, 1, echo("get-movie"), echo("update-movie-rating"));
+
+        final var body = "{\"movieId\":\"tt0133093\",\"imdbRating\":87}\n{\"movieId\":\"tt0234215\",\"imdbRating\":72}\n";
+        final var response = send(HttpRequest.newBuilder(uri("/movies/ratings")).method("PATCH", HttpRequest.BodyPublishers.ofString(body)));
+
+        assertEquals(200, response.statusCode());
+        assertEquals("update-movie-rating", response.headers().firstValue("X-Handler").orElse(null));
+
+        final var event = OBJECT_MAPPER.readTree(response.body());
+        assertEquals("/movies/ratings", event.path("resource").asText());
+        assertEquals(body, event.path("body").asText());
+        assertTrue(event.path("pathParameters").isNull());
+    }
+
+    @Test
+    void votesAreRoutedToTheUpdateMovieRatingHandlerWithTheirResource() throws Exception {
+
+        start(1, 1, echo("get-movie"), echo("update-movie-rating"));
+
+        final var response = send(HttpRequest.newBuilder(uri("/movies/tt0133093/votes")).POST(HttpRequest.BodyPublishers.ofString("{\"rating\":87}")));
+
+        assertEquals(200, response.statusCode());
+        assertEquals("update-movie-rating", response.headers().firstValue("X-Handler").orElse(null));
+
+        final var event = OBJECT_MAPPER.readTree(response.body());
+        assertEquals("/movies/{movieId}/votes", event.path("resource").asText());
+        assertEquals("tt0133093", event.path("pathParameters").path("movieId").asText());
+
+        assertEquals(405, send(HttpRequest.newBuilder(uri("/movies/tt0133093/votes")).GET()).statusCode());
+    }
+
+    @Test
+    void unknownRoutesAndMethodsAreRejected() throws Exception {
+
+        start(1, 1, echo("get-movie"), echo("update-movie-rating"));
+
+        assertEquals(404, send(HttpRequest.newBuilder(uri("/movies/tt0133093/cast")).GET()).statusCode());
+        assertEquals(404, send(HttpRequest.newBuilder(uri("/moviesfoo")).GET()).statusCode());
+
+        final var response = send(HttpRequest.newBuilder(uri("/movies/tt0133093/rating")).GET());
+        assertEquals(405, response.statusCode());
+        assertEquals("PATCH", response.headers().firstValue("Allow").orElse(null));
+    }
+
+    @Test
+    void requestsBeyondWorkersAndQueueAreShed() throws Exception {
+
+        final var started = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+
+        final RequestStreamHandler blocking = (input, output, context) -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+            echo("get-movie").handleRequest(input, output, context);
+        };
+
+        start(1, 1, blocking, echo("update-movie-rating"));
+
+        final var first = HTTP_CLIENT.sendAsync(HttpRequest.newBuilder(uri("/movies/1")).GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        final var queued = HTTP_CLIENT.sendAsync(HttpRequest.newBuilder(uri("/movies/2")).GET().build(), HttpResponse.BodyHandlers.ofString());
+
+        // the single worker is busy and the single queue slot is taken once the second request has been dispatched
+        for (var attempt = 0; attempt < 100 && moviesServer.getQueuedRequests() == 0; attempt++) {
+            Thread.sleep(50);
+        }
+
+        final var shed = send(HttpRequest.newBuilder(uri("/movies/3")).GET());
+
+        release.countDown();
+
+        assertEquals(503, shed.statusCode());
+        assertEquals("1", shed.headers().firstValue("Retry-After").orElse(null));
+        assertEquals(200, first.get(10, TimeUnit.SECONDS).statusCode());
+        assertEquals(200, queued.get(10, TimeUnit.SECONDS).statusCode());
+    }
+
+    private void start(final int workerThreads, final int queueCapacity, final RequestStreamHandler fnGetMovie, final RequestStreamHandler fnUpdateMovieRating) throws IOException {
+        moviesServer = new MoviesServer(0, workerThreads, queueCapacity, 1_000, fnGetMovie, fnUpdateMovieRating);
+        moviesServer.start();
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + moviesServer.getPort() + path);
+    }
+
+    private static HttpResponse<String> send(final HttpRequest.Builder request) throws IOException, InterruptedException {
+        return HTTP_CLIENT.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    // answers with the proxy event it was invoked with, so the tests can look at what the handler got to see
+    private static RequestStreamHandler echo(final String functionName) {
+        return (input, output, context) -> {
+            final JsonNode event = OBJECT_MAPPER.readTree(input);
+            assertEquals(functionName, context.getFunctionName());
+            assertTrue(context.getRemainingTimeInMillis() > 0);
+            OBJECT_MAPPER.writeValue(output, Map.of(
+                    "statusCode", 200,
+                    "headers", Map.of("Content-Type", "application/json", "X-Handler", functionName),
+                    "body", OBJECT_MAPPER.writeValueAsString(event),
+                    "isBase64Encoded", false));
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository;
+
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository.models.MovieInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// run with ./gradlew jmh, the gc profiler reports gc.alloc.rate.norm, i.e. the bytes allocated per operation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateItemRequestBenchmark {
+
+    private static final String MOVIES_TABLE = "movies";
+
+    private MoviesDynamoDbRepository moviesDynamoDbRepository;
+    private MovieInfo movieInfo;
+
+    @Setup
+    public void setup() {
+
+        // the client is never called, only the building of the request is measured
+        final var dynamoDbClient = new DynamoDbClient() {
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() { }
+        };
+
+        moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDbClient, MOVIES_TABLE);
+        movieInfo = new MovieInfo("tt0133093", "The Matrix", "US", "1999-03-31");
+    }
+
+    @Benchmark
+    public UpdateItemRequest requestFromTemplate() {
+        return moviesDynamoDbRepository.updateItemRequest(movieInfo);
+    }
+
+    // the request as it was built before the templates, the whole expression and both maps on every call
+    @Benchmark
+    public UpdateItemRequest requestBuiltPerCall() {
+
+        final var updateExpressionLines = new ArrayList<String>();
+        final var expressionAttributeValues = new HashMap<String, AttributeValue>();
+        final var expressionAttributeNames = new HashMap<String, String>();
+
+        Optional.ofNullable(movieInfo.getName()).ifPresent(value -> {
+            updateExpressionLines.add("#n = :name");
+            expressionAttributeValues.put(":name", AttributeValue.builder().s(value).build());
+            expressionAttributeNames.put("#n", "name");
+        });
+
+        Optional.ofNullable(movieInfo.getCountryOfOrigin()).ifPresent(value -> {
+            updateExpressionLines.add("#c = :countryOfOrigin");
+            expressionAttributeValues.put(":countryOfOrigin", AttributeValue.builder().s(value).build());
+            expressionAttributeNames.put("#c", "countryOfOrigin");
+        });
+
+        Optional.ofNullable(movieInfo.getReleaseDate()).ifPresent(value -> {
+            updateExpressionLines.add("#r = :releaseDate");
+            expressionAttributeValues.put(":releaseDate", AttributeValue.builder().s(value).build());
+            expressionAttributeNames.put("#r", "releaseDate");
+        });
+
+        updateExpressionLines.add("#lm = :lastModified");
+        expressionAttributeValues.put(":lastModified", AttributeValue.builder().n(Long.toString(System.currentTimeMillis())).build());
+        expressionAttributeNames.put("#lm", "lastModified");
+
+        expressionAttributeValues.put(":one", AttributeValue.builder().n("1").build());
+        expressionAttributeNames.put("#v", "version");
+
+        return UpdateItemRequest.builder()
+                .key(Map.of("movieId", AttributeValue.builder().s(movieInfo.getMovieId()).build()))
+                .tableName(MOVIES_TABLE)
+                .updateExpression("SET " + String.join(", ", updateExpressionLines) + " ADD #v :one")
+                .expressionAttributeValues(expressionAttributeValues)
+                .expressionAttributeNames(expressionAttributeNames)
+                .returnValues(ReturnValue.ALL_NEW)
+                .build();
+    }
+}
@@ -1,25 +1,54 @@
 package de.mbe.tutorials.aws.serverless.movies.updatemovieinfo;
 
-import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.admission.AdmissionController;
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.admission.AdmissionRejectedException;
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.admission.Priority;
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.deadline.Deadline;
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.deadline.DeadlinePolicy;
 import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository.MoviesDynamoDbRepository;
 import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository.models.MovieInfo;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
-public class FnUpdateMovieInfo {
+public final class FnUpdateMovieInfo implements RequestStreamHandler, APIGatewayProxyResponseUtils {
 
     private static final Logger LOGGER = LogManager.getLogger(FnUpdateMovieInfo.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final long DEFAULT_ADMISSION_BURST_SECONDS = 10;
+    private static final long DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS = 250;
+    private static final long DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS = 2_000;
+
+    private static final byte[] PRIMING_EVENT = ("{\"Records\":[{\"eventName\":\"INSERT\",\"dynamodb\":{\"NewImage\":{"
+            + "\"movieId\":{\"S\":\"" + Priming.PRIMING_MOVIE_ID + "\"},\"name\":{\"S\":\"Priming\"},"
+            + "\"countryOfOrigin\":{\"S\":\"DE\"},\"releaseDate\":{\"S\":\"2020-01-01\"}}}}]}").getBytes(StandardCharsets.UTF_8);
 
     private final MoviesDynamoDbRepository moviesDynamoDbRepository;
+    private final DeadlinePolicy deadlinePolicy;
+    private final AdmissionController admissionController;
 
     public FnUpdateMovieInfo() {
 
@@ -32,57 +61,188 @@ public class FnUpdateMovieInfo {
         final var moviesTable = System.getenv("MOVIES_TABLE");
 
         moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDBClient, moviesTable);
+
+        // stream batches are bounded by the Lambda timeout alone
+        final var deadlineSafetyMarginMillis = Optional.ofNullable(System.getenv("DEADLINE_SAFETY_MARGIN_MILLIS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS);
+
+        final var apiCallAttemptTimeoutMillis = Optional.ofNullable(System.getenv("SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS);
+
+        deadlinePolicy = new DeadlinePolicy(Long.MAX_VALUE, deadlineSafetyMarginMillis, apiCallAttemptTimeoutMillis);
+
+        // the write capacity units per second this instance may spend on the movies table, without them every write is sent
+        final var admissionWriteCapacityUnits = Optional.ofNullable(System.getenv("ADMISSION_WRITE_CAPACITY_UNITS"))
+                .filter(units -> !units.isBlank())
+                .map(Double::parseDouble)
+                .orElse(0d);
+
+        final var admissionBurstSeconds = Optional.ofNullable(System.getenv("ADMISSION_BURST_SECONDS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_ADMISSION_BURST_SECONDS);
+
+        admissionController = admissionWriteCapacityUnits > 0
+                ? new AdmissionController(admissionWriteCapacityUnits, Duration.ofSeconds(admissionBurstSeconds))
+                : AdmissionController.disabled();
+
+        if (Priming.isEnabled()) {
+            prime();
+        }
     }
 
     public FnUpdateMovieInfo(final MoviesDynamoDbRepository moviesDynamoDbRepository) {
+        this(moviesDynamoDbRepository, new DeadlinePolicy(Long.MAX_VALUE, DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS, DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS));
+    }
+
+    public FnUpdateMovieInfo(final MoviesDynamoDbRepository moviesDynamoDbRepository, final DeadlinePolicy deadlinePolicy) {
+        this(moviesDynamoDbRepository, deadlinePolicy, AdmissionController.disabled());
+    }
+
+    public FnUpdateMovieInfo(final MoviesDynamoDbRepository moviesDynamoDbRepository, final DeadlinePolicy deadlinePolicy,
+                             final AdmissionController admissionController) {
         this.moviesDynamoDbRepository = moviesDynamoDbRepository;
+        this.deadlinePolicy = deadlinePolicy;
+        this.admissionController = admissionController;
+    }
+
+    private void prime() {
+
+        // class loading, Jackson introspection, request marshalling and the TLS handshake with DynamoDB
+        // are paid for once during the init phase instead of by the first stream batch
+        new Priming()
+                .step("request", () -> {
+                    getMovieInfos(readEvent(new ByteArrayInputStream(PRIMING_EVENT)));
+                    writeResponse(OutputStream.nullOutputStream(), 200, "", Map.of("Content-Type", "application/json"));
+                })
+                .step("dynamodb", () -> moviesDynamoDbRepository.prime(Priming.PRIMING_MOVIE_ID))
+                .done();
     }
 
-    public Boolean handleRequest(final DynamodbEvent input) {
+    @Override
+    public void handleRequest(final InputStream input, final OutputStream output, final Context context) throws IOException {
 
+        final var deadline = deadlinePolicy.start(context);
         try {
 
-            final var movieInfos = getMovieInfos(input);
+            final var event = readEvent(input);
+            if (event.path(Priming.WARMUP_FIELD).asBoolean(false)) {
+                reply(output, 200, "Warmed up");
+                return;
+            }
+
+            final var movieInfos = getMovieInfos(event);
             LOGGER.info("Updated {} movieInfos", movieInfos.size());
 
-            for (var movieInfo : movieInfos) {
-                moviesDynamoDbRepository.updateMovieInfo(movieInfo);
+            // bulk ingestion comes through here, a batch is charged in chunks the low priority allowance can hold,
+            // charged as a whole it would run the bucket into debt and have the next batches shed until it is paid back
+            final var chunkSize = getChunkSize(movieInfos.size());
+            for (var from = 0; from < movieInfos.size(); from += chunkSize) {
+
+                final var chunk = movieInfos.subList(from, Math.min(from + chunkSize, movieInfos.size()));
+                admit(chunk.size());
+
+                for (var movieInfo : chunk) {
+                    moviesDynamoDbRepository.updateMovieInfo(movieInfo);
+                }
             }
 
-            return reply(200, movieInfos.size());
+            reply(output, 200, movieInfos.size());
 
+        } catch (AdmissionRejectedException | ApiCallTimeoutException | ApiCallAttemptTimeoutException error) {
+            // shed, or the deadline ran out while DynamoDB was throttling, failing the invocation has the event source mapping
+            // hold the shard and deliver the batch again
+            throw error;
         } catch (IllegalArgumentException error) {
-            return reply(400, error);
+            reply(output, 400, error.getMessage());
         } catch (DynamoDbException error) {
-            return reply(error.statusCode(), error);
+            reply(output, error.statusCode(), error.getMessage());
         } catch (Exception error) {
-            return reply(500, error);
+            reply(output, 500, error.getMessage());
+        } finally {
+            deadline.close();
         }
     }
 
-    private static List<MovieInfo> getMovieInfos(final DynamodbEvent input) {
+    private int getChunkSize(final int movieInfos) {
 
-        final var newImages = input.getRecords().stream()
-                .filter(x -> x.getDynamodb().getNewImage() != null && !x.getDynamodb().getNewImage().isEmpty())
-                .map(x -> x.getDynamodb().getNewImage())
-                .collect(Collectors.toList());
+        if (!admissionController.isEnabled()) {
+            return Math.max(1, movieInfos);
+        }
 
-        final var movieInfos = new ArrayList<MovieInfo>();
+        return Math.max(1, (int) (admissionController.getAllowance(Priority.LOW) / MoviesDynamoDbRepository.MOVIE_INFO_UPDATE_WRITE_UNITS));
+    }
 
-        for (final var newImage : newImages) {
+    private void admit(final int movieInfos) {
 
-            final var movieInfo = new MovieInfo();
-            Optional.of(newImage.getOrDefault("movieId", null))
-                    .ifPresent(x -> movieInfo.setMovieId(x.getS()));
+        if (!admissionController.isEnabled() || movieInfos == 0) {
+            return;
+        }
 
-            Optional.of(newImage.getOrDefault("name", null))
-                    .ifPresent(x -> movieInfo.setName(x.getS()));
+        try {
+            while (true) {
+                try {
+                    admissionController.admit(Priority.LOW, movieInfos * MoviesDynamoDbRepository.MOVIE_INFO_UPDATE_WRITE_UNITS);
+                    return;
+                } catch (AdmissionRejectedException error) {
+                    // a shed chunk is waited for while the invocation has the time, the chunks before it are not written again;
+                    // without that time the batch goes back to the stream, rewriting the same movie infos is harmless
+                    final var retryAfterMillis = TimeUnit.SECONDS.toMillis(error.getRetryAfterSeconds());
+                    final var deadline = Deadline.current();
+                    if (!deadline.isBounded() || deadline.remainingMillis() <= retryAfterMillis) {
+                        throw error;
+                    }
+                    try {
+                        Thread.sleep(retryAfterMillis);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw error;
+                    }
+                }
+            }
+        } finally {
+            LOGGER.info("Admission admitted: {}, shed: {}", admissionController.getAdmitted(), admissionController.getShed());
+        }
+    }
+
+    private static JsonNode readEvent(final InputStream input) throws IOException {
+
+        final JsonNode event;
+        try {
+            event = OBJECT_MAPPER.readTree(input);
+        } catch (JsonProcessingException error) {
+            throw new IllegalArgumentException("Invalid JSON: " + error.getOriginalMessage(), error);
+        }
+
+        if (event == null || !event.isObject()) {
+            throw new IllegalArgumentException("Invalid JSON: Expected an object");
+        }
+
+        return event;
+    }
+
+    private static List<MovieInfo> getMovieInfos(final JsonNode event) {
 
-            Optional.of(newImage.getOrDefault("countryOfOrigin", null))
-                    .ifPresent(x -> movieInfo.setCountryOfOrigin(x.getS()));
+        final var records = event.get("Records");
+        if (records == null || !records.isArray()) {
+            throw new IllegalArgumentException("Invalid JSON: Records node is null or not an array");
+        }
+
+        final var movieInfos = new ArrayList<MovieInfo>();
+
+        for (final var record : records) {
 
-            Optional.of(newImage.getOrDefault("releaseDate", null))
-                    .ifPresent(x -> movieInfo.setReleaseDate(x.getS()));
+            final var newImage = record.path("dynamodb").path("NewImage");
+            if (!newImage.isObject() || newImage.size() == 0) {
+                continue;
+            }
+
+            final var movieInfo = new MovieInfo();
+            movieInfo.setMovieId(getString(newImage, "movieId"));
+            movieInfo.setName(getString(newImage, "name"));
+            movieInfo.setCountryOfOrigin(getString(newImage, "countryOfOrigin"));
+            movieInfo.setReleaseDate(getString(newImage, "releaseDate"));
 
             movieInfos.add(movieInfo);
         }
@@ -90,13 +250,16 @@ public class FnUpdateMovieInfo {
         return movieInfos;
     }
 
-    private static <T> Boolean reply(final int statusCode, final T body) {
+    private static String getString(final JsonNode image, final String attributeName) {
+        final var value = image.path(attributeName).path("S");
+        return value.isTextual() ? value.textValue() : null;
+    }
+
+    private <T> void reply(final OutputStream output, final int statusCode, final T body) throws IOException {
 
-        var response = false;
         switch (statusCode / 100) {
             case 2:
                 LOGGER.info("SUCCESS! statusCode: {}, message: {}", statusCode, body);
-                response = true;
                 break;
             case 4:
                 LOGGER.warn("CLIENT ERROR! statusCode: {}, message: {}", statusCode, body);
@@ -104,6 +267,19 @@ public class FnUpdateMovieInfo {
             default:
                 LOGGER.error("SERVER ERROR! statusCode: {}, message: {}", statusCode, body);
         }
-        return response;
+
+        // plain messages are passed through as they are, everything else is serialized to JSON
+        String bodyAsString;
+        if (body == null || body instanceof String) {
+            bodyAsString = (String) body;
+        } else {
+            try {
+                bodyAsString = OBJECT_MAPPER.writeValueAsString(body);
+            } catch (JsonProcessingException e) {
+                bodyAsString = e.getMessage();
+            }
+        }
+
+        writeResponse(output, statusCode, bodyAsString, Map.of("Content-Type", "application/json"));
     }
 }
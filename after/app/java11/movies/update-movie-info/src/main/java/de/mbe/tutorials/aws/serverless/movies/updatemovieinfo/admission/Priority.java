@@ -0,0 +1,19 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.admission;
+
+public enum Priority {
+
+    HIGH(0),
+    NORMAL(0.2),
+    LOW(0.5);
+
+    // the share of the bucket a class leaves for the classes above it
+    private final double reserve;
+
+    Priority(final double reserve) {
+        this.reserve = reserve;
+    }
+
+    public double getReserve() {
+        return reserve;
+    }
+}
@@ -1,9 +1,11 @@
 package de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository;
 
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.deadline.Deadline;
 import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository.models.Movie;
 import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository.models.MovieInfo;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
@@ -14,56 +16,128 @@ import java.util.Optional;
 
 public class MoviesDynamoDbRepository {
 
+    // movie items stay well below 1 KB
+    public static final int MOVIE_INFO_UPDATE_WRITE_UNITS = 1;
+
+    // bits of the field subset a request template is built for
+    private static final int NAME = 1;
+    private static final int COUNTRY_OF_ORIGIN = 2;
+    private static final int RELEASE_DATE = 4;
+
+    private static final AttributeValue ONE = AttributeValue.builder().n("1").build();
+
     private final DynamoDbClient dynamoDbClient;
     private final String moviesTable;
+    private final UpdateItemRequest[] updateItemRequestTemplates;
 
     public MoviesDynamoDbRepository(DynamoDbClient dynamoDbClient, String moviesTable) {
         this.dynamoDbClient = dynamoDbClient;
         this.moviesTable = moviesTable;
+        this.updateItemRequestTemplates = updateItemRequestTemplates(moviesTable);
     }
 
     public Movie updateMovieInfo(final MovieInfo movieInfo) {
 
-        final var updateExpressionLines = new ArrayList<String>();
-        final var expressionAttributeValues = new HashMap<String, AttributeValue>();
-        final var expressionAttributeNames = new HashMap<String, String>();
-
-        Optional.ofNullable(movieInfo.getName()).ifPresent(value -> {
-            updateExpressionLines.add("#n = :name");
-            expressionAttributeValues.put(":name", AttributeValue.builder().s(value).build());
-            expressionAttributeNames.put("#n", "name");
-        });
-
-        Optional.ofNullable(movieInfo.getCountryOfOrigin()).ifPresent(value -> {
-            updateExpressionLines.add("#c = :countryOfOrigin");
-            expressionAttributeValues.put(":countryOfOrigin", AttributeValue.builder().s(value).build());
-            expressionAttributeNames.put("#c", "countryOfOrigin");
-        });
-
-        Optional.ofNullable(movieInfo.getReleaseDate()).ifPresent(value -> {
-            updateExpressionLines.add("#r = :releaseDate");
-            expressionAttributeValues.put(":releaseDate", AttributeValue.builder().s(value).build());
-            expressionAttributeNames.put("#r", "releaseDate");
-        });
-
-        if (updateExpressionLines.isEmpty()) {
+        final var updateItemRequest = updateItemRequest(movieInfo);
+        if (updateItemRequest == null) {
             return null;
         }
 
-        final var updateExpression = "SET " + String.join(", ", updateExpressionLines);
+        final var attributes = dynamoDbClient.updateItem(updateItemRequest).attributes();
+
+        return convert(attributes);
+    }
+
+    UpdateItemRequest updateItemRequest(final MovieInfo movieInfo) {
+
+        final var name = movieInfo.getName();
+        final var countryOfOrigin = movieInfo.getCountryOfOrigin();
+        final var releaseDate = movieInfo.getReleaseDate();
+
+        final var fields = (name == null ? 0 : NAME) | (countryOfOrigin == null ? 0 : COUNTRY_OF_ORIGIN) | (releaseDate == null ? 0 : RELEASE_DATE);
+        if (fields == 0) {
+            return null;
+        }
+
+        // the expression and the names come with the template, only the values change from one call to the next
+        final var expressionAttributeValues = new HashMap<String, AttributeValue>(8);
+        expressionAttributeValues.put(":lastModified", AttributeValue.builder().n(Long.toString(System.currentTimeMillis())).build());
+        expressionAttributeValues.put(":one", ONE);
+
+        if (name != null) {
+            expressionAttributeValues.put(":name", AttributeValue.builder().s(name).build());
+        }
+
+        if (countryOfOrigin != null) {
+            expressionAttributeValues.put(":countryOfOrigin", AttributeValue.builder().s(countryOfOrigin).build());
+        }
+
+        if (releaseDate != null) {
+            expressionAttributeValues.put(":releaseDate", AttributeValue.builder().s(releaseDate).build());
+        }
 
-        final var updateItemRequest = UpdateItemRequest.builder()
+        return Deadline.current().apply(updateItemRequestTemplates[fields].toBuilder())
                 .key(Map.of("movieId", AttributeValue.builder().s(movieInfo.getMovieId()).build()))
-                .tableName(moviesTable)
-                .updateExpression(updateExpression)
                 .expressionAttributeValues(expressionAttributeValues)
-                .expressionAttributeNames(expressionAttributeNames)
-                .returnValues(ReturnValue.ALL_NEW)
                 .build();
+    }
 
-        final var attributes = dynamoDbClient.updateItem(updateItemRequest).attributes();
+    // one request per non-empty subset of the fields, indexed by the bits of the fields it sets
+    private static UpdateItemRequest[] updateItemRequestTemplates(final String moviesTable) {
 
-        return convert(attributes);
+        final var templates = new UpdateItemRequest[(NAME | COUNTRY_OF_ORIGIN | RELEASE_DATE) + 1];
+
+        for (var fields = 1; fields < templates.length; fields++) {
+
+            final var updateExpressionLines = new ArrayList<String>();
+            final var expressionAttributeNames = new HashMap<String, String>();
+
+            if ((fields & NAME) != 0) {
+                updateExpressionLines.add("#n = :name");
+                expressionAttributeNames.put("#n", "name");
+            }
+
+            if ((fields & COUNTRY_OF_ORIGIN) != 0) {
+                updateExpressionLines.add("#c = :countryOfOrigin");
+                expressionAttributeNames.put("#c", "countryOfOrigin");
+            }
+
+            if ((fields & RELEASE_DATE) != 0) {
+                updateExpressionLines.add("#r = :releaseDate");
+                expressionAttributeNames.put("#r", "releaseDate");
+            }
+
+            // every write bumps the item version and modification time, get-movie derives its ETag and Last-Modified headers from them
+            updateExpressionLines.add("#lm = :lastModified");
+            expressionAttributeNames.put("#lm", "lastModified");
+            expressionAttributeNames.put("#v", "version");
+
+            templates[fields] = UpdateItemRequest.builder()
+                    .tableName(moviesTable)
+                    .updateExpression("SET " + String.join(", ", updateExpressionLines) + " ADD #v :one")
+                    .expressionAttributeNames(expressionAttributeNames)
+                    .returnValues(ReturnValue.ALL_NEW)
+                    .build();
+        }
+
+        return templates;
+    }
+
+    public void prime(final String movieId) {
+
+        // the condition never holds for the priming key, so the request makes the full round trip without writing anything
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .key(Map.of("movieId", AttributeValue.builder().s(movieId).build()))
+                    .tableName(moviesTable)
+                    .updateExpression("SET #n = :name")
+                    .conditionExpression("attribute_exists(movieId)")
+                    .expressionAttributeValues(Map.of(":name", AttributeValue.builder().s(movieId).build()))
+                    .expressionAttributeNames(Map.of("#n", "name"))
+                    .build());
+        } catch (ConditionalCheckFailedException expected) {
+            // nothing to do, the item does not exist
+        }
     }
 
     private static Movie convert(final Map<String, AttributeValue> attributes) {
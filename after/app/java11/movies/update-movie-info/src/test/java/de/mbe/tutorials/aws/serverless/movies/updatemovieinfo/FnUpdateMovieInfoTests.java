@@ -1,6 +1,11 @@
 package de.mbe.tutorials.aws.serverless.movies.updatemovieinfo;
 
+import com.amazonaws.services.lambda.runtime.Context;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.admission.AdmissionController;
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.admission.AdmissionRejectedException;
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.admission.Priority;
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.deadline.DeadlinePolicy;
 import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository.MoviesDynamoDbRepository;
 import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository.models.MovieInfo;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,16 +13,25 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -145,42 +159,104 @@ public class FnUpdateMovieInfoTests implements TestUtils {
         assertNull(actualResponse.getBody());
     }
 
+    @Test
+    void timedOutBatchFailsTheInvocation() throws IOException {
+
+        final var movieInfo = getRandomMovieInfo(UUID.randomUUID().toString());
+
+        doThrow(ApiCallTimeoutException.class).when(moviesDynamoDbRepository).updateMovieInfo(movieInfo);
+
+        assertThrows(ApiCallTimeoutException.class, () -> fnUpdateMovieInfo.handleRequest(getCorrectInput(movieInfo), new ByteArrayOutputStream(), null));
+    }
+
+    @Test
+    void batchesOverTheWriteBudgetFailWithoutWritingAnything() throws IOException {
+
+        final var admissionController = new AdmissionController(1, Duration.ofSeconds(1));
+        final var fnWithAdmission = new FnUpdateMovieInfo(moviesDynamoDbRepository, new DeadlinePolicy(Long.MAX_VALUE, 250, 2_000), admissionController);
+
+        // a rating update took the only unit there was
+        admissionController.admit(Priority.HIGH, 1);
+
+        final var movieInfo = getRandomMovieInfo(UUID.randomUUID().toString());
+
+        assertThrows(AdmissionRejectedException.class, () -> fnWithAdmission.handleRequest(getCorrectInput(movieInfo), new ByteArrayOutputStream(), null));
+        verifyNoInteractions(moviesDynamoDbRepository);
+    }
+
+    @Test
+    void batchesLargerThanTheAllowanceAreWrittenInChunks() throws IOException {
+
+        // 20 units in the bucket, 10 of them for low priority writes
+        final var admissionController = new AdmissionController(20, Duration.ofSeconds(1));
+        final var fnWithAdmission = new FnUpdateMovieInfo(moviesDynamoDbRepository, new DeadlinePolicy(Long.MAX_VALUE, 250, 2_000), admissionController);
+
+        final var context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(60_000);
+
+        final var movieInfos = new ArrayList<MovieInfo>();
+        for (var index = 0; index < 12; index++) {
+            movieInfos.add(getRandomMovieInfo(UUID.randomUUID().toString()));
+        }
+
+        final var output = new ByteArrayOutputStream();
+        fnWithAdmission.handleRequest(getCorrectInput(movieInfos), output, context);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        // the second chunk waited for the bucket instead of failing the whole batch
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals("12", actualResponse.getBody());
+        verify(moviesDynamoDbRepository, times(12)).updateMovieInfo(any(MovieInfo.class));
+        assertEquals(1, admissionController.getShed(Priority.LOW));
+    }
+
     private static InputStream getCorrectInput(final MovieInfo movieInfo) {
+        return getCorrectInput(List.of(movieInfo));
+    }
+
+    private static InputStream getCorrectInput(final List<MovieInfo> movieInfos) {
+
+        final var records = new ArrayList<String>();
+        for (final var movieInfo : movieInfos) {
+            records.add("    {\n" +
+                        "      \"eventID\": \"c4ca4238a0b923820dcc509a6f75849b\",\n" +
+                        "      \"eventName\": \"INSERT\",\n" +
+                        "      \"eventVersion\": \"1.1\",\n" +
+                        "      \"eventSource\": \"aws:dynamodb\",\n" +
+                        "      \"awsRegion\": \"eu-central-1\",\n" +
+                        "      \"dynamodb\": {\n" +
+                        "        \"Keys\": {\n" +
+                        "          \"movieId\": {\n" +
+                        "            \"S\": \"" + movieInfo.getMovieId() + "\"\n" +
+                        "          }\n" +
+                        "        },\n" +
+                        "        \"NewImage\": {\n" +
+                        "          \"name\": {\n" +
+                        "            \"S\": \"" + movieInfo.getName() + "\"\n" +
+                        "          },\n" +
+                        "          \"releaseDate\": {\n" +
+                        "            \"S\": \"" + movieInfo.getReleaseDate() + "\"\n" +
+                        "          },\n" +
+                        "          \"countryOfOrigin\": {\n" +
+                        "            \"S\": \"" + movieInfo.getCountryOfOrigin() + "\"\n" +
+                        "          },\n" +
+                        "          \"movieId\": {\n" +
+                        "            \"S\": \"" + movieInfo.getMovieId() + "\"\n" +
+                        "          }\n" +
+                        "        },\n" +
+                        "        \"ApproximateCreationDateTime\": 1428537600,\n" +
+                        "        \"SequenceNumber\": \"4421584500000000017450439091\",\n" +
+                        "        \"SizeBytes\": 26,\n" +
+                        "        \"StreamViewType\": \"NEW_AND_OLD_IMAGES\"\n" +
+                        "      },\n" +
+                        "      \"eventSourceARN\": \"arn:aws:dynamodb:eu-central-1:123456789012:table/ExampleTableWithStream/stream/2015-06-27T00:48:05.899\"\n" +
+                        "    }");
+        }
+
         final var event = "{\n" +
                 "  \"Records\": [\n" +
-                "    {\n" +
-                "      \"eventID\": \"c4ca4238a0b923820dcc509a6f75849b\",\n" +
-                "      \"eventName\": \"INSERT\",\n" +
-                "      \"eventVersion\": \"1.1\",\n" +
-                "      \"eventSource\": \"aws:dynamodb\",\n" +
-                "      \"awsRegion\": \"eu-central-1\",\n" +
-                "      \"dynamodb\": {\n" +
-                "        \"Keys\": {\n" +
-                "          \"movieId\": {\n" +
-                "            \"S\": \"" + movieInfo.getMovieId() + "\"\n" +
-                "          }\n" +
-                "        },\n" +
-                "        \"NewImage\": {\n" +
-                "          \"name\": {\n" +
-                "            \"S\": \"" + movieInfo.getName() + "\"\n" +
-                "          },\n" +
-                "          \"releaseDate\": {\n" +
-                "            \"S\": \"" + movieInfo.getReleaseDate() + "\"\n" +
-                "          },\n" +
-                "          \"countryOfOrigin\": {\n" +
-                "            \"S\": \"" + movieInfo.getCountryOfOrigin() + "\"\n" +
-                "          },\n" +
-                "          \"movieId\": {\n" +
-                "            \"S\": \"" + movieInfo.getMovieId() + "\"\n" +
-                "          }\n" +
-                "        },\n" +
-                "        \"ApproximateCreationDateTime\": 1428537600,\n" +
-                "        \"SequenceNumber\": \"4421584500000000017450439091\",\n" +
-                "        \"SizeBytes\": 26,\n" +
-                "        \"StreamViewType\": \"NEW_AND_OLD_IMAGES\"\n" +
-                "      },\n" +
-                "      \"eventSourceARN\": \"arn:aws:dynamodb:eu-central-1:123456789012:table/ExampleTableWithStream/stream/2015-06-27T00:48:05.899\"\n" +
-                "    }\n" +
+                String.join(",\n", records) + "\n" +
                 "  ]\n" +
                 "}";
 
@@ -0,0 +1,58 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository;
+
+import de.mbe.tutorials.aws.serverless.movies.updatemovieinfo.repository.models.MovieInfo;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public final class UpdateItemRequestTemplatesTests {
+
+    private static final String MOVIES_TABLE = "movies";
+
+    private final MoviesDynamoDbRepository moviesDynamoDbRepository = new MoviesDynamoDbRepository(mock(DynamoDbClient.class), MOVIES_TABLE);
+
+    @Test
+    void nothingToUpdateGivesNoRequest() {
+        assertNull(moviesDynamoDbRepository.updateItemRequest(new MovieInfo("tt0133093", null, null, null)));
+    }
+
+    @Test
+    void countryOfOriginOnly() {
+
+        final var request = moviesDynamoDbRepository.updateItemRequest(new MovieInfo("tt0133093", null, "US", null));
+
+        assertEquals("SET #c = :countryOfOrigin, #lm = :lastModified ADD #v :one", request.updateExpression());
+        assertEquals(Map.of("#c", "countryOfOrigin", "#lm", "lastModified", "#v", "version"), request.expressionAttributeNames());
+        assertEquals("US", request.expressionAttributeValues().get(":countryOfOrigin").s());
+        assertEquals(3, request.expressionAttributeValues().size());
+    }
+
+    @Test
+    void nameAndReleaseDate() {
+
+        final var request = moviesDynamoDbRepository.updateItemRequest(new MovieInfo("tt0133093", "The Matrix", null, "1999-03-31"));
+
+        assertEquals("SET #n = :name, #r = :releaseDate, #lm = :lastModified ADD #v :one", request.updateExpression());
+        assertEquals(Map.of("#n", "name", "#r", "releaseDate", "#lm", "lastModified", "#v", "version"), request.expressionAttributeNames());
+        assertEquals("The Matrix", request.expressionAttributeValues().get(":name").s());
+        assertEquals("1999-03-31", request.expressionAttributeValues().get(":releaseDate").s());
+        assertEquals("tt0133093", request.key().get("movieId").s());
+        assertEquals(MOVIES_TABLE, request.tableName());
+        assertEquals(ReturnValue.ALL_NEW, request.returnValues());
+    }
+
+    @Test
+    void allFields() {
+
+        final var request = moviesDynamoDbRepository.updateItemRequest(new MovieInfo("tt0133093", "The Matrix", "US", "1999-03-31"));
+
+        assertEquals("SET #n = :name, #c = :countryOfOrigin, #r = :releaseDate, #lm = :lastModified ADD #v :one", request.updateExpression());
+        assertEquals(5, request.expressionAttributeNames().size());
+        assertEquals(5, request.expressionAttributeValues().size());
+    }
+}
@@ -0,0 +1,114 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository;
+
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MoviesDynamoDbRepository.IMDB_LEADERBOARD;
+import static de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MoviesDynamoDbRepository.IMDB_LEADERBOARD_ATTRIBUTE;
+import static de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MoviesDynamoDbRepository.ROTTEN_TOMATOES_LEADERBOARD;
+import static de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MoviesDynamoDbRepository.ROTTEN_TOMATOES_LEADERBOARD_ATTRIBUTE;
+
+// run with ./gradlew jmh, the gc profiler reports gc.alloc.rate.norm, i.e. the bytes allocated per operation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateItemRequestBenchmark {
+
+    private static final String MOVIES_TABLE = "movies";
+
+    private MoviesDynamoDbRepository moviesDynamoDbRepository;
+    private MovieRating movieRating;
+
+    @Setup
+    public void setup() {
+
+        // the client is never called, only the building of the request is measured
+        final var dynamoDbClient = new DynamoDbClient() {
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() { }
+        };
+
+        moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDbClient, MOVIES_TABLE);
+
+        movieRating = new MovieRating();
+        movieRating.setMovieId("tt0133093");
+        movieRating.setImdbRating(87);
+        movieRating.setRottenTomatoesRating(88);
+    }
+
+    @Benchmark
+    public UpdateItemRequest requestFromTemplate() {
+        return moviesDynamoDbRepository.updateItemRequest(movieRating, ReturnValue.ALL_NEW);
+    }
+
+    // the request as it was built before the templates, the whole expression and both maps on every call
+    @Benchmark
+    public UpdateItemRequest requestBuiltPerCall() {
+
+        final var updateExpressionLines = new ArrayList<String>();
+        final var expressionAttributeValues = new HashMap<String, AttributeValue>();
+        final var expressionAttributeNames = new HashMap<String, String>();
+
+        Optional.ofNullable(movieRating.getImdbRating()).ifPresent(value -> {
+            updateExpressionLines.add("#i = :imdbRating");
+            expressionAttributeValues.put(":imdbRating", AttributeValue.builder().n(value.toString()).build());
+            expressionAttributeNames.put("#i", "imdbRating");
+            updateExpressionLines.add("#il = :imdbLeaderboard");
+            expressionAttributeValues.put(":imdbLeaderboard", AttributeValue.builder().s(IMDB_LEADERBOARD).build());
+            expressionAttributeNames.put("#il", IMDB_LEADERBOARD_ATTRIBUTE);
+        });
+
+        Optional.ofNullable(movieRating.getRottenTomatoesRating()).ifPresent(value -> {
+            updateExpressionLines.add("#ro = :rottenTomatoesRating");
+            expressionAttributeValues.put(":rottenTomatoesRating", AttributeValue.builder().n(value.toString()).build());
+            expressionAttributeNames.put("#ro", "rottenTomatoesRating");
+            updateExpressionLines.add("#rol = :rottenTomatoesLeaderboard");
+            expressionAttributeValues.put(":rottenTomatoesLeaderboard", AttributeValue.builder().s(ROTTEN_TOMATOES_LEADERBOARD).build());
+            expressionAttributeNames.put("#rol", ROTTEN_TOMATOES_LEADERBOARD_ATTRIBUTE);
+        });
+
+        updateExpressionLines.add("#lm = :lastModified");
+        expressionAttributeValues.put(":lastModified", AttributeValue.builder().n(Long.toString(System.currentTimeMillis())).build());
+        expressionAttributeNames.put("#lm", "lastModified");
+
+        expressionAttributeValues.put(":one", AttributeValue.builder().n("1").build());
+        expressionAttributeNames.put("#v", "version");
+
+        return UpdateItemRequest.builder()
+                .key(Map.of("movieId", AttributeValue.builder().s(movieRating.getMovieId()).build()))
+                .tableName(MOVIES_TABLE)
+                .updateExpression("SET " + String.join(", ", updateExpressionLines) + " ADD #v :one")
+                .expressionAttributeValues(expressionAttributeValues)
+                .expressionAttributeNames(expressionAttributeNames)
+                .returnValues(ReturnValue.ALL_NEW)
+                .build();
+    }
+}
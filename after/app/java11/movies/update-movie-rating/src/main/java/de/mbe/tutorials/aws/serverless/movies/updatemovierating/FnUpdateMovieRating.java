@@ -1,76 +1,542 @@
 package de.mbe.tutorials.aws.serverless.movies.updatemovierating;
 
-import com.amazonaws.services.lambda.runtime.events.APIGatewayV2ProxyRequestEvent;
-import com.amazonaws.services.lambda.runtime.events.APIGatewayV2ProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.AdmissionController;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.AdmissionRejectedException;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.Priority;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk.BulkRatingsUpdater;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.deadline.DeadlinePolicy;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.idempotency.IdempotencyKeyInUseException;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.idempotency.IdempotencyKeyReusedException;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.idempotency.IdempotencyStore;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MovieVotesDynamoDbRepository;
 import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MoviesDynamoDbRepository;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.Movie;
 import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieVote;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.votes.VoteRecorder;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind.RatingUpdatesConsumer;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind.RatingUpdatesNotAppliedException;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind.RatingUpdatesQueue;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind.SqsRatingUpdatesQueue;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.sqs.SqsClient;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 
-public final class FnUpdateMovieRating {
+public final class FnUpdateMovieRating implements RequestStreamHandler, APIGatewayProxyRequestUtils, APIGatewayProxyResponseUtils, AutoCloseable {
 
     private static final Logger LOGGER = LogManager.getLogger(FnUpdateMovieRating.class);
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    // a delta leaves out what was not written instead of sending it back as null
+    private static final ObjectMapper DELTA_OBJECT_MAPPER = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private static final TypeReference<List<MovieRating>> MOVIE_RATINGS = new TypeReference<>() { };
+
+    private static final String BULK_RATINGS_RESOURCE = "/movies/ratings";
+    private static final String VOTES_RESOURCE = "/movies/{movieId}/votes";
+    private static final int MAX_VOTE_RATING = 100;
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
+    private static final int DEFAULT_BULK_RATINGS_MAX_IN_FLIGHT = 16;
+    private static final int DEFAULT_BULK_RATINGS_MAX_ITEMS = 1_000;
+    private static final long DEFAULT_ADMISSION_BURST_SECONDS = 10;
+    private static final long DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS = 250;
+    private static final long DEFAULT_IDEMPOTENCY_TTL_SECONDS = 86_400;
+    private static final long DEFAULT_IDEMPOTENCY_CACHE_SIZE = 10_000;
+    private static final int DEFAULT_MOVIE_VOTE_SHARDS = 10;
+    private static final long DEFAULT_MOVIE_VOTES_FOLD_INTERVAL_SECONDS = 60;
+    private static final long DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS = 2_000;
+
+    // API Gateway gives up on the integration after 29 seconds, whatever the Lambda timeout is
+    private static final long MAX_REQUEST_DURATION_MILLIS = 29_000;
+
+    private static final byte[] PRIMING_REQUEST = ("{\"pathParameters\":{\"movieId\":\"" + Priming.PRIMING_MOVIE_ID + "\"},"
+            + "\"body\":\"{\\\"imdbRating\\\":50,\\\"rottenTomatoesRating\\\":50}\",\"isBase64Encoded\":false}").getBytes(StandardCharsets.UTF_8);
 
     private final MoviesDynamoDbRepository moviesDynamoDbRepository;
+    private final DeadlinePolicy deadlinePolicy;
+    private final BulkRatingsUpdater bulkRatingsUpdater;
+    private final int bulkRatingsMaxItems;
+    private final IdempotencyStore idempotencyStore;
+    private final RatingUpdatesQueue ratingUpdatesQueue;
+    private final RatingUpdatesConsumer ratingUpdatesConsumer;
+    private final VoteRecorder voteRecorder;
+    private final AdmissionController admissionController;
 
     public FnUpdateMovieRating() {
+        this(DynamoDbClient.builder()
+                        .overrideConfiguration(ClientOverrideConfiguration.builder()
+                                .addExecutionInterceptor(new TracingInterceptor())
+                                .build())
+                        .build(),
+                DynamoDbAsyncClient.builder()
+                        .overrideConfiguration(ClientOverrideConfiguration.builder()
+                                .addExecutionInterceptor(new TracingInterceptor())
+                                .build())
+                        .build(),
+                sqsRatingUpdatesQueue());
+    }
 
-        final var dynamoDBClient = DynamoDbClient.builder()
-                .overrideConfiguration(ClientOverrideConfiguration.builder()
-                        .addExecutionInterceptor(new TracingInterceptor())
-                        .build())
-                .build();
+    public FnUpdateMovieRating(final DynamoDbClient dynamoDBClient, final DynamoDbAsyncClient dynamoDbAsyncClient) {
+        this(dynamoDBClient, dynamoDbAsyncClient, null);
+    }
+
+    // the embedded server hands every handler the same clients; the async one only carries the bulk updates;
+    // with a queue the PATCHed ratings are written behind, the same function consumes the queue
+    public FnUpdateMovieRating(final DynamoDbClient dynamoDBClient, final DynamoDbAsyncClient dynamoDbAsyncClient,
+                               final RatingUpdatesQueue ratingUpdatesQueue) {
 
         final var moviesTable = System.getenv("MOVIES_TABLE");
 
-        moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDBClient, moviesTable);
+        moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDBClient, dynamoDbAsyncClient, moviesTable);
+
+        // the write capacity units per second this instance may spend on the movies table, without them every write is sent
+        final var admissionWriteCapacityUnits = Optional.ofNullable(System.getenv("ADMISSION_WRITE_CAPACITY_UNITS"))
+                .filter(units -> !units.isBlank())
+                .map(Double::parseDouble)
+                .orElse(0d);
+
+        final var admissionBurstSeconds = Optional.ofNullable(System.getenv("ADMISSION_BURST_SECONDS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_ADMISSION_BURST_SECONDS);
+
+        admissionController = admissionWriteCapacityUnits > 0
+                ? new AdmissionController(admissionWriteCapacityUnits, Duration.ofSeconds(admissionBurstSeconds))
+                : AdmissionController.disabled();
+
+        final var bulkRatingsMaxInFlight = Optional.ofNullable(System.getenv("BULK_RATINGS_MAX_IN_FLIGHT"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_BULK_RATINGS_MAX_IN_FLIGHT);
+
+        bulkRatingsUpdater = new BulkRatingsUpdater(moviesDynamoDbRepository, bulkRatingsMaxInFlight, admissionController);
+
+        this.ratingUpdatesQueue = ratingUpdatesQueue;
+        ratingUpdatesConsumer = new RatingUpdatesConsumer(bulkRatingsUpdater);
+
+        bulkRatingsMaxItems = Optional.ofNullable(System.getenv("BULK_RATINGS_MAX_ITEMS"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_BULK_RATINGS_MAX_ITEMS);
+
+        final var deadlineSafetyMarginMillis = Optional.ofNullable(System.getenv("DEADLINE_SAFETY_MARGIN_MILLIS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS);
+
+        final var apiCallAttemptTimeoutMillis = Optional.ofNullable(System.getenv("SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS);
+
+        deadlinePolicy = new DeadlinePolicy(MAX_REQUEST_DURATION_MILLIS, deadlineSafetyMarginMillis, apiCallAttemptTimeoutMillis);
+
+        final var idempotencyTable = System.getenv("IDEMPOTENCY_TABLE");
+
+        final var idempotencyTtlSeconds = Optional.ofNullable(System.getenv("IDEMPOTENCY_TTL_SECONDS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_IDEMPOTENCY_TTL_SECONDS);
+
+        final var idempotencyCacheSize = Optional.ofNullable(System.getenv("IDEMPOTENCY_CACHE_SIZE"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_IDEMPOTENCY_CACHE_SIZE);
+
+        // no request outlives API Gateway's wait for it, after that an unfinished one no longer holds on to its key
+        idempotencyStore = idempotencyTable == null || idempotencyTable.isBlank()
+                ? IdempotencyStore.disabled()
+                : new IdempotencyStore(dynamoDBClient, idempotencyTable, Duration.ofSeconds(idempotencyTtlSeconds),
+                        Duration.ofMillis(MAX_REQUEST_DURATION_MILLIS), idempotencyCacheSize);
+
+        final var movieVotesTable = System.getenv("MOVIE_VOTES_TABLE");
+
+        final var movieVoteShards = Optional.ofNullable(System.getenv("MOVIE_VOTE_SHARDS"))
+                .map(Integer::parseInt)
+                .orElse(DEFAULT_MOVIE_VOTE_SHARDS);
+
+        final var movieVotesFoldIntervalSeconds = Optional.ofNullable(System.getenv("MOVIE_VOTES_FOLD_INTERVAL_SECONDS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_MOVIE_VOTES_FOLD_INTERVAL_SECONDS);
+
+        voteRecorder = movieVotesTable == null || movieVotesTable.isBlank()
+                ? null
+                : new VoteRecorder(new MovieVotesDynamoDbRepository(dynamoDBClient, moviesTable, movieVotesTable, movieVoteShards),
+                        Duration.ofSeconds(movieVotesFoldIntervalSeconds), admissionController);
+
+        if (Priming.isEnabled()) {
+            prime();
+        }
     }
 
     public FnUpdateMovieRating(final MoviesDynamoDbRepository moviesDynamoDbRepository) {
-        this.moviesDynamoDbRepository = moviesDynamoDbRepository;
+        this(builder(moviesDynamoDbRepository));
+    }
+
+    private FnUpdateMovieRating(final Builder builder) {
+        this.moviesDynamoDbRepository = builder.moviesDynamoDbRepository;
+        this.deadlinePolicy = builder.deadlinePolicy;
+        // unless one is given, the bulk updater is handed the same admission controller, so single and bulk writes share one budget
+        this.bulkRatingsUpdater = Optional.ofNullable(builder.bulkRatingsUpdater)
+                .orElseGet(() -> new BulkRatingsUpdater(builder.moviesDynamoDbRepository, DEFAULT_BULK_RATINGS_MAX_IN_FLIGHT, builder.admissionController));
+        this.bulkRatingsMaxItems = builder.bulkRatingsMaxItems;
+        this.idempotencyStore = builder.idempotencyStore;
+        this.ratingUpdatesQueue = builder.ratingUpdatesQueue;
+        this.ratingUpdatesConsumer = new RatingUpdatesConsumer(bulkRatingsUpdater);
+        this.voteRecorder = builder.voteRecorder;
+        this.admissionController = builder.admissionController;
+    }
+
+    // whatever is not set on the builder is disabled or left at its default
+    public static Builder builder(final MoviesDynamoDbRepository moviesDynamoDbRepository) {
+        return new Builder(moviesDynamoDbRepository);
+    }
+
+    private static RatingUpdatesQueue sqsRatingUpdatesQueue() {
+
+        // write-behind is opt-in, without a queue every PATCH is written before it is answered
+        final var queueUrl = System.getenv("RATING_UPDATES_QUEUE_URL");
+        if (queueUrl == null || queueUrl.isBlank()) {
+            return null;
+        }
+
+        return new SqsRatingUpdatesQueue(SqsClient.builder()
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .addExecutionInterceptor(new TracingInterceptor())
+                        .build())
+                .build(), queueUrl);
+    }
+
+    private void prime() {
+
+        // class loading, Jackson introspection, request marshalling and the TLS handshake with DynamoDB
+        // are paid for once during the init phase instead of by the first request
+        new Priming()
+                .step("request", () -> {
+                    final var movieRating = getMovieRating(readRequest(new ByteArrayInputStream(PRIMING_REQUEST)));
+                    final var movie = new Movie();
+                    movie.setMovieId(movieRating.getMovieId());
+                    movie.setImdbRating(movieRating.getImdbRating());
+                    movie.setRottenTomatoesRating(movieRating.getRottenTomatoesRating());
+                    OBJECT_MAPPER.readValue(OBJECT_MAPPER.writeValueAsBytes(movie), Movie.class);
+                    writeResponse(OutputStream.nullOutputStream(), 200, "", Map.of("Content-Type", "application/json"));
+                })
+                .step("dynamodb", () -> moviesDynamoDbRepository.prime(Priming.PRIMING_MOVIE_ID))
+                .done();
     }
 
-    public APIGatewayV2ProxyResponseEvent handleRequest(final APIGatewayV2ProxyRequestEvent input) {
+    @Override
+    public void handleRequest(final InputStream input, final OutputStream output, final Context context) throws IOException {
 
+        final var deadline = deadlinePolicy.start(context);
         try {
 
-            final var movieRating = getMovieRating(input);
-            LOGGER.info("Patching movie {}", movieRating.getMovieId());
+            final var request = readRequest(input);
+            if (request.isWarmup()) {
+                reply(output, 200, "Warmed up");
+                return;
+            }
+
+            if (request.getQueueMessages() != null) {
+                handleRatingUpdates(request.getQueueMessages(), output);
+                return;
+            }
+
+            if (BULK_RATINGS_RESOURCE.equals(request.getResource())) {
+                handleBulkRequest(request, output);
+                return;
+            }
+
+            if (VOTES_RESOURCE.equals(request.getResource())) {
+                handleVoteRequest(request, output);
+                return;
+            }
+
+            final var idempotencyKey = idempotencyStore.isEnabled() ? request.getHeader(IDEMPOTENCY_KEY_HEADER) : null;
+            if (idempotencyKey != null) {
+                handleIdempotentRequest(request, idempotencyKey, output);
+                return;
+            }
+
+            handlePatchRequest(request, output);
+
+        } catch (RatingUpdatesNotAppliedException error) {
+            throw error;
+        } catch (Exception error) {
+            replyWithError(output, error);
+        } finally {
+            deadline.close();
+        }
+    }
+
+    private void handlePatchRequest(final APIGatewayRequest request, final OutputStream output) throws IOException {
+
+        final var movieRating = getMovieRating(request);
+
+        if (ratingUpdatesQueue != null) {
+
+            if (movieRating.getImdbRating() == null && movieRating.getRottenTomatoesRating() == null) {
+                throw new IllegalArgumentException("Invalid JSON: Missing or null imdbRating and rottenTomatoesRating");
+            }
+
+            // there is no movie to return yet, so no Prefer is honoured
+            ratingUpdatesQueue.send(movieRating);
+            LOGGER.info("Queued the rating update of movie {}", movieRating.getMovieId());
+            reply(output, 202, null);
+            return;
+        }
+
+        LOGGER.info("Patching movie {}", movieRating.getMovieId());
+
+        admissionController.admit(Priority.HIGH, MoviesDynamoDbRepository.RATING_UPDATE_WRITE_UNITS);
+        logAdmissionStats();
 
-            final var movie = moviesDynamoDbRepository.updateMovieRating(movieRating);
-            return reply(200, movie);
+        final var preferred = ReturnPreference.parse(request.getHeader("Prefer"));
+        final var returnPreference = preferred.orElse(ReturnPreference.REPRESENTATION);
 
-        } catch (IllegalArgumentException error) {
-            return reply(400, error);
-        } catch (DynamoDbException error) {
-            return reply(error.statusCode(), error);
+        final var movie = moviesDynamoDbRepository.updateMovieRating(movieRating, returnPreference.getReturnValue());
+
+        // the preference is only acknowledged when the client stated one
+        final var headers = preferred
+                .map(preference -> Map.of("Content-Type", "application/json", "Preference-Applied", "return=" + preference.getToken()))
+                .orElse(Map.of("Content-Type", "application/json"));
+
+        switch (returnPreference) {
+            case MINIMAL:
+                reply(output, 204, null, Map.of("Preference-Applied", "return=minimal"));
+                break;
+            case DELTA:
+                reply(output, 200, movie == null ? null : DELTA_OBJECT_MAPPER.writeValueAsString(movie), headers);
+                break;
+            default:
+                reply(output, 200, movie, headers);
+        }
+    }
+
+    private void handleIdempotentRequest(final APIGatewayRequest request, final String idempotencyKey, final OutputStream output) throws IOException {
+
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new IllegalArgumentException("Invalid Idempotency-Key: expected 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+
+        final var fingerprint = fingerprint(request);
+
+        // a replay is answered byte for byte from the stored response, the movies table is not touched
+        final var storedResponse = idempotencyStore.begin(idempotencyKey, fingerprint);
+        if (storedResponse != null) {
+            output.write(storedResponse);
+            return;
+        }
+
+        final var response = new ByteArrayOutputStream();
+        Exception failure = null;
+        try {
+            handlePatchRequest(request, response);
         } catch (Exception error) {
-            return reply(500, error);
+            failure = error;
+            replyWithError(response, error);
+        }
+
+        if (failure == null || !isRetryable(failure)) {
+            idempotencyStore.complete(idempotencyKey, fingerprint, response.toByteArray());
+        } else {
+            idempotencyStore.release(idempotencyKey);
         }
+
+        response.writeTo(output);
     }
 
-    private static MovieRating getMovieRating(final APIGatewayV2ProxyRequestEvent input) throws JsonProcessingException {
+    // invalid requests are answered the same way every time, everything else may succeed on another attempt;
+    // DynamoDB throttles with a 400, so the status code alone does not tell
+    private static boolean isRetryable(final Exception error) {
 
-        final var movieId = input.getPathParameters().getOrDefault("movieId", null);
-        if (movieId == null) {
+        if (error instanceof DynamoDbException) {
+            final var dynamoDbException = (DynamoDbException) error;
+            return dynamoDbException.isThrottlingException() || dynamoDbException.statusCode() >= 500;
+        }
+
+        return !(error instanceof IllegalArgumentException || error instanceof JsonProcessingException);
+    }
+
+    private void replyWithError(final OutputStream output, final Exception error) throws IOException {
+
+        if (error instanceof IllegalArgumentException) {
+            reply(output, 400, error.getMessage());
+        } else if (error instanceof JsonProcessingException) {
+            reply(output, 404, ((JsonProcessingException) error).getOriginalMessage());
+        } else if (error instanceof IdempotencyKeyReusedException) {
+            reply(output, 422, error.getMessage());
+        } else if (error instanceof IdempotencyKeyInUseException) {
+            reply(output, 409, error.getMessage(), Map.of("Content-Type", "application/json", "Retry-After", "1"));
+        } else if (error instanceof AdmissionRejectedException) {
+            logAdmissionStats();
+            reply(output, 429, error.getMessage(), Map.of("Content-Type", "application/json",
+                    "Retry-After", Long.toString(((AdmissionRejectedException) error).getRetryAfterSeconds())));
+        } else if (error instanceof DynamoDbException) {
+            reply(output, ((DynamoDbException) error).statusCode(), error.getMessage());
+        } else if (error instanceof ApiCallTimeoutException || error instanceof ApiCallAttemptTimeoutException) {
+            // the deadline ran out while DynamoDB was slow or throttling, the client can retry later
+            reply(output, 503, error.getMessage());
+        } else {
+            reply(output, 500, error.getMessage());
+        }
+    }
+
+    // the same key sent with another movie, body or return preference is a different request
+    private static String fingerprint(final APIGatewayRequest request) {
+
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            for (final var part : new String[]{request.getPathParameter("movieId"), request.getHeader("Prefer"), request.getBody()}) {
+                digest.update(Objects.toString(part, "").getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    private void handleRatingUpdates(final List<String> messages, final OutputStream output) throws IOException, InterruptedException {
+
+        final var report = ratingUpdatesConsumer.apply(messages);
+
+        // a client error would only fail again, everything else, shed updates included, has the queue deliver the batch once more;
+        // rewriting the updates that did go through is harmless, every one of them sets the ratings to the same values
+        final var retryable = (int) report.getResults().stream()
+                .filter(result -> result.getStatusCode() >= 500 || result.getStatusCode() == 429)
+                .count();
+        logAdmissionStats();
+        if (retryable > 0) {
+            throw new RatingUpdatesNotAppliedException(retryable, report.getResults().size());
+        }
+
+        reply(output, 200, report);
+    }
+
+    private void handleVoteRequest(final APIGatewayRequest request, final OutputStream output) throws IOException {
+
+        if (voteRecorder == null) {
+            reply(output, 404, "Votes are not enabled");
+            return;
+        }
+
+        final var movieVote = getMovieVote(request);
+        voteRecorder.record(movieVote);
+
+        LOGGER.info("Recorded a vote for movie {}, votes: {}, folds: {}, unfolded: {}", movieVote.getMovieId(), voteRecorder.getVotes(), voteRecorder.getFolds(), voteRecorder.getUnfolded());
+        reply(output, 204, null, Map.of());
+    }
+
+    private void handleBulkRequest(final APIGatewayRequest request, final OutputStream output) throws IOException, InterruptedException {
+
+        final var movieRatings = getMovieRatings(request);
+        if (movieRatings.size() > bulkRatingsMaxItems) {
+            reply(output, 413, "Too many ratings, at most " + bulkRatingsMaxItems + " are accepted per request");
+            return;
+        }
+
+        LOGGER.info("Patching {} movie ratings", movieRatings.size());
+
+        final var report = bulkRatingsUpdater.update(movieRatings);
+        LOGGER.info("Patched movie ratings, succeeded: {}, failed: {}", report.getSucceeded(), report.getFailed());
+        logAdmissionStats();
+
+        // the request as a whole went through, what happened to every rating is in the report
+        reply(output, 200, report);
+    }
+
+    private void logAdmissionStats() {
+
+        if (!admissionController.isEnabled()) {
+            return;
+        }
+
+        LOGGER.info("Admission admitted: {}, shed: {}", admissionController.getAdmitted(), admissionController.getShed());
+    }
+
+    private static List<MovieRating> getMovieRatings(final APIGatewayRequest request) throws IOException {
+
+        if (request.getBody() == null) {
+            throw new IllegalArgumentException("Invalid JSON: Missing or null body");
+        }
+
+        // either a JSON array or NDJSON, i.e. one rating per line, which a sync job can stream without holding the whole batch
+        final var body = request.getBody().strip();
+        if (body.startsWith("[")) {
+            return OBJECT_MAPPER.readValue(body, MOVIE_RATINGS);
+        }
+
+        try (final var movieRatings = OBJECT_MAPPER.readerFor(MovieRating.class).<MovieRating>readValues(body)) {
+            return movieRatings.readAll();
+        }
+    }
+
+    private static MovieRating getMovieRating(final APIGatewayRequest request) throws JsonProcessingException {
+
+        final var movieId = request.getPathParameter("movieId");
+        if (movieId == null || movieId.isBlank()) {
             throw new IllegalArgumentException("Invalid JSON: Missing or null pathParameters.movieId");
         }
 
-        final var movieRating = OBJECT_MAPPER.readValue(input.getBody(), MovieRating.class);
+        if (request.getBody() == null) {
+            throw new IllegalArgumentException("Invalid JSON: Missing or null body");
+        }
+
+        final var movieRating = OBJECT_MAPPER.readValue(request.getBody(), MovieRating.class);
         movieRating.setMovieId(movieId);
         return movieRating;
     }
 
-    private static <T> APIGatewayV2ProxyResponseEvent reply(final int statusCode, final T body) {
+    private static MovieVote getMovieVote(final APIGatewayRequest request) throws JsonProcessingException {
+
+        final var movieId = request.getPathParameter("movieId");
+        if (movieId == null || movieId.isBlank()) {
+            throw new IllegalArgumentException("Invalid JSON: Missing or null pathParameters.movieId");
+        }
+
+        if (request.getBody() == null) {
+            throw new IllegalArgumentException("Invalid JSON: Missing or null body");
+        }
+
+        final var movieVote = OBJECT_MAPPER.readValue(request.getBody(), MovieVote.class);
+        movieVote.setMovieId(movieId);
+
+        // a vote is added to the sum as it is, there is no later chance to leave an outlier out
+        if (movieVote.getRating() == null || movieVote.getRating() < 0 || movieVote.getRating() > MAX_VOTE_RATING) {
+            throw new IllegalArgumentException("Invalid JSON: rating must be between 0 and " + MAX_VOTE_RATING);
+        }
+
+        return movieVote;
+    }
+
+    private <T> void reply(final OutputStream output, final int statusCode, final T body) throws IOException {
+        reply(output, statusCode, body, Map.of("Content-Type", "application/json"));
+    }
+
+    private <T> void reply(final OutputStream output, final int statusCode, final T body, final Map<String, String> headers) throws IOException {
 
         switch (statusCode / 100) {
             case 2:
@@ -83,18 +549,82 @@ public final class FnUpdateMovieRating {
                 LOGGER.error("SERVER ERROR! statusCode: {}, message: {}", statusCode, body);
         }
 
+        // plain messages are passed through as they are, everything else is serialized to JSON
         String bodyAsString;
-        try {
-            bodyAsString = OBJECT_MAPPER.writeValueAsString(body);
-        } catch (JsonProcessingException e) {
-            bodyAsString = e.getMessage();
+        if (body == null || body instanceof String) {
+            bodyAsString = (String) body;
+        } else {
+            try {
+                bodyAsString = OBJECT_MAPPER.writeValueAsString(body);
+            } catch (JsonProcessingException e) {
+                bodyAsString = e.getMessage();
+            }
         }
 
-        final var response = new APIGatewayV2ProxyResponseEvent();
-        response.setHeaders(Map.of("Content-Type", "application/json"));
-        response.setIsBase64Encoded(false);
-        response.setBody(bodyAsString);
-        response.setStatusCode(200);
-        return response;
+        writeResponse(output, statusCode, bodyAsString, headers);
+    }
+
+    // Lambda freezes the instance instead, only a long-running host has to stop the trailing fold
+    @Override
+    public void close() {
+        if (voteRecorder != null) {
+            voteRecorder.close();
+        }
+    }
+
+    public static final class Builder {
+
+        private final MoviesDynamoDbRepository moviesDynamoDbRepository;
+        private DeadlinePolicy deadlinePolicy = new DeadlinePolicy(MAX_REQUEST_DURATION_MILLIS, DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS, DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS);
+        private BulkRatingsUpdater bulkRatingsUpdater;
+        private int bulkRatingsMaxItems = DEFAULT_BULK_RATINGS_MAX_ITEMS;
+        private IdempotencyStore idempotencyStore = IdempotencyStore.disabled();
+        private RatingUpdatesQueue ratingUpdatesQueue;
+        private VoteRecorder voteRecorder;
+        private AdmissionController admissionController = AdmissionController.disabled();
+
+        private Builder(final MoviesDynamoDbRepository moviesDynamoDbRepository) {
+            this.moviesDynamoDbRepository = moviesDynamoDbRepository;
+        }
+
+        public Builder deadlinePolicy(final DeadlinePolicy deadlinePolicy) {
+            this.deadlinePolicy = deadlinePolicy;
+            return this;
+        }
+
+        public Builder bulkRatingsUpdater(final BulkRatingsUpdater bulkRatingsUpdater) {
+            this.bulkRatingsUpdater = bulkRatingsUpdater;
+            return this;
+        }
+
+        public Builder bulkRatingsMaxItems(final int bulkRatingsMaxItems) {
+            this.bulkRatingsMaxItems = bulkRatingsMaxItems;
+            return this;
+        }
+
+        public Builder idempotencyStore(final IdempotencyStore idempotencyStore) {
+            this.idempotencyStore = idempotencyStore;
+            return this;
+        }
+
+        // with a queue the PATCHed ratings are written behind
+        public Builder ratingUpdatesQueue(final RatingUpdatesQueue ratingUpdatesQueue) {
+            this.ratingUpdatesQueue = ratingUpdatesQueue;
+            return this;
+        }
+
+        public Builder voteRecorder(final VoteRecorder voteRecorder) {
+            this.voteRecorder = voteRecorder;
+            return this;
+        }
+
+        public Builder admissionController(final AdmissionController admissionController) {
+            this.admissionController = admissionController;
+            return this;
+        }
+
+        public FnUpdateMovieRating build() {
+            return new FnUpdateMovieRating(this);
+        }
     }
 }
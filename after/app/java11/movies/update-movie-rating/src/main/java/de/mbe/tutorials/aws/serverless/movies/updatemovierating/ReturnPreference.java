@@ -0,0 +1,54 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating;
+
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+
+import java.util.Optional;
+
+// the return preference of RFC 7240, clients that only need an acknowledgement spare the item on the way back and its serialization
+enum ReturnPreference {
+
+    MINIMAL("minimal", ReturnValue.NONE),
+    REPRESENTATION("representation", ReturnValue.ALL_NEW),
+    DELTA("delta", ReturnValue.UPDATED_NEW);
+
+    private final String token;
+    private final ReturnValue returnValue;
+
+    ReturnPreference(final String token, final ReturnValue returnValue) {
+        this.token = token;
+        this.returnValue = returnValue;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    ReturnValue getReturnValue() {
+        return returnValue;
+    }
+
+    // Prefer: respond-async, return=minimal; preferences and their parameters are ignored when they are not understood
+    static Optional<ReturnPreference> parse(final String prefer) {
+
+        if (prefer == null) {
+            return Optional.empty();
+        }
+
+        for (final var preference : prefer.split(",")) {
+
+            final var nameAndValue = preference.split(";", 2)[0].split("=", 2);
+            if (nameAndValue.length != 2 || !"return".equalsIgnoreCase(nameAndValue[0].trim())) {
+                continue;
+            }
+
+            final var value = nameAndValue[1].trim().replace("\"", "");
+            for (final var returnPreference : values()) {
+                if (returnPreference.token.equalsIgnoreCase(value)) {
+                    return Optional.of(returnPreference);
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,113 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk;
+
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.AdmissionController;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.AdmissionRejectedException;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.Priority;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MoviesDynamoDbRepository;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+// fans the ratings out as concurrent UpdateItem calls, at most maxInFlight of them on the wire at any time
+public final class BulkRatingsUpdater {
+
+    private final MoviesDynamoDbRepository moviesDynamoDbRepository;
+    private final int maxInFlight;
+    private final AdmissionController admissionController;
+
+    public BulkRatingsUpdater(final MoviesDynamoDbRepository moviesDynamoDbRepository, final int maxInFlight) {
+        this(moviesDynamoDbRepository, maxInFlight, AdmissionController.disabled());
+    }
+
+    public BulkRatingsUpdater(final MoviesDynamoDbRepository moviesDynamoDbRepository, final int maxInFlight, final AdmissionController admissionController) {
+
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("The in-flight limit must be at least 1");
+        }
+
+        this.moviesDynamoDbRepository = moviesDynamoDbRepository;
+        this.maxInFlight = maxInFlight;
+        this.admissionController = admissionController;
+    }
+
+    public RatingUpdateReport update(final List<MovieRating> movieRatings) throws InterruptedException {
+        return update(movieRatings, Priority.LOW);
+    }
+
+    // one result per rating, in the order they were given
+    public RatingUpdateReport update(final List<MovieRating> movieRatings, final Priority priority) throws InterruptedException {
+
+        final var results = new RatingUpdateResult[movieRatings.size()];
+        final var updates = new ArrayList<CompletableFuture<Void>>(movieRatings.size());
+        final var inFlight = new Semaphore(maxInFlight);
+
+        for (var index = 0; index < movieRatings.size(); index++) {
+
+            final var movieRating = movieRatings.get(index);
+            final var movieId = movieRating == null ? null : movieRating.getMovieId();
+
+            if (movieId == null || movieId.isBlank()) {
+                results[index] = new RatingUpdateResult(movieId, 400, "Invalid JSON: Missing or null movieId");
+                continue;
+            }
+
+            // the loop waits here rather than queueing, so a large batch never has more calls open than the table is meant to absorb
+            inFlight.acquire();
+
+            CompletableFuture<Void> update;
+            try {
+                // every rating is admitted on its own, a shed one is reported like a throttled write
+                admissionController.admit(priority, MoviesDynamoDbRepository.RATING_UPDATE_WRITE_UNITS);
+                update = moviesDynamoDbRepository.updateMovieRatingAsync(movieRating);
+            } catch (RuntimeException error) {
+                update = CompletableFuture.failedFuture(error);
+            }
+
+            final var position = index;
+            updates.add(update.handle((ignored, error) -> {
+                inFlight.release();
+                results[position] = toResult(movieId, error);
+                return null;
+            }));
+        }
+
+        CompletableFuture.allOf(updates.toArray(CompletableFuture[]::new)).join();
+
+        return new RatingUpdateReport(Arrays.asList(results));
+    }
+
+    private static RatingUpdateResult toResult(final String movieId, final Throwable error) {
+
+        final var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+
+        // the same status codes a single PATCH would have answered with
+        if (cause == null) {
+            return new RatingUpdateResult(movieId, 204, null);
+        }
+        if (cause instanceof AdmissionRejectedException) {
+            return new RatingUpdateResult(movieId, 429, cause.getMessage());
+        }
+        if (cause instanceof IllegalArgumentException) {
+            return new RatingUpdateResult(movieId, 400, cause.getMessage());
+        }
+        // DynamoDB throttles with a 400, answered as a 429 it is retried like a shed update instead of being dropped
+        if (cause instanceof DynamoDbException && ((DynamoDbException) cause).isThrottlingException()) {
+            return new RatingUpdateResult(movieId, 429, cause.getMessage());
+        }
+        if (cause instanceof DynamoDbException) {
+            return new RatingUpdateResult(movieId, ((DynamoDbException) cause).statusCode(), cause.getMessage());
+        }
+        if (cause instanceof ApiCallTimeoutException || cause instanceof ApiCallAttemptTimeoutException) {
+            return new RatingUpdateResult(movieId, 503, cause.getMessage());
+        }
+        return new RatingUpdateResult(movieId, 500, cause.getMessage());
+    }
+}
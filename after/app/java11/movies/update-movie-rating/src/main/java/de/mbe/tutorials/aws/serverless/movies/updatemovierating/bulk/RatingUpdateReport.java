@@ -0,0 +1,42 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk;
+
+import java.util.List;
+
+public final class RatingUpdateReport {
+
+    private int succeeded;
+    private int failed;
+    private List<RatingUpdateResult> results;
+
+    public RatingUpdateReport() { }
+
+    public RatingUpdateReport(final List<RatingUpdateResult> results) {
+        this.succeeded = (int) results.stream().filter(result -> result.getStatusCode() / 100 == 2).count();
+        this.failed = results.size() - succeeded;
+        this.results = results;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<RatingUpdateResult> getResults() {
+        return results;
+    }
+
+    public void setSucceeded(final int succeeded) {
+        this.succeeded = succeeded;
+    }
+
+    public void setFailed(final int failed) {
+        this.failed = failed;
+    }
+
+    public void setResults(final List<RatingUpdateResult> results) {
+        this.results = results;
+    }
+}
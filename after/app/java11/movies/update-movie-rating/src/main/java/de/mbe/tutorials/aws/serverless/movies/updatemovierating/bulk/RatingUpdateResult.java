@@ -0,0 +1,60 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk;
+
+public final class RatingUpdateResult {
+
+    private String movieId;
+    private int statusCode;
+    private String message;
+
+    public RatingUpdateResult() { }
+
+    public RatingUpdateResult(final String movieId, final int statusCode, final String message) {
+        this.movieId = movieId;
+        this.statusCode = statusCode;
+        this.message = message;
+    }
+
+    public String getMovieId() {
+        return movieId;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMovieId(final String movieId) {
+        this.movieId = movieId;
+    }
+
+    public void setStatusCode(final int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public void setMessage(final String message) {
+        this.message = message;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RatingUpdateResult that = (RatingUpdateResult) o;
+
+        if (getStatusCode() != that.getStatusCode()) return false;
+        if (getMovieId() != null ? !getMovieId().equals(that.getMovieId()) : that.getMovieId() != null) return false;
+        return getMessage() != null ? getMessage().equals(that.getMessage()) : that.getMessage() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getMovieId() != null ? getMovieId().hashCode() : 0;
+        result = 31 * result + getStatusCode();
+        result = 31 * result + (getMessage() != null ? getMessage().hashCode() : 0);
+        return result;
+    }
+}
@@ -0,0 +1,11 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.idempotency;
+
+// another request with the same key is still being processed
+public final class IdempotencyKeyInUseException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public IdempotencyKeyInUseException(final String idempotencyKey) {
+        super("A request with the Idempotency-Key " + idempotencyKey + " is still in progress");
+    }
+}
@@ -0,0 +1,11 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.idempotency;
+
+// the key was first used for a different request, replaying that response would answer the wrong question
+public final class IdempotencyKeyReusedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public IdempotencyKeyReusedException(final String idempotencyKey) {
+        super("The Idempotency-Key " + idempotencyKey + " was already used for a different request");
+    }
+}
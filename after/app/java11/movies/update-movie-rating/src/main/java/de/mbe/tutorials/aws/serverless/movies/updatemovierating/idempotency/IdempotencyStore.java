@@ -0,0 +1,195 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.deadline.Deadline;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// remembers the response of every request sent with an Idempotency-Key, so a retry is answered without writing again;
+// the table is shared by all instances, the cache in front of it spares the read when the retry lands on the same one
+public final class IdempotencyStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(IdempotencyStore.class);
+
+    private static final String KEY = "idempotencyKey";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String STATUS = "status";
+    private static final String RESPONSE = "response";
+    private static final String EXPIRES_AT = "expiresAt";
+
+    private static final String IN_PROGRESS = "IN_PROGRESS";
+    private static final String COMPLETED = "COMPLETED";
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String idempotencyTable;
+    private final Duration timeToLive;
+    private final Duration inProgressTimeout;
+    private final Cache<String, StoredResponse> cache;
+
+    private final LongAdder replayedFromCache = new LongAdder();
+    private final LongAdder replayedFromTable = new LongAdder();
+    private final LongAdder inProgressDuplicates = new LongAdder();
+
+    public IdempotencyStore(final DynamoDbClient dynamoDbClient, final String idempotencyTable, final Duration timeToLive,
+                            final Duration inProgressTimeout, final long cacheSize) {
+
+        this.dynamoDbClient = dynamoDbClient;
+        this.idempotencyTable = idempotencyTable;
+        this.timeToLive = timeToLive;
+        this.inProgressTimeout = inProgressTimeout;
+
+        this.cache = idempotencyTable == null ? null : Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(timeToLive)
+                .build();
+    }
+
+    public static IdempotencyStore disabled() {
+        return new IdempotencyStore(null, null, Duration.ZERO, Duration.ZERO, 0);
+    }
+
+    public boolean isEnabled() {
+        return idempotencyTable != null;
+    }
+
+    // the stored response when the request was already answered, null when the caller now owns the key and has to answer it
+    public byte[] begin(final String idempotencyKey, final String fingerprint) {
+
+        final var cached = cache.getIfPresent(idempotencyKey);
+        if (cached != null) {
+            return replay(idempotencyKey, fingerprint, cached, replayedFromCache);
+        }
+
+        final var now = Instant.now().getEpochSecond();
+
+        try {
+
+            // TTL only removes expired items eventually, so an expired record is taken over instead of being waited for
+            dynamoDbClient.putItem(Deadline.current().apply(PutItemRequest.builder())
+                    .tableName(idempotencyTable)
+                    .item(Map.of(
+                            KEY, AttributeValue.builder().s(idempotencyKey).build(),
+                            FINGERPRINT, AttributeValue.builder().s(fingerprint).build(),
+                            STATUS, AttributeValue.builder().s(IN_PROGRESS).build(),
+                            EXPIRES_AT, AttributeValue.builder().n(Long.toString(now + inProgressTimeout.toSeconds())).build()))
+                    .conditionExpression("attribute_not_exists(#k) OR #e < :now")
+                    .expressionAttributeNames(Map.of("#k", KEY, "#e", EXPIRES_AT))
+                    .expressionAttributeValues(Map.of(":now", AttributeValue.builder().n(Long.toString(now)).build()))
+                    .build());
+
+            return null;
+
+        } catch (ConditionalCheckFailedException alreadyRecorded) {
+            // the record is read below
+        }
+
+        final var item = dynamoDbClient.getItem(Deadline.current().apply(GetItemRequest.builder())
+                .tableName(idempotencyTable)
+                .key(Map.of(KEY, AttributeValue.builder().s(idempotencyKey).build()))
+                .consistentRead(true)
+                .build()).item();
+
+        if (item == null || item.isEmpty() || !COMPLETED.equals(item.get(STATUS).s())) {
+
+            if (item != null && item.containsKey(FINGERPRINT) && !fingerprint.equals(item.get(FINGERPRINT).s())) {
+                throw new IdempotencyKeyReusedException(idempotencyKey);
+            }
+
+            // a duplicate arrived while the first request is still being processed, or that one just gave the key back
+            inProgressDuplicates.increment();
+            LOGGER.info("Idempotency-Key {} is in progress, inProgressDuplicates: {}", idempotencyKey, inProgressDuplicates.sum());
+            throw new IdempotencyKeyInUseException(idempotencyKey);
+        }
+
+        final var stored = new StoredResponse(item.get(FINGERPRINT).s(), item.get(RESPONSE).b().asByteArray());
+        cache.put(idempotencyKey, stored);
+
+        return replay(idempotencyKey, fingerprint, stored, replayedFromTable);
+    }
+
+    public void complete(final String idempotencyKey, final String fingerprint, final byte[] response) {
+
+        cache.put(idempotencyKey, new StoredResponse(fingerprint, response));
+
+        final var expiresAt = Instant.now().plus(timeToLive).getEpochSecond();
+
+        try {
+            dynamoDbClient.putItem(Deadline.current().apply(PutItemRequest.builder())
+                    .tableName(idempotencyTable)
+                    .item(Map.of(
+                            KEY, AttributeValue.builder().s(idempotencyKey).build(),
+                            FINGERPRINT, AttributeValue.builder().s(fingerprint).build(),
+                            STATUS, AttributeValue.builder().s(COMPLETED).build(),
+                            RESPONSE, AttributeValue.builder().b(SdkBytes.fromByteArray(response)).build(),
+                            EXPIRES_AT, AttributeValue.builder().n(Long.toString(expiresAt)).build()))
+                    .build());
+        } catch (RuntimeException error) {
+            // the movie was written, failing the request now would only make the client retry it;
+            // the in-progress record expires on its own and a later retry is then applied once more
+            LOGGER.warn("Could not record the response for Idempotency-Key {}: {}", idempotencyKey, error.getMessage());
+        }
+    }
+
+    // the request failed in a way worth retrying, the key is given back so that the retry is processed
+    public void release(final String idempotencyKey) {
+
+        try {
+            dynamoDbClient.deleteItem(Deadline.current().apply(DeleteItemRequest.builder())
+                    .tableName(idempotencyTable)
+                    .key(Map.of(KEY, AttributeValue.builder().s(idempotencyKey).build()))
+                    .conditionExpression("#s = :inProgress")
+                    .expressionAttributeNames(Map.of("#s", STATUS))
+                    .expressionAttributeValues(Map.of(":inProgress", AttributeValue.builder().s(IN_PROGRESS).build()))
+                    .build());
+        } catch (RuntimeException error) {
+            LOGGER.warn("Could not release Idempotency-Key {}: {}", idempotencyKey, error.getMessage());
+        }
+    }
+
+    public long getReplayedFromCache() {
+        return replayedFromCache.sum();
+    }
+
+    public long getReplayedFromTable() {
+        return replayedFromTable.sum();
+    }
+
+    public long getInProgressDuplicates() {
+        return inProgressDuplicates.sum();
+    }
+
+    private static byte[] replay(final String idempotencyKey, final String fingerprint, final StoredResponse stored, final LongAdder replays) {
+
+        if (!stored.fingerprint.equals(fingerprint)) {
+            throw new IdempotencyKeyReusedException(idempotencyKey);
+        }
+
+        replays.increment();
+        LOGGER.info("Replaying the response for Idempotency-Key {}", idempotencyKey);
+        return stored.response;
+    }
+
+    private static final class StoredResponse {
+
+        private final String fingerprint;
+        private final byte[] response;
+
+        private StoredResponse(final String fingerprint, final byte[] response) {
+            this.fingerprint = fingerprint;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository;
+
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.deadline.Deadline;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieVote;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.VoteTally;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// votes are counted on a few shard items per movie, every vote is one unconditional ADD on one of them;
+// the shards are folded into voteCount, voteSum and voteAverage on the movie item from time to time
+public class MovieVotesDynamoDbRepository {
+
+    // a fold is one conditional update of a movie item, the shard reads are paid from the votes table
+    public static final int FOLD_WRITE_UNITS = 1;
+
+    private static final String SHARD_KEY = "movieShard";
+    private static final int MAX_BATCH_GET_ATTEMPTS = 3;
+
+    private static final AttributeValue ONE = AttributeValue.builder().n("1").build();
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String movieVotesTable;
+    private final int shards;
+    private final UpdateItemRequest recordVoteTemplate;
+    private final UpdateItemRequest foldTemplate;
+
+    public MovieVotesDynamoDbRepository(final DynamoDbClient dynamoDbClient, final String moviesTable, final String movieVotesTable, final int shards) {
+
+        // the shards are read back by number, lowering the count would leave the votes on the dropped ones out of the tally
+        if (shards < 1) {
+            throw new IllegalArgumentException("There must be at least 1 vote shard");
+        }
+
+        this.dynamoDbClient = dynamoDbClient;
+        this.movieVotesTable = movieVotesTable;
+        this.shards = shards;
+
+        // ADD needs no read and no condition, concurrent votes on the same shard never conflict
+        this.recordVoteTemplate = UpdateItemRequest.builder()
+                .tableName(movieVotesTable)
+                .updateExpression("ADD #c :one, #s :rating")
+                .expressionAttributeNames(Map.of("#c", "voteCount", "#s", "voteSum"))
+                .build();
+
+        // counts only grow, so a fold that read the shards before another one did never overwrites the newer tally
+        this.foldTemplate = UpdateItemRequest.builder()
+                .tableName(moviesTable)
+                .updateExpression("SET #vc = :count, #vs = :sum, #va = :average, #lm = :lastModified ADD #v :one")
+                .conditionExpression("attribute_exists(#m) AND (attribute_not_exists(#vc) OR #vc < :count)")
+                .expressionAttributeNames(Map.of("#m", "movieId", "#vc", "voteCount", "#vs", "voteSum", "#va", "voteAverage",
+                        "#lm", "lastModified", "#v", "version"))
+                .build();
+    }
+
+    public void recordVote(final MovieVote movieVote) {
+
+        // a hot title spreads its writes over as many items as there are shards, instead of queueing up on one
+        final var shard = ThreadLocalRandom.current().nextInt(shards);
+
+        dynamoDbClient.updateItem(Deadline.current().apply(recordVoteTemplate.toBuilder())
+                .key(shardKey(movieVote.getMovieId(), shard))
+                .expressionAttributeValues(Map.of(
+                        ":one", ONE,
+                        ":rating", AttributeValue.builder().n(movieVote.getRating().toString()).build()))
+                .build());
+    }
+
+    public VoteTally tally(final String movieId) {
+
+        final var keys = new ArrayList<Map<String, AttributeValue>>(shards);
+        for (var shard = 0; shard < shards; shard++) {
+            keys.add(shardKey(movieId, shard));
+        }
+
+        var requestItems = Map.of(movieVotesTable, KeysAndAttributes.builder()
+                .keys(keys)
+                .projectionExpression("#c, #s")
+                .expressionAttributeNames(Map.of("#c", "voteCount", "#s", "voteSum"))
+                // the fold only moves forward, an eventually consistent read could miss the vote that triggered it
+                .consistentRead(true)
+                .build());
+
+        var count = 0L;
+        var sum = 0L;
+
+        // all the shards in one round trip, unless some keys come back unprocessed
+        for (var attempt = 1; !requestItems.isEmpty(); attempt++) {
+
+            if (attempt > MAX_BATCH_GET_ATTEMPTS) {
+                throw new IllegalStateException("Could not read all the vote shards of movie " + movieId);
+            }
+
+            final var response = dynamoDbClient.batchGetItem(Deadline.current().apply(BatchGetItemRequest.builder())
+                    .requestItems(requestItems)
+                    .build());
+
+            for (final var item : response.responses().getOrDefault(movieVotesTable, List.of())) {
+                count += getLong(item, "voteCount");
+                sum += getLong(item, "voteSum");
+            }
+
+            requestItems = response.unprocessedKeys();
+        }
+
+        return new VoteTally(count, sum);
+    }
+
+    // false when there was nothing to fold, the movie does not exist or a newer tally is already on it
+    public boolean fold(final String movieId, final VoteTally voteTally) {
+
+        if (voteTally.getCount() == 0) {
+            return false;
+        }
+
+        try {
+            dynamoDbClient.updateItem(Deadline.current().apply(foldTemplate.toBuilder())
+                    .key(Map.of("movieId", AttributeValue.builder().s(movieId).build()))
+                    .expressionAttributeValues(Map.of(
+                            ":count", AttributeValue.builder().n(Long.toString(voteTally.getCount())).build(),
+                            ":sum", AttributeValue.builder().n(Long.toString(voteTally.getSum())).build(),
+                            ":average", AttributeValue.builder().n(voteTally.getAverage().toPlainString()).build(),
+                            ":lastModified", AttributeValue.builder().n(Long.toString(System.currentTimeMillis())).build(),
+                            ":one", ONE))
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException stale) {
+            return false;
+        }
+    }
+
+    private static Map<String, AttributeValue> shardKey(final String movieId, final int shard) {
+        return Map.of(SHARD_KEY, AttributeValue.builder().s(movieId + "#" + shard).build());
+    }
+
+    private static long getLong(final Map<String, AttributeValue> item, final String attributeName) {
+        final var attribute = item.get(attributeName);
+        return attribute == null || attribute.n() == null ? 0 : Long.parseLong(attribute.n());
+    }
+}
@@ -1,9 +1,12 @@
 package de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository;
 
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.deadline.Deadline;
 import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.Movie;
 import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
@@ -11,53 +14,165 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class MoviesDynamoDbRepository {
 
+    // partition keys of the sparse leaderboard indexes get-movie reads the top movies from
+    public static final String IMDB_LEADERBOARD_ATTRIBUTE = "imdbRatingLeaderboard";
+    public static final String IMDB_LEADERBOARD = "imdb";
+    public static final String ROTTEN_TOMATOES_LEADERBOARD_ATTRIBUTE = "rottenTomatoesRatingLeaderboard";
+    public static final String ROTTEN_TOMATOES_LEADERBOARD = "rottenTomatoes";
+
+    // movie items stay well below 1 KB, the leaderboard index writes are paid from the index's own capacity
+    public static final int RATING_UPDATE_WRITE_UNITS = 1;
+
+    // bits of the field subset a request template is built for
+    private static final int IMDB_RATING = 1;
+    private static final int ROTTEN_TOMATOES_RATING = 2;
+
+    private static final AttributeValue ONE = AttributeValue.builder().n("1").build();
+    private static final AttributeValue IMDB_LEADERBOARD_VALUE = AttributeValue.builder().s(IMDB_LEADERBOARD).build();
+    private static final AttributeValue ROTTEN_TOMATOES_LEADERBOARD_VALUE = AttributeValue.builder().s(ROTTEN_TOMATOES_LEADERBOARD).build();
+
     private final DynamoDbClient dynamoDbClient;
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
     private final String moviesTable;
+    private final UpdateItemRequest[] updateItemRequestTemplates;
 
     public MoviesDynamoDbRepository(DynamoDbClient dynamoDbClient, String moviesTable) {
+        this(dynamoDbClient, null, moviesTable);
+    }
+
+    public MoviesDynamoDbRepository(DynamoDbClient dynamoDbClient, DynamoDbAsyncClient dynamoDbAsyncClient, String moviesTable) {
         this.dynamoDbClient = dynamoDbClient;
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
         this.moviesTable = moviesTable;
+        this.updateItemRequestTemplates = updateItemRequestTemplates(moviesTable);
     }
 
     public Movie updateMovieRating(final MovieRating movieRating) {
+        return updateMovieRating(movieRating, ReturnValue.ALL_NEW);
+    }
+
+    // NONE returns no movie, UPDATED_NEW one with only the movieId and the ratings that were written
+    public Movie updateMovieRating(final MovieRating movieRating, final ReturnValue returnValue) {
+
+        final var updateItemRequest = updateItemRequest(movieRating, returnValue);
+        if (updateItemRequest == null) {
+            return null;
+        }
+
+        final var attributes = dynamoDbClient.updateItem(updateItemRequest).attributes();
+        if (returnValue == ReturnValue.NONE) {
+            return null;
+        }
+
+        final var movie = convert(attributes);
+        // the key is never among the updated attributes
+        movie.setMovieId(movieRating.getMovieId());
+        return movie;
+    }
+
+    // the request is built on the calling thread, where the deadline of the invocation is known
+    public CompletableFuture<Void> updateMovieRatingAsync(final MovieRating movieRating) {
+
+        final var updateItemRequest = updateItemRequest(movieRating, ReturnValue.NONE);
+        if (updateItemRequest == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid JSON: Missing or null imdbRating and rottenTomatoesRating"));
+        }
 
-        final var updateExpressionLines = new ArrayList<String>();
-        final var expressionAttributeValues = new HashMap<String, AttributeValue>();
-        final var expressionAttributeNames = new HashMap<String, String>();
+        return dynamoDbAsyncClient.updateItem(updateItemRequest).thenApply(response -> null);
+    }
 
-        Optional.ofNullable(movieRating.getImdbRating()).ifPresent(value -> {
-            updateExpressionLines.add("#i = :imdbRating");
-            expressionAttributeValues.put(":imdbRating", AttributeValue.builder().n(value.toString()).build());
-            expressionAttributeNames.put("#i", "imdbRating");
-        });
+    UpdateItemRequest updateItemRequest(final MovieRating movieRating, final ReturnValue returnValue) {
 
-        Optional.ofNullable(movieRating.getRottenTomatoesRating()).ifPresent(value -> {
-            updateExpressionLines.add("#ro = :rottenTomatoesRating");
-            expressionAttributeValues.put(":rottenTomatoesRating", AttributeValue.builder().n(value.toString()).build());
-            expressionAttributeNames.put("#ro", "rottenTomatoesRating");
-        });
+        final var imdbRating = movieRating.getImdbRating();
+        final var rottenTomatoesRating = movieRating.getRottenTomatoesRating();
 
-        if (updateExpressionLines.isEmpty()) {
+        final var fields = (imdbRating == null ? 0 : IMDB_RATING) | (rottenTomatoesRating == null ? 0 : ROTTEN_TOMATOES_RATING);
+        if (fields == 0) {
             return null;
         }
 
-        final var updateExpression = "SET " + String.join(", ", updateExpressionLines);
+        // the expression and the names come with the template, only the values change from one call to the next
+        final var expressionAttributeValues = new HashMap<String, AttributeValue>(8);
+        expressionAttributeValues.put(":lastModified", AttributeValue.builder().n(Long.toString(System.currentTimeMillis())).build());
+        expressionAttributeValues.put(":one", ONE);
+
+        if (imdbRating != null) {
+            expressionAttributeValues.put(":imdbRating", AttributeValue.builder().n(imdbRating.toString()).build());
+            expressionAttributeValues.put(":imdbLeaderboard", IMDB_LEADERBOARD_VALUE);
+        }
+
+        if (rottenTomatoesRating != null) {
+            expressionAttributeValues.put(":rottenTomatoesRating", AttributeValue.builder().n(rottenTomatoesRating.toString()).build());
+            expressionAttributeValues.put(":rottenTomatoesLeaderboard", ROTTEN_TOMATOES_LEADERBOARD_VALUE);
+        }
 
-        final var updateItemRequest = UpdateItemRequest.builder()
+        return Deadline.current().apply(updateItemRequestTemplates[fields].toBuilder())
                 .key(Map.of("movieId", AttributeValue.builder().s(movieRating.getMovieId()).build()))
-                .tableName(moviesTable)
-                .updateExpression(updateExpression)
                 .expressionAttributeValues(expressionAttributeValues)
-                .expressionAttributeNames(expressionAttributeNames)
-                .returnValues(ReturnValue.ALL_NEW)
+                .returnValues(returnValue)
                 .build();
+    }
 
-        final var attributes = dynamoDbClient.updateItem(updateItemRequest).attributes();
+    // one request per non-empty subset of the ratings, indexed by the bits of the fields it sets
+    private static UpdateItemRequest[] updateItemRequestTemplates(final String moviesTable) {
+
+        final var templates = new UpdateItemRequest[(IMDB_RATING | ROTTEN_TOMATOES_RATING) + 1];
+
+        for (var fields = 1; fields < templates.length; fields++) {
+
+            final var updateExpressionLines = new ArrayList<String>();
+            final var expressionAttributeNames = new HashMap<String, String>();
+
+            if ((fields & IMDB_RATING) != 0) {
+                updateExpressionLines.add("#i = :imdbRating");
+                expressionAttributeNames.put("#i", "imdbRating");
+                // a rated movie joins the leaderboard with the same write, the index re-sorts it by the new rating
+                updateExpressionLines.add("#il = :imdbLeaderboard");
+                expressionAttributeNames.put("#il", IMDB_LEADERBOARD_ATTRIBUTE);
+            }
+
+            if ((fields & ROTTEN_TOMATOES_RATING) != 0) {
+                updateExpressionLines.add("#ro = :rottenTomatoesRating");
+                expressionAttributeNames.put("#ro", "rottenTomatoesRating");
+                updateExpressionLines.add("#rol = :rottenTomatoesLeaderboard");
+                expressionAttributeNames.put("#rol", ROTTEN_TOMATOES_LEADERBOARD_ATTRIBUTE);
+            }
+
+            // every write bumps the item version and modification time, get-movie derives its ETag and Last-Modified headers from them
+            updateExpressionLines.add("#lm = :lastModified");
+            expressionAttributeNames.put("#lm", "lastModified");
+            expressionAttributeNames.put("#v", "version");
+
+            templates[fields] = UpdateItemRequest.builder()
+                    .tableName(moviesTable)
+                    .updateExpression("SET " + String.join(", ", updateExpressionLines) + " ADD #v :one")
+                    .expressionAttributeNames(expressionAttributeNames)
+                    .build();
+        }
+
+        return templates;
+    }
 
-        return convert(attributes);
+    public void prime(final String movieId) {
+
+        // the condition never holds for the priming key, so the request makes the full round trip without writing anything
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .key(Map.of("movieId", AttributeValue.builder().s(movieId).build()))
+                    .tableName(moviesTable)
+                    .updateExpression("SET #lm = :lastModified")
+                    .conditionExpression("attribute_exists(movieId)")
+                    .expressionAttributeValues(Map.of(":lastModified", AttributeValue.builder().n("0").build()))
+                    .expressionAttributeNames(Map.of("#lm", "lastModified"))
+                    .returnValues(ReturnValue.ALL_NEW)
+                    .build());
+        } catch (ConditionalCheckFailedException expected) {
+            // nothing to do, the item does not exist
+        }
     }
 
     private static Movie convert(final Map<String, AttributeValue> attributes) {
@@ -0,0 +1,43 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models;
+
+public final class MovieVote {
+
+    private String movieId;
+    private Integer rating;
+
+    public MovieVote() { }
+
+    public String getMovieId() {
+        return movieId;
+    }
+
+    public Integer getRating() {
+        return rating;
+    }
+
+    public void setMovieId(final String movieId) {
+        this.movieId = movieId;
+    }
+
+    public void setRating(final Integer rating) {
+        this.rating = rating;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MovieVote that = (MovieVote) o;
+
+        if (getMovieId() != null ? !getMovieId().equals(that.getMovieId()) : that.getMovieId() != null) return false;
+        return getRating() != null ? getRating().equals(that.getRating()) : that.getRating() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getMovieId() != null ? getMovieId().hashCode() : 0;
+        result = 31 * result + (getRating() != null ? getRating().hashCode() : 0);
+        return result;
+    }
+}
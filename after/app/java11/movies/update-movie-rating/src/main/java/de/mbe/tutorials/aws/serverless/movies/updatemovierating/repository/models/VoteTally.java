@@ -0,0 +1,56 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public final class VoteTally {
+
+    private long count;
+    private long sum;
+
+    public VoteTally() { }
+
+    public VoteTally(final long count, final long sum) {
+        this.count = count;
+        this.sum = sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    // two decimals, computed from the exact count and sum rather than kept as a running value
+    public BigDecimal getAverage() {
+        return count == 0 ? null : BigDecimal.valueOf(sum).divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP);
+    }
+
+    public void setCount(final long count) {
+        this.count = count;
+    }
+
+    public void setSum(final long sum) {
+        this.sum = sum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        VoteTally that = (VoteTally) o;
+
+        if (getCount() != that.getCount()) return false;
+        return getSum() == that.getSum();
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(getCount());
+        result = 31 * result + Long.hashCode(getSum());
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.votes;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.AdmissionController;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.AdmissionRejectedException;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.Priority;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MovieVotesDynamoDbRepository;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieVote;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// records every vote right away and folds the shards of a movie lazily, at most once per fold interval and instance;
+// votes that arrive while a movie waits out its interval are folded by the next vote after it, or by the trailing fold
+public final class VoteRecorder implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(VoteRecorder.class);
+
+    private static final long MAX_TRACKED_MOVIES = 10_000;
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    private final MovieVotesDynamoDbRepository movieVotesDynamoDbRepository;
+    private final AdmissionController admissionController;
+    private final ScheduledExecutorService trailingFolds;
+    // a movie stays in here for one fold interval after it was last folded
+    private final Cache<String, Boolean> recentlyFolded;
+    // movies with votes the last fold did not cover
+    private final Set<String> unfolded = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder votes = new LongAdder();
+    private final LongAdder folds = new LongAdder();
+    private final LongAdder failedFolds = new LongAdder();
+    private final LongAdder shedFolds = new LongAdder();
+
+    public VoteRecorder(final MovieVotesDynamoDbRepository movieVotesDynamoDbRepository, final Duration foldInterval) {
+        this(movieVotesDynamoDbRepository, foldInterval, AdmissionController.disabled());
+    }
+
+    // the folds write to the movies table, so they are paid from the same budget as the rating updates
+    public VoteRecorder(final MovieVotesDynamoDbRepository movieVotesDynamoDbRepository, final Duration foldInterval,
+                        final AdmissionController admissionController) {
+        this(movieVotesDynamoDbRepository, foldInterval, admissionController, Ticker.systemTicker(),
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final var thread = new Thread(runnable, "movie-votes-trailing-fold");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    // without an executor nothing is folded in the background, the trailing fold is left to whoever calls foldUnfolded
+    VoteRecorder(final MovieVotesDynamoDbRepository movieVotesDynamoDbRepository, final Duration foldInterval,
+                 final AdmissionController admissionController, final Ticker ticker, final ScheduledExecutorService trailingFolds) {
+
+        this.movieVotesDynamoDbRepository = movieVotesDynamoDbRepository;
+        this.admissionController = admissionController;
+        this.recentlyFolded = Caffeine.newBuilder()
+                .maximumSize(MAX_TRACKED_MOVIES)
+                .expireAfterWrite(foldInterval)
+                .ticker(ticker)
+                .build();
+        this.trailingFolds = trailingFolds;
+
+        // inside Lambda the thread only runs while the instance is thawed, a movie nobody votes for again is folded
+        // during one of the next invocations of this instance instead of exactly one interval later
+        if (trailingFolds != null) {
+            final var foldIntervalMillis = foldInterval.toMillis();
+            trailingFolds.scheduleWithFixedDelay(this::foldUnfolded, foldIntervalMillis, foldIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void record(final MovieVote movieVote) {
+
+        movieVotesDynamoDbRepository.recordVote(movieVote);
+        votes.increment();
+
+        final var movieId = movieVote.getMovieId();
+        unfolded.add(movieId);
+        foldIfDue(movieId);
+    }
+
+    // the trailing fold, for the movies whose last votes arrived while they were waiting out their interval
+    public void foldUnfolded() {
+        for (final var movieId : unfolded) {
+            foldIfDue(movieId);
+        }
+    }
+
+    private void foldIfDue(final String movieId) {
+
+        if (recentlyFolded.asMap().putIfAbsent(movieId, Boolean.TRUE) != null) {
+            return;
+        }
+
+        // taken out before the shards are read, a vote recorded meanwhile puts the movie back for the next fold
+        unfolded.remove(movieId);
+
+        // the vote is in either way, a fold that fails or is shed is tried again with the next vote for the movie or the trailing fold
+        try {
+            admissionController.admit(Priority.LOW, MovieVotesDynamoDbRepository.FOLD_WRITE_UNITS);
+            final var voteTally = movieVotesDynamoDbRepository.tally(movieId);
+            if (movieVotesDynamoDbRepository.fold(movieId, voteTally)) {
+                folds.increment();
+                LOGGER.info("Folded the votes of movie {}, count: {}, average: {}", movieId, voteTally.getCount(), voteTally.getAverage());
+            }
+        } catch (AdmissionRejectedException error) {
+            recentlyFolded.invalidate(movieId);
+            unfolded.add(movieId);
+            shedFolds.increment();
+            LOGGER.info("Fold of the votes of movie {} shed, retry after {} seconds", movieId, error.getRetryAfterSeconds());
+        } catch (RuntimeException error) {
+            recentlyFolded.invalidate(movieId);
+            unfolded.add(movieId);
+            failedFolds.increment();
+            LOGGER.warn("Could not fold the votes of movie {}: {}", movieId, error.getMessage());
+        }
+    }
+
+    public long getVotes() {
+        return votes.sum();
+    }
+
+    public long getFolds() {
+        return folds.sum();
+    }
+
+    public long getFailedFolds() {
+        return failedFolds.sum();
+    }
+
+    public long getShedFolds() {
+        return shedFolds.sum();
+    }
+
+    public int getUnfolded() {
+        return unfolded.size();
+    }
+
+    // a fold already running is finished, the votes still unfolded are folded by the next instance that gets a vote for the movie
+    @Override
+    public void close() {
+
+        if (trailingFolds == null) {
+            return;
+        }
+
+        trailingFolds.shutdown();
+        try {
+            trailingFolds.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
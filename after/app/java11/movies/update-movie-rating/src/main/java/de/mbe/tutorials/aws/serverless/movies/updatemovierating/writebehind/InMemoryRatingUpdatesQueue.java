@@ -0,0 +1,161 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind;
+
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+// stands in for the SQS queue and its event source mapping outside of AWS: batches are handed to the handler
+// as the same Records event Lambda invokes it with, and a batch that fails is delivered again before anything newer
+public final class InMemoryRatingUpdatesQueue implements RatingUpdatesQueue, AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(InMemoryRatingUpdatesQueue.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final long POLL_MILLIS = 100;
+    private static final long RETRY_DELAY_MILLIS = 1_000;
+
+    private final BlockingDeque<String> messages;
+    private final int batchSize;
+    private final long batchWindowNanos;
+
+    private Thread poller;
+    private volatile boolean closed;
+
+    public InMemoryRatingUpdatesQueue(final int capacity, final int batchSize, final Duration batchWindow) {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1");
+        }
+
+        this.messages = new LinkedBlockingDeque<>(capacity);
+        this.batchSize = batchSize;
+        this.batchWindowNanos = batchWindow.toNanos();
+    }
+
+    @Override
+    public void send(final MovieRating movieRating) {
+
+        if (closed) {
+            throw new IllegalStateException("The rating updates queue is closed");
+        }
+
+        final String messageBody;
+        try {
+            messageBody = OBJECT_MAPPER.writeValueAsString(movieRating);
+        } catch (JsonProcessingException error) {
+            throw new IllegalStateException(error);
+        }
+
+        if (!messages.offerLast(messageBody)) {
+            throw new IllegalStateException("The rating updates queue is full");
+        }
+    }
+
+    public void start(final RequestStreamHandler handler) {
+        poller = new Thread(() -> poll(handler), "rating-updates-poller");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    public int getDepth() {
+        return messages.size();
+    }
+
+    // whatever is still queued is written before this returns, unless the calling thread is interrupted while waiting
+    @Override
+    public void close() {
+
+        closed = true;
+        if (poller == null) {
+            return;
+        }
+
+        try {
+            poller.join();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void poll(final RequestStreamHandler handler) {
+
+        try {
+            while (!closed || !messages.isEmpty()) {
+
+                final var batch = nextBatch();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+
+                // like a FIFO queue, nothing newer is delivered while a batch is waiting to be retried
+                while (!deliver(handler, batch)) {
+                    if (closed) {
+                        LOGGER.error("Dropping {} rating updates, the queue was closed before they could be written", batch.size());
+                        break;
+                    }
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                }
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<String> nextBatch() throws InterruptedException {
+
+        final var batch = new ArrayList<String>(batchSize);
+
+        final var first = closed ? messages.pollFirst() : messages.pollFirst(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+
+        // the first update waits up to the batching window for others to join it, as maximum_batching_window_in_seconds does
+        final var windowEnd = System.nanoTime() + batchWindowNanos;
+        while (batch.size() < batchSize) {
+
+            final var remainingNanos = closed ? 0 : windowEnd - System.nanoTime();
+            final var next = remainingNanos > 0 ? messages.pollFirst(remainingNanos, TimeUnit.NANOSECONDS) : messages.pollFirst();
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+
+        return batch;
+    }
+
+    private static boolean deliver(final RequestStreamHandler handler, final List<String> batch) {
+
+        final var records = OBJECT_MAPPER.createArrayNode();
+        for (final var messageBody : batch) {
+            records.addObject()
+                    .put("messageId", UUID.randomUUID().toString())
+                    .put("eventSource", "aws:sqs")
+                    .put("body", messageBody);
+        }
+
+        try {
+            final var event = OBJECT_MAPPER.writeValueAsBytes(OBJECT_MAPPER.createObjectNode().set("Records", records));
+            handler.handleRequest(new ByteArrayInputStream(event), OutputStream.nullOutputStream(), null);
+            return true;
+        } catch (Exception error) {
+            LOGGER.warn("Rating updates batch failed, retrying it: {}", error.getMessage());
+            return false;
+        }
+    }
+}
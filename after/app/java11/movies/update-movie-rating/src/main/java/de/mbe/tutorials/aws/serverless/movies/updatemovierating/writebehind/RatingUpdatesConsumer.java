@@ -0,0 +1,92 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.Priority;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk.BulkRatingsUpdater;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk.RatingUpdateReport;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// writes a batch of queued rating updates with one UpdateItem per movie, however many updates it got
+public final class RatingUpdatesConsumer {
+
+    private static final Logger LOGGER = LogManager.getLogger(RatingUpdatesConsumer.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final BulkRatingsUpdater bulkRatingsUpdater;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public RatingUpdatesConsumer(final BulkRatingsUpdater bulkRatingsUpdater) {
+        this.bulkRatingsUpdater = bulkRatingsUpdater;
+    }
+
+    public RatingUpdateReport apply(final List<String> messages) throws InterruptedException {
+
+        final var movieRatings = new ArrayList<MovieRating>(messages.size());
+        for (final var message : messages) {
+            try {
+                movieRatings.add(OBJECT_MAPPER.readValue(message, MovieRating.class));
+            } catch (JsonProcessingException error) {
+                // receiving it again would not make it readable
+                LOGGER.warn("Dropping an unreadable rating update: {}", error.getOriginalMessage());
+            }
+        }
+
+        final var coalesced = coalesce(movieRatings);
+        // the clients were answered when the updates were queued, they wait behind a PATCH still waiting for its answer
+        final var report = bulkRatingsUpdater.update(coalesced, Priority.NORMAL);
+
+        received.add(messages.size());
+        written.add(report.getSucceeded());
+        failed.add(report.getFailed());
+
+        LOGGER.info("Applied {} rating updates as {} writes, failed: {}", messages.size(), coalesced.size(), report.getFailed());
+        return report;
+    }
+
+    // last write wins per rating: a later update overrides the ratings it sets and keeps the ones it leaves out
+    static List<MovieRating> coalesce(final List<MovieRating> movieRatings) {
+
+        final var coalesced = new LinkedHashMap<String, MovieRating>();
+
+        for (final var movieRating : movieRatings) {
+
+            final var pending = coalesced.computeIfAbsent(movieRating.getMovieId(), movieId -> {
+                final var empty = new MovieRating();
+                empty.setMovieId(movieId);
+                return empty;
+            });
+
+            if (movieRating.getImdbRating() != null) {
+                pending.setImdbRating(movieRating.getImdbRating());
+            }
+            if (movieRating.getRottenTomatoesRating() != null) {
+                pending.setRottenTomatoesRating(movieRating.getRottenTomatoesRating());
+            }
+        }
+
+        return new ArrayList<>(coalesced.values());
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+}
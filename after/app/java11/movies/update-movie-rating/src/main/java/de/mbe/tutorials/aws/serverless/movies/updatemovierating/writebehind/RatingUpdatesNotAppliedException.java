@@ -0,0 +1,11 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind;
+
+// thrown out of the handler, so the queue delivers the whole batch again
+public final class RatingUpdatesNotAppliedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RatingUpdatesNotAppliedException(final int failed, final int total) {
+        super(failed + " of " + total + " rating updates could not be written, the batch is retried");
+    }
+}
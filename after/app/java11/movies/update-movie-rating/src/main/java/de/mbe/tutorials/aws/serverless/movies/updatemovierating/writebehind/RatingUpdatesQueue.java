@@ -0,0 +1,9 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind;
+
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+
+// where a PATCHed rating waits in write-behind mode until the consumer writes it
+public interface RatingUpdatesQueue {
+
+    void send(MovieRating movieRating);
+}
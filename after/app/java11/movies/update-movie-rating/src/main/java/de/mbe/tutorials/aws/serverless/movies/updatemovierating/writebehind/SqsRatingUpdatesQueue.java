@@ -0,0 +1,43 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.deadline.Deadline;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+import java.util.UUID;
+
+// a FIFO queue grouped by movieId, so the updates of one movie are received in the order they were sent
+public final class SqsRatingUpdatesQueue implements RatingUpdatesQueue {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final SqsClient sqsClient;
+    private final String queueUrl;
+
+    public SqsRatingUpdatesQueue(final SqsClient sqsClient, final String queueUrl) {
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+    }
+
+    @Override
+    public void send(final MovieRating movieRating) {
+
+        final String messageBody;
+        try {
+            messageBody = OBJECT_MAPPER.writeValueAsString(movieRating);
+        } catch (JsonProcessingException error) {
+            throw new IllegalStateException(error);
+        }
+
+        // every PATCH is a message of its own, content based deduplication would drop a rating set back to an earlier value
+        sqsClient.sendMessage(Deadline.current().apply(SendMessageRequest.builder())
+                .queueUrl(queueUrl)
+                .messageBody(messageBody)
+                .messageGroupId(movieRating.getMovieId())
+                .messageDeduplicationId(UUID.randomUUID().toString())
+                .build());
+    }
+}
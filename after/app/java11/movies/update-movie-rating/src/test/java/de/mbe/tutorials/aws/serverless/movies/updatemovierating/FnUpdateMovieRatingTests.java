@@ -1,24 +1,51 @@
 package de.mbe.tutorials.aws.serverless.movies.updatemovierating;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.AdmissionController;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk.BulkRatingsUpdater;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk.RatingUpdateReport;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk.RatingUpdateResult;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.idempotency.IdempotencyStore;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MovieVotesDynamoDbRepository;
 import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MoviesDynamoDbRepository;
 import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.Movie;
 import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieVote;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.VoteTally;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.votes.VoteRecorder;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind.RatingUpdatesNotAppliedException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -29,6 +56,9 @@ public final class FnUpdateMovieRatingTests implements TestUtils {
     @Mock
     private MoviesDynamoDbRepository moviesDynamoDbRepository;
 
+    @Mock
+    private MovieVotesDynamoDbRepository movieVotesDynamoDbRepository;
+
     private FnUpdateMovieRating fnUpdateMovieRating;
 
     @BeforeEach
@@ -43,7 +73,7 @@ public final class FnUpdateMovieRatingTests implements TestUtils {
         final var expectedMovie = getRandomMovie(movieId);
         final var expectedMovieRating = getRandomMovieRating(movieId);
 
-        when(moviesDynamoDbRepository.updateMovieRating(expectedMovieRating)).thenReturn(expectedMovie);
+        when(moviesDynamoDbRepository.updateMovieRating(expectedMovieRating, ReturnValue.ALL_NEW)).thenReturn(expectedMovie);
 
         final var input = getCorrectInput(expectedMovieRating);
         final var output = new ByteArrayOutputStream();
@@ -152,7 +182,7 @@ public final class FnUpdateMovieRatingTests implements TestUtils {
         final var movieId = UUID.randomUUID().toString();
         final var expectMovieRating = getRandomMovieRating(movieId);
 
-        doThrow(DynamoDbException.class).when(moviesDynamoDbRepository).updateMovieRating(expectMovieRating);
+        doThrow(DynamoDbException.class).when(moviesDynamoDbRepository).updateMovieRating(expectMovieRating, ReturnValue.ALL_NEW);
 
         final var input = getCorrectInput(expectMovieRating);
         final var output = new ByteArrayOutputStream();
@@ -173,13 +203,421 @@ public final class FnUpdateMovieRatingTests implements TestUtils {
         assertNull(actualResponse.getBody());
     }
 
+    @Test
+    void warmupEventShortCircuits() throws IOException {
+
+        final var output = new ByteArrayOutputStream();
+
+        fnUpdateMovieRating.handleRequest(new ByteArrayInputStream("{ \"warmup\": true }".getBytes()), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertNotNull(actualResponse);
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals("Warmed up", actualResponse.getBody());
+        verifyNoInteractions(moviesDynamoDbRepository);
+    }
+
+    @Test
+    void preferReturnMinimalRepliesWithNoContent() throws IOException {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movieRating = getRandomMovieRating(movieId);
+
+        when(moviesDynamoDbRepository.updateMovieRating(movieRating, ReturnValue.NONE)).thenReturn(null);
+
+        final var output = new ByteArrayOutputStream();
+
+        fnUpdateMovieRating.handleRequest(getInputWithPrefer(movieRating, "return=minimal"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertEquals(204, actualResponse.getStatusCode());
+        assertEquals("return=minimal", actualResponse.getHeaders().get("Preference-Applied"));
+        assertNull(actualResponse.getBody());
+    }
+
+    @Test
+    void preferReturnDeltaRepliesWithTheWrittenRatingsOnly() throws IOException {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movieRating = getRandomMovieRating(movieId);
+
+        final var delta = new Movie();
+        delta.setMovieId(movieId);
+        delta.setImdbRating(movieRating.getImdbRating());
+        delta.setRottenTomatoesRating(movieRating.getRottenTomatoesRating());
+
+        when(moviesDynamoDbRepository.updateMovieRating(movieRating, ReturnValue.UPDATED_NEW)).thenReturn(delta);
+
+        final var output = new ByteArrayOutputStream();
+
+        fnUpdateMovieRating.handleRequest(getInputWithPrefer(movieRating, "respond-async, return=delta; charset=utf-8"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals("return=delta", actualResponse.getHeaders().get("Preference-Applied"));
+
+        final var body = OBJECT_MAPPER.readTree(actualResponse.getBody());
+        assertEquals(movieId, body.get("movieId").asText());
+        assertEquals(movieRating.getImdbRating(), body.get("imdbRating").asInt());
+        assertFalse(body.has("name"));
+        assertFalse(body.has("releaseDate"));
+    }
+
+    @Test
+    void unknownPreferenceReturnsTheWholeMovie() throws IOException {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var expectedMovie = getRandomMovie(movieId);
+        final var movieRating = getRandomMovieRating(movieId);
+
+        when(moviesDynamoDbRepository.updateMovieRating(movieRating, ReturnValue.ALL_NEW)).thenReturn(expectedMovie);
+
+        final var output = new ByteArrayOutputStream();
+
+        fnUpdateMovieRating.handleRequest(getInputWithPrefer(movieRating, "return=everything"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertEquals(200, actualResponse.getStatusCode());
+        assertFalse(actualResponse.getHeaders().containsKey("Preference-Applied"));
+        assertEquals(expectedMovie, OBJECT_MAPPER.readValue(actualResponse.getBody(), Movie.class));
+    }
+
+    @Test
+    void bulkRatingsAcceptAJsonArray() throws IOException {
+
+        final var first = getRandomMovieRating("tt0133093");
+        final var second = getRandomMovieRating("tt0234215");
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(first)).thenReturn(CompletableFuture.completedFuture(null));
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(second)).thenReturn(CompletableFuture.completedFuture(null));
+
+        final var output = new ByteArrayOutputStream();
+
+        fnUpdateMovieRating.handleRequest(getBulkInput(OBJECT_MAPPER.writeValueAsString(List.of(first, second))), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(200, actualResponse.getStatusCode());
+
+        final var report = OBJECT_MAPPER.readValue(actualResponse.getBody(), RatingUpdateReport.class);
+        assertEquals(2, report.getSucceeded());
+        assertEquals(0, report.getFailed());
+        assertEquals(List.of("tt0133093", "tt0234215"), report.getResults().stream().map(RatingUpdateResult::getMovieId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void bulkRatingsAcceptNdjson() throws IOException {
+
+        final var first = getRandomMovieRating("tt0133093");
+        final var second = getRandomMovieRating("tt0234215");
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(first)).thenReturn(CompletableFuture.completedFuture(null));
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(second)).thenReturn(CompletableFuture.completedFuture(null));
+
+        final var body = OBJECT_MAPPER.writeValueAsString(first) + "\n" + OBJECT_MAPPER.writeValueAsString(second) + "\n";
+        final var output = new ByteArrayOutputStream();
+
+        fnUpdateMovieRating.handleRequest(getBulkInput(body), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals(2, OBJECT_MAPPER.readValue(actualResponse.getBody(), RatingUpdateReport.class).getSucceeded());
+    }
+
+    @Test
+    void bulkRatingsOverTheLimitAreRejected() throws IOException {
+
+        final var bulkRatingsUpdater = new BulkRatingsUpdater(moviesDynamoDbRepository, 1);
+        final var fnWithSmallBatches = FnUpdateMovieRating.builder(moviesDynamoDbRepository)
+                .bulkRatingsUpdater(bulkRatingsUpdater)
+                .bulkRatingsMaxItems(1)
+                .build();
+
+        final var body = OBJECT_MAPPER.writeValueAsString(List.of(getRandomMovieRating("tt0133093"), getRandomMovieRating("tt0234215")));
+        final var output = new ByteArrayOutputStream();
+
+        fnWithSmallBatches.handleRequest(getBulkInput(body), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(413, actualResponse.getStatusCode());
+        verifyNoInteractions(moviesDynamoDbRepository);
+    }
+
+    @Test
+    void retriesWithTheSameIdempotencyKeyAreReplayed() throws IOException {
+
+        final var dynamoDbClient = mock(DynamoDbClient.class);
+        when(dynamoDbClient.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder().build());
+
+        final var idempotencyStore = new IdempotencyStore(dynamoDbClient, "idempotency", Duration.ofHours(24), Duration.ofSeconds(29), 100);
+        final var fnWithIdempotency = FnUpdateMovieRating.builder(moviesDynamoDbRepository)
+                .idempotencyStore(idempotencyStore)
+                .build();
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movieRating = getRandomMovieRating(movieId);
+
+        when(moviesDynamoDbRepository.updateMovieRating(movieRating, ReturnValue.ALL_NEW)).thenReturn(getRandomMovie(movieId));
+
+        final var first = new ByteArrayOutputStream();
+        fnWithIdempotency.handleRequest(getInputWithHeaders(movieRating, Map.of("Idempotency-Key", "sync-42")), first, null);
+
+        final var retry = new ByteArrayOutputStream();
+        fnWithIdempotency.handleRequest(getInputWithHeaders(movieRating, Map.of("Idempotency-Key", "sync-42")), retry, null);
+
+        assertEquals(first.toString(), retry.toString());
+        assertEquals(1, idempotencyStore.getReplayedFromCache());
+        verify(moviesDynamoDbRepository, times(1)).updateMovieRating(movieRating, ReturnValue.ALL_NEW);
+    }
+
+    @Test
+    void throttledAttemptGivesTheIdempotencyKeyBack() throws IOException {
+
+        final var dynamoDbClient = mock(DynamoDbClient.class);
+        when(dynamoDbClient.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder().build());
+
+        final var idempotencyStore = new IdempotencyStore(dynamoDbClient, "idempotency", Duration.ofHours(24), Duration.ofSeconds(29), 100);
+        final var fnWithIdempotency = FnUpdateMovieRating.builder(moviesDynamoDbRepository)
+                .idempotencyStore(idempotencyStore)
+                .build();
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movieRating = getRandomMovieRating(movieId);
+        final var throttled = DynamoDbException.builder()
+                .statusCode(400)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("ProvisionedThroughputExceededException").build())
+                .build();
+
+        when(moviesDynamoDbRepository.updateMovieRating(movieRating, ReturnValue.ALL_NEW)).thenThrow(throttled).thenReturn(getRandomMovie(movieId));
+
+        fnWithIdempotency.handleRequest(getInputWithHeaders(movieRating, Map.of("Idempotency-Key", "sync-42")), new ByteArrayOutputStream(), null);
+
+        final var retry = new ByteArrayOutputStream();
+        fnWithIdempotency.handleRequest(getInputWithHeaders(movieRating, Map.of("Idempotency-Key", "sync-42")), retry, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(retry.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals(0, idempotencyStore.getReplayedFromCache());
+        verify(dynamoDbClient, times(1)).deleteItem(any(DeleteItemRequest.class));
+        verify(moviesDynamoDbRepository, times(2)).updateMovieRating(movieRating, ReturnValue.ALL_NEW);
+    }
+
+    @Test
+    void idempotencyKeyReusedForAnotherRatingIsRejected() throws IOException {
+
+        final var dynamoDbClient = mock(DynamoDbClient.class);
+        when(dynamoDbClient.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder().build());
+
+        final var idempotencyStore = new IdempotencyStore(dynamoDbClient, "idempotency", Duration.ofHours(24), Duration.ofSeconds(29), 100);
+        final var fnWithIdempotency = FnUpdateMovieRating.builder(moviesDynamoDbRepository)
+                .idempotencyStore(idempotencyStore)
+                .build();
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movieRating = getRandomMovieRating(movieId);
+
+        when(moviesDynamoDbRepository.updateMovieRating(movieRating, ReturnValue.ALL_NEW)).thenReturn(getRandomMovie(movieId));
+
+        fnWithIdempotency.handleRequest(getInputWithHeaders(movieRating, Map.of("Idempotency-Key", "sync-42")), new ByteArrayOutputStream(), null);
+
+        final var otherRating = getRandomMovieRating(UUID.randomUUID().toString());
+        final var output = new ByteArrayOutputStream();
+        fnWithIdempotency.handleRequest(getInputWithHeaders(otherRating, Map.of("Idempotency-Key", "sync-42")), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(422, actualResponse.getStatusCode());
+    }
+
+    @Test
+    void writeBehindPatchIsQueuedAndAccepted() throws IOException {
+
+        final var queued = new ArrayList<MovieRating>();
+        final var fnWriteBehind = FnUpdateMovieRating.builder(moviesDynamoDbRepository)
+                .ratingUpdatesQueue(queued::add)
+                .build();
+
+        final var movieRating = getRandomMovieRating(UUID.randomUUID().toString());
+        final var output = new ByteArrayOutputStream();
+
+        fnWriteBehind.handleRequest(getCorrectInput(movieRating), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(202, actualResponse.getStatusCode());
+        assertEquals(List.of(movieRating), queued);
+        verifyNoInteractions(moviesDynamoDbRepository);
+    }
+
+    @Test
+    void queuedRatingUpdatesAreWrittenOncePerMovie() throws IOException {
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        final var output = new ByteArrayOutputStream();
+        fnUpdateMovieRating.handleRequest(getQueueInput(
+                "{\"movieId\":\"tt0133093\",\"imdbRating\":50}",
+                "{\"movieId\":\"tt0133093\",\"rottenTomatoesRating\":88}",
+                "{\"movieId\":\"tt0234215\",\"imdbRating\":72}"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        final var report = OBJECT_MAPPER.readValue(actualResponse.getBody(), RatingUpdateReport.class);
+
+        assertEquals(200, actualResponse.getStatusCode());
+        assertEquals(2, report.getSucceeded());
+        verify(moviesDynamoDbRepository, times(2)).updateMovieRatingAsync(any());
+    }
+
+    @Test
+    void queuedRatingUpdatesThatFailOnTheServerAreRetried() {
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(any())).thenReturn(CompletableFuture.failedFuture(
+                DynamoDbException.builder().statusCode(500).message("Internal server error").build()));
+
+        assertThrows(RatingUpdatesNotAppliedException.class, () -> fnUpdateMovieRating.handleRequest(getQueueInput(
+                "{\"movieId\":\"tt0133093\",\"imdbRating\":87}"), new ByteArrayOutputStream(), null));
+    }
+
+    @Test
+    void patchesOverTheWriteBudgetAreShedWithRetryAfter() throws IOException {
+
+        final var admissionController = new AdmissionController(1, Duration.ofSeconds(1));
+        final var fnWithAdmission = FnUpdateMovieRating.builder(moviesDynamoDbRepository)
+                .admissionController(admissionController)
+                .build();
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movieRating = getRandomMovieRating(movieId);
+
+        when(moviesDynamoDbRepository.updateMovieRating(movieRating, ReturnValue.ALL_NEW)).thenReturn(getRandomMovie(movieId));
+
+        final var admitted = new ByteArrayOutputStream();
+        fnWithAdmission.handleRequest(getCorrectInput(movieRating), admitted, null);
+        assertEquals(200, OBJECT_MAPPER.readValue(admitted.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class).getStatusCode());
+
+        final var shed = new ByteArrayOutputStream();
+        fnWithAdmission.handleRequest(getCorrectInput(movieRating), shed, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(shed.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(429, actualResponse.getStatusCode());
+        assertEquals("1", actualResponse.getHeaders().get("Retry-After"));
+        verify(moviesDynamoDbRepository, times(1)).updateMovieRating(movieRating, ReturnValue.ALL_NEW);
+    }
+
+    @Test
+    void queuedRatingUpdatesThatAreShedAreRetried() {
+
+        final var admissionController = new AdmissionController(1, Duration.ofSeconds(1));
+        final var fnWithAdmission = FnUpdateMovieRating.builder(moviesDynamoDbRepository)
+                .admissionController(admissionController)
+                .build();
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        assertThrows(RatingUpdatesNotAppliedException.class, () -> fnWithAdmission.handleRequest(getQueueInput(
+                "{\"movieId\":\"tt0133093\",\"imdbRating\":87}",
+                "{\"movieId\":\"tt0234215\",\"imdbRating\":72}"), new ByteArrayOutputStream(), null));
+        verify(moviesDynamoDbRepository, times(1)).updateMovieRatingAsync(any());
+    }
+
+    @Test
+    void votesAreRecorded() throws IOException {
+
+        final var voteRecorder = new VoteRecorder(movieVotesDynamoDbRepository, Duration.ofHours(1));
+        final var fnWithVotes = FnUpdateMovieRating.builder(moviesDynamoDbRepository)
+                .voteRecorder(voteRecorder)
+                .build();
+
+        when(movieVotesDynamoDbRepository.tally("tt0133093")).thenReturn(new VoteTally(1, 87));
+
+        final var output = new ByteArrayOutputStream();
+        fnWithVotes.handleRequest(getVoteInput("tt0133093", "{\"rating\":87}"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(204, actualResponse.getStatusCode());
+
+        final var movieVote = new MovieVote();
+        movieVote.setMovieId("tt0133093");
+        movieVote.setRating(87);
+        verify(movieVotesDynamoDbRepository).recordVote(movieVote);
+        verifyNoInteractions(moviesDynamoDbRepository);
+    }
+
+    @Test
+    void votesOutOfRangeAreRejected() throws IOException {
+
+        final var fnWithVotes = FnUpdateMovieRating.builder(moviesDynamoDbRepository)
+                .voteRecorder(new VoteRecorder(movieVotesDynamoDbRepository, Duration.ofHours(1)))
+                .build();
+
+        final var output = new ByteArrayOutputStream();
+        fnWithVotes.handleRequest(getVoteInput("tt0133093", "{\"rating\":1000}"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(400, actualResponse.getStatusCode());
+        verifyNoInteractions(movieVotesDynamoDbRepository);
+    }
+
+    @Test
+    void votesWithoutAVotesTableAreNotFound() throws IOException {
+
+        final var output = new ByteArrayOutputStream();
+        fnUpdateMovieRating.handleRequest(getVoteInput("tt0133093", "{\"rating\":87}"), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+        assertEquals(404, actualResponse.getStatusCode());
+    }
+
+    private static InputStream getVoteInput(final String movieId, final String body) throws IOException {
+        return new ByteArrayInputStream(OBJECT_MAPPER.writeValueAsBytes(Map.of(
+                "resource", "/movies/{movieId}/votes",
+                "pathParameters", Map.of("movieId", movieId),
+                "body", body,
+                "isBase64Encoded", false)));
+    }
+
+    private static InputStream getQueueInput(final String... messageBodies) throws IOException {
+
+        final var records = new ArrayList<Map<String, String>>();
+        for (final var messageBody : messageBodies) {
+            records.add(Map.of("messageId", UUID.randomUUID().toString(), "eventSource", "aws:sqs", "body", messageBody));
+        }
+
+        return new ByteArrayInputStream(OBJECT_MAPPER.writeValueAsBytes(Map.of("Records", records)));
+    }
+
+    private static InputStream getBulkInput(final String body) throws IOException {
+        return new ByteArrayInputStream(OBJECT_MAPPER.writeValueAsBytes(Map.of(
+                "resource", "/movies/ratings",
+                "body", body,
+                "isBase64Encoded", false)));
+    }
+
+    private static InputStream getInputWithPrefer(final MovieRating movieRating, final String prefer) throws IOException {
+        return getInputWithHeaders(movieRating, Map.of("Content-Type", "application/json", "prefer", prefer));
+    }
+
+    private static InputStream getInputWithHeaders(final MovieRating movieRating, final Map<String, String> headers) throws IOException {
+
+        final var body = OBJECT_MAPPER.writeValueAsString(Map.of(
+                "imdbRating", movieRating.getImdbRating(),
+                "rottenTomatoesRating", movieRating.getRottenTomatoesRating()));
+
+        return new ByteArrayInputStream(OBJECT_MAPPER.writeValueAsBytes(Map.of(
+                "pathParameters", Map.of("movieId", movieRating.getMovieId()),
+                "headers", headers,
+                "body", body,
+                "isBase64Encoded", false)));
+    }
+
     private static InputStream getCorrectInput(final MovieRating movieRating) {
         final var event = "{\n" +
                 "  \"body\": \"{\\n\\t\\\"movieId\\\": \\\"" + movieRating.getMovieId() + "\\\",\\n\\t\\\"rottenTomatoesRating\\\": " + movieRating.getRottenTomatoesRating() + ",\\n\\t\\\"imdbRating\\\": " + movieRating.getImdbRating() +  "\\n}\",\n" +
                 "  \"resource\": \"/{proxy+}\",\n" +
                 "  \"path\": \"/path/to/resource\",\n" +
                 "  \"httpMethod\": \"POST\",\n" +
-                "  \"isBase64Encoded\": true,\n" +
+                "  \"isBase64Encoded\": false,\n" +
                 "  \"queryStringParameters\": {\n" +
                 "    \"foo\": \"bar\"\n" +
                 "  },\n" +
@@ -307,7 +745,7 @@ public final class FnUpdateMovieRatingTests implements TestUtils {
                 "  \"resource\": \"/{proxy+}\",\n" +
                 "  \"path\": \"/path/to/resource\",\n" +
                 "  \"httpMethod\": \"POST\",\n" +
-                "  \"isBase64Encoded\": true,\n" +
+                "  \"isBase64Encoded\": false,\n" +
                 "  \"queryStringParameters\": {\n" +
                 "    \"foo\": \"bar\"\n" +
                 "  },\n" +
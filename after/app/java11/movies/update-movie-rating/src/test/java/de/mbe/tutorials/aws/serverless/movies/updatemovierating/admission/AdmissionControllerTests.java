@@ -0,0 +1,77 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class AdmissionControllerTests {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    void lowerPrioritiesLeaveTheirReserveToHigherOnes() {
+
+        final var admissionController = new AdmissionController(true, 1, Duration.ofSeconds(10), nanoTime::get);
+
+        for (var index = 0; index < 5; index++) {
+            admissionController.admit(Priority.LOW, 1);
+        }
+
+        final var shed = assertThrows(AdmissionRejectedException.class, () -> admissionController.admit(Priority.LOW, 1));
+        assertEquals(1, shed.getRetryAfterSeconds());
+
+        for (var index = 0; index < 5; index++) {
+            admissionController.admit(Priority.HIGH, 1);
+        }
+
+        assertThrows(AdmissionRejectedException.class, () -> admissionController.admit(Priority.HIGH, 1));
+
+        assertEquals(5, admissionController.getAdmitted(Priority.LOW));
+        assertEquals(1, admissionController.getShed(Priority.LOW));
+        assertEquals(5, admissionController.getAdmitted(Priority.HIGH));
+        assertEquals(1, admissionController.getShed(Priority.HIGH));
+        assertEquals(0, admissionController.getAdmitted(Priority.NORMAL));
+    }
+
+    @Test
+    void theBucketRefillsWithTheCapacityUnitsPerSecond() {
+
+        final var admissionController = new AdmissionController(true, 2, Duration.ofSeconds(1), nanoTime::get);
+
+        admissionController.admit(Priority.HIGH, 2);
+        assertThrows(AdmissionRejectedException.class, () -> admissionController.admit(Priority.HIGH, 1));
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+
+        admissionController.admit(Priority.HIGH, 1);
+        assertThrows(AdmissionRejectedException.class, () -> admissionController.admit(Priority.HIGH, 1));
+    }
+
+    @Test
+    void requestsLargerThanTheBucketRunItIntoDebt() {
+
+        final var admissionController = new AdmissionController(true, 1, Duration.ofSeconds(10), nanoTime::get);
+
+        admissionController.admit(Priority.HIGH, 25);
+
+        final var shed = assertThrows(AdmissionRejectedException.class, () -> admissionController.admit(Priority.HIGH, 1));
+        assertEquals(16, shed.getRetryAfterSeconds());
+    }
+
+    @Test
+    void disabledControllerAdmitsEverything() {
+
+        final var admissionController = AdmissionController.disabled();
+
+        for (var index = 0; index < 1_000; index++) {
+            admissionController.admit(Priority.LOW, 100);
+        }
+
+        assertFalse(admissionController.isEnabled());
+        assertEquals(0, admissionController.getShed(Priority.LOW));
+    }
+}
@@ -0,0 +1,124 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk;
+
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.AdmissionController;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.Priority;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MoviesDynamoDbRepository;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public final class BulkRatingsUpdaterTests {
+
+    @Mock
+    private MoviesDynamoDbRepository moviesDynamoDbRepository;
+
+    @Test
+    void everyRatingGetsAResultInTheOrderItWasGiven() throws InterruptedException {
+
+        final var updated = movieRating("tt0133093", 87);
+        final var missingTable = movieRating("tt0234215", 72);
+        final var withoutMovieId = movieRating(null, 50);
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(updated)).thenReturn(CompletableFuture.completedFuture(null));
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(missingTable)).thenReturn(CompletableFuture.failedFuture(
+                ResourceNotFoundException.builder().statusCode(400).message("Requested resource not found").build()));
+
+        final var report = new BulkRatingsUpdater(moviesDynamoDbRepository, 2).update(List.of(updated, missingTable, withoutMovieId));
+
+        assertEquals(1, report.getSucceeded());
+        assertEquals(2, report.getFailed());
+        assertEquals(List.of(
+                new RatingUpdateResult("tt0133093", 204, null),
+                new RatingUpdateResult("tt0234215", 400, "Requested resource not found"),
+                new RatingUpdateResult(null, 400, "Invalid JSON: Missing or null movieId")), report.getResults());
+    }
+
+    @Test
+    void ratingsOverTheWriteBudgetAreShed() throws InterruptedException {
+
+        final var admitted = movieRating("tt0133093", 87);
+        final var shed = movieRating("tt0234215", 72);
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(admitted)).thenReturn(CompletableFuture.completedFuture(null));
+
+        final var admissionController = new AdmissionController(1, Duration.ofSeconds(1));
+        final var report = new BulkRatingsUpdater(moviesDynamoDbRepository, 2, admissionController).update(List.of(admitted, shed));
+
+        assertEquals(1, report.getSucceeded());
+        assertEquals(429, report.getResults().get(1).getStatusCode());
+        assertEquals(1, admissionController.getShed(Priority.LOW));
+        verify(moviesDynamoDbRepository, never()).updateMovieRatingAsync(shed);
+    }
+
+    @Test
+    void neverMoreCallsInFlightThanTheLimit() throws InterruptedException {
+
+        final var executorService = Executors.newFixedThreadPool(8);
+        final var inFlight = new AtomicInteger();
+        final var maxInFlight = new AtomicInteger();
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(any())).thenAnswer(invocation -> CompletableFuture.runAsync(() -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                TimeUnit.MILLISECONDS.sleep(5);
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+        }, executorService));
+
+        final var movieRatings = new ArrayList<MovieRating>();
+        for (var index = 0; index < 50; index++) {
+            movieRatings.add(movieRating("tt" + index, index));
+        }
+
+        try {
+
+            final var report = new BulkRatingsUpdater(moviesDynamoDbRepository, 3).update(movieRatings);
+
+            assertEquals(50, report.getSucceeded());
+            assertTrue(maxInFlight.get() <= 3);
+
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void failuresWhileBuildingTheRequestAreReportedToo() throws InterruptedException {
+
+        final var movieRating = movieRating("tt0133093", 87);
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(movieRating)).thenThrow(new IllegalStateException("Boom"));
+
+        final var report = new BulkRatingsUpdater(moviesDynamoDbRepository, 1).update(List.of(movieRating));
+
+        assertEquals(List.of(new RatingUpdateResult("tt0133093", 500, "Boom")), report.getResults());
+    }
+
+    private static MovieRating movieRating(final String movieId, final Integer imdbRating) {
+
+        final var movieRating = new MovieRating();
+        movieRating.setMovieId(movieId);
+        movieRating.setImdbRating(imdbRating);
+        return movieRating;
+    }
+}
@@ -0,0 +1,134 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.idempotency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public final class IdempotencyStoreTests {
+
+    private static final String IDEMPOTENCY_TABLE = "idempotency";
+    private static final byte[] RESPONSE = "{\"statusCode\":200}".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    private IdempotencyStore idempotencyStore;
+
+    @BeforeEach
+    void init() {
+        idempotencyStore = new IdempotencyStore(dynamoDbClient, IDEMPOTENCY_TABLE, Duration.ofHours(24), Duration.ofSeconds(29), 100);
+    }
+
+    @Test
+    void firstRequestClaimsTheKeyWithAConditionalWrite() {
+
+        when(dynamoDbClient.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder().build());
+
+        assertNull(idempotencyStore.begin("key", "fingerprint"));
+
+        final var putItemRequest = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(dynamoDbClient).putItem(putItemRequest.capture());
+
+        assertEquals("IN_PROGRESS", putItemRequest.getValue().item().get("status").s());
+        assertEquals("attribute_not_exists(#k) OR #e < :now", putItemRequest.getValue().conditionExpression());
+    }
+
+    @Test
+    void completedResponsesAreReplayedFromTheCache() {
+
+        when(dynamoDbClient.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder().build());
+
+        assertNull(idempotencyStore.begin("key", "fingerprint"));
+        idempotencyStore.complete("key", "fingerprint", RESPONSE);
+
+        assertArrayEquals(RESPONSE, idempotencyStore.begin("key", "fingerprint"));
+        assertEquals(1, idempotencyStore.getReplayedFromCache());
+
+        // the claim and the completion, the replay never reached the table
+        verify(dynamoDbClient, times(2)).putItem(any(PutItemRequest.class));
+        verifyNoMoreInteractions(dynamoDbClient);
+    }
+
+    @Test
+    void completedResponsesAreReplayedFromTheTable() {
+
+        when(dynamoDbClient.putItem(any(PutItemRequest.class))).thenThrow(ConditionalCheckFailedException.builder().build());
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(storedItem("COMPLETED", "fingerprint"))
+                .build());
+
+        assertArrayEquals(RESPONSE, idempotencyStore.begin("key", "fingerprint"));
+        assertEquals(1, idempotencyStore.getReplayedFromTable());
+
+        // the second replay is served by the cache
+        assertArrayEquals(RESPONSE, idempotencyStore.begin("key", "fingerprint"));
+        assertEquals(1, idempotencyStore.getReplayedFromCache());
+    }
+
+    @Test
+    void concurrentDuplicatesAreTurnedAway() {
+
+        when(dynamoDbClient.putItem(any(PutItemRequest.class))).thenThrow(ConditionalCheckFailedException.builder().build());
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(storedItem("IN_PROGRESS", "fingerprint"))
+                .build());
+
+        assertThrows(IdempotencyKeyInUseException.class, () -> idempotencyStore.begin("key", "fingerprint"));
+        assertEquals(1, idempotencyStore.getInProgressDuplicates());
+    }
+
+    @Test
+    void keysReusedForAnotherRequestAreRejected() {
+
+        when(dynamoDbClient.putItem(any(PutItemRequest.class))).thenThrow(ConditionalCheckFailedException.builder().build());
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(storedItem("COMPLETED", "fingerprint"))
+                .build());
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> idempotencyStore.begin("key", "another fingerprint"));
+    }
+
+    @Test
+    void releasedKeysOnlyRemoveUnfinishedRecords() {
+
+        idempotencyStore.release("key");
+
+        final var deleteItemRequest = ArgumentCaptor.forClass(DeleteItemRequest.class);
+        verify(dynamoDbClient).deleteItem(deleteItemRequest.capture());
+
+        assertEquals("#s = :inProgress", deleteItemRequest.getValue().conditionExpression());
+    }
+
+    private static Map<String, AttributeValue> storedItem(final String status, final String fingerprint) {
+        return Map.of(
+                "idempotencyKey", AttributeValue.builder().s("key").build(),
+                "fingerprint", AttributeValue.builder().s(fingerprint).build(),
+                "status", AttributeValue.builder().s(status).build(),
+                "response", AttributeValue.builder().b(SdkBytes.fromByteArray(RESPONSE)).build(),
+                "expiresAt", AttributeValue.builder().n("4102444800").build());
+    }
+}
@@ -0,0 +1,121 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository;
+
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieVote;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.VoteTally;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public final class MovieVotesDynamoDbRepositoryTests {
+
+    private static final String MOVIES_TABLE = "movies";
+    private static final String MOVIE_VOTES_TABLE = "movie-votes";
+
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    private MovieVotesDynamoDbRepository movieVotesDynamoDbRepository;
+
+    @BeforeEach
+    void init() {
+        movieVotesDynamoDbRepository = new MovieVotesDynamoDbRepository(dynamoDbClient, MOVIES_TABLE, MOVIE_VOTES_TABLE, 4);
+    }
+
+    @Test
+    void aVoteIsOneUnconditionalAddOnOneShard() {
+
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().build());
+
+        final var movieVote = new MovieVote();
+        movieVote.setMovieId("tt0133093");
+        movieVote.setRating(87);
+
+        movieVotesDynamoDbRepository.recordVote(movieVote);
+
+        final var updateItemRequest = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(updateItemRequest.capture());
+
+        assertEquals(MOVIE_VOTES_TABLE, updateItemRequest.getValue().tableName());
+        assertEquals("ADD #c :one, #s :rating", updateItemRequest.getValue().updateExpression());
+        assertNull(updateItemRequest.getValue().conditionExpression());
+        assertEquals("87", updateItemRequest.getValue().expressionAttributeValues().get(":rating").n());
+        assertTrue(updateItemRequest.getValue().key().get("movieShard").s().matches("tt0133093#[0-3]"));
+    }
+
+    @Test
+    void theTallyAddsUpEveryShardAndRetriesUnprocessedKeys() {
+
+        final var unprocessedKeys = Map.of(MOVIE_VOTES_TABLE, KeysAndAttributes.builder()
+                .keys(List.of(Map.of("movieShard", AttributeValue.builder().s("tt0133093#3").build())))
+                .build());
+
+        when(dynamoDbClient.batchGetItem(any(BatchGetItemRequest.class)))
+                .thenReturn(BatchGetItemResponse.builder()
+                        .responses(Map.of(MOVIE_VOTES_TABLE, List.of(shard(10, 800), shard(5, 450))))
+                        .unprocessedKeys(unprocessedKeys)
+                        .build())
+                .thenReturn(BatchGetItemResponse.builder()
+                        .responses(Map.of(MOVIE_VOTES_TABLE, List.of(shard(1, 100))))
+                        .build());
+
+        final var voteTally = movieVotesDynamoDbRepository.tally("tt0133093");
+
+        assertEquals(new VoteTally(16, 1_350), voteTally);
+        assertEquals(new BigDecimal("84.38"), voteTally.getAverage());
+
+        final var batchGetItemRequest = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        verify(dynamoDbClient, times(2)).batchGetItem(batchGetItemRequest.capture());
+
+        assertEquals(4, batchGetItemRequest.getAllValues().get(0).requestItems().get(MOVIE_VOTES_TABLE).keys().size());
+        assertTrue(batchGetItemRequest.getAllValues().get(0).requestItems().get(MOVIE_VOTES_TABLE).consistentRead());
+        assertEquals(unprocessedKeys, batchGetItemRequest.getAllValues().get(1).requestItems());
+    }
+
+    @Test
+    void aFoldNeverReplacesANewerTally() {
+
+        when(dynamoDbClient.updateItem(any(UpdateItemRequest.class))).thenThrow(ConditionalCheckFailedException.builder().build());
+
+        assertFalse(movieVotesDynamoDbRepository.fold("tt0133093", new VoteTally(16, 1_350)));
+
+        final var updateItemRequest = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDbClient).updateItem(updateItemRequest.capture());
+
+        assertEquals(MOVIES_TABLE, updateItemRequest.getValue().tableName());
+        assertEquals("attribute_exists(#m) AND (attribute_not_exists(#vc) OR #vc < :count)", updateItemRequest.getValue().conditionExpression());
+        assertEquals("84.38", updateItemRequest.getValue().expressionAttributeValues().get(":average").n());
+    }
+
+    @Test
+    void nothingIsFoldedWithoutVotes() {
+        assertFalse(movieVotesDynamoDbRepository.fold("tt0133093", new VoteTally(0, 0)));
+    }
+
+    private static Map<String, AttributeValue> shard(final long voteCount, final long voteSum) {
+        return Map.of(
+                "voteCount", AttributeValue.builder().n(Long.toString(voteCount)).build(),
+                "voteSum", AttributeValue.builder().n(Long.toString(voteSum)).build());
+    }
+}
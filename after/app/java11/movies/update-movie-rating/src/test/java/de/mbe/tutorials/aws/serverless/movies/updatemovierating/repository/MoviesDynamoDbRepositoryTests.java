@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Test;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
@@ -26,6 +27,7 @@ public class MoviesDynamoDbRepositoryTests implements TestUtils {
     private static final String MOVIES_TABLE = UUID.randomUUID().toString();
 
     private static DynamoDbClient dynamoDbClient;
+    private static DynamoDbAsyncClient dynamoDbAsyncClient;
 
     private static MoviesDynamoDbRepository moviesDynamoDbRepository;
 
@@ -45,6 +47,10 @@ public class MoviesDynamoDbRepositoryTests implements TestUtils {
                 .endpointOverride(dynamoDbUri)
                 .build();
 
+        dynamoDbAsyncClient = DynamoDbAsyncClient.builder()
+                .endpointOverride(dynamoDbUri)
+                .build();
+
         dynamoDbClient.createTable(CreateTableRequest.builder()
                 .attributeDefinitions(AttributeDefinition.builder()
                         .attributeName("movieId")
@@ -64,7 +70,7 @@ public class MoviesDynamoDbRepositoryTests implements TestUtils {
 
     @BeforeEach
     void beforeEach() {
-        moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDbClient, MOVIES_TABLE);
+        moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDbClient, dynamoDbAsyncClient, MOVIES_TABLE);
     }
 
     @Test
@@ -92,6 +98,71 @@ public class MoviesDynamoDbRepositoryTests implements TestUtils {
         assertEquals(expectedMovie, actualMovie);
     }
 
+    @Test
+    void testUpdateMovieRatingJoinsOnlyTheRatedLeaderboard() {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movieRating = getRandomMovieRating(movieId);
+        movieRating.setImdbRating(87);
+        movieRating.setRottenTomatoesRating(null);
+
+        moviesDynamoDbRepository.updateMovieRating(movieRating);
+
+        final var item = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(MOVIES_TABLE)
+                .key(Map.of("movieId", AttributeValue.builder().s(movieId).build()))
+                .consistentRead(true)
+                .build()).item();
+
+        assertEquals(MoviesDynamoDbRepository.IMDB_LEADERBOARD, item.get(MoviesDynamoDbRepository.IMDB_LEADERBOARD_ATTRIBUTE).s());
+        assertFalse(item.containsKey(MoviesDynamoDbRepository.ROTTEN_TOMATOES_LEADERBOARD_ATTRIBUTE));
+    }
+
+    @Test
+    void testUpdateMovieRatingReturnsOnlyWhatWasAskedFor() {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movie = getRandomMovie(movieId);
+
+        dynamoDbClient.putItem(PutItemRequest.builder()
+                .tableName(MOVIES_TABLE)
+                .item(convertToDynamoDBItem(movie))
+                .build());
+
+        final var movieRating = getRandomMovieRating(movieId);
+        movieRating.setImdbRating(RANDOM.nextInt(100));
+        movieRating.setRottenTomatoesRating(null);
+
+        assertNull(moviesDynamoDbRepository.updateMovieRating(movieRating, ReturnValue.NONE));
+
+        final var delta = moviesDynamoDbRepository.updateMovieRating(movieRating, ReturnValue.UPDATED_NEW);
+
+        assertEquals(movieId, delta.getMovieId());
+        assertEquals(movieRating.getImdbRating(), delta.getImdbRating());
+        assertNull(delta.getRottenTomatoesRating());
+        assertNull(delta.getName());
+    }
+
+    @Test
+    void testUpdateMovieRatingAsync() {
+
+        final var movieId = UUID.randomUUID().toString();
+        final var movieRating = getRandomMovieRating(movieId);
+        movieRating.setImdbRating(RANDOM.nextInt(100));
+        movieRating.setRottenTomatoesRating(RANDOM.nextInt(100));
+
+        moviesDynamoDbRepository.updateMovieRatingAsync(movieRating).join();
+
+        final var item = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(MOVIES_TABLE)
+                .key(Map.of("movieId", AttributeValue.builder().s(movieId).build()))
+                .consistentRead(true)
+                .build()).item();
+
+        assertEquals(movieRating.getImdbRating().toString(), item.get("imdbRating").n());
+        assertEquals(movieRating.getRottenTomatoesRating().toString(), item.get("rottenTomatoesRating").n());
+    }
+
     private static Map<String, AttributeValue> convertToDynamoDBItem(final Movie movie) {
         return Map.ofEntries(
                 new AbstractMap.SimpleEntry<>("movieId", AttributeValue.builder().s(movie.getMovieId()).build()),
@@ -0,0 +1,79 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository;
+
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public final class UpdateItemRequestTemplatesTests {
+
+    private static final String MOVIES_TABLE = "movies";
+
+    private final MoviesDynamoDbRepository moviesDynamoDbRepository = new MoviesDynamoDbRepository(mock(DynamoDbClient.class), MOVIES_TABLE);
+
+    @Test
+    void nothingToUpdateGivesNoRequest() {
+        assertNull(moviesDynamoDbRepository.updateItemRequest(movieRating(null, null), ReturnValue.ALL_NEW));
+    }
+
+    @Test
+    void imdbRatingOnly() {
+
+        final var request = moviesDynamoDbRepository.updateItemRequest(movieRating(87, null), ReturnValue.ALL_NEW);
+
+        assertEquals("SET #i = :imdbRating, #il = :imdbLeaderboard, #lm = :lastModified ADD #v :one", request.updateExpression());
+        assertEquals(Map.of("#i", "imdbRating", "#il", "imdbRatingLeaderboard", "#lm", "lastModified", "#v", "version"), request.expressionAttributeNames());
+        assertEquals("87", request.expressionAttributeValues().get(":imdbRating").n());
+        assertEquals("imdb", request.expressionAttributeValues().get(":imdbLeaderboard").s());
+        assertFalse(request.expressionAttributeValues().containsKey(":rottenTomatoesRating"));
+    }
+
+    @Test
+    void bothRatings() {
+
+        final var request = moviesDynamoDbRepository.updateItemRequest(movieRating(87, 88), ReturnValue.ALL_NEW);
+
+        assertEquals("SET #i = :imdbRating, #il = :imdbLeaderboard, #ro = :rottenTomatoesRating, #rol = :rottenTomatoesLeaderboard, #lm = :lastModified ADD #v :one",
+                request.updateExpression());
+        assertEquals(6, request.expressionAttributeNames().size());
+        assertEquals(6, request.expressionAttributeValues().size());
+        assertEquals("88", request.expressionAttributeValues().get(":rottenTomatoesRating").n());
+        assertEquals("1", request.expressionAttributeValues().get(":one").n());
+        assertEquals("tt0133093", request.key().get("movieId").s());
+        assertEquals(MOVIES_TABLE, request.tableName());
+        assertEquals(ReturnValue.ALL_NEW, request.returnValues());
+    }
+
+    @Test
+    void templatesAreNotChangedByTheRequestsBuiltFromThem() {
+
+        final var first = moviesDynamoDbRepository.updateItemRequest(movieRating(87, null), ReturnValue.ALL_NEW);
+        final var second = moviesDynamoDbRepository.updateItemRequest(movieRating(12, null), ReturnValue.ALL_NEW);
+
+        assertEquals("87", first.expressionAttributeValues().get(":imdbRating").n());
+        assertEquals("12", second.expressionAttributeValues().get(":imdbRating").n());
+        assertEquals(first.updateExpression(), second.updateExpression());
+    }
+
+    @Test
+    void returnValuesAreChosenPerCall() {
+
+        assertEquals(ReturnValue.NONE, moviesDynamoDbRepository.updateItemRequest(movieRating(87, null), ReturnValue.NONE).returnValues());
+        assertEquals(ReturnValue.UPDATED_NEW, moviesDynamoDbRepository.updateItemRequest(movieRating(87, null), ReturnValue.UPDATED_NEW).returnValues());
+        assertEquals(ReturnValue.ALL_NEW, moviesDynamoDbRepository.updateItemRequest(movieRating(87, null), ReturnValue.ALL_NEW).returnValues());
+    }
+
+    private static MovieRating movieRating(final Integer imdbRating, final Integer rottenTomatoesRating) {
+
+        final var movieRating = new MovieRating();
+        movieRating.setMovieId("tt0133093");
+        movieRating.setImdbRating(imdbRating);
+        movieRating.setRottenTomatoesRating(rottenTomatoesRating);
+        return movieRating;
+    }
+}
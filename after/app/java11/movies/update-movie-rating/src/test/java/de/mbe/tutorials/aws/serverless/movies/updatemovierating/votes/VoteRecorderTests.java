@@ -0,0 +1,137 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.votes;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.AdmissionController;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.admission.Priority;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MovieVotesDynamoDbRepository;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieVote;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.VoteTally;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public final class VoteRecorderTests {
+
+    @Mock
+    private MovieVotesDynamoDbRepository movieVotesDynamoDbRepository;
+
+    @Test
+    void theShardsAreFoldedAtMostOncePerInterval() {
+
+        final var voteTally = new VoteTally(3, 240);
+        when(movieVotesDynamoDbRepository.tally("tt0133093")).thenReturn(voteTally);
+        when(movieVotesDynamoDbRepository.fold("tt0133093", voteTally)).thenReturn(true);
+
+        final var voteRecorder = voteRecorder(Duration.ofHours(1), AdmissionController.disabled(), Ticker.systemTicker());
+        for (var vote = 0; vote < 3; vote++) {
+            voteRecorder.record(movieVote("tt0133093", 80));
+        }
+
+        assertEquals(3, voteRecorder.getVotes());
+        assertEquals(1, voteRecorder.getFolds());
+        verify(movieVotesDynamoDbRepository, times(3)).recordVote(movieVote("tt0133093", 80));
+        verify(movieVotesDynamoDbRepository, times(1)).tally("tt0133093");
+    }
+
+    @Test
+    void aFailedFoldIsTriedAgainWithTheNextVote() {
+
+        final var voteTally = new VoteTally(2, 150);
+        when(movieVotesDynamoDbRepository.tally("tt0133093"))
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("Throttled").build())
+                .thenReturn(voteTally);
+        when(movieVotesDynamoDbRepository.fold("tt0133093", voteTally)).thenReturn(true);
+
+        final var voteRecorder = voteRecorder(Duration.ofHours(1), AdmissionController.disabled(), Ticker.systemTicker());
+        voteRecorder.record(movieVote("tt0133093", 70));
+        voteRecorder.record(movieVote("tt0133093", 80));
+
+        assertEquals(2, voteRecorder.getVotes());
+        assertEquals(1, voteRecorder.getFailedFolds());
+        assertEquals(1, voteRecorder.getFolds());
+    }
+
+    @Test
+    void votesWithinTheIntervalAreFoldedByTheTrailingFold() {
+
+        final var firstTally = new VoteTally(1, 70);
+        final var secondTally = new VoteTally(2, 150);
+        when(movieVotesDynamoDbRepository.tally("tt0133093")).thenReturn(firstTally, secondTally);
+        when(movieVotesDynamoDbRepository.fold("tt0133093", firstTally)).thenReturn(true);
+        when(movieVotesDynamoDbRepository.fold("tt0133093", secondTally)).thenReturn(true);
+
+        final var nanoTime = new AtomicLong();
+        final var voteRecorder = voteRecorder(Duration.ofMinutes(1), AdmissionController.disabled(), nanoTime::get);
+        voteRecorder.record(movieVote("tt0133093", 70));
+        voteRecorder.record(movieVote("tt0133093", 80));
+
+        // the second vote came in while the movie was waiting out its interval
+        voteRecorder.foldUnfolded();
+        assertEquals(1, voteRecorder.getFolds());
+        assertEquals(1, voteRecorder.getUnfolded());
+
+        nanoTime.addAndGet(Duration.ofMinutes(1).toNanos());
+        voteRecorder.foldUnfolded();
+
+        assertEquals(2, voteRecorder.getFolds());
+        assertEquals(0, voteRecorder.getUnfolded());
+        verify(movieVotesDynamoDbRepository).fold("tt0133093", secondTally);
+    }
+
+    @Test
+    void aShedFoldIsLeftForTheTrailingFold() {
+
+        // one unit a second, taken by the rating update before the vote
+        final var admissionController = new AdmissionController(1, Duration.ofSeconds(1));
+        admissionController.admit(Priority.HIGH, 1);
+
+        final var voteRecorder = voteRecorder(Duration.ofHours(1), admissionController, Ticker.systemTicker());
+        voteRecorder.record(movieVote("tt0133093", 70));
+
+        assertEquals(1, voteRecorder.getVotes());
+        assertEquals(1, voteRecorder.getShedFolds());
+        assertEquals(0, voteRecorder.getFolds());
+        assertEquals(1, voteRecorder.getUnfolded());
+        assertEquals(1, admissionController.getShed(Priority.LOW));
+        verify(movieVotesDynamoDbRepository, never()).tally(anyString());
+    }
+
+    @Test
+    void closeStopsTheTrailingFold() {
+
+        final var trailingFolds = Executors.newSingleThreadScheduledExecutor();
+        final var voteRecorder = new VoteRecorder(movieVotesDynamoDbRepository, Duration.ofHours(1),
+                AdmissionController.disabled(), Ticker.systemTicker(), trailingFolds);
+
+        voteRecorder.close();
+
+        assertTrue(trailingFolds.isTerminated());
+    }
+
+    // the trailing fold is left to the test, there is no executor folding in the background
+    private VoteRecorder voteRecorder(final Duration foldInterval, final AdmissionController admissionController, final Ticker ticker) {
+        return new VoteRecorder(movieVotesDynamoDbRepository, foldInterval, admissionController, ticker, null);
+    }
+
+    private static MovieVote movieVote(final String movieId, final int rating) {
+
+        final var movieVote = new MovieVote();
+        movieVote.setMovieId(movieId);
+        movieVote.setRating(rating);
+        return movieVote;
+    }
+}
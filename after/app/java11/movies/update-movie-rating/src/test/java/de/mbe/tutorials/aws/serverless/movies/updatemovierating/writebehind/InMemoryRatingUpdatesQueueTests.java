@@ -0,0 +1,94 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class InMemoryRatingUpdatesQueueTests {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Test
+    void updatesAreDeliveredInBatchesAsAnSqsEvent() {
+
+        final var deliveries = new CopyOnWriteArrayList<List<String>>();
+        final var queue = new InMemoryRatingUpdatesQueue(100, 2, Duration.ofMillis(200));
+
+        queue.send(movieRating("tt0133093", 50));
+        queue.send(movieRating("tt0133093", 87));
+        queue.send(movieRating("tt0234215", 72));
+
+        queue.start((input, output, context) -> deliveries.add(messageBodies(input.readAllBytes())));
+        queue.close();
+
+        assertEquals(2, deliveries.size());
+        assertEquals(List.of(
+                "{\"movieId\":\"tt0133093\",\"rottenTomatoesRating\":null,\"imdbRating\":50}",
+                "{\"movieId\":\"tt0133093\",\"rottenTomatoesRating\":null,\"imdbRating\":87}"), deliveries.get(0));
+        assertEquals(List.of(
+                "{\"movieId\":\"tt0234215\",\"rottenTomatoesRating\":null,\"imdbRating\":72}"), deliveries.get(1));
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    void aFailedBatchIsDeliveredAgainBeforeAnythingNewer() throws InterruptedException {
+
+        final var deliveries = new CopyOnWriteArrayList<List<String>>();
+        final var failedOnce = new AtomicBoolean();
+        final var queue = new InMemoryRatingUpdatesQueue(100, 1, Duration.ZERO);
+
+        queue.send(movieRating("tt0133093", 50));
+        queue.send(movieRating("tt0133093", 87));
+
+        queue.start((input, output, context) -> {
+            deliveries.add(messageBodies(input.readAllBytes()));
+            if (failedOnce.compareAndSet(false, true)) {
+                throw new RatingUpdatesNotAppliedException(1, 1);
+            }
+        });
+
+        while (deliveries.size() < 3) {
+            Thread.sleep(10);
+        }
+        queue.close();
+
+        assertEquals(deliveries.get(0), deliveries.get(1));
+        assertEquals(List.of("{\"movieId\":\"tt0133093\",\"rottenTomatoesRating\":null,\"imdbRating\":87}"), deliveries.get(2));
+    }
+
+    @Test
+    void aClosedQueueRefusesUpdates() {
+
+        final var queue = new InMemoryRatingUpdatesQueue(100, 10, Duration.ZERO);
+        queue.close();
+
+        assertThrows(IllegalStateException.class, () -> queue.send(movieRating("tt0133093", 87)));
+    }
+
+    private static List<String> messageBodies(final byte[] event) throws IOException {
+
+        final var bodies = new ArrayList<String>();
+        for (final var record : OBJECT_MAPPER.readTree(event).path("Records")) {
+            assertEquals("aws:sqs", record.path("eventSource").asText());
+            bodies.add(record.path("body").asText());
+        }
+        return bodies;
+    }
+
+    private static MovieRating movieRating(final String movieId, final Integer imdbRating) {
+
+        final var movieRating = new MovieRating();
+        movieRating.setMovieId(movieId);
+        movieRating.setImdbRating(imdbRating);
+        return movieRating;
+    }
+}
@@ -0,0 +1,101 @@
+package de.mbe.tutorials.aws.serverless.movies.updatemovierating.writebehind;
+
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.bulk.BulkRatingsUpdater;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.MoviesDynamoDbRepository;
+import de.mbe.tutorials.aws.serverless.movies.updatemovierating.repository.models.MovieRating;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public final class RatingUpdatesConsumerTests {
+
+    @Mock
+    private MoviesDynamoDbRepository moviesDynamoDbRepository;
+
+    @Test
+    void laterUpdatesWinPerRating() {
+
+        final var coalesced = RatingUpdatesConsumer.coalesce(List.of(
+                movieRating("tt0133093", 50, 60),
+                movieRating("tt0234215", 10, null),
+                movieRating("tt0133093", 70, null),
+                movieRating("tt0234215", null, 20),
+                movieRating("tt0133093", 87, null)));
+
+        assertEquals(List.of(
+                movieRating("tt0133093", 87, 60),
+                movieRating("tt0234215", 10, 20)), coalesced);
+    }
+
+    @Test
+    void aBatchIsWrittenWithOneUpdatePerMovie() throws InterruptedException {
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        final var consumer = new RatingUpdatesConsumer(new BulkRatingsUpdater(moviesDynamoDbRepository, 4));
+        final var report = consumer.apply(List.of(
+                "{\"movieId\":\"tt0133093\",\"imdbRating\":50}",
+                "{\"movieId\":\"tt0133093\",\"imdbRating\":87}",
+                "{\"movieId\":\"tt0234215\",\"rottenTomatoesRating\":72}"));
+
+        assertEquals(2, report.getSucceeded());
+        assertEquals(0, report.getFailed());
+        assertEquals(3, consumer.getReceived());
+        assertEquals(2, consumer.getWritten());
+
+        verify(moviesDynamoDbRepository, times(1)).updateMovieRatingAsync(movieRating("tt0133093", 87, null));
+        verify(moviesDynamoDbRepository, times(1)).updateMovieRatingAsync(movieRating("tt0234215", null, 72));
+    }
+
+    @Test
+    void unreadableUpdatesAreDropped() throws InterruptedException {
+
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        final var report = new RatingUpdatesConsumer(new BulkRatingsUpdater(moviesDynamoDbRepository, 4)).apply(List.of(
+                "not a rating",
+                "{\"movieId\":\"tt0133093\",\"imdbRating\":87}"));
+
+        assertEquals(1, report.getSucceeded());
+        assertEquals(0, report.getFailed());
+    }
+
+    @Test
+    void throttledUpdatesAreReportedForRedelivery() throws InterruptedException {
+
+        final var throttled = DynamoDbException.builder()
+                .statusCode(400)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("ProvisionedThroughputExceededException").build())
+                .build();
+        when(moviesDynamoDbRepository.updateMovieRatingAsync(any())).thenReturn(CompletableFuture.failedFuture(throttled));
+
+        final var report = new RatingUpdatesConsumer(new BulkRatingsUpdater(moviesDynamoDbRepository, 4)).apply(List.of(
+                "{\"movieId\":\"tt0133093\",\"imdbRating\":87}"));
+
+        assertEquals(0, report.getSucceeded());
+        assertEquals(1, report.getFailed());
+        assertEquals(429, report.getResults().get(0).getStatusCode());
+    }
+
+    private static MovieRating movieRating(final String movieId, final Integer imdbRating, final Integer rottenTomatoesRating) {
+
+        final var movieRating = new MovieRating();
+        movieRating.setMovieId(movieId);
+        movieRating.setImdbRating(imdbRating);
+        movieRating.setRottenTomatoesRating(rottenTomatoesRating);
+        return movieRating;
+    }
+}
@@ -1,26 +1,60 @@
 package de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos;
 
-import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 import com.amazonaws.xray.interceptors.TracingInterceptor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.deadline.DeadlinePolicy;
 import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.repository.MoviesDynamoDbRepository;
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services.PublishMovieIdsBloomFilterService;
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services.PublishMovieNamesIndexService;
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services.SnapshotsNotPublishedException;
 import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services.UploadFromS3ToDynamoDBService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetBucketLocationRequest;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
 
-public final class FnUploadMovieInfos {
+public final class FnUploadMovieInfos implements RequestStreamHandler, APIGatewayProxyResponseUtils {
 
     private static final Logger LOGGER = LogManager.getLogger(FnUploadMovieInfos.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String DEFAULT_MOVIE_IDS_BLOOM_FILTER_PREFIX = "bloom-filters/movie-ids/";
+    private static final double DEFAULT_MOVIE_IDS_BLOOM_FILTER_FALSE_POSITIVE_RATE = 0.01;
+    private static final String DEFAULT_MOVIE_NAMES_INDEX_PREFIX = "indexes/movie-names/";
+    private static final long DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS = 250;
+    private static final long DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS = 10_000;
+
+    private static final String PRIMING_BUCKET = "__priming__";
+    private static final byte[] PRIMING_EVENT = ("{\"Records\":[{\"eventName\":\"ObjectCreated:Put\",\"s3\":{"
+            + "\"bucket\":{\"name\":\"" + PRIMING_BUCKET + "\"},\"object\":{\"key\":\"priming.csv\"}}}]}").getBytes(StandardCharsets.UTF_8);
 
     private final String movieInfosBucket;
     private final UploadFromS3ToDynamoDBService uploadFromS3ToDynamoDBService;
+    private final MoviesDynamoDbRepository moviesDynamoDbRepository;
+    private final PublishMovieIdsBloomFilterService publishMovieIdsBloomFilterService;
+    private final PublishMovieNamesIndexService publishMovieNamesIndexService;
+    private final DeadlinePolicy deadlinePolicy;
 
     public FnUploadMovieInfos() {
 
@@ -38,49 +72,194 @@ public final class FnUploadMovieInfos {
 
         movieInfosBucket = System.getenv("MOVIE_INFOS_BUCKET");
         final var movieInfosTable = System.getenv("MOVIE_INFOS_TABLE");
+        final var moviesTable = System.getenv("MOVIES_TABLE");
 
-        final var moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDbClient, movieInfosTable);
+        moviesDynamoDbRepository = new MoviesDynamoDbRepository(dynamoDbClient, movieInfosTable, moviesTable);
 
         uploadFromS3ToDynamoDBService = new UploadFromS3ToDynamoDBService(s3Client, movieInfosBucket, moviesDynamoDbRepository);
+
+        final var movieIdsBloomFilterEnabled = Optional.ofNullable(System.getenv("MOVIE_IDS_BLOOM_FILTER_ENABLED"))
+                .map(Boolean::parseBoolean)
+                .orElse(true);
+
+        if (movieIdsBloomFilterEnabled) {
+
+            final var prefix = Optional.ofNullable(System.getenv("MOVIE_IDS_BLOOM_FILTER_PREFIX"))
+                    .orElse(DEFAULT_MOVIE_IDS_BLOOM_FILTER_PREFIX);
+
+            final var falsePositiveRate = Optional.ofNullable(System.getenv("MOVIE_IDS_BLOOM_FILTER_FALSE_POSITIVE_RATE"))
+                    .map(Double::parseDouble)
+                    .orElse(DEFAULT_MOVIE_IDS_BLOOM_FILTER_FALSE_POSITIVE_RATE);
+
+            publishMovieIdsBloomFilterService = new PublishMovieIdsBloomFilterService(s3Client, movieInfosBucket, prefix, falsePositiveRate);
+        } else {
+            publishMovieIdsBloomFilterService = null;
+        }
+
+        final var movieNamesIndexEnabled = Optional.ofNullable(System.getenv("MOVIE_NAMES_INDEX_ENABLED"))
+                .map(Boolean::parseBoolean)
+                .orElse(true);
+
+        if (movieNamesIndexEnabled) {
+
+            final var prefix = Optional.ofNullable(System.getenv("MOVIE_NAMES_INDEX_PREFIX"))
+                    .orElse(DEFAULT_MOVIE_NAMES_INDEX_PREFIX);
+
+            publishMovieNamesIndexService = new PublishMovieNamesIndexService(s3Client, movieInfosBucket, prefix);
+        } else {
+            publishMovieNamesIndexService = null;
+        }
+
+        // uploads are bounded by the Lambda timeout alone, an attempt may take long enough to stream a whole CSV from S3
+        final var deadlineSafetyMarginMillis = Optional.ofNullable(System.getenv("DEADLINE_SAFETY_MARGIN_MILLIS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS);
+
+        final var apiCallAttemptTimeoutMillis = Optional.ofNullable(System.getenv("SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS"))
+                .map(Long::parseLong)
+                .orElse(DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS);
+
+        deadlinePolicy = new DeadlinePolicy(Long.MAX_VALUE, deadlineSafetyMarginMillis, apiCallAttemptTimeoutMillis);
+
+        if (Priming.isEnabled()) {
+            prime(s3Client, moviesDynamoDbRepository);
+        }
     }
 
     public FnUploadMovieInfos(final String movieInfosBucket, final UploadFromS3ToDynamoDBService uploadFromS3ToDynamoDBService) {
+        this(movieInfosBucket, uploadFromS3ToDynamoDBService, null, null, null);
+    }
+
+    public FnUploadMovieInfos(final String movieInfosBucket, final UploadFromS3ToDynamoDBService uploadFromS3ToDynamoDBService, final MoviesDynamoDbRepository moviesDynamoDbRepository, final PublishMovieIdsBloomFilterService publishMovieIdsBloomFilterService, final PublishMovieNamesIndexService publishMovieNamesIndexService) {
+        this(movieInfosBucket, uploadFromS3ToDynamoDBService, moviesDynamoDbRepository, publishMovieIdsBloomFilterService, publishMovieNamesIndexService,
+                new DeadlinePolicy(Long.MAX_VALUE, DEFAULT_DEADLINE_SAFETY_MARGIN_MILLIS, DEFAULT_SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS));
+    }
+
+    public FnUploadMovieInfos(final String movieInfosBucket, final UploadFromS3ToDynamoDBService uploadFromS3ToDynamoDBService, final MoviesDynamoDbRepository moviesDynamoDbRepository, final PublishMovieIdsBloomFilterService publishMovieIdsBloomFilterService, final PublishMovieNamesIndexService publishMovieNamesIndexService, final DeadlinePolicy deadlinePolicy) {
         this.movieInfosBucket = movieInfosBucket;
         this.uploadFromS3ToDynamoDBService = uploadFromS3ToDynamoDBService;
+        this.moviesDynamoDbRepository = moviesDynamoDbRepository;
+        this.publishMovieIdsBloomFilterService = publishMovieIdsBloomFilterService;
+        this.publishMovieNamesIndexService = publishMovieNamesIndexService;
+        this.deadlinePolicy = deadlinePolicy;
+    }
+
+    private void prime(final S3Client s3Client, final MoviesDynamoDbRepository moviesDynamoDbRepository) {
+
+        // class loading, Jackson introspection, request marshalling and the TLS handshakes with S3 and DynamoDB
+        // are paid for once during the init phase instead of by the first upload
+        new Priming()
+                .step("request", () -> {
+                    getObjectKeys(readEvent(new ByteArrayInputStream(PRIMING_EVENT)), PRIMING_BUCKET);
+                    writeResponse(OutputStream.nullOutputStream(), 200, "", Map.of("Content-Type", "application/json"));
+                })
+                .step("s3", () -> s3Client.getBucketLocation(GetBucketLocationRequest.builder()
+                        .bucket(movieInfosBucket)
+                        .build()))
+                .step("dynamodb", () -> moviesDynamoDbRepository.prime(Priming.PRIMING_MOVIE_ID))
+                .done();
     }
 
-    public Boolean handleRequest(final S3Event input) {
+    @Override
+    public void handleRequest(final InputStream input, final OutputStream output, final Context context) throws IOException {
 
+        final var deadline = deadlinePolicy.start(context);
         try {
 
-            final var objectKeys = getObjectKeys(input, movieInfosBucket);
+            final var event = readEvent(input);
+            if (event.path(Priming.WARMUP_FIELD).asBoolean(false)) {
+                reply(output, 200, "Warmed up");
+                return;
+            }
+
+            final var objectKeys = getObjectKeys(event, movieInfosBucket);
             final var result = uploadFromS3ToDynamoDBService.upload(objectKeys);
-            return reply(200, result);
 
+            if (!objectKeys.isEmpty()) {
+                publishSnapshots();
+            }
+
+            reply(output, 200, result);
+
+        } catch (SnapshotsNotPublishedException | ApiCallTimeoutException | ApiCallAttemptTimeoutException error) {
+            // a failed publish, or a deadline that ran out while S3 or DynamoDB was slow, fails the invocation,
+            // so the asynchronous invocation retries the upload and publishes the snapshots again
+            throw error;
         } catch (IllegalArgumentException error) {
-            return reply(400, error);
+            reply(output, 400, error.getMessage());
         } catch (DynamoDbException | S3Exception error) {
-            return reply(error.statusCode(), error);
+            reply(output, error.statusCode(), error.getMessage());
         } catch (Exception error) {
-            return reply(500, error);
+            reply(output, 500, error.getMessage());
+        } finally {
+            deadline.close();
         }
     }
 
-    private static List<String> getObjectKeys(final S3Event input, final String bucketName) {
+    private void publishSnapshots() {
+
+        if (publishMovieIdsBloomFilterService == null && publishMovieNamesIndexService == null) {
+            return;
+        }
 
-        return input.getRecords().stream()
-                .filter(x -> x.getS3().getBucket().getName().equalsIgnoreCase(bucketName))
-                .map(x -> x.getS3().getObject().getKey())
-                .collect(Collectors.toList());
+        try {
+            final var movieNames = moviesDynamoDbRepository.getAllMovieNames();
+
+            // the movies just saved reach the movies table through the stream later, so both tables make up the ids
+            if (publishMovieIdsBloomFilterService != null) {
+                final var movieIds = new HashSet<>(movieNames.keySet());
+                movieIds.addAll(moviesDynamoDbRepository.getAllMovieIds());
+                publishMovieIdsBloomFilterService.publish(movieIds);
+            }
+
+            if (publishMovieNamesIndexService != null) {
+                publishMovieNamesIndexService.publish(movieNames);
+            }
+        } catch (Exception error) {
+            throw new SnapshotsNotPublishedException(error);
+        }
     }
 
-    private static <T> Boolean reply(final int statusCode, final T body) {
+    private static JsonNode readEvent(final InputStream input) throws IOException {
+
+        final JsonNode event;
+        try {
+            event = OBJECT_MAPPER.readTree(input);
+        } catch (JsonProcessingException error) {
+            throw new IllegalArgumentException("Invalid JSON: " + error.getOriginalMessage(), error);
+        }
+
+        if (event == null || !event.isObject()) {
+            throw new IllegalArgumentException("Invalid JSON: Expected an object");
+        }
+
+        return event;
+    }
+
+    private static List<String> getObjectKeys(final JsonNode event, final String bucketName) {
+
+        final var records = event.get("Records");
+        if (records == null || !records.isArray()) {
+            throw new IllegalArgumentException("Invalid JSON: Records node is null or not an array");
+        }
+
+        final var objectKeys = new ArrayList<String>();
+
+        for (final var record : records) {
+            final var s3 = record.path("s3");
+            if (s3.path("bucket").path("name").asText("").equalsIgnoreCase(bucketName)) {
+                objectKeys.add(s3.path("object").path("key").asText());
+            }
+        }
+
+        return objectKeys;
+    }
+
+    private <T> void reply(final OutputStream output, final int statusCode, final T body) throws IOException {
 
-        var response = false;
         switch (statusCode / 100) {
             case 2:
                 LOGGER.info("SUCCESS! statusCode: {}, message: {}", statusCode, body);
-                response = true;
                 break;
             case 4:
                 LOGGER.warn("CLIENT ERROR! statusCode: {}, message: {}", statusCode, body);
@@ -88,6 +267,19 @@ public final class FnUploadMovieInfos {
             default:
                 LOGGER.error("SERVER ERROR! statusCode: {}, message: {}", statusCode, body);
         }
-        return response;
+
+        // plain messages are passed through as they are, everything else is serialized to JSON
+        String bodyAsString;
+        if (body == null || body instanceof String) {
+            bodyAsString = (String) body;
+        } else {
+            try {
+                bodyAsString = OBJECT_MAPPER.writeValueAsString(body);
+            } catch (JsonProcessingException e) {
+                bodyAsString = e.getMessage();
+            }
+        }
+
+        writeResponse(output, statusCode, bodyAsString, Map.of("Content-Type", "application/json"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.bloom;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// the snapshot format is shared with get-movie, which reads the filter, keep both copies in sync
+public final class BloomFilter {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final long[] words;
+    private final long numBits;
+    private final int numHashFunctions;
+
+    private BloomFilter(final long[] words, final int numHashFunctions) {
+        this.words = words;
+        this.numBits = (long) words.length * Long.SIZE;
+        this.numHashFunctions = numHashFunctions;
+    }
+
+    public static BloomFilter create(final long expectedInsertions, final double falsePositiveRate) {
+
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("The false positive rate must be between 0 and 1, exclusive");
+        }
+
+        // optimal number of bits and of hash functions for n insertions at a false positive rate p
+        final var n = Math.max(1, expectedInsertions);
+        final var numBits = Math.max(Long.SIZE, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        final var numHashFunctions = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+
+        return new BloomFilter(new long[(int) ((numBits + Long.SIZE - 1) / Long.SIZE)], numHashFunctions);
+    }
+
+    public void put(final String value) {
+
+        final var hash = hash(value);
+        final var hash1 = (int) hash;
+        final var hash2 = (int) (hash >>> 32);
+
+        for (var i = 1; i <= numHashFunctions; i++) {
+            final var bit = index(hash1, hash2, i);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(final String value) {
+
+        final var hash = hash(value);
+        final var hash1 = (int) hash;
+        final var hash2 = (int) (hash >>> 32);
+
+        for (var i = 1; i <= numHashFunctions; i++) {
+            final var bit = index(hash1, hash2, i);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public long bitSize() {
+        return numBits;
+    }
+
+    public int numHashFunctions() {
+        return numHashFunctions;
+    }
+
+    public void writeTo(final OutputStream output) throws IOException {
+
+        final var dataOutput = new DataOutputStream(output);
+        dataOutput.writeInt(FORMAT_VERSION);
+        dataOutput.writeInt(numHashFunctions);
+        dataOutput.writeInt(words.length);
+        for (final var word : words) {
+            dataOutput.writeLong(word);
+        }
+        dataOutput.flush();
+    }
+
+    public static BloomFilter readFrom(final InputStream input) throws IOException {
+
+        final var dataInput = new DataInputStream(input);
+
+        final var formatVersion = dataInput.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported Bloom filter format version " + formatVersion);
+        }
+
+        final var numHashFunctions = dataInput.readInt();
+        final var words = new long[dataInput.readInt()];
+        for (var i = 0; i < words.length; i++) {
+            words[i] = dataInput.readLong();
+        }
+
+        return new BloomFilter(words, numHashFunctions);
+    }
+
+    private long index(final int hash1, final int hash2, final int i) {
+
+        // double hashing (Kirsch and Mitzenmacher), k indexes out of a single 64 bit hash
+        var combined = hash1 + i * hash2;
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % numBits;
+    }
+
+    private static long hash(final String value) {
+
+        // FNV-1a over the characters, finished with the murmur3 fmix64 avalanche so that both halves are usable
+        var hash = 0xcbf29ce484222325L;
+        for (var i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,24 +1,37 @@
 package de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.repository;
 
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.deadline.Deadline;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public final class MoviesDynamoDbRepository {
 
     private final DynamoDbClient dynamoDbClient;
     private final String movieInfosTable;
+    private final String moviesTable;
 
     public MoviesDynamoDbRepository(final DynamoDbClient dynamoDbClient, final String movieInfosTable) {
+        this(dynamoDbClient, movieInfosTable, null);
+    }
+
+    public MoviesDynamoDbRepository(final DynamoDbClient dynamoDbClient, final String movieInfosTable, final String moviesTable) {
         this.dynamoDbClient = dynamoDbClient;
         this.movieInfosTable = movieInfosTable;
+        this.moviesTable = moviesTable;
     }
 
     public int saveLines(final List<String> lines) {
@@ -43,7 +56,7 @@ public final class MoviesDynamoDbRepository {
                     .build());
         }
 
-        var batchItemRequest = BatchWriteItemRequest.builder()
+        var batchItemRequest = Deadline.current().apply(BatchWriteItemRequest.builder())
                 .requestItems(Map.of(movieInfosTable, writeRequests))
                 .build();
 
@@ -51,4 +64,62 @@ public final class MoviesDynamoDbRepository {
 
         return lines.size();
     }
+
+    // one strongly consistent scan feeds both snapshots, so the items written just before are part of them,
+    // the projection trims the response, the read capacity is charged for the full size of every item scanned
+    public Map<String, String> getAllMovieNames() {
+
+        final var request = Deadline.current().apply(ScanRequest.builder())
+                .tableName(movieInfosTable)
+                .projectionExpression("movieId, #n")
+                .expressionAttributeNames(Map.of("#n", "name"))
+                .consistentRead(true)
+                .build();
+
+        final var movieNames = new HashMap<String, String>();
+        for (final var item : dynamoDbClient.scanPaginator(request).items()) {
+            final var name = item.get("name");
+            movieNames.put(item.get("movieId").s(), name == null ? null : name.s());
+        }
+
+        return movieNames;
+    }
+
+    // the movies table is what get-movie reads, a rating PATCHed before the movie infos were uploaded creates a movie there
+    public Set<String> getAllMovieIds() {
+
+        if (moviesTable == null) {
+            return Set.of();
+        }
+
+        final var request = Deadline.current().apply(ScanRequest.builder())
+                .tableName(moviesTable)
+                .projectionExpression("movieId")
+                .consistentRead(true)
+                .build();
+
+        final var movieIds = new HashSet<String>();
+        for (final var item : dynamoDbClient.scanPaginator(request).items()) {
+            movieIds.add(item.get("movieId").s());
+        }
+
+        return movieIds;
+    }
+
+    public void prime(final String movieId) {
+
+        // the condition never holds for the priming key, so the request makes the full round trip without writing anything
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .key(Map.of("movieId", AttributeValue.builder().s(movieId).build()))
+                    .tableName(movieInfosTable)
+                    .updateExpression("SET #n = :name")
+                    .conditionExpression("attribute_exists(movieId)")
+                    .expressionAttributeValues(Map.of(":name", AttributeValue.builder().s(movieId).build()))
+                    .expressionAttributeNames(Map.of("#n", "name"))
+                    .build());
+        } catch (ConditionalCheckFailedException expected) {
+            // nothing to do, the item does not exist
+        }
+    }
 }
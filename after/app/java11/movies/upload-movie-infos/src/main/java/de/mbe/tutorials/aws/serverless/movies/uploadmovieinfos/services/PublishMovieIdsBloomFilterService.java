@@ -0,0 +1,65 @@
+package de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services;
+
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.bloom.BloomFilter;
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.deadline.Deadline;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+
+public class PublishMovieIdsBloomFilterService {
+
+    public static final String LATEST_VERSION_KEY = "LATEST";
+    public static final String SNAPSHOT_SUFFIX = ".bloom";
+
+    private static final Logger LOGGER = LogManager.getLogger(PublishMovieIdsBloomFilterService.class);
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String prefix;
+    private final double falsePositiveRate;
+
+    public PublishMovieIdsBloomFilterService(final S3Client s3Client, final String bucket, final String prefix, final double falsePositiveRate) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    // the filter covers the whole table, not just the uploaded files, so a snapshot always replaces the previous one
+    public String publish(final Collection<String> movieIds) throws IOException {
+
+        final var bloomFilter = BloomFilter.create(movieIds.size(), falsePositiveRate);
+        for (final var movieId : movieIds) {
+            bloomFilter.put(movieId);
+        }
+
+        final var snapshot = new ByteArrayOutputStream();
+        bloomFilter.writeTo(snapshot);
+
+        // snapshots are immutable, readers switch over once LATEST points at the new one
+        final var version = Long.toString(System.currentTimeMillis());
+
+        s3Client.putObject(Deadline.current().apply(PutObjectRequest.builder())
+                .bucket(bucket)
+                .key(prefix + version + SNAPSHOT_SUFFIX)
+                .contentType("application/octet-stream")
+                .build(), RequestBody.fromBytes(snapshot.toByteArray()));
+
+        s3Client.putObject(Deadline.current().apply(PutObjectRequest.builder())
+                .bucket(bucket)
+                .key(prefix + LATEST_VERSION_KEY)
+                .contentType("text/plain")
+                .build(), RequestBody.fromString(version));
+
+        LOGGER.info("Published movie ids Bloom filter {}, movieIds: {}, bits: {}, hash functions: {}, bytes: {}",
+                version, movieIds.size(), bloomFilter.bitSize(), bloomFilter.numHashFunctions(), snapshot.size());
+
+        return version;
+    }
+}
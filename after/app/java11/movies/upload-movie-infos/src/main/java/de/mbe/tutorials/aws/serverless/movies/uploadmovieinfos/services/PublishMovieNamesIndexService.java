@@ -0,0 +1,60 @@
+package de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services;
+
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.deadline.Deadline;
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.suggest.MovieNamesIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+public class PublishMovieNamesIndexService {
+
+    public static final String LATEST_VERSION_KEY = "LATEST";
+    public static final String SNAPSHOT_SUFFIX = ".idx";
+
+    private static final Logger LOGGER = LogManager.getLogger(PublishMovieNamesIndexService.class);
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String prefix;
+
+    public PublishMovieNamesIndexService(final S3Client s3Client, final String bucket, final String prefix) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.prefix = prefix;
+    }
+
+    // like the Bloom filter the index covers the whole table, a snapshot always replaces the previous one
+    public String publish(final Map<String, String> movieNames) throws IOException {
+
+        final var movieNamesIndex = MovieNamesIndex.build(movieNames);
+
+        final var snapshot = new ByteArrayOutputStream(movieNamesIndex.byteSize());
+        movieNamesIndex.writeTo(snapshot);
+
+        // snapshots are immutable, readers switch over once LATEST points at the new one
+        final var version = Long.toString(System.currentTimeMillis());
+
+        s3Client.putObject(Deadline.current().apply(PutObjectRequest.builder())
+                .bucket(bucket)
+                .key(prefix + version + SNAPSHOT_SUFFIX)
+                .contentType("application/octet-stream")
+                .build(), RequestBody.fromBytes(snapshot.toByteArray()));
+
+        s3Client.putObject(Deadline.current().apply(PutObjectRequest.builder())
+                .bucket(bucket)
+                .key(prefix + LATEST_VERSION_KEY)
+                .contentType("text/plain")
+                .build(), RequestBody.fromString(version));
+
+        LOGGER.info("Published movie names index {}, movies: {}, entries: {}, bytes: {}",
+                version, movieNames.size(), movieNamesIndex.size(), movieNamesIndex.byteSize());
+
+        return version;
+    }
+}
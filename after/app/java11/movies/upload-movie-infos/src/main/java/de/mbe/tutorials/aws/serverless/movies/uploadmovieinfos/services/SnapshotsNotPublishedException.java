@@ -0,0 +1,11 @@
+package de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services;
+
+// the movies were saved, but the snapshots get-movie reads from no longer cover them
+public final class SnapshotsNotPublishedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SnapshotsNotPublishedException(final Throwable cause) {
+        super("The movie snapshots could not be published: " + cause.getMessage(), cause);
+    }
+}
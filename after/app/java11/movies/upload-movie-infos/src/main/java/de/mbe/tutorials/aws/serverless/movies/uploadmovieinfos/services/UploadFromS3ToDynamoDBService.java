@@ -1,5 +1,6 @@
 package de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services;
 
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.deadline.Deadline;
 import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.repository.MoviesDynamoDbRepository;
 import software.amazon.awssdk.core.sync.ResponseTransformer;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -30,7 +31,7 @@ public class UploadFromS3ToDynamoDBService {
 
         for (final var objectKey : objectKeys) {
 
-            final var request = GetObjectRequest.builder()
+            final var request = Deadline.current().apply(GetObjectRequest.builder())
                     .bucket(movieInfoBucket)
                     .key(objectKey)
                     .build();
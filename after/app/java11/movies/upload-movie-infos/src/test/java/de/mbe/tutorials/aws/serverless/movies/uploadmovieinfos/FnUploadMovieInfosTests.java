@@ -1,13 +1,23 @@
 package de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.repository.MoviesDynamoDbRepository;
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services.PublishMovieIdsBloomFilterService;
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services.PublishMovieNamesIndexService;
+import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services.SnapshotsNotPublishedException;
 import de.mbe.tutorials.aws.serverless.movies.uploadmovieinfos.services.UploadFromS3ToDynamoDBService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.paginators.ScanIterable;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.io.ByteArrayInputStream;
@@ -17,6 +27,8 @@ import java.io.InputStream;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -29,6 +41,15 @@ public final class FnUploadMovieInfosTests {
     @Mock
     private UploadFromS3ToDynamoDBService uploadFromS3ToDynamoDBService;
 
+    @Mock
+    private DynamoDbClient dynamoDbClient;
+
+    @Mock
+    private PublishMovieIdsBloomFilterService publishMovieIdsBloomFilterService;
+
+    @Mock
+    private PublishMovieNamesIndexService publishMovieNamesIndexService;
+
     private FnUploadMovieInfos fnUploadMovieInfos;
 
     @BeforeEach
@@ -220,6 +241,83 @@ public final class FnUploadMovieInfosTests {
         assertNull(actualResponse.getBody());
     }
 
+    @Test
+    void timedOutUploadFailsTheInvocation() throws IOException {
+
+        final var firstObjectKey = UUID.randomUUID() + ".csv";
+        when(uploadFromS3ToDynamoDBService.upload(List.of(firstObjectKey))).thenThrow(ApiCallTimeoutException.class);
+
+        assertThrows(ApiCallTimeoutException.class,
+                () -> fnUploadMovieInfos.handleRequest(getCorrectInput(firstObjectKey), new ByteArrayOutputStream(), null));
+    }
+
+    @Test
+    void bothSnapshotsArePublishedFromOneScan() throws IOException {
+
+        final var firstObjectKey = UUID.randomUUID() + ".csv";
+        final var movieId = UUID.randomUUID().toString();
+        when(uploadFromS3ToDynamoDBService.upload(List.of(firstObjectKey))).thenReturn(1);
+        when(dynamoDbClient.scanPaginator(any(ScanRequest.class))).thenAnswer(invocation -> new ScanIterable(dynamoDbClient, invocation.getArgument(0)));
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenReturn(ScanResponse.builder()
+                .items(List.of(Map.of(
+                        "movieId", AttributeValue.builder().s(movieId).build(),
+                        "name", AttributeValue.builder().s("name").build())))
+                .build());
+
+        final var output = new ByteArrayOutputStream();
+
+        new FnUploadMovieInfos(MOVIE_INFOS_BUCKET, uploadFromS3ToDynamoDBService, new MoviesDynamoDbRepository(dynamoDbClient, MOVIE_INFOS_BUCKET),
+                publishMovieIdsBloomFilterService, publishMovieNamesIndexService)
+                .handleRequest(getCorrectInput(firstObjectKey), output, null);
+
+        final var actualResponse = OBJECT_MAPPER.readValue(output.toString(), APIGatewayProxyResponseUtils.APIGatewayResponse.class);
+
+        assertEquals(200, actualResponse.getStatusCode());
+        verify(dynamoDbClient).scan(any(ScanRequest.class));
+        verify(publishMovieIdsBloomFilterService).publish(Set.of(movieId));
+        verify(publishMovieNamesIndexService).publish(Map.of(movieId, "name"));
+    }
+
+    @Test
+    void moviesCreatedByRatingsArePartOfTheBloomFilter() throws IOException {
+
+        final var firstObjectKey = UUID.randomUUID() + ".csv";
+        final var movieId = UUID.randomUUID().toString();
+        final var ratedMovieId = UUID.randomUUID().toString();
+        when(uploadFromS3ToDynamoDBService.upload(List.of(firstObjectKey))).thenReturn(1);
+        when(dynamoDbClient.scanPaginator(any(ScanRequest.class))).thenAnswer(invocation -> new ScanIterable(dynamoDbClient, invocation.getArgument(0)));
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenAnswer(invocation -> {
+            final ScanRequest scanRequest = invocation.getArgument(0);
+            // a rating PATCH made it into the movies table before any movie infos did
+            final var scannedMovieId = "movies".equals(scanRequest.tableName()) ? ratedMovieId : movieId;
+            return ScanResponse.builder()
+                    .items(List.of(Map.of("movieId", AttributeValue.builder().s(scannedMovieId).build())))
+                    .build();
+        });
+
+        new FnUploadMovieInfos(MOVIE_INFOS_BUCKET, uploadFromS3ToDynamoDBService, new MoviesDynamoDbRepository(dynamoDbClient, "movie-infos", "movies"),
+                publishMovieIdsBloomFilterService, null)
+                .handleRequest(getCorrectInput(firstObjectKey), new ByteArrayOutputStream(), null);
+
+        verify(publishMovieIdsBloomFilterService).publish(Set.of(movieId, ratedMovieId));
+    }
+
+    @Test
+    void failedPublishFailsTheInvocation() throws IOException {
+
+        final var firstObjectKey = UUID.randomUUID() + ".csv";
+        when(uploadFromS3ToDynamoDBService.upload(List.of(firstObjectKey))).thenReturn(1);
+        when(dynamoDbClient.scanPaginator(any(ScanRequest.class))).thenAnswer(invocation -> new ScanIterable(dynamoDbClient, invocation.getArgument(0)));
+        when(dynamoDbClient.scan(any(ScanRequest.class))).thenReturn(ScanResponse.builder().items(List.of()).build());
+        when(publishMovieIdsBloomFilterService.publish(Set.of())).thenThrow(S3Exception.class);
+
+        final var fnUploadMovieInfos = new FnUploadMovieInfos(MOVIE_INFOS_BUCKET, uploadFromS3ToDynamoDBService,
+                new MoviesDynamoDbRepository(dynamoDbClient, MOVIE_INFOS_BUCKET), publishMovieIdsBloomFilterService, null);
+
+        assertThrows(SnapshotsNotPublishedException.class,
+                () -> fnUploadMovieInfos.handleRequest(getCorrectInput(firstObjectKey), new ByteArrayOutputStream(), null));
+    }
+
     private static InputStream getCorrectInput(final String objectKey) {
         final var event = "{\n" +
                 "    \"Records\": [\n" +
@@ -14,6 +14,7 @@ import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Testcontainers
 public class MoviesDynamoDbRepositoryTests {
@@ -111,6 +112,24 @@ public class MoviesDynamoDbRepositoryTests {
         assertEquals(releaseDate3, actualLine3.get(3));
     }
 
+    @Test
+    void testGetAllMovieNames() {
+
+        final var movieId1 = UUID.randomUUID().toString();
+        final var movieId2 = UUID.randomUUID().toString();
+
+        moviesDynamoDbRepository.saveLines(List.of(
+                String.join(",", List.of(movieId1, "name1", "DE", "2020-01-01")),
+                String.join(",", List.of(movieId2, "name2", "US", "2020-01-02"))
+        ));
+
+        final var actualMovieNames = moviesDynamoDbRepository.getAllMovieNames();
+
+        assertTrue(actualMovieNames.keySet().containsAll(List.of(movieId1, movieId2)));
+        assertEquals("name1", actualMovieNames.get(movieId1));
+        assertEquals("name2", actualMovieNames.get(movieId2));
+    }
+
     private List<String> getMovieInfoById(final String movieId) {
 
         final var getItemRequest = GetItemRequest.builder()
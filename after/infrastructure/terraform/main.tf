@@ -3,6 +3,9 @@ locals {
   movies_table_name       = "${var.aws_account_id}-movies-table"
   movie_infos_table_name  = "${var.aws_account_id}-movie-infos-table"
   movie_infos_bucket_name = "${var.aws_account_id}-movie-infos-bucket"
+  idempotency_table_name  = "${var.aws_account_id}-idempotency-table"
+  movie_votes_table_name  = "${var.aws_account_id}-movie-votes-table"
+  rating_updates_queue    = "${var.aws_account_id}-rating-updates-queue"
 
   get_movie_lambda_config = {
     java : {
@@ -18,6 +21,7 @@ locals {
     function_name : "${var.code_version}-get-movie"
     layer_name : "${var.code_version}-get-movie-layer"
     provisioned_concurrent_executions : 3
+    read_capacity_units : 5
     memory_size : 3008
   }
 
@@ -35,6 +39,7 @@ locals {
     function_name : "${var.code_version}-update-movie-info"
     layer_name : "${var.code_version}-update-movie-info-layer"
     provisioned_concurrent_executions : 3
+    write_capacity_units : 2
     memory_size : 3008
   }
 
@@ -52,6 +57,7 @@ locals {
     function_name : "${var.code_version}-update-movie-rating"
     layer_name : "${var.code_version}-update-movie-rating-layer"
     provisioned_concurrent_executions : 3
+    write_capacity_units : 3
     memory_size : 3008
   }
 
@@ -81,6 +87,32 @@ module movies_table {
   hash_key_name    = "movieId"
   stream_enabled   = false
   stream_view_type = ""
+  global_secondary_indexes = [
+    {
+      name            = "countryOfOrigin-index"
+      hash_key_name   = "countryOfOrigin"
+      hash_key_type   = "S"
+      range_key_name  = null
+      range_key_type  = null
+      projection_type = "ALL"
+    },
+    {
+      name            = "imdbRating-leaderboard-index"
+      hash_key_name   = "imdbRatingLeaderboard"
+      hash_key_type   = "S"
+      range_key_name  = "imdbRating"
+      range_key_type  = "N"
+      projection_type = "ALL"
+    },
+    {
+      name            = "rottenTomatoesRating-leaderboard-index"
+      hash_key_name   = "rottenTomatoesRatingLeaderboard"
+      hash_key_type   = "S"
+      range_key_name  = "rottenTomatoesRating"
+      range_key_type  = "N"
+      projection_type = "ALL"
+    }
+  ]
 }
 
 module movie_infos_table {
@@ -91,6 +123,31 @@ module movie_infos_table {
   stream_view_type = "NEW_IMAGE"
 }
 
+module idempotency_table {
+  source             = "./modules/dynamo_db"
+  name               = local.idempotency_table_name
+  hash_key_name      = "idempotencyKey"
+  stream_enabled     = false
+  stream_view_type   = ""
+  ttl_attribute_name = "expiresAt"
+}
+
+module movie_votes_table {
+  source           = "./modules/dynamo_db"
+  name             = local.movie_votes_table_name
+  hash_key_name    = "movieShard"
+  stream_enabled   = false
+  stream_view_type = ""
+}
+
+############################################################################
+
+module rating_updates_queue {
+  source                     = "./modules/sqs/queue"
+  name                       = local.rating_updates_queue
+  visibility_timeout_seconds = 1800
+}
+
 ############################################################################
 
 module movie_infos_bucket {
@@ -149,7 +206,18 @@ data aws_iam_policy_document get_movie_lambda_iam_policy_document {
       "dynamodb:Scan"
     ]
     resources = [
-      module.movies_table.arn
+      module.movies_table.arn,
+      "${module.movies_table.arn}/index/*"
+    ]
+  }
+  statement {
+    effect = "Allow"
+    actions = [
+      "s3:GetObject"
+    ]
+    resources = [
+      "${module.movie_infos_bucket.arn}/bloom-filters/*",
+      "${module.movie_infos_bucket.arn}/indexes/*"
     ]
   }
 }
@@ -240,6 +308,39 @@ data aws_iam_policy_document update_movie_rating_lambda_iam_policy_document {
       module.movies_table.arn
     ]
   }
+  statement {
+    effect = "Allow"
+    actions = [
+      "dynamodb:DeleteItem",
+      "dynamodb:GetItem",
+      "dynamodb:PutItem"
+    ]
+    resources = [
+      module.idempotency_table.arn
+    ]
+  }
+  statement {
+    effect = "Allow"
+    actions = [
+      "dynamodb:BatchGetItem",
+      "dynamodb:UpdateItem"
+    ]
+    resources = [
+      module.movie_votes_table.arn
+    ]
+  }
+  statement {
+    effect = "Allow"
+    actions = [
+      "sqs:DeleteMessage",
+      "sqs:GetQueueAttributes",
+      "sqs:ReceiveMessage",
+      "sqs:SendMessage"
+    ]
+    resources = [
+      module.rating_updates_queue.arn
+    ]
+  }
 }
 
 data aws_iam_policy_document upload_movie_infos_lambda_iam_policy_document {
@@ -288,17 +389,37 @@ data aws_iam_policy_document upload_movie_infos_lambda_iam_policy_document {
       "${module.movie_infos_bucket.arn}/*"
     ]
   }
+  statement {
+    effect = "Allow"
+    actions = [
+      "s3:PutObject"
+    ]
+    resources = [
+      "${module.movie_infos_bucket.arn}/bloom-filters/*",
+      "${module.movie_infos_bucket.arn}/indexes/*"
+    ]
+  }
   statement {
     effect = "Allow"
     actions = [
       "dynamodb:BatchWriteItem",
       "dynamodb:PutItem",
+      "dynamodb:Scan",
       "dynamodb:UpdateItem"
     ]
     resources = [
       module.movie_infos_table.arn
     ]
   }
+  statement {
+    effect = "Allow"
+    actions = [
+      "dynamodb:Scan"
+    ]
+    resources = [
+      module.movies_table.arn
+    ]
+  }
 }
 
 ############################################################################
@@ -337,6 +458,11 @@ module upload_movie_infos_lambda_role {
 
 ############################################################################
 
+resource random_password continuation_token_secret {
+  length  = 32
+  special = false
+}
+
 module get_movie_lambda {
   source                            = "./modules/lambda/function"
   function_name                     = local.get_movie_lambda_config.function_name
@@ -350,7 +476,28 @@ module get_movie_lambda {
   provisioned_concurrent_executions = local.get_movie_lambda_config.provisioned_concurrent_executions
   memory_size                       = local.get_movie_lambda_config.memory_size
   env = {
-    MOVIES_TABLE = module.movies_table.name
+    MOVIES_TABLE                            = module.movies_table.name
+    MOVIES_CACHE_MAXIMUM_SIZE               = "10000"
+    MOVIES_CACHE_EXPIRE_AFTER_WRITE_SECONDS = "60"
+    MOVIES_READ_CONSISTENCY                 = "eventual"
+    MOVIES_CACHE_CONTROL_MAX_AGE_SECONDS    = "30"
+    COMPRESSION_MINIMUM_SIZE                = "1024"
+    PRIMING_ENABLED                         = "true"
+    MOVIES_PAGE_SIZE                        = "25"
+    CONTINUATION_TOKEN_SECRET               = random_password.continuation_token_secret.result
+    MOVIE_IDS_BLOOM_FILTER_BUCKET           = module.movie_infos_bucket.name
+    MOVIE_IDS_BLOOM_FILTER_PREFIX           = "bloom-filters/movie-ids/"
+    MOVIE_IDS_BLOOM_FILTER_REFRESH_SECONDS  = "300"
+    MOVIES_HEDGING_ENABLED                  = "false"
+    MOVIES_HEDGING_PERCENTILE               = "95"
+    MOVIES_HEDGING_BUDGET                   = "0.05"
+    DEADLINE_SAFETY_MARGIN_MILLIS           = "250"
+    SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS     = "2000"
+    MOVIE_NAMES_INDEX_BUCKET                = module.movie_infos_bucket.name
+    MOVIE_NAMES_INDEX_PREFIX                = "indexes/movie-names/"
+    MOVIE_NAMES_INDEX_REFRESH_SECONDS       = "300"
+    ADMISSION_READ_CAPACITY_UNITS           = tostring(local.get_movie_lambda_config.read_capacity_units / local.get_movie_lambda_config.provisioned_concurrent_executions)
+    ADMISSION_BURST_SECONDS                 = "10"
   }
 }
 
@@ -367,7 +514,10 @@ module update_movie_info_lambda {
   provisioned_concurrent_executions = local.update_movie_info_lambda_config.provisioned_concurrent_executions
   memory_size                       = local.update_movie_info_lambda_config.memory_size
   env = {
-    MOVIES_TABLE = module.movies_table.name
+    MOVIES_TABLE                   = module.movies_table.name
+    PRIMING_ENABLED                = "true"
+    ADMISSION_WRITE_CAPACITY_UNITS = tostring(local.update_movie_info_lambda_config.write_capacity_units / local.update_movie_info_lambda_config.provisioned_concurrent_executions)
+    ADMISSION_BURST_SECONDS        = "10"
   }
 }
 
@@ -384,7 +534,21 @@ module update_movie_rating_lambda {
   provisioned_concurrent_executions = local.update_movie_rating_lambda_config.provisioned_concurrent_executions
   memory_size                       = local.update_movie_rating_lambda_config.memory_size
   env = {
-    MOVIES_TABLE = module.movies_table.name
+    MOVIES_TABLE                        = module.movies_table.name
+    PRIMING_ENABLED                     = "true"
+    DEADLINE_SAFETY_MARGIN_MILLIS       = "250"
+    SDK_API_CALL_ATTEMPT_TIMEOUT_MILLIS = "2000"
+    BULK_RATINGS_MAX_IN_FLIGHT          = "16"
+    BULK_RATINGS_MAX_ITEMS              = "1000"
+    IDEMPOTENCY_TABLE                   = module.idempotency_table.name
+    IDEMPOTENCY_TTL_SECONDS             = "86400"
+    IDEMPOTENCY_CACHE_SIZE              = "10000"
+    RATING_UPDATES_QUEUE_URL            = var.rating_updates_write_behind ? module.rating_updates_queue.id : ""
+    MOVIE_VOTES_TABLE                   = module.movie_votes_table.name
+    MOVIE_VOTE_SHARDS                   = "10"
+    MOVIE_VOTES_FOLD_INTERVAL_SECONDS   = "60"
+    ADMISSION_WRITE_CAPACITY_UNITS      = tostring(local.update_movie_rating_lambda_config.write_capacity_units / local.update_movie_rating_lambda_config.provisioned_concurrent_executions)
+    ADMISSION_BURST_SECONDS             = "10"
   }
 }
 
@@ -401,17 +565,25 @@ module upload_movie_infos_lambda {
   provisioned_concurrent_executions = local.upload_movie_infos_lambda_config.provisioned_concurrent_executions
   memory_size                       = local.upload_movie_infos_lambda_config.memory_size
   env = {
-    MOVIE_INFOS_BUCKET = module.movie_infos_bucket.name
-    MOVIE_INFOS_TABLE  = module.movie_infos_table.name
+    MOVIE_INFOS_BUCKET                         = module.movie_infos_bucket.name
+    MOVIE_INFOS_TABLE                          = module.movie_infos_table.name
+    MOVIES_TABLE                               = module.movies_table.name
+    PRIMING_ENABLED                            = "true"
+    MOVIE_IDS_BLOOM_FILTER_ENABLED             = "true"
+    MOVIE_IDS_BLOOM_FILTER_PREFIX              = "bloom-filters/movie-ids/"
+    MOVIE_IDS_BLOOM_FILTER_FALSE_POSITIVE_RATE = "0.01"
+    MOVIE_NAMES_INDEX_ENABLED                  = "true"
+    MOVIE_NAMES_INDEX_PREFIX                   = "indexes/movie-names/"
   }
 }
 
 ############################################################################
 
 module movies_api_gw {
-  source      = "./modules/api_gateway/rest_api"
-  name        = "movies_api"
-  description = "This is the API for the Movies project"
+  source             = "./modules/api_gateway/rest_api"
+  name               = "movies_api"
+  description        = "This is the API for the Movies project"
+  binary_media_types = ["*/*"]
 }
 
 module movies_resource {
@@ -428,6 +600,34 @@ module movie_resource {
   path_part   = "{movieId}"
 }
 
+module suggest_movies_resource {
+  source      = "./modules/api_gateway/resource"
+  rest_api_id = module.movies_api_gw.id
+  parent_id   = module.movies_resource.id
+  path_part   = "suggest"
+}
+
+module top_movies_resource {
+  source      = "./modules/api_gateway/resource"
+  rest_api_id = module.movies_api_gw.id
+  parent_id   = module.movies_resource.id
+  path_part   = "top"
+}
+
+module movie_ratings_resource {
+  source      = "./modules/api_gateway/resource"
+  rest_api_id = module.movies_api_gw.id
+  parent_id   = module.movies_resource.id
+  path_part   = "ratings"
+}
+
+module movie_votes_resource {
+  source      = "./modules/api_gateway/resource"
+  rest_api_id = module.movies_api_gw.id
+  parent_id   = module.movie_resource.id
+  path_part   = "votes"
+}
+
 module get_movie_request_method {
   source        = "./modules/api_gateway/method"
   rest_api_id   = module.movies_api_gw.id
@@ -436,6 +636,30 @@ module get_movie_request_method {
   authorization = "NONE"
 }
 
+module get_movies_request_method {
+  source        = "./modules/api_gateway/method"
+  rest_api_id   = module.movies_api_gw.id
+  resource_id   = module.movies_resource.id
+  http_method   = "GET"
+  authorization = "NONE"
+}
+
+module suggest_movies_request_method {
+  source        = "./modules/api_gateway/method"
+  rest_api_id   = module.movies_api_gw.id
+  resource_id   = module.suggest_movies_resource.id
+  http_method   = "GET"
+  authorization = "NONE"
+}
+
+module top_movies_request_method {
+  source        = "./modules/api_gateway/method"
+  rest_api_id   = module.movies_api_gw.id
+  resource_id   = module.top_movies_resource.id
+  http_method   = "GET"
+  authorization = "NONE"
+}
+
 module update_movie_rating_request_method {
   source        = "./modules/api_gateway/method"
   rest_api_id   = module.movies_api_gw.id
@@ -444,6 +668,22 @@ module update_movie_rating_request_method {
   authorization = "NONE"
 }
 
+module update_movie_ratings_request_method {
+  source        = "./modules/api_gateway/method"
+  rest_api_id   = module.movies_api_gw.id
+  resource_id   = module.movie_ratings_resource.id
+  http_method   = "PATCH"
+  authorization = "NONE"
+}
+
+module record_movie_vote_request_method {
+  source        = "./modules/api_gateway/method"
+  rest_api_id   = module.movies_api_gw.id
+  resource_id   = module.movie_votes_resource.id
+  http_method   = "POST"
+  authorization = "NONE"
+}
+
 module get_movie_request_integration {
   source              = "./modules/api_gateway/integration"
   rest_api_id         = module.movies_api_gw.id
@@ -453,6 +693,33 @@ module get_movie_request_integration {
   depends_on_method   = module.get_movie_request_method
 }
 
+module get_movies_request_integration {
+  source              = "./modules/api_gateway/integration"
+  rest_api_id         = module.movies_api_gw.id
+  resource_id         = module.movies_resource.id
+  http_method         = module.get_movies_request_method.http_method
+  function_invoke_arn = module.get_movie_lambda.invoke_arn
+  depends_on_method   = module.get_movies_request_method
+}
+
+module suggest_movies_request_integration {
+  source              = "./modules/api_gateway/integration"
+  rest_api_id         = module.movies_api_gw.id
+  resource_id         = module.suggest_movies_resource.id
+  http_method         = module.suggest_movies_request_method.http_method
+  function_invoke_arn = module.get_movie_lambda.invoke_arn
+  depends_on_method   = module.suggest_movies_request_method
+}
+
+module top_movies_request_integration {
+  source              = "./modules/api_gateway/integration"
+  rest_api_id         = module.movies_api_gw.id
+  resource_id         = module.top_movies_resource.id
+  http_method         = module.top_movies_request_method.http_method
+  function_invoke_arn = module.get_movie_lambda.invoke_arn
+  depends_on_method   = module.top_movies_request_method
+}
+
 module update_movie_rating_request_integration {
   source              = "./modules/api_gateway/integration"
   rest_api_id         = module.movies_api_gw.id
@@ -462,12 +729,37 @@ module update_movie_rating_request_integration {
   depends_on_method   = module.update_movie_rating_request_method
 }
 
+module update_movie_ratings_request_integration {
+  source              = "./modules/api_gateway/integration"
+  rest_api_id         = module.movies_api_gw.id
+  resource_id         = module.movie_ratings_resource.id
+  http_method         = module.update_movie_ratings_request_method.http_method
+  function_invoke_arn = module.update_movie_rating_lambda.invoke_arn
+  depends_on_method   = module.update_movie_ratings_request_method
+}
+
+module record_movie_vote_request_integration {
+  source              = "./modules/api_gateway/integration"
+  rest_api_id         = module.movies_api_gw.id
+  resource_id         = module.movie_votes_resource.id
+  http_method         = module.record_movie_vote_request_method.http_method
+  function_invoke_arn = module.update_movie_rating_lambda.invoke_arn
+  depends_on_method   = module.record_movie_vote_request_method
+}
+
 module movies_api_deployment {
-  source                   = "./modules/api_gateway/deployment"
-  rest_api_id              = module.movies_api_gw.id
-  stage_name               = "prod"
-  depends_on_integration_1 = module.get_movie_request_integration
-  depends_on_integration_2 = module.update_movie_rating_request_integration
+  source      = "./modules/api_gateway/deployment"
+  rest_api_id = module.movies_api_gw.id
+  stage_name  = "prod"
+  depends_on_integrations = [
+    module.get_movie_request_integration,
+    module.get_movies_request_integration,
+    module.suggest_movies_request_integration,
+    module.top_movies_request_integration,
+    module.update_movie_rating_request_integration,
+    module.update_movie_ratings_request_integration,
+    module.record_movie_vote_request_integration
+  ]
 }
 
 ############################################################################
@@ -505,6 +797,48 @@ module allow_movies_api_gw_to_invoke_get_movie_lambda {
   depends_on_api_gw   = module.movies_api_gw
 }
 
+module allow_movies_api_gw_to_invoke_get_movie_lambda_for_movies {
+  source              = "./modules/lambda/permission/allow_execution_from_api_gateway"
+  statement_id        = "AllowExecutionFromApiGatewayForMovies"
+  region              = var.aws_region
+  account_id          = var.aws_account_id
+  api_gw_id           = module.movies_api_gw.id
+  resource_path       = module.movies_resource.path
+  function_arn        = module.get_movie_lambda.arn
+  function_alias      = module.get_movie_lambda.alias_name
+  method_http_verb    = module.get_movies_request_method.http_method
+  depends_on_function = module.get_movie_lambda
+  depends_on_api_gw   = module.movies_api_gw
+}
+
+module allow_movies_api_gw_to_invoke_get_movie_lambda_for_suggestions {
+  source              = "./modules/lambda/permission/allow_execution_from_api_gateway"
+  statement_id        = "AllowExecutionFromApiGatewayForSuggestions"
+  region              = var.aws_region
+  account_id          = var.aws_account_id
+  api_gw_id           = module.movies_api_gw.id
+  resource_path       = module.suggest_movies_resource.path
+  function_arn        = module.get_movie_lambda.arn
+  function_alias      = module.get_movie_lambda.alias_name
+  method_http_verb    = module.suggest_movies_request_method.http_method
+  depends_on_function = module.get_movie_lambda
+  depends_on_api_gw   = module.movies_api_gw
+}
+
+module allow_movies_api_gw_to_invoke_get_movie_lambda_for_top_movies {
+  source              = "./modules/lambda/permission/allow_execution_from_api_gateway"
+  statement_id        = "AllowExecutionFromApiGatewayForTopMovies"
+  region              = var.aws_region
+  account_id          = var.aws_account_id
+  api_gw_id           = module.movies_api_gw.id
+  resource_path       = module.top_movies_resource.path
+  function_arn        = module.get_movie_lambda.arn
+  function_alias      = module.get_movie_lambda.alias_name
+  method_http_verb    = module.top_movies_request_method.http_method
+  depends_on_function = module.get_movie_lambda
+  depends_on_api_gw   = module.movies_api_gw
+}
+
 module allow_movies_api_gw_to_invoke_update_movie_rating_lambda {
   source              = "./modules/lambda/permission/allow_execution_from_api_gateway"
   region              = var.aws_region
@@ -518,6 +852,34 @@ module allow_movies_api_gw_to_invoke_update_movie_rating_lambda {
   depends_on_api_gw   = module.movies_api_gw
 }
 
+module allow_movies_api_gw_to_invoke_update_movie_rating_lambda_for_ratings {
+  source              = "./modules/lambda/permission/allow_execution_from_api_gateway"
+  statement_id        = "AllowExecutionFromApiGatewayForRatings"
+  region              = var.aws_region
+  account_id          = var.aws_account_id
+  api_gw_id           = module.movies_api_gw.id
+  resource_path       = module.movie_ratings_resource.path
+  function_arn        = module.update_movie_rating_lambda.arn
+  function_alias      = module.update_movie_rating_lambda.alias_name
+  method_http_verb    = module.update_movie_ratings_request_method.http_method
+  depends_on_function = module.update_movie_rating_lambda
+  depends_on_api_gw   = module.movies_api_gw
+}
+
+module allow_movies_api_gw_to_invoke_update_movie_rating_lambda_for_votes {
+  source              = "./modules/lambda/permission/allow_execution_from_api_gateway"
+  statement_id        = "AllowExecutionFromApiGatewayForVotes"
+  region              = var.aws_region
+  account_id          = var.aws_account_id
+  api_gw_id           = module.movies_api_gw.id
+  resource_path       = module.movie_votes_resource.path
+  function_arn        = module.update_movie_rating_lambda.arn
+  function_alias      = module.update_movie_rating_lambda.alias_name
+  method_http_verb    = module.record_movie_vote_request_method.http_method
+  depends_on_function = module.update_movie_rating_lambda
+  depends_on_api_gw   = module.movies_api_gw
+}
+
 ############################################################################
 
 module stream_updates_to_invoke_update_movie_info_lambda {
@@ -531,5 +893,14 @@ module stream_updates_to_invoke_update_movie_info_lambda {
   depends_on_event_source            = module.movie_infos_table
 }
 
+module rating_updates_to_invoke_update_movie_rating_lambda {
+  source                  = "./modules/lambda/event_source_mapping"
+  event_source_arn        = module.rating_updates_queue.arn
+  function_name           = module.update_movie_rating_lambda.alias_arn
+  batch_size              = 10
+  depends_on_function     = module.update_movie_rating_lambda
+  depends_on_event_source = module.rating_updates_queue
+}
+
 ############################################################################
 
@@ -6,10 +6,6 @@ variable stage_name {
   type = string
 }
 
-variable depends_on_integration_1 {
-  type = any
-}
-
-variable depends_on_integration_2 {
+variable depends_on_integrations {
   type = any
 }
\ No newline at end of file
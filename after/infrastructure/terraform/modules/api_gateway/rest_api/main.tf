@@ -1,6 +1,7 @@
 resource aws_api_gateway_rest_api rest_api {
-  name        = var.name
-  description = var.description
+  name               = var.name
+  description        = var.description
+  binary_media_types = var.binary_media_types
   endpoint_configuration {
     types = ["REGIONAL"]
   }
@@ -4,4 +4,9 @@ variable name {
 
 variable description {
   type = string
+}
+
+variable binary_media_types {
+  type    = list(string)
+  default = []
 }
\ No newline at end of file
@@ -1,3 +1,19 @@
+locals {
+  global_secondary_index_hash_key_attributes = [
+    for index in var.global_secondary_indexes : {
+      name = index.hash_key_name
+      type = index.hash_key_type
+    } if index.hash_key_name != var.hash_key_name
+  ]
+  global_secondary_index_range_key_attributes = [
+    for index in var.global_secondary_indexes : {
+      name = index.range_key_name
+      type = index.range_key_type
+    } if index.range_key_name != null
+  ]
+  global_secondary_index_attributes = distinct(concat(local.global_secondary_index_hash_key_attributes, local.global_secondary_index_range_key_attributes))
+}
+
 resource aws_dynamodb_table table {
   billing_mode     = var.billing_mode
   hash_key         = var.hash_key_name
@@ -12,6 +28,34 @@ resource aws_dynamodb_table table {
     type = var.hash_key_type
   }
 
+  dynamic attribute {
+    for_each = local.global_secondary_index_attributes
+    content {
+      name = attribute.value.name
+      type = attribute.value.type
+    }
+  }
+
+  dynamic global_secondary_index {
+    for_each = var.global_secondary_indexes
+    content {
+      name            = global_secondary_index.value.name
+      hash_key        = global_secondary_index.value.hash_key_name
+      range_key       = global_secondary_index.value.range_key_name
+      projection_type = global_secondary_index.value.projection_type
+      read_capacity   = var.read_capacity
+      write_capacity  = var.write_capacity
+    }
+  }
+
+  dynamic ttl {
+    for_each = var.ttl_attribute_name == null ? [] : [var.ttl_attribute_name]
+    content {
+      attribute_name = ttl.value
+      enabled        = true
+    }
+  }
+
   server_side_encryption {
     enabled = var.enable_encryption_at_rest
   }
@@ -39,4 +39,21 @@ variable stream_enabled {
 variable stream_view_type {
   type    = string
   default = "NEW_AND_OLD_IMAGES"
+}
+
+variable global_secondary_indexes {
+  type = list(object({
+    name            = string
+    hash_key_name   = string
+    hash_key_type   = string
+    range_key_name  = string
+    range_key_type  = string
+    projection_type = string
+  }))
+  default = []
+}
+
+variable ttl_attribute_name {
+  type    = string
+  default = null
 }
\ No newline at end of file
@@ -1,6 +1,6 @@
 variable starting_position {
   type    = string
-  default = "LATEST"
+  default = null
 }
 
 variable function_name {
@@ -18,7 +18,7 @@ variable batch_size {
 
 variable maximum_batching_window_in_seconds {
   type    = number
-  default = 5
+  default = null
 }
 
 variable depends_on_function {
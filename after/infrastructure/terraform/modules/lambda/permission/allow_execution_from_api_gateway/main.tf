@@ -1,5 +1,5 @@
 resource aws_lambda_permission lambda_permission {
-  statement_id  = "AllowExecutionFromApiGateway"
+  statement_id  = var.statement_id
   action        = "lambda:InvokeFunction"
   principal     = "apigateway.amazonaws.com"
   function_name = var.function_arn
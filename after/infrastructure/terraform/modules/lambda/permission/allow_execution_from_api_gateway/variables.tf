@@ -1,3 +1,8 @@
+variable statement_id {
+  type    = string
+  default = "AllowExecutionFromApiGateway"
+}
+
 variable function_arn {
   type = string
 }
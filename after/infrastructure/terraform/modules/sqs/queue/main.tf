@@ -0,0 +1,16 @@
+resource aws_sqs_queue dead_letter_queue {
+  name                      = "${var.name}-dead-letter.fifo"
+  fifo_queue                = true
+  message_retention_seconds = var.dead_letter_message_retention_seconds
+}
+
+resource aws_sqs_queue queue {
+  name                       = "${var.name}.fifo"
+  fifo_queue                 = true
+  visibility_timeout_seconds = var.visibility_timeout_seconds
+  message_retention_seconds  = var.message_retention_seconds
+  redrive_policy = jsonencode({
+    deadLetterTargetArn = aws_sqs_queue.dead_letter_queue.arn
+    maxReceiveCount     = var.max_receive_count
+  })
+}
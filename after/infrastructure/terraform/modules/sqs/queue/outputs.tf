@@ -0,0 +1,15 @@
+output name {
+  value = aws_sqs_queue.queue.name
+}
+
+output id {
+  value = aws_sqs_queue.queue.id
+}
+
+output arn {
+  value = aws_sqs_queue.queue.arn
+}
+
+output dead_letter_queue_arn {
+  value = aws_sqs_queue.dead_letter_queue.arn
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+variable name {
+  type = string
+}
+
+variable visibility_timeout_seconds {
+  type    = number
+  default = 30
+}
+
+variable message_retention_seconds {
+  type    = number
+  default = 345600
+}
+
+variable max_receive_count {
+  type    = number
+  default = 5
+}
+
+variable dead_letter_message_retention_seconds {
+  type    = number
+  default = 1209600
+}
\ No newline at end of file
@@ -8,4 +8,8 @@ variable aws_account_id {
 
 variable code_version {
   default = "java"
+}
+
+variable rating_updates_write_behind {
+  default = false
 }
\ No newline at end of file
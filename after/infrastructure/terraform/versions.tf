@@ -5,4 +5,8 @@ terraform {
 provider aws {
   region  = var.aws_region
   version = "2.62.0"
+}
+
+provider random {
+  version = "2.2.1"
 }
\ No newline at end of file